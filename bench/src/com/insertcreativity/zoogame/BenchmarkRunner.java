@@ -0,0 +1,30 @@
+package com.insertcreativity.zoogame;
+
+import java.io.IOException;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**Runs the JMH benchmarks and writes the results as JSON, so runs from different releases can be diffed.
+ * Any of JMH's usual command line options can be passed, such as a benchmark name pattern to only run some of them.
+ * Options that only print something, such as -h and -l, are handed to JMH's own launcher, which prints it without running anything.
+ * Results are written to the file named by the bench.result system property, or jmh-result.json by default.*/
+public class BenchmarkRunner
+{
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException
+	{
+		CommandLineOptions options = new CommandLineOptions(args);
+		if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers() || options.shouldListResultFormats()){
+			org.openjdk.jmh.Main.main(args);//let JMH print its help or lists, rather than starting every benchmark
+			return;
+		}
+		new Runner(new OptionsBuilder()
+			.parent(options)//let the command line pick benchmarks, forks and iterations
+			.resultFormat(ResultFormatType.JSON)
+			.result(System.getProperty("bench.result", "jmh-result.json"))
+			.build()).run();
+	}
+}
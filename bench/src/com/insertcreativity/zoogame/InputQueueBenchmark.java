@@ -0,0 +1,73 @@
+package com.insertcreativity.zoogame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**Measures a frame's worth of input going through the same path as {@link Window}'s callbacks: pushing events, committing after polling,
+ * and dispatching them on the next update. Cursor motion is what floods the queue, so the number of moves per frame is varied.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InputQueueBenchmark
+{
+	/**The number of cursor moves GLFW reports each frame.*/
+	@Param({"1", "32", "512"})
+	public int cursorMoves;
+
+	/**The queue being measured.*/
+	private InputQueue queue;
+	/**The time of the next event. (in nanoseconds)*/
+	private long time;
+
+	@Setup
+	public void setup()
+	{
+		queue = new InputQueue(1024);
+	}
+
+	/**Pushes a frame of input and dispatches it.
+	 * @param blackhole Sink for the dispatched events.
+	 * @return The number of events dispatched.*/
+	@Benchmark
+	public int pushAndDispatch(final Blackhole blackhole)
+	{
+		queue.pushKey(65, 38, 1, 0, time++);
+		for(int i = 0; i < cursorMoves; i++){
+			queue.pushCursor(i, -i, time++);
+			if((i & 15) == 0){//scroll now and then, which splits up the cursor moves
+				queue.pushScroll(0, 1, time++);
+			}
+		}
+		queue.pushKey(65, 38, 0, 0, time++);
+		queue.commit();
+		return queue.dispatch(time, new InputQueue.InputListener(){
+			public void onKey(int key, int scancode, int action, int modifiers, long eventTime)
+			{
+				blackhole.consume(key);
+			}
+			
+			public void onButton(int button, int action, int modifiers, long eventTime)
+			{
+				blackhole.consume(button);
+			}
+			
+			public void onScroll(double x, double y, long eventTime)
+			{
+				blackhole.consume(y);
+			}
+			
+			public void onCursor(double x, double y, long eventTime)
+			{
+				blackhole.consume(x);
+			}
+		});
+	}
+}
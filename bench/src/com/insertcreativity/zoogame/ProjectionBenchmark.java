@@ -0,0 +1,63 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Measures getting the camera's projection and moving the camera. The renderer is created without a GL context, so this runs headless.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProjectionBenchmark
+{
+	/**The renderer whose camera is being used.*/
+	private Renderer renderer;
+	/**Camera following the renderer's camera as a parallax layer.*/
+	private Camera background;
+	/**Position of the camera, varied so the work can't be hoisted.*/
+	private float position;
+
+	@Setup
+	public void setup()
+	{
+		renderer = new Renderer(800, 600, 0, 0, 0, 64f, false);
+		background = new Camera(renderer.getCamera(), 0.5f, 0.5f);
+	}
+
+	/**Gets the projection while the camera is still, which is what every object drawn after the first in a frame does.
+	 * @return The projection matrix.*/
+	@Benchmark
+	public FloatBuffer getViewProjection()
+	{
+		return renderer.getViewProjection();
+	}
+
+	/**Moves and zooms the camera, then gets the projection, which is what a scrolling frame does before drawing anything.
+	 * @return The projection matrix.*/
+	@Benchmark
+	public FloatBuffer updateCamera()
+	{
+		position += 0.25f;
+		renderer.moveCamera(0.01f, -0.01f, 0);
+		renderer.setCameraZoom(64f + (position % 8));
+		return renderer.getViewProjection();
+	}
+
+	/**Moves the camera, then gets the projection of a parallax layer following it.
+	 * @return The parallax layer's projection matrix.*/
+	@Benchmark
+	public FloatBuffer updateParallaxLayer()
+	{
+		renderer.moveCamera(0.01f, -0.01f, 0);
+		renderer.setCamera(background);
+		FloatBuffer projection = renderer.getViewProjection();
+		renderer.setCamera(null);
+		return projection;
+	}
+}
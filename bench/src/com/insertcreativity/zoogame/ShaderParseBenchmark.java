@@ -0,0 +1,52 @@
+package com.insertcreativity.zoogame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Measures splitting GLSL source into its vertex and fragment sections, which runs for every shader before it's compiled.
+ * The source is read into memory up front, so only the parsing is timed.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShaderParseBenchmark
+{
+	/**The source code of the game's default shader.*/
+	private String source;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		InputStream resource = ShaderParseBenchmark.class.getResourceAsStream("/shaders/default.glsl");
+		if(resource == null){
+			throw new IOException("Missing shader file: default.glsl");
+		}
+		StringBuilder builder = new StringBuilder();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(resource, "UTF-8"))){
+			String line;
+			while((line = reader.readLine()) != null){
+				builder.append(line).append('\n');
+			}
+		}
+		source = builder.toString();
+	}
+
+	/**Parses the default shader.
+	 * @return The vertex and fragment source code.
+	 * @throws IOException If the source was malformed.*/
+	@Benchmark
+	public String[] parseDefaultShader() throws IOException
+	{
+		return Renderer.parseShaderSource(new BufferedReader(new StringReader(source)));
+	}
+}
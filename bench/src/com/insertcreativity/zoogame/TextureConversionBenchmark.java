@@ -0,0 +1,51 @@
+package com.insertcreativity.zoogame;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Measures converting decoded images into the RGBA pixel data that textures are uploaded from.
+ * PNG decoding itself is left to ImageIO, so the images are generated up front to time only the conversion.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextureConversionBenchmark
+{
+	/**The width and height of the image. The game's sprites are 20x20, the larger sizes stand in for atlas pages.*/
+	@Param({"20", "256", "1024"})
+	public int size;
+	/**The image type, PNGs with alpha decode to 4 byte ABGR while generated images are usually int ARGB.*/
+	@Param({"TYPE_4BYTE_ABGR", "TYPE_INT_ARGB"})
+	public String type;
+
+	/**The image being converted.*/
+	private BufferedImage image;
+
+	@Setup
+	public void setup()
+	{
+		image = new BufferedImage(size, size, type.equals("TYPE_INT_ARGB")? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_4BYTE_ABGR);
+		Random random = new Random(size);
+		for(int y = 0; y < size; y++){
+			for(int x = 0; x < size; x++){
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+	}
+
+	/**Converts the image into RGBA pixel data.
+	 * @return The converted pixel data.*/
+	@Benchmark
+	public TextureData fromImage()
+	{
+		return TextureData.fromImage(image);
+	}
+}
@@ -0,0 +1,251 @@
+package com.insertcreativity.zoogame;
+
+import com.insertcreativity.zoogame.entity.EntityWorld;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**Measures how fast a {@link WorldSave} saves and loads zoos of different sizes. Each zoo is a square map of random tiles with entities scattered over it.
+ * Setup checks that a full save loads back the same tiles and entities, and teardown checks that the autosaves loaded back too.
+ * Opening and loading are timed against a fresh save each invocation, so every chunk still has to be decoded.*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorldSaveBenchmark
+{
+	/**The number of tiles given to each entity, which sets how crowded the zoo is.*/
+	private static final int TILES_PER_ENTITY = 16;
+	/**The number of tile types in the benchmark tileset.*/
+	private static final int TILE_TYPES = 16;
+
+	/**A zoo and a full save of it.*/
+	@State(Scope.Thread)
+	public static class Zoo
+	{
+		/**The number of tiles across and up the map.*/
+		@Param({"256", "1024", "2048"})
+		public int size;
+
+		/**The map being saved.*/
+		private TileMap map;
+		/**The entities being saved.*/
+		private EntityWorld world;
+		/**The file holding a full save of the zoo.*/
+		private File file;
+		/**The file that new saves are written to.*/
+		private File scratchFile;
+
+		@Setup
+		public void setup() throws IOException
+		{
+			Random random = new Random(size);
+			map = new TileMap(size, size, 1, "tiles", 4, 4);
+			for(int y = 0; y < size; y++){
+				for(int x = 0; x < size; x++){
+					map.setTile(x, y, random.nextInt(TILE_TYPES + 1));
+				}
+			}
+			world = new EntityWorld(16);
+			int[] models = {world.getModelId("lion"), world.getModelId("zebra"), world.getModelId("rat")};
+			int entityCount = size * size / TILES_PER_ENTITY;
+			for(int i = 0; i < entityCount; i++){
+				world.create(random.nextFloat() * size, random.nextFloat() * size, -0.5f, -0.5f, 0.5f, 0.5f, random.nextBoolean(), models[i % models.length], -1);
+			}
+
+			file = File.createTempFile("zoogame-world", ".zsav");
+			scratchFile = File.createTempFile("zoogame-scratch", ".zsav");
+			WorldSave save = WorldSave.create(file, map, world);
+			save.save();
+			save.close();
+			check(file, map, world.size());
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			file.delete();
+			scratchFile.delete();
+		}
+	}
+
+	/**A save of the zoo that's been opened but not loaded, recreated for every invocation.*/
+	@State(Scope.Thread)
+	public static class OpenedSave
+	{
+		/**The opened save.*/
+		private WorldSave save;
+
+		@Setup(Level.Invocation)
+		public void setup(Zoo zoo) throws IOException
+		{
+			save = WorldSave.open(zoo.file, new EntityWorld(16));
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException
+		{
+			save.close();
+		}
+	}
+
+	/**Holder for a save opened by the benchmark itself, so it can be closed outside the timed code.*/
+	@State(Scope.Thread)
+	public static class SaveHolder
+	{
+		/**The save that was opened, or null if nothing's been opened since the last invocation.*/
+		private WorldSave save;
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException
+		{
+			if(save != null){
+				save.close();
+				save = null;
+			}
+		}
+	}
+
+	/**A fully loaded copy of the zoo's save, which gets a few edits before every autosave.*/
+	@State(Scope.Thread)
+	public static class EditedSave
+	{
+		/**The file the copy is saved in.*/
+		private File file;
+		/**The loaded save.*/
+		private WorldSave save;
+		/**The loaded entities.*/
+		private EntityWorld world;
+		/**The random number generator that picks the edits.*/
+		private Random random;
+
+		@Setup
+		public void setup(Zoo zoo) throws IOException
+		{
+			file = File.createTempFile("zoogame-autosave", ".zsav");
+			Files.copy(zoo.file.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			world = new EntityWorld(16);
+			save = WorldSave.open(file, world);
+			save.loadAll();
+			random = new Random(zoo.size);
+		}
+
+		@Setup(Level.Invocation)
+		public void edit()
+		{
+			TileMap map = save.getTileMap();
+			for(int i = 0; i < 64; i++){//make a few edits scattered around the zoo, like a player would between autosaves
+				map.setTile(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()), 1 + random.nextInt(TILE_TYPES));
+				int index = random.nextInt(world.size());//move entities anywhere on the map, so they never drift off it however many invocations run
+				world.setPosition(index, random.nextFloat() * map.getWidth(), random.nextFloat() * map.getHeight());
+			}
+		}
+
+		@TearDown
+		public void tearDown() throws IOException
+		{
+			try{
+				save.close();
+				check(file, save.getTileMap(), world.size());
+			} finally{
+				file.delete();
+			}
+		}
+	}
+
+	/**Creates a save for the whole zoo and writes it.
+	 * @param zoo The zoo to save.
+	 * @return The number of bytes written.
+	 * @throws IOException If the save couldn't be written.*/
+	@Benchmark
+	public long createAndSave(Zoo zoo) throws IOException
+	{
+		WorldSave save = WorldSave.create(zoo.scratchFile, zoo.map, zoo.world);
+		save.save();
+		save.close();
+		return save.getBytesWritten();
+	}
+
+	/**Opens the zoo's save, reading only its header, chunk table and names.
+	 * @param zoo The zoo to open the save of.
+	 * @param holder The holder that closes the save after the invocation.
+	 * @return The opened save.
+	 * @throws IOException If the save couldn't be read.*/
+	@Benchmark
+	public WorldSave open(Zoo zoo, SaveHolder holder) throws IOException
+	{
+		holder.save = WorldSave.open(zoo.file, new EntityWorld(16));
+		return holder.save;
+	}
+
+	/**Decodes the first chunk of a freshly opened save.
+	 * @param opened The opened save.
+	 * @return Whether the chunk was decoded.
+	 * @throws IOException If the chunk couldn't be read.*/
+	@Benchmark
+	public boolean loadChunk(OpenedSave opened) throws IOException
+	{
+		return opened.save.loadChunk(0, 0);
+	}
+
+	/**Decodes every chunk of a freshly opened save.
+	 * @param opened The opened save.
+	 * @return The number of chunks decoded.
+	 * @throws IOException If a chunk couldn't be read.*/
+	@Benchmark
+	public int loadAll(OpenedSave opened) throws IOException
+	{
+		return opened.save.loadAll();
+	}
+
+	/**Autosaves the chunks changed by the last few edits, and waits for the background write so it's included in the time.
+	 * @param edited The edited save.
+	 * @return The time the game thread spent on the snapshot. (in nanoseconds)
+	 * @throws IOException If the save couldn't be written.*/
+	@Benchmark
+	public long autosave(EditedSave edited) throws IOException
+	{
+		edited.save.autosave();
+		edited.save.flush();
+		return edited.save.getLastSnapshotTime();
+	}
+
+	/**Opens a save and checks that it holds the expected tiles and number of entities.
+	 * @param file The file the save is in.
+	 * @param map The map that was saved.
+	 * @param entityCount The number of entities that were saved.
+	 * @throws IOException If the save couldn't be read.
+	 * @throws IllegalStateException If anything loaded differs from what was saved.*/
+	private static void check(File file, TileMap map, int entityCount) throws IOException, IllegalStateException
+	{
+		EntityWorld loadedWorld = new EntityWorld(16);
+		WorldSave loadedSave = WorldSave.open(file, loadedWorld);
+		try{
+			loadedSave.loadAll();
+			TileMap loadedMap = loadedSave.getTileMap();
+			for(int y = 0; y < map.getHeight(); y++){
+				for(int x = 0; x < map.getWidth(); x++){
+					if(loadedMap.getTile(x, y) != map.getTile(x, y)){
+						throw new IllegalStateException("Tile (" + x + ", " + y + ") was saved as " + map.getTile(x, y) + " but loaded as " + loadedMap.getTile(x, y));
+					}
+				}
+			}
+			if(loadedWorld.size() != entityCount){
+				throw new IllegalStateException("Saved " + entityCount + " entities but loaded " + loadedWorld.size());
+			}
+		} finally{
+			loadedSave.close();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.insertcreativity.zoogame.entity;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**Compares finding overlapping entity pairs with a {@link SpatialHashGrid} against testing every pair with {@link Entity#checkCollision(Entity)}.
+ * Entities are 1x1 boxes scattered at a constant density, so each world size is a fair comparison.
+ * Setup checks that the grid finds the same pairs as brute force, and that a region query over the whole world finds every entity.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BroadphaseBenchmark
+{
+	/**The world area given to each entity, which sets how crowded the world is.*/
+	private static final float AREA_PER_ENTITY = 16;
+
+	/**The number of entities in the world.*/
+	@Param({"1000", "10000", "100000"})
+	public int count;
+
+	/**The entities being tested.*/
+	private Entity[] entities;
+	/**The grid holding every entity.*/
+	private SpatialHashGrid grid;
+	/**The callback the grid reports pairs to.*/
+	private PairCounter counter;
+	/**The random number generator that moves entities.*/
+	private Random random;
+
+	@Setup
+	public void setup() throws IllegalStateException
+	{
+		random = new Random(count);
+		float worldSize = (float)Math.sqrt(count * AREA_PER_ENTITY);
+		entities = new Entity[count];
+		for(int i = 0; i < count; i++){
+			entities[i] = new Animal(random.nextFloat() * worldSize, random.nextFloat() * worldSize);
+		}
+		grid = new SpatialHashGrid(2);
+		for(Entity entity : entities){
+			grid.add(entity);
+		}
+		counter = new PairCounter();
+
+		int gridPairs = grid.findOverlappingPairs(counter);
+		int brutePairs = bruteForce();
+		if(brutePairs != gridPairs){
+			throw new IllegalStateException("Grid found " + gridPairs + " pairs but brute force found " + brutePairs);
+		}
+		ArrayList<Entity> found = new ArrayList<Entity>();
+		grid.queryRegion(0, 0, worldSize, worldSize, found);
+		if(found.size() != count){
+			throw new IllegalStateException("Region query found " + found.size() + " of " + count + " entities");
+		}
+	}
+
+	/**Adds a second copy of every entity to a new grid.
+	 * @param loose The copies, which aren't in any grid yet.
+	 * @return The new grid.*/
+	@Benchmark
+	public SpatialHashGrid gridAdd(LooseEntities loose)
+	{
+		loose.grid = new SpatialHashGrid(2);
+		for(Entity entity : loose.entities){
+			loose.grid.add(entity);
+		}
+		return loose.grid;
+	}
+
+	/**Simulates a tick of wandering animals, moving every entity a little and then finding the overlapping pairs with the grid.
+	 * @return The number of overlapping pairs.*/
+	@Benchmark
+	public int gridTick()
+	{
+		for(Entity entity : entities){
+			entity.setPosition(entity.getX() + (random.nextFloat() - 0.5f) * 0.2f, entity.getY() + (random.nextFloat() - 0.5f) * 0.2f);
+		}
+		return grid.findOverlappingPairs(counter);
+	}
+
+	/**Finds the overlapping pairs with the grid, without moving anything.
+	 * @return The number of overlapping pairs.*/
+	@Benchmark
+	public int gridPairs()
+	{
+		return grid.findOverlappingPairs(counter);
+	}
+
+	/**Tests every pair of entities once, which is a single tick's worth of brute force.
+	 * @return The number of overlapping pairs.*/
+	@Benchmark
+	public int bruteForce()
+	{
+		int pairs = 0;
+		for(int i = 0; i < count; i++){
+			for(int j = i + 1; j < count; j++){
+				if(entities[i].checkCollision(entities[j])){
+					pairs++;
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**Copies of the benchmark's entities that are taken back out of their grid after every invocation, since an entity can only be in one grid.*/
+	@State(Scope.Thread)
+	public static class LooseEntities
+	{
+		/**The copied entities.*/
+		private Entity[] entities;
+		/**The grid the entities were added to by the last invocation, or null if they aren't in one.*/
+		private SpatialHashGrid grid;
+
+		@Setup
+		public void setup(BroadphaseBenchmark benchmark)
+		{
+			entities = new Entity[benchmark.count];
+			for(int i = 0; i < entities.length; i++){
+				entities[i] = new Animal(benchmark.entities[i].getX(), benchmark.entities[i].getY());
+			}
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown()
+		{
+			if(grid != null){
+				for(Entity entity : entities){
+					grid.remove(entity);
+				}
+				grid = null;
+			}
+		}
+	}
+
+	/**A 1x1 entity used to populate the benchmark world.*/
+	private static class Animal extends Entity
+	{
+		private Animal(float x, float y)
+		{
+			super(x, y, 0.5f, 0.5f, -0.5f, -0.5f, "rat");
+		}
+	}
+
+	/**Counts the pairs reported by the grid.*/
+	private static class PairCounter implements SpatialHashGrid.PairCallback
+	{
+		private int pairs;
+
+		public void onOverlap(Entity a, Entity b)
+		{
+			pairs++;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.insertcreativity.zoogame.entity;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Measures {@link Entity#checkCollision(Entity)} across every pair of a fixed number of entities, at several densities.
+ * Denser worlds have more overlapping pairs, so this covers both the early-out and the full test.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollisionBenchmark
+{
+	/**The number of entities in the world.*/
+	private static final int COUNT = 1000;
+
+	/**The world area given to each 1x1 entity, smaller areas mean more crowded worlds.*/
+	@Param({"1", "4", "16", "64"})
+	public float areaPerEntity;
+
+	/**The entities being tested.*/
+	private Entity[] entities;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(COUNT);
+		float worldSize = (float)Math.sqrt(COUNT * areaPerEntity);
+		entities = new Entity[COUNT];
+		for(int i = 0; i < COUNT; i++){
+			entities[i] = new Animal(random.nextFloat() * worldSize, random.nextFloat() * worldSize);
+		}
+	}
+
+	/**Tests every pair of entities once.
+	 * @return The number of overlapping pairs.*/
+	@Benchmark
+	public int checkAllPairs()
+	{
+		int pairs = 0;
+		for(int i = 0; i < COUNT; i++){
+			for(int j = i + 1; j < COUNT; j++){
+				if(entities[i].checkCollision(entities[j])){
+					pairs++;
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**A 1x1 entity used to populate the benchmark world.*/
+	private static class Animal extends Entity
+	{
+		private Animal(float x, float y)
+		{
+			super(x, y, 0.5f, 0.5f, -0.5f, -0.5f, "rat");
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.insertcreativity.zoogame.entity;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**Measures a tick of an {@link UpdateScheduler} spreading updates across its tiers, with and without a budget. Entities are scattered over
+ * a square centred on the camera, and each update does a fixed amount of busy work. Setup first checks that a budget too small to keep up
+ * still gets around to every entity instead of starving some of them.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UpdateSchedulerBenchmark
+{
+	/**The world area given to each entity, which sets how crowded the world is.*/
+	private static final float AREA_PER_ENTITY = 4;
+
+	/**The number of entities in the world.*/
+	@Param({"1000", "10000", "100000"})
+	public int count;
+	/**The scheduler's budget, where 0 is no limit. (in nanoseconds)*/
+	@Param({"0", "1000000", "250000"})
+	public long budget;
+
+	/**The scheduler being measured.*/
+	private UpdateScheduler scheduler;
+	/**The system the scheduler runs.*/
+	private UpdateCounter counter;
+
+	@Setup
+	public void setup() throws IllegalStateException
+	{
+		checkOverload();
+		EntityWorld world = createWorld(count, (float)Math.sqrt(count * AREA_PER_ENTITY), new Random(count));
+		scheduler = new UpdateScheduler(world, budget);
+		counter = new UpdateCounter(world.size());
+	}
+
+	/**Schedules a single tick, which updates the nearest tier in full and as much of the others as are due and fit in the budget.
+	 * @return The result of the busy work, so it isn't optimised away.*/
+	@Benchmark
+	public double tick()
+	{
+		scheduler.update(0, 0, counter);
+		return counter.sink;
+	}
+
+	/**Runs a scheduler with far more due entities than its budget allows, and checks that every entity is still updated.
+	 * @throws IllegalStateException If any entity was never updated.*/
+	private static void checkOverload() throws IllegalStateException
+	{
+		EntityWorld world = createWorld(100, 50, new Random(100));
+		for(int index = 0; index < world.size(); index++){//move everything out of the nearest tier
+			world.setPosition(index, 100 + world.getX(index), world.getY(index));
+		}
+		UpdateScheduler scheduler = new UpdateScheduler(world, new float[]{10}, new int[]{1, 4}, 1);
+		UpdateCounter counter = new UpdateCounter(world.size());
+		for(int tick = 0; tick < 200; tick++){
+			scheduler.update(0, 0, counter);
+		}
+		for(int id = 0; id < counter.updates.length; id++){
+			if(counter.updates[id] == 0){
+				throw new IllegalStateException("Entity " + id + " was never updated under overload");
+			}
+		}
+	}
+
+	/**Creates a world with entities scattered over a square centred on the origin.
+	 * @param count The number of entities.
+	 * @param size The length of the square's sides.
+	 * @param random The random number generator to scatter entities with.
+	 * @return The new world.*/
+	private static EntityWorld createWorld(int count, float size, Random random)
+	{
+		EntityWorld world = new EntityWorld(count);
+		int model = world.getModelId("rat");
+		for(int i = 0; i < count; i++){
+			world.create((random.nextFloat() - 0.5f) * size, (random.nextFloat() - 0.5f) * size, -0.5f, -0.5f, 0.5f, 0.5f, true, model, -1);
+		}
+		return world;
+	}
+
+	/**Counts the updates each entity gets, doing a little busy work each time to stand in for real game logic.*/
+	private static class UpdateCounter implements UpdateScheduler.ScheduledSystem
+	{
+		/**The number of updates each entity has had, by ID.*/
+		final int[] updates;
+		/**The result of the busy work, kept so it isn't optimised away.*/
+		double sink;
+
+		/**Creates a new counter.
+		 * @param count The number of entities to count updates for.*/
+		UpdateCounter(int count)
+		{
+			updates = new int[count];
+		}
+
+		@Override
+		public void update(EntityWorld world, int index, int elapsedTicks)
+		{
+			updates[world.idAt(index)]++;
+			for(int i = 0; i < 64; i++){
+				sink += Math.sin(world.getX(index) + i);
+			}
+		}
+	}
+}
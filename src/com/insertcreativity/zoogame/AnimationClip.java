@@ -0,0 +1,86 @@
+package com.insertcreativity.zoogame;
+
+/**An animation made of frames laid out in a grid on a sprite sheet. Frames are numbered from 0, left to right along each row, starting with the top row,
+ * and a clip plays a run of consecutive frames at a fixed rate, either looping or stopping on its last frame.
+ * <p>Clips are never advanced on the CPU. Whatever draws an animated model only records the animation clock's time when the clip started,
+ * and the shader works out the current frame and its texture coordinates from the clip, the start time and the frame's time,
+ * so thousands of animated models cost nothing more than static ones.</p>*/
+public class AnimationClip
+{
+	/**The number of frames across the sheet.*/
+	public final int columns;
+	/**The number of frames down the sheet.*/
+	public final int rows;
+	/**The number of the clip's first frame on the sheet.*/
+	public final int firstFrame;
+	/**The number of frames in the clip.*/
+	public final int frameCount;
+	/**The number of frames the clip advances each second.*/
+	public final float framesPerSecond;
+	/**Flag for whether the clip starts over after its last frame, instead of stopping on it.*/
+	public final boolean looping;
+
+	/**Creates a new animation clip.
+	 * @param sheetColumns The number of frames across the sheet.
+	 * @param sheetRows The number of frames down the sheet.
+	 * @param first The number of the clip's first frame on the sheet.
+	 * @param count The number of frames in the clip.
+	 * @param rate The number of frames the clip advances each second.
+	 * @param loop Whether the clip starts over after its last frame, instead of stopping on it.
+	 * @throws IllegalArgumentException If the sheet is empty, the clip runs off the end of the sheet, or the rate is negative.*/
+	public AnimationClip(int sheetColumns, int sheetRows, int first, int count, float rate, boolean loop) throws IllegalArgumentException
+	{
+		if((sheetColumns <= 0) || (sheetRows <= 0)){
+			throw new IllegalArgumentException("Invalid sprite sheet grid: " + sheetColumns + "x" + sheetRows);
+		}
+		if((first < 0) || (count <= 0) || ((long)first + count > (long)sheetColumns * sheetRows)){//if the clip has frames that aren't on the sheet
+			throw new IllegalArgumentException("Clip of " + count + " frames from frame " + first + " doesn't fit on a " + sheetColumns + "x" + sheetRows + " sheet");
+		}
+		if(!(rate >= 0)){
+			throw new IllegalArgumentException("Invalid frame rate: " + rate);
+		}
+		columns = sheetColumns;
+		rows = sheetRows;
+		firstFrame = first;
+		frameCount = count;
+		framesPerSecond = rate;
+		looping = loop;
+	}
+
+	/**Creates a looping clip that plays one whole row of a sprite sheet, which is how walk cycles are usually laid out.
+	 * @param sheetColumns The number of frames across the sheet.
+	 * @param sheetRows The number of frames down the sheet.
+	 * @param row The row to play, counting from the top.
+	 * @param rate The number of frames the clip advances each second.
+	 * @return The new clip.
+	 * @throws IllegalArgumentException If the row isn't on the sheet, or the rate is negative.*/
+	public static AnimationClip row(int sheetColumns, int sheetRows, int row, float rate) throws IllegalArgumentException
+	{
+		return new AnimationClip(sheetColumns, sheetRows, row * sheetColumns, sheetColumns, rate, true);
+	}
+
+	/**Returns the frame of the sheet the clip shows after it's been playing for some time. This matches what the shaders show,
+	 * for game logic that needs to know, such as when a one-shot clip has finished.
+	 * @param elapsed The time since the clip started playing. (in seconds)
+	 * @return The number of the frame on the sheet.*/
+	public int getFrame(float elapsed)
+	{
+		int advanced = (int)Math.floor(Math.max(elapsed, 0) * framesPerSecond);
+		return firstFrame + (looping? (advanced % frameCount) : Math.min(advanced, frameCount - 1));
+	}
+
+	/**Checks whether a clip that doesn't loop has reached its last frame.
+	 * @param elapsed The time since the clip started playing. (in seconds)
+	 * @return True if the clip has stopped on its last frame, false if it's still playing or loops.*/
+	public boolean isFinished(float elapsed)
+	{
+		return !looping && (Math.max(elapsed, 0) * framesPerSecond >= frameCount - 1);
+	}
+
+	/**Returns the frame count in the form the shaders read it, where a clip that stops on its last frame has a negative count.
+	 * @return The frame count, negated if the clip doesn't loop.*/
+	float getEncodedFrameCount()
+	{
+		return (looping? frameCount : -frameCount);
+	}
+}
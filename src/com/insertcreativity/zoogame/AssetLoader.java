@@ -0,0 +1,345 @@
+package com.insertcreativity.zoogame;
+
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**Loads textures, texture atlases, shaders and models in the background. File reads, image decoding and pixel conversion run on a pool of worker threads,
+ * while the thread with the GL context only performs the final uploads, a batch at a time, whenever {@link #processUploads(long)} is called.
+ * The time spent on every stage of every asset is recorded so startup costs can be broken down.*/
+public class AssetLoader
+{
+	/**Pool of worker threads that load and decode assets.*/
+	private final ExecutorService workers;
+	/**Queue of loaded assets waiting to be uploaded on the GL thread.*/
+	private final ConcurrentLinkedQueue<PendingUpload<?>> uploads;
+	/**List of the timings for every asset that's been requested, in the order they were requested.*/
+	private final ArrayList<Timing> timings;
+	/**The number of assets that have been requested but not finished.*/
+	private final AtomicInteger outstanding;
+	/**The renderer that shaders are created in.*/
+	private final Renderer renderer;
+	/**The time the first asset was requested at, or 0 if no assets have been requested. (in nanoseconds)*/
+	private long firstRequest;
+
+	/**Creates a new asset loader.
+	 * @param renderer The renderer to create shaders in.
+	 * @param workerCount The number of worker threads to load assets with.*/
+	public AssetLoader(Renderer renderer, int workerCount)
+	{
+		this.renderer = renderer;
+		uploads = new ConcurrentLinkedQueue<PendingUpload<?>>();
+		timings = new ArrayList<Timing>();
+		outstanding = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(Math.max(1, workerCount), new ThreadFactory(){
+			private final AtomicInteger threadCount = new AtomicInteger();
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Asset Loader " + threadCount.incrementAndGet());//name the worker after the loader
+				thread.setDaemon(true);//don't keep the game running just because a load is pending
+				return thread;
+			}
+		});
+	}
+
+	/**Creates a new asset loader with one worker for each processor that isn't running the game loop.
+	 * @param renderer The renderer to create shaders in.*/
+	public AssetLoader(Renderer renderer)
+	{
+		this(renderer, Runtime.getRuntime().availableProcessors() - 1);
+	}
+
+	/**Starts loading a texture from {textureName}.png.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @return Future that completes with the texture's name once the texture has been uploaded.*/
+	public CompletableFuture<String> loadTexture(final String textureName)
+	{
+		return submit("texture", textureName, new Callable<TextureData>(){
+			public TextureData call() throws Exception
+			{
+				return Renderer.readTextureData(textureName);//read the cooked texture, or decode and convert the PNG
+			}
+		}, new Uploader<TextureData>(){
+			public void upload(TextureData texture)
+			{
+				Renderer.loadTexture(textureName, texture);//upload the texture
+			}
+		});
+	}
+
+	/**Starts packing sprites into a texture atlas, which is loaded with {@link Renderer#loadAtlas(TextureAtlas)} once it's been packed.
+	 * @param atlasName The name of the atlas, which its page textures are named after.
+	 * @param spriteNames The names of the sprites to pack. Each sprite is loaded from {spriteName}.png.
+	 * @param pageSize The width and height of each page. (in pixels)
+	 * @param padding The number of gutter pixels to surround each sprite with.
+	 * @param cacheFile The file to load and store the packed layout in, or null to always pack.
+	 * @return Future that completes with the atlas' name once all its pages have been uploaded.*/
+	public CompletableFuture<String> loadAtlas(final String atlasName, final String[] spriteNames, final int pageSize, final int padding, final File cacheFile)
+	{
+		return submit("atlas", atlasName, new Callable<TextureAtlas>(){
+			public TextureAtlas call() throws Exception
+			{
+				return TextureAtlas.build(atlasName, spriteNames, pageSize, padding, cacheFile);//decode and pack the sprites
+			}
+		}, new Uploader<TextureAtlas>(){
+			public void upload(TextureAtlas atlas)
+			{
+				Renderer.loadAtlas(atlas);//upload the pages and register the sprites
+			}
+		});
+	}
+
+	/**Starts loading a shader from a GLSL file.
+	 * @param shaderName The name to store the shader under.
+	 * @param shaderSource Name of the file containing the shader's GLSL source code.
+	 * @return Future that completes with the shader's name once the shader has been compiled.*/
+	public CompletableFuture<String> loadShader(final String shaderName, final String shaderSource)
+	{
+		return submit("shader", shaderName, new Callable<String[]>(){
+			public String[] call() throws Exception
+			{
+				return Renderer.parseShaderSource(shaderSource);//read and split the shader's source code
+			}
+		}, new Uploader<String[]>(){
+			public void upload(String[] sources)
+			{
+				renderer.createShader(shaderName, sources[0], sources[1]);//compile the shader
+				renderer.setShaderFile(shaderName, shaderSource);//remember where the shader came from in case it's reloaded
+			}
+		});
+	}
+
+	/**Starts loading a model.
+	 * @param modelName The name to store the model under.
+	 * @param vertexArray Array of all the vertex coordinates for the model formatted as {x1, y1, x2, y2, ...}.
+	 * @param textureArray Array of all the texture coordinates for the model formatted as {x1, y1, x2, y2, ...}.
+	 * @param indexArray Array of the vertexes specifying the order in which to render them.
+	 * @param xOff The offset to render the model at in the x direction.
+	 * @param yOff The offset to render the model at in the y direction.
+	 * @param zOff The offset to render the model at in the z direction.
+	 * @return Future that completes with the model's name once the model has been stored in the geometry arena.*/
+	public CompletableFuture<String> loadModel(final String modelName, final float[] vertexArray, final float[] textureArray, final int[] indexArray, final float xOff, final float yOff, final float zOff)
+	{
+		return submit("model", modelName, new Callable<Object[]>(){
+			public Object[] call() throws Exception
+			{
+				return new Object[]{Model.createVertexData(vertexArray, textureArray), Model.createIndexBuffer(indexArray)};//load the coordinates into buffers
+			}
+		}, new Uploader<Object[]>(){
+			public void upload(Object[] buffers)
+			{
+				Model.createModel(modelName, (FloatBuffer)buffers[0], (IntBuffer)buffers[1], xOff, yOff, zOff);//store the model in the geometry arena
+			}
+		});
+	}
+
+	/**Starts loading an asset on the worker threads.
+	 * @param type The type of the asset, used for reporting.
+	 * @param name The name of the asset.
+	 * @param loader Task that loads the asset, which is run on a worker thread.
+	 * @param uploader Task that uploads the loaded asset, which is run on the GL thread.
+	 * @return Future that completes with the asset's name once it's been uploaded.*/
+	private <T> CompletableFuture<String> submit(String type, String name, final Callable<T> loader, Uploader<T> uploader)
+	{
+		final Timing timing = new Timing(type, name);
+		synchronized(timings){
+			if(timings.isEmpty()){//if this is the first asset
+				firstRequest = timing.requested;
+			}
+			timings.add(timing);
+		}
+		outstanding.incrementAndGet();
+
+		final PendingUpload<T> pending = new PendingUpload<T>(timing, uploader);
+		workers.execute(new Runnable(){
+			public void run()
+			{
+				timing.loadStarted = System.nanoTime();
+				try{
+					pending.data = loader.call();//load the asset
+				} catch(Exception exception){//if the asset couldn't be loaded
+					pending.error = exception;
+				}
+				timing.loadFinished = System.nanoTime();
+				uploads.add(pending);//hand the asset over to the GL thread, failures are reported there too
+			}
+		});
+		return pending.future;
+	}
+
+	/**Uploads loaded assets, stopping once the time budget is used up. This must be called on the thread with the GL context, usually once per frame.
+	 * At least one asset is uploaded per call if any are waiting, so loading always makes progress. Futures are completed on the calling thread.
+	 * @param budget The amount of time that can be spent uploading. (in nanoseconds)
+	 * @return The number of assets that were uploaded.*/
+	public int processUploads(long budget)
+	{
+		long start = System.nanoTime();
+		int count = 0;
+		PendingUpload<?> pending;
+		while((pending = uploads.poll()) != null){//upload assets until the queue is empty
+			pending.upload();
+			outstanding.decrementAndGet();
+			count++;
+			if(System.nanoTime() - start >= budget){//if the budget's been used up
+				break;
+			}
+		}
+		return count;
+	}
+
+	/**Returns whether every requested asset has finished loading.
+	 * @return True if there are no outstanding assets, false otherwise.*/
+	public boolean isIdle()
+	{
+		return (outstanding.get() == 0);
+	}
+
+	/**Returns the number of assets that have been requested but not finished.
+	 * @return The number of outstanding assets.*/
+	public int getOutstandingCount()
+	{
+		return outstanding.get();
+	}
+
+	/**Creates a report of how long each asset took in each stage of loading.
+	 * @return The report, with one line per asset followed by a summary line.*/
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		long lastFinish = firstRequest;
+		long loadTotal = 0;
+		long uploadTotal = 0;
+		int assetCount;
+		synchronized(timings){
+			assetCount = timings.size();
+			report.append(String.format("%-8s %-20s %10s %10s %10s %10s%n", "type", "name", "load ms", "wait ms", "upload ms", "done at ms"));
+			for(Timing timing : timings){
+				if(timing.uploadFinished == 0){//if the asset hasn't finished yet
+					report.append(String.format("%-8s %-20s %10s%n", timing.type, timing.name, "pending"));
+					continue;
+				}
+				report.append(String.format("%-8s %-20s %10.2f %10.2f %10.2f %10.2f%s%n", timing.type, timing.name,
+				                            milliseconds(timing.loadFinished - timing.loadStarted),//time spent reading and decoding on a worker
+				                            milliseconds(timing.uploadStarted - timing.loadFinished),//time spent waiting for the GL thread
+				                            milliseconds(timing.uploadFinished - timing.uploadStarted),//time spent uploading on the GL thread
+				                            milliseconds(timing.uploadFinished - firstRequest),//when the asset was ready, relative to the first request
+				                            (timing.failed? " FAILED" : "")));
+				lastFinish = Math.max(lastFinish, timing.uploadFinished);
+				loadTotal += timing.loadFinished - timing.loadStarted;
+				uploadTotal += timing.uploadFinished - timing.uploadStarted;
+			}
+		}
+		report.append(String.format("%d assets ready after %.2f ms (%.2f ms loading across workers, %.2f ms uploading)%n",
+		                            assetCount, milliseconds(lastFinish - firstRequest), milliseconds(loadTotal), milliseconds(uploadTotal)));
+		return report.toString();
+	}
+
+	/**Converts nanoseconds into milliseconds.
+	 * @param nanoseconds The time to convert.
+	 * @return The time in milliseconds.*/
+	private static double milliseconds(long nanoseconds)
+	{
+		return nanoseconds / 1000000.0;
+	}
+
+	/**Stops the worker threads. Assets that are already loading will still finish, but no new assets can be requested.*/
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**Uploads a loaded asset on the GL thread.*/
+	private interface Uploader<T>
+	{
+		/**Uploads the asset.
+		 * @param data The data loaded for the asset on the worker thread.
+		 * @throws Exception If the asset couldn't be uploaded.*/
+		public void upload(T data) throws Exception;
+	}
+
+	/**An asset that's been loaded by a worker and is waiting to be uploaded.*/
+	private static class PendingUpload<T>
+	{
+		/**The timing record for this asset.*/
+		private final Timing timing;
+		/**Task that uploads the asset.*/
+		private final Uploader<T> uploader;
+		/**Future to complete once the asset has been uploaded.*/
+		private final CompletableFuture<String> future;
+		/**The data loaded for the asset, written by the worker before the asset is queued.*/
+		private T data;
+		/**The exception that stopped the asset from loading, or null if it loaded successfully.*/
+		private Exception error;
+
+		/**Creates a new pending upload.
+		 * @param assetTiming The timing record for the asset.
+		 * @param assetUploader Task that uploads the asset.*/
+		private PendingUpload(Timing assetTiming, Uploader<T> assetUploader)
+		{
+			timing = assetTiming;
+			uploader = assetUploader;
+			future = new CompletableFuture<String>();
+		}
+
+		/**Uploads the asset and completes its future.*/
+		private void upload()
+		{
+			timing.uploadStarted = System.nanoTime();
+			if(error == null){//if the asset loaded successfully
+				try{
+					uploader.upload(data);
+				} catch(Exception exception){//if the asset couldn't be uploaded
+					error = exception;
+				}
+			}
+			data = null;//let the loaded data be collected now that it's on the GPU
+			timing.uploadFinished = System.nanoTime();
+			timing.failed = (error != null);
+
+			if(error == null){
+				future.complete(timing.name);
+			} else{
+				future.completeExceptionally(error);
+			}
+		}
+	}
+
+	/**Records the time spent in each stage of loading an asset. All times are {@link System#nanoTime()} values.*/
+	private static class Timing
+	{
+		/**The type of the asset.*/
+		private final String type;
+		/**The name of the asset.*/
+		private final String name;
+		/**The time the asset was requested.*/
+		private final long requested;
+		/**The time a worker started loading the asset.*/
+		private volatile long loadStarted;
+		/**The time a worker finished loading the asset.*/
+		private volatile long loadFinished;
+		/**The time the GL thread started uploading the asset.*/
+		private volatile long uploadStarted;
+		/**The time the GL thread finished uploading the asset, or 0 if it hasn't yet.*/
+		private volatile long uploadFinished;
+		/**Flag for whether the asset failed to load.*/
+		private volatile boolean failed;
+
+		/**Creates a new timing record, marking the asset as requested now.
+		 * @param assetType The type of the asset.
+		 * @param assetName The name of the asset.*/
+		private Timing(String assetType, String assetName)
+		{
+			type = assetType;
+			name = assetName;
+			requested = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package com.insertcreativity.zoogame;
+
+import com.insertcreativity.zoogame.math.Mat4;
+import com.insertcreativity.zoogame.math.Vec2;
+import com.insertcreativity.zoogame.math.Vec3;
+
+/**Orthographic camera, centred on its position and showing (viewport size / zoom) world units across.
+ * The view-projection matrix and the edges of the view are cached, and only recalculated after the camera is moved, zoomed or resized.
+ * <p>A camera can also follow another camera as a parallax layer, moving by a fraction of the distance the other camera moves,
+ * while sharing its zoom and viewport. Background layers follow with factors below 1, so they seem further away,
+ * and foreground layers follow with factors above 1.</p>*/
+public class Camera
+{
+	/**How far in front of and behind the camera objects are still drawn.*/
+	private static final float DEPTH = 1000;
+
+	/**The camera this one follows as a parallax layer, or null if it's moved independently.*/
+	private final Camera parent;
+	/**The fraction of the parent camera's movement this camera follows in the x direction.*/
+	private final float parallaxX;
+	/**The fraction of the parent camera's movement this camera follows in the y direction.*/
+	private final float parallaxY;
+	/**The position of the camera, or the offset from the parent camera's scaled position if this is a parallax layer.*/
+	private final Vec3 position;
+	/**The zoom factor of the camera, as the number of pixels per world unit.*/
+	private float zoom;
+	/**The width of the viewport.*/
+	private int viewportWidth;
+	/**The height of the viewport.*/
+	private int viewportHeight;
+	/**The cached view-projection matrix.*/
+	private final Mat4 viewProjection;
+	/**The x coordinate of the left edge of the view.*/
+	private float left;
+	/**The x coordinate of the right edge of the view.*/
+	private float right;
+	/**The y coordinate of the bottom edge of the view.*/
+	private float bottom;
+	/**The y coordinate of the top edge of the view.*/
+	private float top;
+	/**The z coordinate of the camera in the world, including any parallax.*/
+	private float depth;
+	/**Flag for whether the cached matrix and edges are out of date.*/
+	private boolean dirty;
+	/**Counter that goes up every time the cached matrix is recalculated, so users of the matrix can tell when it's changed.*/
+	private int version;
+	/**The parent camera's version when this camera was last recalculated.*/
+	private int parentVersion;
+
+	/**Creates a new camera.
+	 * @param viewWidth The width of the viewport.
+	 * @param viewHeight The height of the viewport.
+	 * @param posX The initial x coordinate of the camera.
+	 * @param posY The initial y coordinate of the camera.
+	 * @param posZ The initial z coordinate of the camera.
+	 * @param zoomFactor The initial zoom factor of the camera.*/
+	public Camera(int viewWidth, int viewHeight, float posX, float posY, float posZ, float zoomFactor)
+	{
+		parent = null;
+		parallaxX = 1;
+		parallaxY = 1;
+		position = new Vec3(posX, posY, posZ);
+		zoom = zoomFactor;
+		viewportWidth = viewWidth;
+		viewportHeight = viewHeight;
+		viewProjection = new Mat4();
+		dirty = true;
+	}
+
+	/**Creates a new parallax layer camera that follows another camera.
+	 * @param followed The camera to follow.
+	 * @param factorX The fraction of the followed camera's movement to follow in the x direction.
+	 * @param factorY The fraction of the followed camera's movement to follow in the y direction.*/
+	public Camera(Camera followed, float factorX, float factorY)
+	{
+		parent = followed;
+		parallaxX = factorX;
+		parallaxY = factorY;
+		position = new Vec3();
+		viewProjection = new Mat4();
+		dirty = true;
+	}
+
+	/**Translates the camera through the world by the specified amounts. For a parallax layer this moves it relative to the camera it follows.
+	 * @param deltaX The amount to move the camera in the x-direction.
+	 * @param deltaY The amount to move the camera in the y-direction.
+	 * @param deltaZ The amount to move the camera in the z-direction.*/
+	public void move(float deltaX, float deltaY, float deltaZ)
+	{
+		position.add(deltaX, deltaY, deltaZ);
+		dirty = true;
+	}
+
+	/**Sets the position of the camera in the world. For a parallax layer this sets its offset from the camera it follows.
+	 * @param x The x coordinate to move the camera to.
+	 * @param y The y coordinate to move the camera to.
+	 * @param z The z coordinate to move the camera to.*/
+	public void setPosition(float x, float y, float z)
+	{
+		position.set(x, y, z);
+		dirty = true;
+	}
+
+	/**Sets the zoom factor of the camera. Parallax layers always use the zoom of the camera they follow.
+	 * @param zoomFactor The new zoom factor, as the number of pixels per world unit.*/
+	public void setZoom(float zoomFactor)
+	{
+		zoom = zoomFactor;
+		dirty = true;
+	}
+
+	/**Updates the size of the viewport the camera is rendering to. Parallax layers always use the viewport of the camera they follow.
+	 * @param width The new width of the viewport.
+	 * @param height The new height of the viewport.*/
+	public void resizeViewport(int width, int height)
+	{
+		viewportWidth = width;
+		viewportHeight = height;
+		dirty = true;
+	}
+
+	/**Returns the camera's view-projection matrix, which maps world coordinates to clip space. It's only recalculated if the camera has changed.
+	 * @return The camera's view-projection matrix, which must not be modified.*/
+	public Mat4 getViewProjection()
+	{
+		update();
+		return viewProjection;
+	}
+
+	/**Returns a counter that goes up whenever the camera's view-projection matrix changes.
+	 * @return The version of the camera's current view-projection matrix.*/
+	public int getVersion()
+	{
+		update();
+		return version;
+	}
+
+	/**Returns the x coordinate of the camera's centre in the world, including any parallax.
+	 * @return The camera's x coordinate.*/
+	public float getX()
+	{
+		update();
+		return (left + right) / 2;
+	}
+
+	/**Returns the y coordinate of the camera's centre in the world, including any parallax.
+	 * @return The camera's y coordinate.*/
+	public float getY()
+	{
+		update();
+		return (bottom + top) / 2;
+	}
+
+	/**Returns the z coordinate of the camera in the world, including any parallax.
+	 * @return The camera's z coordinate.*/
+	public float getZ()
+	{
+		update();
+		return depth;
+	}
+
+	/**Returns the x coordinate of the left edge of the view.
+	 * @return The view's left edge.*/
+	public float getLeft()
+	{
+		update();
+		return left;
+	}
+
+	/**Returns the x coordinate of the right edge of the view.
+	 * @return The view's right edge.*/
+	public float getRight()
+	{
+		update();
+		return right;
+	}
+
+	/**Returns the y coordinate of the bottom edge of the view.
+	 * @return The view's bottom edge.*/
+	public float getBottom()
+	{
+		update();
+		return bottom;
+	}
+
+	/**Returns the y coordinate of the top edge of the view.
+	 * @return The view's top edge.*/
+	public float getTop()
+	{
+		update();
+		return top;
+	}
+
+	/**Returns the zoom factor of the camera.
+	 * @return The number of pixels per world unit.*/
+	public float getZoom()
+	{
+		return ((parent != null)? parent.getZoom() : zoom);
+	}
+
+	/**Returns the width of the viewport the camera is rendering to.
+	 * @return The viewport's width.*/
+	public int getViewportWidth()
+	{
+		return ((parent != null)? parent.getViewportWidth() : viewportWidth);
+	}
+
+	/**Returns the height of the viewport the camera is rendering to.
+	 * @return The viewport's height.*/
+	public int getViewportHeight()
+	{
+		return ((parent != null)? parent.getViewportHeight() : viewportHeight);
+	}
+
+	/**Converts a point on the screen, such as the cursor's position, into world coordinates.
+	 * @param screenX The x coordinate on the screen, in pixels from the left edge of the viewport.
+	 * @param screenY The y coordinate on the screen, in pixels from the top edge of the viewport.
+	 * @param result The vector to store the world coordinates in.
+	 * @return The result vector.*/
+	public Vec2 screenToWorld(double screenX, double screenY, Vec2 result)
+	{
+		update();
+		float currentZoom = getZoom();
+		return result.set(left + (float)screenX / currentZoom, top - (float)screenY / currentZoom);
+	}
+
+	/**Recalculates the cached matrix and edges if the camera, or the camera it follows, has changed since they were last calculated.*/
+	private void update()
+	{
+		float centreX;
+		float centreY;
+		float centreZ;
+		float currentZoom;
+		int width;
+		int height;
+		if(parent != null){//if this is a parallax layer
+			int followedVersion = parent.getVersion();
+			if(!dirty && (followedVersion == parentVersion)){//if neither camera has changed
+				return;
+			}
+			parentVersion = followedVersion;
+			centreX = parent.getX() * parallaxX + position.x;
+			centreY = parent.getY() * parallaxY + position.y;
+			centreZ = parent.getZ() + position.z;
+			currentZoom = parent.getZoom();
+			width = parent.getViewportWidth();
+			height = parent.getViewportHeight();
+		} else{
+			if(!dirty){//if the camera hasn't changed
+				return;
+			}
+			centreX = position.x;
+			centreY = position.y;
+			centreZ = position.z;
+			currentZoom = zoom;
+			width = viewportWidth;
+			height = viewportHeight;
+		}
+
+		float halfWidth = width / (2 * currentZoom);//calculate how far the view reaches from the camera in world units
+		float halfHeight = height / (2 * currentZoom);
+		left = centreX - halfWidth;
+		right = centreX + halfWidth;
+		bottom = centreY - halfHeight;
+		top = centreY + halfHeight;
+		depth = centreZ;
+		viewProjection.setOrthographic(left, right, bottom, top, -centreZ - DEPTH, DEPTH - centreZ);//only show what's within DEPTH of the camera
+		dirty = false;
+		version++;
+	}
+}
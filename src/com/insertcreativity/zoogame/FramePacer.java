@@ -0,0 +1,76 @@
+package com.insertcreativity.zoogame;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**Waits until precise deadlines without burning a whole core.
+ * Most of the wait is spent in {@link Thread#sleep(long)}, whose overshoot is measured so it's never trusted near the deadline,
+ * then the thread is parked for shorter intervals, and the last stretch is spun through so the deadline is hit within about 100 microseconds.*/
+public class FramePacer
+{
+	/**The length of each sleep. (in nanoseconds)*/
+	private static final long SLEEP_LENGTH = 1000000;
+	/**Remaining time below which the thread spins instead of parking. (in nanoseconds)*/
+	private static final long SPIN_THRESHOLD = 100000;
+	/**Weight given to each new sleep measurement in the running averages.*/
+	private static final double SMOOTHING = 0.1;
+
+	/**Running average of how long a sleep actually takes. (in nanoseconds)*/
+	private double sleepAverage;
+	/**Running average of how far sleeps deviate from the average. (in nanoseconds)*/
+	private double sleepDeviation;
+	/**How late the last wait finished. (in nanoseconds)*/
+	private long lastError;
+	/**The latest any wait has finished. (in nanoseconds)*/
+	private long maxError;
+
+	/**Creates a new frame pacer, initially assuming sleeps overshoot by a full millisecond.*/
+	public FramePacer()
+	{
+		sleepAverage = 2 * SLEEP_LENGTH;
+		sleepDeviation = 0;
+	}
+
+	/**Blocks the calling thread until the specified time. Returns immediately if the deadline has already passed.
+	 * @param deadline The {@link System#nanoTime()} value to wait until.
+	 * @return How late the wait finished. (in nanoseconds)*/
+	public long waitUntil(long deadline)
+	{
+		long remaining = deadline - System.nanoTime();
+		while(remaining > (sleepAverage + (2 * sleepDeviation) + SPIN_THRESHOLD)){//sleep while even a slow sleep would end before the deadline
+			long start = System.nanoTime();
+			try{
+				Thread.sleep(SLEEP_LENGTH / 1000000);
+			} catch(InterruptedException interruptedException){}
+			long slept = System.nanoTime() - start;//measure how long the sleep really took
+			sleepDeviation += SMOOTHING * (Math.abs(slept - sleepAverage) - sleepDeviation);
+			sleepAverage += SMOOTHING * (slept - sleepAverage);
+			remaining = deadline - System.nanoTime();
+		}
+		while(remaining > SPIN_THRESHOLD){//park for most of what's left, parking is far more precise than sleeping
+			LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+			remaining = deadline - System.nanoTime();
+		}
+		while(remaining > 0){//spin through the last stretch
+			Thread.onSpinWait();
+			remaining = deadline - System.nanoTime();
+		}
+
+		lastError = -remaining;//store how far past the deadline the wait finished
+		maxError = Math.max(maxError, lastError);
+		return lastError;
+	}
+
+	/**Returns how late the last wait finished.
+	 * @return The last wait's error. (in nanoseconds)*/
+	public long getLastError()
+	{
+		return lastError;
+	}
+
+	/**Returns the latest any wait has finished, including waits that started after their deadline.
+	 * @return The largest wait error so far. (in nanoseconds)*/
+	public long getMaxError()
+	{
+		return maxError;
+	}
+}
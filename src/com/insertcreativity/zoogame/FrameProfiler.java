@@ -0,0 +1,245 @@
+package com.insertcreativity.zoogame;
+
+import java.util.Arrays;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**Measures where each frame's time goes, and how much rendering work each frame does.
+ * The game loop marks the end of each phase of the frame as it goes, and the profiler keeps a rolling window of recent frames to take percentiles from.
+ * Every frame is also recorded as a {@link FrameEvent} for Java Flight Recorder, so traces from real sessions can be recorded and compared.
+ * Nothing is allocated while profiling a frame, unless a flight recording is running.*/
+public class FrameProfiler
+{
+	/**Metric for the time spent polling window events. (in nanoseconds)*/
+	public static final int POLL = 0;
+	/**Metric for the time spent updating the screen, across every update run in the frame. (in nanoseconds)*/
+	public static final int UPDATE = 1;
+	/**Metric for the time spent rendering the screen. (in nanoseconds)*/
+	public static final int RENDER = 2;
+	/**Metric for the time spent swapping the window's buffers. (in nanoseconds)*/
+	public static final int SWAP = 3;
+	/**Metric for the time spent waiting for the next frame. (in nanoseconds)*/
+	public static final int SLEEP = 4;
+	/**Metric for the total length of the frame. (in nanoseconds)*/
+	public static final int FRAME = 5;
+	/**Metric for the number of draw calls issued.*/
+	public static final int DRAW_CALLS = 6;
+	/**Metric for the number of texture binds issued.*/
+	public static final int TEXTURE_BINDS = 7;
+	/**Metric for the number of uniform uploads issued.*/
+	public static final int UNIFORM_UPLOADS = 8;
+	/**Metric for the number of objects culled for being outside the viewport.*/
+	public static final int CULLED = 9;
+	/**Metric for how old the rendered snapshot was when rendering started, when the simulation runs on its own thread. (in nanoseconds)*/
+	public static final int SNAPSHOT_AGE = 10;
+	/**The number of metrics that are tracked.*/
+	private static final int METRICS = 11;
+	/**The name of each metric, for reports.*/
+	private static final String[] METRIC_NAMES = {"poll", "update", "render", "swap", "sleep", "frame", "draws", "binds", "uniforms", "culled", "latency"};
+	/**Flags for which metrics are timings, as opposed to counts.*/
+	private static final boolean[] TIMINGS = {true, true, true, true, true, true, false, false, false, false, true};
+
+	/**The number of recent frames kept for taking percentiles from.*/
+	private final int windowSize;
+	/**The recent samples of each metric, stored as a ring of frames with one row per metric.*/
+	private final long[][] samples;
+	/**Scratch array that samples are sorted in when taking percentiles.*/
+	private final long[] sorted;
+	/**The values of each metric for the frame being profiled.*/
+	private final long[] current;
+	/**The number of frames that have been profiled.*/
+	private long frameCount;
+	/**The time the current frame started at. (in nanoseconds)*/
+	private long frameStart;
+	/**The time the last phase ended at. (in nanoseconds)*/
+	private long lastMark;
+
+	/**Creates a new frame profiler.
+	 * @param frames The number of recent frames to keep for taking percentiles from.*/
+	public FrameProfiler(int frames)
+	{
+		windowSize = Math.max(frames, 1);
+		samples = new long[METRICS][windowSize];
+		sorted = new long[windowSize];
+		current = new long[METRICS];
+	}
+
+	/**Starts profiling a new frame. This should be called at the very start of each frame.*/
+	public void beginFrame()
+	{
+		Arrays.fill(current, 0);
+		frameStart = System.nanoTime();
+		lastMark = frameStart;
+	}
+
+	/**Marks the end of a phase of the current frame, adding the time since the last phase ended to it.
+	 * A phase can be marked several times in one frame, such as when several updates run back to back.
+	 * @param phase The phase that just ended, such as {@link #UPDATE}.*/
+	public void mark(int phase)
+	{
+		long now = System.nanoTime();
+		current[phase] += now - lastMark;
+		lastMark = now;
+	}
+
+	/**Sets a metric's value for the current frame, for metrics that aren't phases of the frame.
+	 * @param metric The metric to set, such as {@link #SNAPSHOT_AGE}.
+	 * @param value The metric's value.*/
+	public void set(int metric, long value)
+	{
+		current[metric] = value;
+	}
+
+	/**Skips over the time since the last phase ended, so it isn't counted towards the next phase.*/
+	public void skip()
+	{
+		lastMark = System.nanoTime();
+	}
+
+	/**Ends the current frame, storing its timings along with the rendering counts from the last frame the renderer ended.
+	 * @param renderer The renderer that rendered the frame, or null if the frame didn't render anything, such as a tick on the simulation thread.*/
+	public void endFrame(Renderer renderer)
+	{
+		long frameEnd = System.nanoTime();
+		current[FRAME] = frameEnd - frameStart;
+		if(renderer != null){//if the frame was rendered
+			GLState glState = Renderer.getGLState();
+			current[DRAW_CALLS] = glState.getIssuedCalls(GLState.DRAW);
+			current[TEXTURE_BINDS] = glState.getIssuedCalls(GLState.TEXTURE);
+			current[UNIFORM_UPLOADS] = glState.getIssuedCalls(GLState.UNIFORM);
+			current[CULLED] = renderer.getCulledCount();
+		}
+
+		int slot = (int)(frameCount % windowSize);
+		for(int metric = 0; metric < METRICS; metric++){//store the frame's values in the rolling window
+			samples[metric][slot] = current[metric];
+		}
+		frameCount++;
+
+		FrameEvent event = new FrameEvent();//the allocation is removed by the JIT when recording is off
+		if(event.shouldCommit()){//if a flight recording wants frame events
+			event.poll = current[POLL];
+			event.update = current[UPDATE];
+			event.render = current[RENDER];
+			event.swap = current[SWAP];
+			event.sleep = current[SLEEP];
+			event.frame = current[FRAME];
+			event.drawCalls = (int)current[DRAW_CALLS];
+			event.textureBinds = (int)current[TEXTURE_BINDS];
+			event.uniformUploads = (int)current[UNIFORM_UPLOADS];
+			event.culled = (int)current[CULLED];
+			event.snapshotAge = current[SNAPSHOT_AGE];
+			event.commit();
+		}
+	}
+
+	/**Returns a metric's value for the last frame that was profiled.
+	 * @param metric The metric to get, such as {@link #RENDER}.
+	 * @return The metric's value, or 0 if no frames have been profiled.*/
+	public long getLast(int metric)
+	{
+		return ((frameCount == 0)? 0 : samples[metric][(int)((frameCount - 1) % windowSize)]);
+	}
+
+	/**Returns a percentile of a metric's values across the recent frames.
+	 * @param metric The metric to get, such as {@link #RENDER}.
+	 * @param percentile The percentile to get, from 0 to 1. For example 0.99 gives the value that 99% of recent frames were at or below.
+	 * @return The metric's value at the percentile, or 0 if no frames have been profiled.*/
+	public long getPercentile(int metric, double percentile)
+	{
+		int count = (int)Math.min(frameCount, windowSize);
+		if(count == 0){
+			return 0;
+		}
+		System.arraycopy(samples[metric], 0, sorted, 0, count);
+		Arrays.sort(sorted, 0, count);
+		int rank = (int)Math.ceil(percentile * count) - 1;//nearest-rank percentile
+		return sorted[Math.max(0, Math.min(rank, count - 1))];
+	}
+
+	/**Returns the largest value of a metric across the recent frames.
+	 * @param metric The metric to get, such as {@link #RENDER}.
+	 * @return The metric's largest value, or 0 if no frames have been profiled.*/
+	public long getMax(int metric)
+	{
+		return getPercentile(metric, 1);
+	}
+
+	/**Returns the number of frames that have been profiled.
+	 * @return The number of frames profiled.*/
+	public long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**Returns a summary of the recent frames, with the p50, p99 and largest value of every metric.
+	 * @return Table of the recent frames' metrics, timings are in milliseconds.*/
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-10s %10s %10s %10s%n", "metric", "p50", "p99", "max"));
+		for(int metric = 0; metric < METRICS; metric++){
+			if(TIMINGS[metric]){//if the metric is a timing
+				report.append(String.format("%-10s %10.3f %10.3f %10.3f%n", METRIC_NAMES[metric], getPercentile(metric, 0.5) / 1000000.0,
+				                            getPercentile(metric, 0.99) / 1000000.0, getMax(metric) / 1000000.0));
+			} else{
+				report.append(String.format("%-10s %10d %10d %10d%n", METRIC_NAMES[metric], getPercentile(metric, 0.5), getPercentile(metric, 0.99), getMax(metric)));
+			}
+		}
+		report.append(String.format("%d frames profiled, percentiles over the last %d%n", frameCount, Math.min(frameCount, windowSize)));
+		return report.toString();
+	}
+
+	/**Flight recorder event for a single frame.*/
+	@Name("com.insertcreativity.zoogame.Frame")
+	@Label("Frame")
+	@Category("Zoo Game")
+	@Description("Phase timings and rendering counts of a single frame")
+	static class FrameEvent extends Event
+	{
+		/**The time spent polling window events.*/
+		@Label("Poll")
+		@Timespan(Timespan.NANOSECONDS)
+		long poll;
+		/**The time spent updating the screen.*/
+		@Label("Update")
+		@Timespan(Timespan.NANOSECONDS)
+		long update;
+		/**The time spent rendering the screen.*/
+		@Label("Render")
+		@Timespan(Timespan.NANOSECONDS)
+		long render;
+		/**The time spent swapping the window's buffers.*/
+		@Label("Swap")
+		@Timespan(Timespan.NANOSECONDS)
+		long swap;
+		/**The time spent waiting for the next frame.*/
+		@Label("Sleep")
+		@Timespan(Timespan.NANOSECONDS)
+		long sleep;
+		/**The total length of the frame.*/
+		@Label("Frame Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long frame;
+		/**The number of draw calls issued.*/
+		@Label("Draw Calls")
+		int drawCalls;
+		/**The number of texture binds issued.*/
+		@Label("Texture Binds")
+		int textureBinds;
+		/**The number of uniform uploads issued.*/
+		@Label("Uniform Uploads")
+		int uniformUploads;
+		/**The number of objects culled for being outside the viewport.*/
+		@Label("Culled Objects")
+		int culled;
+		/**How old the rendered snapshot was when rendering started.*/
+		@Label("Snapshot Age")
+		@Timespan(Timespan.NANOSECONDS)
+		long snapshotAge;
+	}
+}
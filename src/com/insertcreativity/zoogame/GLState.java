@@ -0,0 +1,638 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL33;
+
+/**Caches the GL state set by the game so that calls which wouldn't change anything are never issued.
+ * Every bind, uniform upload and attribute change made by the renderer has to go through this class, otherwise the cache falls out of sync with GL.
+ * Counts of the calls issued and skipped are kept for each frame.*/
+public class GLState
+{
+	/**Statistic category for shader program binds.*/
+	public static final int PROGRAM = 0;
+	/**Statistic category for texture unit switches and texture binds.*/
+	public static final int TEXTURE = 1;
+	/**Statistic category for buffer binds.*/
+	public static final int BUFFER = 2;
+	/**Statistic category for uniform uploads.*/
+	public static final int UNIFORM = 3;
+	/**Statistic category for vertex attribute changes and vertex array binds.*/
+	public static final int ATTRIBUTE = 4;
+	/**Statistic category for draw calls, which are never skipped.*/
+	public static final int DRAW = 5;
+	/**The number of statistic categories.*/
+	private static final int CATEGORIES = 6;
+	/**The maximum number of texture units that are tracked.*/
+	private static final int TEXTURE_UNITS = 32;
+	/**The maximum number of vertex attributes that are tracked.*/
+	private static final int ATTRIBUTES = 16;
+
+	/**The handle ID of the bound shader program, or -1 if unknown.*/
+	private int program;
+	/**The cached state of the bound shader program.*/
+	private ProgramState programState;
+	/**The index of the active texture unit, or -1 if unknown.*/
+	private int activeUnit;
+	/**The handle ID of the texture bound to each texture unit, or -1 if unknown.*/
+	private final int[] boundTextures;
+	/**The handle ID of the bound array buffer, or -1 if unknown.*/
+	private int arrayBuffer;
+	/**The handle ID of the bound vertex array.*/
+	private int vertexArray;
+	/**The cached state of the bound vertex array, which holds the element array buffer and vertex attribute state.*/
+	private VertexArrayState vertexArrayState;
+	/**Map containing the handle IDs and cached states of every shader program used so far.*/
+	private final HashMap<Integer, ProgramState> programs;
+	/**Map containing the handle IDs and cached states of every vertex array used so far.*/
+	private final HashMap<Integer, VertexArrayState> vertexArrays;
+	/**The number of calls issued in each category during the current frame.*/
+	private final int[] issuedCalls;
+	/**The number of calls skipped in each category during the current frame.*/
+	private final int[] skippedCalls;
+	/**The number of calls issued in each category during the last completed frame.*/
+	private final int[] lastIssuedCalls;
+	/**The number of calls skipped in each category during the last completed frame.*/
+	private final int[] lastSkippedCalls;
+	/**The number of indexes drawn during the current frame.*/
+	private long drawnIndexes;
+	/**The number of indexes drawn during the last completed frame.*/
+	private long lastDrawnIndexes;
+
+	/**Creates a new state cache where all state is initially unknown.*/
+	public GLState()
+	{
+		boundTextures = new int[TEXTURE_UNITS];
+		programs = new HashMap<Integer, ProgramState>();
+		vertexArrays = new HashMap<Integer, VertexArrayState>();
+		issuedCalls = new int[CATEGORIES];
+		skippedCalls = new int[CATEGORIES];
+		lastIssuedCalls = new int[CATEGORIES];
+		lastSkippedCalls = new int[CATEGORIES];
+		invalidate();
+	}
+
+	/**Forgets all the cached state, forcing the next call of every kind to be issued. This must be called if anything changes GL state behind this cache's back.
+	 * The default vertex array is assumed to be bound afterwards, which is always true of a new context.*/
+	public void invalidate()
+	{
+		program = -1;
+		programState = null;
+		activeUnit = -1;
+		Arrays.fill(boundTextures, -1);
+		arrayBuffer = -1;
+		vertexArrays.clear();
+		vertexArray = 0;
+		vertexArrayState = getVertexArrayState(0);
+		for(ProgramState state : programs.values()){//forget every uploaded uniform value, but keep the uniform locations
+			Arrays.fill(state.valueTypes, (byte)0);
+		}
+	}
+
+	/**Binds a shader program for use.
+	 * @param handle The handle ID of the program to bind.*/
+	public void useProgram(int handle)
+	{
+		if(program == handle){//if the program is already bound
+			skippedCalls[PROGRAM]++;
+			return;
+		}
+		GL20.glUseProgram(handle);//bind the program
+		program = handle;
+		programState = getProgramState(handle);
+		issuedCalls[PROGRAM]++;
+	}
+
+	/**Forgets everything cached about a shader program, which must be done whenever the program is deleted or relinked.
+	 * @param handle The handle ID of the program to forget.*/
+	public void forgetProgram(int handle)
+	{
+		programs.remove(handle);
+		if(program == handle){//if the program is currently bound
+			program = -1;
+			programState = null;
+		}
+	}
+
+	/**Returns the shader program that's currently bound.
+	 * @return The handle ID of the bound program, or -1 if it's unknown.*/
+	public int getProgram()
+	{
+		return program;
+	}
+
+	/**Returns the location of a uniform variable in a shader program. Each location is only queried from GL once per program.
+	 * @param handle The handle ID of the program.
+	 * @param uniform The name of the uniform variable.
+	 * @return The uniform's location, or -1 if the program has no such uniform.*/
+	public int getUniformLocation(int handle, String uniform)
+	{
+		ProgramState state = getProgramState(handle);
+		Integer location = state.locations.get(uniform);
+		if(location == null){//if the location hasn't been queried yet
+			location = GL20.glGetUniformLocation(handle, uniform);//get the location of the uniform
+			state.locations.put(uniform, location);
+		}
+		return location;
+	}
+
+	/**Sets the value of an integer uniform variable, binding the program first if necessary.
+	 * @param handle The handle ID of the program the uniform belongs to.
+	 * @param location The location of the uniform, does nothing if -1.
+	 * @param value The value to set the uniform to.*/
+	public void setUniform(int handle, int location, int value)
+	{
+		if(location == -1){//if the uniform doesn't exist
+			return;
+		}
+		useProgram(handle);//uniforms are always set on the bound program
+		ProgramState state = programState;
+		state.ensureCapacity(location);
+		if((state.valueTypes[location] == ProgramState.INT) && (state.intValues[location] == value)){//if the uniform already has this value
+			skippedCalls[UNIFORM]++;
+			return;
+		}
+		GL20.glUniform1i(location, value);//set the value of the uniform
+		state.valueTypes[location] = ProgramState.INT;
+		state.intValues[location] = value;
+		issuedCalls[UNIFORM]++;
+	}
+
+	/**Sets the value of a float uniform variable, binding the program first if necessary.
+	 * @param handle The handle ID of the program the uniform belongs to.
+	 * @param location The location of the uniform, does nothing if -1.
+	 * @param value The value to set the uniform to.*/
+	public void setUniform(int handle, int location, float value)
+	{
+		if(location == -1){//if the uniform doesn't exist
+			return;
+		}
+		useProgram(handle);//uniforms are always set on the bound program
+		ProgramState state = programState;
+		state.ensureCapacity(location);
+		int offset = location * 16;
+		if((state.valueTypes[location] == ProgramState.FLOAT) && (state.floatValues[offset] == value)){//if the uniform already has this value
+			skippedCalls[UNIFORM]++;
+			return;
+		}
+		GL20.glUniform1f(location, value);//set the value of the uniform
+		state.floatValues[offset] = value;
+		state.valueTypes[location] = ProgramState.FLOAT;
+		issuedCalls[UNIFORM]++;
+	}
+
+	/**Sets the value of a three component vector uniform variable, binding the program first if necessary.
+	 * @param handle The handle ID of the program the uniform belongs to.
+	 * @param location The location of the uniform, does nothing if -1.
+	 * @param x The x component to set the uniform to.
+	 * @param y The y component to set the uniform to.
+	 * @param z The z component to set the uniform to.*/
+	public void setUniform(int handle, int location, float x, float y, float z)
+	{
+		if(location == -1){//if the uniform doesn't exist
+			return;
+		}
+		useProgram(handle);//uniforms are always set on the bound program
+		ProgramState state = programState;
+		state.ensureCapacity(location);
+		int offset = location * 16;
+		if((state.valueTypes[location] == ProgramState.VEC3) && (state.floatValues[offset] == x) && (state.floatValues[offset + 1] == y) && (state.floatValues[offset + 2] == z)){//if the uniform already has this value
+			skippedCalls[UNIFORM]++;
+			return;
+		}
+		GL20.glUniform3f(location, x, y, z);//set the value of the uniform
+		state.floatValues[offset] = x;
+		state.floatValues[offset + 1] = y;
+		state.floatValues[offset + 2] = z;
+		state.valueTypes[location] = ProgramState.VEC3;
+		issuedCalls[UNIFORM]++;
+	}
+
+	/**Sets the value of a four component vector uniform variable, binding the program first if necessary.
+	 * @param handle The handle ID of the program the uniform belongs to.
+	 * @param location The location of the uniform, does nothing if -1.
+	 * @param x The x component to set the uniform to.
+	 * @param y The y component to set the uniform to.
+	 * @param z The z component to set the uniform to.
+	 * @param w The w component to set the uniform to.*/
+	public void setUniform(int handle, int location, float x, float y, float z, float w)
+	{
+		if(location == -1){//if the uniform doesn't exist
+			return;
+		}
+		useProgram(handle);//uniforms are always set on the bound program
+		ProgramState state = programState;
+		state.ensureCapacity(location);
+		int offset = location * 16;
+		if((state.valueTypes[location] == ProgramState.VEC4) && (state.floatValues[offset] == x) && (state.floatValues[offset + 1] == y) &&
+		   (state.floatValues[offset + 2] == z) && (state.floatValues[offset + 3] == w)){//if the uniform already has this value
+			skippedCalls[UNIFORM]++;
+			return;
+		}
+		GL20.glUniform4f(location, x, y, z, w);//set the value of the uniform
+		state.floatValues[offset] = x;
+		state.floatValues[offset + 1] = y;
+		state.floatValues[offset + 2] = z;
+		state.floatValues[offset + 3] = w;
+		state.valueTypes[location] = ProgramState.VEC4;
+		issuedCalls[UNIFORM]++;
+	}
+
+	/**Sets the value of a 4x4 matrix uniform variable, binding the program first if necessary.
+	 * @param handle The handle ID of the program the uniform belongs to.
+	 * @param location The location of the uniform, does nothing if -1.
+	 * @param matrix Buffer containing the 16 values of the matrix in column major order, starting at its position.*/
+	public void setUniformMatrix(int handle, int location, FloatBuffer matrix)
+	{
+		if(location == -1){//if the uniform doesn't exist
+			return;
+		}
+		useProgram(handle);//uniforms are always set on the bound program
+		ProgramState state = programState;
+		state.ensureCapacity(location);
+		int offset = location * 16;
+		int start = matrix.position();
+		if(state.valueTypes[location] == ProgramState.MATRIX){//if the uniform already holds a matrix, compare it against the new one
+			int i = 0;
+			while((i < 16) && (state.floatValues[offset + i] == matrix.get(start + i))){
+				i++;
+			}
+			if(i == 16){//if the matrices are identical
+				skippedCalls[UNIFORM]++;
+				return;
+			}
+		}
+		GL20.glUniformMatrix4fv(location, false, matrix);//set the value of the uniform
+		for(int i = 0; i < 16; i++){//store the uploaded matrix
+			state.floatValues[offset + i] = matrix.get(start + i);
+		}
+		state.valueTypes[location] = ProgramState.MATRIX;
+		issuedCalls[UNIFORM]++;
+	}
+
+	/**Binds a texture to the specified texture unit.
+	 * @param unit The index of the texture unit (must be between 0 and 31).
+	 * @param handle The handle ID of the texture to bind.*/
+	public void bindTexture(int unit, int handle)
+	{
+		if(boundTextures[unit] == handle){//if the texture is already bound to the unit
+			skippedCalls[TEXTURE]++;
+			return;
+		}
+		activeTexture(unit);//switch to the texture unit
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, handle);//bind the texture to the unit
+		boundTextures[unit] = handle;
+		issuedCalls[TEXTURE]++;
+	}
+
+	/**Switches the active texture unit.
+	 * @param unit The index of the texture unit (must be between 0 and 31).*/
+	public void activeTexture(int unit)
+	{
+		if(activeUnit == unit){//if the unit is already active
+			skippedCalls[TEXTURE]++;
+			return;
+		}
+		GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);//switch to the texture unit
+		activeUnit = unit;
+		issuedCalls[TEXTURE]++;
+	}
+
+	/**Records that a texture was deleted, so a new texture reusing its handle ID isn't mistaken for it.
+	 * @param handle The handle ID of the deleted texture.*/
+	public void forgetTexture(int handle)
+	{
+		for(int unit = 0; unit < TEXTURE_UNITS; unit++){//GL unbinds deleted textures from every unit
+			if(boundTextures[unit] == handle){
+				boundTextures[unit] = 0;
+			}
+		}
+	}
+
+	/**Binds a buffer to the specified target.
+	 * @param target Either GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+	 * @param handle The handle ID of the buffer to bind.*/
+	public void bindBuffer(int target, int handle)
+	{
+		int current = ((target == GL15.GL_ARRAY_BUFFER)? arrayBuffer : vertexArrayState.elementBuffer);
+		if(current == handle){//if the buffer is already bound
+			skippedCalls[BUFFER]++;
+			return;
+		}
+		GL15.glBindBuffer(target, handle);//bind the buffer
+		if(target == GL15.GL_ARRAY_BUFFER){
+			arrayBuffer = handle;
+		} else{
+			vertexArrayState.elementBuffer = handle;//the element array buffer binding belongs to the bound vertex array
+		}
+		issuedCalls[BUFFER]++;
+	}
+
+	/**Records that a buffer was deleted, so a new buffer reusing its handle ID isn't mistaken for it.
+	 * @param handle The handle ID of the deleted buffer.*/
+	public void forgetBuffer(int handle)
+	{
+		if(arrayBuffer == handle){//GL unbinds deleted buffers
+			arrayBuffer = 0;
+		}
+		for(VertexArrayState state : vertexArrays.values()){
+			if(state.elementBuffer == handle){
+				state.elementBuffer = -1;//GL only unbinds it from the bound vertex array, so it's unknown for the others
+			}
+			for(int i = 0; i < ATTRIBUTES; i++){
+				if(state.attributeBuffers[i] == handle){
+					state.attributeBuffers[i] = -1;
+				}
+			}
+		}
+	}
+
+	/**Binds a vertex array, which switches the element array buffer and every vertex attribute's state to the ones captured by the vertex array.
+	 * Vertex arrays other than the default one need OpenGL 3.0.
+	 * @param handle The handle ID of the vertex array to bind, or 0 for the default vertex array.*/
+	public void bindVertexArray(int handle)
+	{
+		if(vertexArray == handle){//if the vertex array is already bound
+			skippedCalls[ATTRIBUTE]++;
+			return;
+		}
+		GL30.glBindVertexArray(handle);//bind the vertex array
+		vertexArray = handle;
+		vertexArrayState = getVertexArrayState(handle);
+		issuedCalls[ATTRIBUTE]++;
+	}
+
+	/**Forgets everything cached about a vertex array, which must be done whenever the vertex array is deleted.
+	 * @param handle The handle ID of the vertex array to forget.*/
+	public void forgetVertexArray(int handle)
+	{
+		vertexArrays.remove(handle);
+		if(vertexArray == handle){//GL binds the default vertex array in place of a deleted bound one
+			vertexArray = 0;
+			vertexArrayState = getVertexArrayState(0);
+		}
+	}
+
+	/**Enables a vertex attribute array.
+	 * @param index The index of the vertex attribute.*/
+	public void enableVertexAttribArray(int index)
+	{
+		VertexArrayState state = vertexArrayState;
+		if(state.enabledAttributes[index]){//if the attribute is already enabled
+			skippedCalls[ATTRIBUTE]++;
+			return;
+		}
+		GL20.glEnableVertexAttribArray(index);//enable the attribute array
+		state.enabledAttributes[index] = true;
+		issuedCalls[ATTRIBUTE]++;
+	}
+
+	/**Disables a vertex attribute array.
+	 * @param index The index of the vertex attribute.*/
+	public void disableVertexAttribArray(int index)
+	{
+		VertexArrayState state = vertexArrayState;
+		if(!state.enabledAttributes[index]){//if the attribute is already disabled
+			skippedCalls[ATTRIBUTE]++;
+			return;
+		}
+		GL20.glDisableVertexAttribArray(index);//disable the attribute array
+		state.enabledAttributes[index] = false;
+		issuedCalls[ATTRIBUTE]++;
+	}
+
+	/**Sets how often a vertex attribute advances during instanced rendering. This needs OpenGL 3.3.
+	 * @param index The index of the vertex attribute.
+	 * @param divisor The number of instances drawn before the attribute advances, or 0 to advance once per vertex.*/
+	public void vertexAttribDivisor(int index, int divisor)
+	{
+		VertexArrayState state = vertexArrayState;
+		if(state.attributeDivisors[index] == divisor){//if the attribute already advances at this rate
+			skippedCalls[ATTRIBUTE]++;
+			return;
+		}
+		GL33.glVertexAttribDivisor(index, divisor);//set the attribute's divisor
+		state.attributeDivisors[index] = divisor;
+		issuedCalls[ATTRIBUTE]++;
+	}
+
+	/**Points a vertex attribute at the bound array buffer.
+	 * @param index The index of the vertex attribute.
+	 * @param size The number of float components in the attribute.
+	 * @param stride The number of bytes between consecutive vertices.
+	 * @param offset The offset of the attribute's first component in the buffer. (in bytes)*/
+	public void vertexAttribPointer(int index, int size, int stride, long offset)
+	{
+		VertexArrayState state = vertexArrayState;
+		int layout = index * 3;
+		if((state.attributeBuffers[index] == arrayBuffer) && (state.attributeLayouts[layout] == size) && (state.attributeLayouts[layout + 1] == stride) && (state.attributeLayouts[layout + 2] == offset)){//if the attribute already points here
+			skippedCalls[ATTRIBUTE]++;
+			return;
+		}
+		GL20.glVertexAttribPointer(index, size, GL11.GL_FLOAT, false, stride, offset);//point the attribute at the buffer
+		state.attributeBuffers[index] = arrayBuffer;
+		state.attributeLayouts[layout] = size;
+		state.attributeLayouts[layout + 1] = stride;
+		state.attributeLayouts[layout + 2] = offset;
+		issuedCalls[ATTRIBUTE]++;
+	}
+
+	/**Renders triangles from the bound element array buffer.
+	 * @param indexCount The number of indexes to render.
+	 * @param offset The offset of the first index in the element array buffer. (in bytes)*/
+	public void drawElements(int indexCount, long offset)
+	{
+		GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, GL11.GL_UNSIGNED_INT, offset);//render the triangles
+		issuedCalls[DRAW]++;
+		drawnIndexes += indexCount;
+	}
+
+	/**Renders triangles from the bound element array buffer, adding a base vertex to every index. This needs OpenGL 3.2.
+	 * @param indexCount The number of indexes to render.
+	 * @param offset The offset of the first index in the element array buffer. (in bytes)
+	 * @param baseVertex The number to add to every index before the vertex it refers to is read.*/
+	public void drawElementsBaseVertex(int indexCount, long offset, int baseVertex)
+	{
+		GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, indexCount, GL11.GL_UNSIGNED_INT, offset, baseVertex);//render the triangles
+		issuedCalls[DRAW]++;
+		drawnIndexes += indexCount;
+	}
+
+	/**Renders several instances of the triangles in the bound element array buffer with a single draw call,
+	 * adding a base vertex to every index. This needs OpenGL 3.2.
+	 * @param indexCount The number of indexes to render for each instance.
+	 * @param offset The offset of the first index in the element array buffer. (in bytes)
+	 * @param instanceCount The number of instances to render.
+	 * @param baseVertex The number to add to every index before the vertex it refers to is read.*/
+	public void drawElementsInstancedBaseVertex(int indexCount, long offset, int instanceCount, int baseVertex)
+	{
+		GL32.glDrawElementsInstancedBaseVertex(GL11.GL_TRIANGLES, indexCount, GL11.GL_UNSIGNED_INT, offset, instanceCount, baseVertex);//render the instances
+		issuedCalls[DRAW]++;
+		drawnIndexes += (long)indexCount * instanceCount;
+	}
+
+	/**Renders several ranges of the bound element array buffer with a single draw call, each with its own base vertex. This needs OpenGL 3.2.
+	 * @param indexCounts Buffer containing the number of indexes to render for each range, ready for reading.
+	 * @param offsets Buffer containing the offset of each range's first index in the element array buffer, ready for reading. (in bytes)
+	 * @param baseVertices Buffer containing the number to add to every index of each range, ready for reading.*/
+	public void multiDrawElementsBaseVertex(IntBuffer indexCounts, PointerBuffer offsets, IntBuffer baseVertices)
+	{
+		GL32.glMultiDrawElementsBaseVertex(GL11.GL_TRIANGLES, indexCounts, GL11.GL_UNSIGNED_INT, offsets, baseVertices);//render every range
+		issuedCalls[DRAW]++;
+		for(int i = indexCounts.position(); i < indexCounts.limit(); i++){
+			drawnIndexes += indexCounts.get(i);
+		}
+	}
+
+	/**Ends the current frame, storing its statistics and resetting the counters for the next frame.*/
+	public void endFrame()
+	{
+		System.arraycopy(issuedCalls, 0, lastIssuedCalls, 0, CATEGORIES);
+		System.arraycopy(skippedCalls, 0, lastSkippedCalls, 0, CATEGORIES);
+		Arrays.fill(issuedCalls, 0);
+		Arrays.fill(skippedCalls, 0);
+		lastDrawnIndexes = drawnIndexes;
+		drawnIndexes = 0;
+	}
+
+	/**Returns the number of calls issued in a category during the last frame.
+	 * @param category The statistic category, such as {@link #TEXTURE}.
+	 * @return The number of GL calls that were issued.*/
+	public int getIssuedCalls(int category)
+	{
+		return lastIssuedCalls[category];
+	}
+
+	/**Returns the number of calls skipped in a category during the last frame.
+	 * @param category The statistic category, such as {@link #TEXTURE}.
+	 * @return The number of GL calls that were skipped because they wouldn't have changed anything.*/
+	public int getSkippedCalls(int category)
+	{
+		return lastSkippedCalls[category];
+	}
+
+	/**Returns the number of indexes drawn during the last frame. Sprites are drawn as two triangles, so this is six times the number of sprites drawn.
+	 * @return The number of indexes drawn.*/
+	public long getDrawnIndexes()
+	{
+		return lastDrawnIndexes;
+	}
+
+	/**Returns the total number of calls issued during the last frame.
+	 * @return The number of GL calls that were issued.*/
+	public int getIssuedCalls()
+	{
+		int total = 0;
+		for(int count : lastIssuedCalls){
+			total += count;
+		}
+		return total;
+	}
+
+	/**Returns the total number of calls skipped during the last frame.
+	 * @return The number of GL calls that were skipped.*/
+	public int getSkippedCalls()
+	{
+		int total = 0;
+		for(int count : lastSkippedCalls){
+			total += count;
+		}
+		return total;
+	}
+
+	/**Returns the cached state of a shader program, creating it if this is the first time the program's been seen.
+	 * @param handle The handle ID of the program.
+	 * @return The program's cached state.*/
+	private ProgramState getProgramState(int handle)
+	{
+		if((programState != null) && (program == handle)){//if it's the bound program
+			return programState;
+		}
+		ProgramState state = programs.get(handle);
+		if(state == null){//if the program hasn't been seen before
+			state = new ProgramState();
+			programs.put(handle, state);
+		}
+		return state;
+	}
+
+	/**Returns the cached state of a vertex array, creating it if this is the first time the vertex array's been seen.
+	 * @param handle The handle ID of the vertex array.
+	 * @return The vertex array's cached state.*/
+	private VertexArrayState getVertexArrayState(int handle)
+	{
+		VertexArrayState state = vertexArrays.get(handle);
+		if(state == null){//if the vertex array hasn't been seen before
+			state = new VertexArrayState();
+			vertexArrays.put(handle, state);
+		}
+		return state;
+	}
+
+	/**The element array buffer and vertex attribute state captured by a single vertex array.*/
+	private static class VertexArrayState
+	{
+		/**The handle ID of the bound element array buffer, or -1 if unknown.*/
+		private int elementBuffer = -1;
+		/**Flags for which vertex attribute arrays are enabled.*/
+		private final boolean[] enabledAttributes = new boolean[ATTRIBUTES];
+		/**The array buffer each vertex attribute was last pointed at, or -1 if unknown.*/
+		private final int[] attributeBuffers = new int[ATTRIBUTES];
+		/**The component count, stride and offset each vertex attribute was last pointed at, packed as {size, stride, offset}.*/
+		private final long[] attributeLayouts = new long[ATTRIBUTES * 3];
+		/**The instance divisor of each vertex attribute, or -1 if unknown.*/
+		private final int[] attributeDivisors = new int[ATTRIBUTES];
+
+		/**Creates the state of a vertex array whose state is entirely unknown.*/
+		private VertexArrayState()
+		{
+			Arrays.fill(attributeBuffers, -1);
+			Arrays.fill(attributeDivisors, -1);
+		}
+	}
+
+	/**The uniform locations and last uploaded uniform values of a single shader program.*/
+	private static class ProgramState
+	{
+		/**Value type for uniforms holding an integer.*/
+		private static final byte INT = 1;
+		/**Value type for uniforms holding a 4x4 matrix.*/
+		private static final byte MATRIX = 2;
+		/**Value type for uniforms holding a three component vector.*/
+		private static final byte VEC3 = 3;
+		/**Value type for uniforms holding a float.*/
+		private static final byte FLOAT = 4;
+		/**Value type for uniforms holding a four component vector.*/
+		private static final byte VEC4 = 5;
+
+		/**Map containing the names and locations of every uniform queried so far.*/
+		private final HashMap<String, Integer> locations = new HashMap<String, Integer>();
+		/**The type of value last uploaded to each uniform location, or 0 if unknown.*/
+		private byte[] valueTypes = new byte[8];
+		/**The last integer uploaded to each uniform location.*/
+		private int[] intValues = new int[8];
+		/**The last matrix or vector uploaded to each uniform location, 16 floats per location.*/
+		private float[] floatValues = new float[8 * 16];
+
+		/**Grows the value arrays so they can hold the specified location.
+		 * @param location The uniform location that needs to fit.*/
+		private void ensureCapacity(int location)
+		{
+			if(location >= valueTypes.length){
+				int length = Math.max(location + 1, valueTypes.length * 2);
+				valueTypes = Arrays.copyOf(valueTypes, length);
+				intValues = Arrays.copyOf(intValues, length);
+				floatValues = Arrays.copyOf(floatValues, length * 16);
+			}
+		}
+	}
+}
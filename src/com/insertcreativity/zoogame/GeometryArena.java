@@ -0,0 +1,481 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+/**Packs the static geometry of many models into one interleaved vertex buffer and one index buffer, which share a single vertex array.
+ * Each model is given a range of vertices and a range of indexes, and its indexes stay relative to its own first vertex,
+ * which is passed to GL as a base vertex when drawing. Because every model shares the same buffers and vertex layout,
+ * switching between models never rebinds anything, and ranges drawn with the same shader state can be queued up and drawn with one multi-draw call.
+ * Freed ranges are reused first-fit, and both buffers grow when there's no room left. This needs OpenGL 3.2.*/
+public class GeometryArena
+{
+	/**The number of floats stored for each vertex: {x, y, u, v}.*/
+	public static final int FLOATS_PER_VERTEX = 4;
+	/**The number of bytes between the start of consecutive vertices.*/
+	private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+
+	/**Handle ID for the vertex array capturing the arena's layout.*/
+	private final int vertexArrayHandle;
+	/**Handle ID for the interleaved vertex buffer.*/
+	private int vertexBufferHandle;
+	/**Handle ID for the index buffer.*/
+	private int indexBufferHandle;
+	/**Allocator for the ranges of the vertex buffer.*/
+	private final RangeAllocator vertices;
+	/**Allocator for the ranges of the index buffer.*/
+	private final RangeAllocator indexes;
+	/**Reusable client side buffer that vertices are copied into before being uploaded.*/
+	private FloatBuffer vertexStaging;
+	/**Reusable client side buffer that indexes are copied into before being uploaded.*/
+	private IntBuffer indexStaging;
+	/**The index count of each queued draw.*/
+	private IntBuffer drawCounts;
+	/**The byte offset of each queued draw's first index.*/
+	private PointerBuffer drawOffsets;
+	/**The base vertex of each queued draw.*/
+	private IntBuffer drawBaseVertices;
+	/**The number of times either buffer has been grown.*/
+	private int growCount;
+
+	/**Creates a new, empty geometry arena, which must be done on the thread with the GL context.
+	 * @param vertexCapacity The number of vertices to make room for initially.
+	 * @param indexCapacity The number of indexes to make room for initially.
+	 * @throws IllegalArgumentException If either capacity isn't positive.*/
+	public GeometryArena(int vertexCapacity, int indexCapacity) throws IllegalArgumentException
+	{
+		if((vertexCapacity <= 0) || (indexCapacity <= 0)){//if either capacity is out of range
+			throw new IllegalArgumentException("Invalid geometry arena capacity: " + vertexCapacity + " vertices, " + indexCapacity + " indexes");
+		}
+		vertices = new RangeAllocator(vertexCapacity);
+		indexes = new RangeAllocator(indexCapacity);
+		vertexStaging = BufferUtils.createFloatBuffer(1024 * FLOATS_PER_VERTEX);
+		indexStaging = BufferUtils.createIntBuffer(1024);
+		drawCounts = BufferUtils.createIntBuffer(64);
+		drawOffsets = BufferUtils.createPointerBuffer(64);
+		drawBaseVertices = BufferUtils.createIntBuffer(64);
+
+		GLState glState = Renderer.getGLState();//get the GL state cache that all binds must go through
+		vertexArrayHandle = GL30.glGenVertexArrays();//generate a handle for the vertex array
+		glState.bindVertexArray(vertexArrayHandle);//bind the vertex array, so the layout below is captured by it
+		vertexBufferHandle = createBuffer(GL15.GL_ARRAY_BUFFER, (long)vertexCapacity * VERTEX_STRIDE);
+		indexBufferHandle = createBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, (long)indexCapacity * 4);
+		glState.enableVertexAttribArray(0);//enable the attribute for the vertex coordinates
+		glState.enableVertexAttribArray(1);//enable the attribute for the texture coordinates
+		pointAttributes();
+	}
+
+	/**Interleaves a model's vertex and texture coordinates into the arena's vertex layout. This doesn't need a GL context, so it can be done on any thread.
+	 * @param vertexArray Array of all the vertex coordinates for the model formatted as {x1, y1, x2, y2, ...}.
+	 * @param textureArray Array of all the texture coordinates for the model formatted as {x1, y1, x2, y2, ...}.
+	 * @return Buffer containing the interleaved vertices formatted as {x1, y1, u1, v1, x2, ...}, ready for reading.
+	 * @throws IllegalArgumentException If the arrays don't hold the same number of vertices.*/
+	public static FloatBuffer interleave(float[] vertexArray, float[] textureArray) throws IllegalArgumentException
+	{
+		if(vertexArray.length != textureArray.length){//if the arrays don't line up
+			throw new IllegalArgumentException("Vertex and texture coordinate counts differ: " + vertexArray.length + " != " + textureArray.length);
+		}
+		float[] interleaved = new float[vertexArray.length * 2];
+		for(int i = 0; i + 1 < vertexArray.length; i += 2){
+			interleaved[i * 2] = vertexArray[i];
+			interleaved[i * 2 + 1] = vertexArray[i + 1];
+			interleaved[i * 2 + 2] = textureArray[i];
+			interleaved[i * 2 + 3] = textureArray[i + 1];
+		}
+		return FloatBuffer.wrap(interleaved);//the arena copies it into its own direct buffer, so there's no need for a direct buffer here
+	}
+
+	/**Stores a model's geometry in the arena.
+	 * @param vertexData Buffer containing the model's interleaved vertices, as made by {@link #interleave(float[], float[])}, ready for reading.
+	 * @param indexData Buffer containing the model's indexes, relative to its first vertex, ready for reading.
+	 * @return The ranges the geometry was stored in.*/
+	public Allocation allocate(FloatBuffer vertexData, IntBuffer indexData)
+	{
+		int vertexCount = vertexData.remaining() / FLOATS_PER_VERTEX;
+		int indexCount = indexData.remaining();
+		int baseVertex = vertices.allocate(vertexCount);
+		if(baseVertex == -1){//if there's no room for the vertices
+			growVertices(vertexCount);
+			baseVertex = vertices.allocate(vertexCount);
+		}
+		int firstIndex = indexes.allocate(indexCount);
+		if(firstIndex == -1){//if there's no room for the indexes
+			growIndexes(indexCount);
+			firstIndex = indexes.allocate(indexCount);
+		}
+
+		GLState glState = Renderer.getGLState();
+		if(vertexStaging.capacity() < vertexData.remaining()){//if the staging buffer is too small
+			vertexStaging = BufferUtils.createFloatBuffer(Math.max(vertexData.remaining(), vertexStaging.capacity() * 2));
+		}
+		vertexStaging.clear();
+		vertexStaging.put(vertexData.duplicate()).flip();//copy the vertices into a direct buffer GL can read from
+		glState.bindBuffer(GL15.GL_ARRAY_BUFFER, vertexBufferHandle);
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, (long)baseVertex * VERTEX_STRIDE, vertexStaging);//upload the vertices into their range
+
+		if(indexStaging.capacity() < indexCount){//if the staging buffer is too small
+			indexStaging = BufferUtils.createIntBuffer(Math.max(indexCount, indexStaging.capacity() * 2));
+		}
+		indexStaging.clear();
+		indexStaging.put(indexData.duplicate()).flip();//copy the indexes into a direct buffer GL can read from
+		glState.bindVertexArray(vertexArrayHandle);//the element array buffer binding belongs to the vertex array
+		glState.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);
+		GL15.glBufferSubData(GL15.GL_ELEMENT_ARRAY_BUFFER, (long)firstIndex * 4, indexStaging);//upload the indexes into their range
+
+		return new Allocation(baseVertex, vertexCount, firstIndex, indexCount);
+	}
+
+	/**Frees the ranges a model's geometry was stored in, so they can be reused by other models.
+	 * @param allocation The ranges to free, which must not be drawn again.*/
+	public void free(Allocation allocation)
+	{
+		vertices.free(allocation.baseVertex, allocation.vertexCount);
+		indexes.free(allocation.firstIndex, allocation.indexCount);
+	}
+
+	/**Binds the arena's vertex array, which has the arena's buffers and vertex layout already set up.*/
+	public void bind()
+	{
+		Renderer.getGLState().bindVertexArray(vertexArrayHandle);
+	}
+
+	/**Draws a single range of the arena with the bound shader.
+	 * @param allocation The range to draw.*/
+	public void draw(Allocation allocation)
+	{
+		bind();
+		Renderer.getGLState().drawElementsBaseVertex(allocation.indexCount, (long)allocation.firstIndex * 4, allocation.baseVertex);
+	}
+
+	/**Draws several instances of a single range of the arena with the bound shader. The instance attributes must already be set up in the arena's vertex array.
+	 * @param allocation The range to draw.
+	 * @param instanceCount The number of instances to draw.*/
+	public void drawInstanced(Allocation allocation, int instanceCount)
+	{
+		bind();
+		Renderer.getGLState().drawElementsInstancedBaseVertex(allocation.indexCount, (long)allocation.firstIndex * 4, instanceCount, allocation.baseVertex);
+	}
+
+	/**Queues a range of the arena to be drawn by the next {@link #flushDraws()}. Every queued range is drawn with the same shader and uniforms,
+	 * so this is for geometry that's already in the same coordinates, such as the pieces of a static scene.
+	 * @param allocation The range to queue.*/
+	public void queueDraw(Allocation allocation)
+	{
+		if(!drawCounts.hasRemaining()){//if the draw queue is full
+			int capacity = drawCounts.capacity() * 2;
+			drawCounts.flip();
+			drawOffsets.flip();
+			drawBaseVertices.flip();
+			drawCounts = BufferUtils.createIntBuffer(capacity).put(drawCounts);
+			drawOffsets = BufferUtils.createPointerBuffer(capacity).put(drawOffsets);
+			drawBaseVertices = BufferUtils.createIntBuffer(capacity).put(drawBaseVertices);
+		}
+		drawCounts.put(allocation.indexCount);
+		drawOffsets.put((long)allocation.firstIndex * 4);
+		drawBaseVertices.put(allocation.baseVertex);
+	}
+
+	/**Draws every queued range with a single multi-draw call using the bound shader, and empties the queue.*/
+	public void flushDraws()
+	{
+		if(drawCounts.position() == 0){//if nothing's queued
+			return;
+		}
+		drawCounts.flip();
+		drawOffsets.flip();
+		drawBaseVertices.flip();
+		bind();
+		Renderer.getGLState().multiDrawElementsBaseVertex(drawCounts, drawOffsets, drawBaseVertices);//draw every queued range
+		drawCounts.clear();
+		drawOffsets.clear();
+		drawBaseVertices.clear();
+	}
+
+	/**Returns how full the vertex buffer is.
+	 * @return The fraction of the vertex buffer's capacity that's allocated, from 0 to 1.*/
+	public float getVertexUsage()
+	{
+		return (float)vertices.getUsed() / vertices.getCapacity();
+	}
+
+	/**Returns how full the index buffer is.
+	 * @return The fraction of the index buffer's capacity that's allocated, from 0 to 1.*/
+	public float getIndexUsage()
+	{
+		return (float)indexes.getUsed() / indexes.getCapacity();
+	}
+
+	/**Returns how fragmented the free space in the vertex buffer is.
+	 * @return 0 if all the free vertices are in one range, approaching 1 as they get split into more, smaller ranges.*/
+	public float getVertexFragmentation()
+	{
+		return vertices.getFragmentation();
+	}
+
+	/**Returns how fragmented the free space in the index buffer is.
+	 * @return 0 if all the free indexes are in one range, approaching 1 as they get split into more, smaller ranges.*/
+	public float getIndexFragmentation()
+	{
+		return indexes.getFragmentation();
+	}
+
+	/**Returns a summary of how full and fragmented the arena's buffers are.
+	 * @return Description of the arena's buffers.*/
+	public String getReport()
+	{
+		return String.format("geometry arena: %d/%d vertices (%.1f%%, %.1f%% fragmented), %d/%d indexes (%.1f%%, %.1f%% fragmented), grown %d times%n",
+		                     vertices.getUsed(), vertices.getCapacity(), getVertexUsage() * 100, getVertexFragmentation() * 100,
+		                     indexes.getUsed(), indexes.getCapacity(), getIndexUsage() * 100, getIndexFragmentation() * 100, growCount);
+	}
+
+	/**Deletes the arena's GPU buffers and vertex array. Nothing in the arena can be drawn afterwards.*/
+	public void delete()
+	{
+		GLState glState = Renderer.getGLState();
+		GL30.glDeleteVertexArrays(vertexArrayHandle);
+		GL15.glDeleteBuffers(vertexBufferHandle);
+		GL15.glDeleteBuffers(indexBufferHandle);
+		glState.forgetVertexArray(vertexArrayHandle);
+		glState.forgetBuffer(vertexBufferHandle);
+		glState.forgetBuffer(indexBufferHandle);
+	}
+
+	/**Creates a buffer with room for the specified number of bytes. The vertex array must be bound if it's an element array buffer.
+	 * @param target Either GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+	 * @param size The size of the buffer. (in bytes)
+	 * @return The handle ID of the new buffer, which is left bound.*/
+	private static int createBuffer(int target, long size)
+	{
+		int handle = GL15.glGenBuffers();
+		Renderer.getGLState().bindBuffer(target, handle);
+		GL15.glBufferData(target, size, GL15.GL_STATIC_DRAW);//allocate the buffer without filling it
+		return handle;
+	}
+
+	/**Points the vertex and texture coordinate attributes at the interleaved vertex buffer. The vertex array must be bound.*/
+	private void pointAttributes()
+	{
+		GLState glState = Renderer.getGLState();
+		glState.bindBuffer(GL15.GL_ARRAY_BUFFER, vertexBufferHandle);
+		glState.vertexAttribPointer(0, 2, VERTEX_STRIDE, 0);//set the vertex coordinates
+		glState.vertexAttribPointer(1, 2, VERTEX_STRIDE, 8);//set the texture coordinates
+	}
+
+	/**Grows the vertex buffer so there's room for the specified number of vertices, copying the existing vertices across on the GPU.
+	 * @param needed The number of vertices that have to fit.*/
+	private void growVertices(int needed)
+	{
+		int oldCapacity = vertices.getCapacity();
+		int newCapacity = Math.max(oldCapacity * 2, vertices.getEnd() + needed);
+		int oldHandle = vertexBufferHandle;
+		bind();
+		vertexBufferHandle = createBuffer(GL15.GL_ARRAY_BUFFER, (long)newCapacity * VERTEX_STRIDE);
+		copyBuffer(oldHandle, vertexBufferHandle, (long)oldCapacity * VERTEX_STRIDE);
+		GL15.glDeleteBuffers(oldHandle);
+		Renderer.getGLState().forgetBuffer(oldHandle);
+		pointAttributes();//the vertex array still points at the old buffer
+		vertices.grow(newCapacity);
+		growCount++;
+	}
+
+	/**Grows the index buffer so there's room for the specified number of indexes, copying the existing indexes across on the GPU.
+	 * @param needed The number of indexes that have to fit.*/
+	private void growIndexes(int needed)
+	{
+		int oldCapacity = indexes.getCapacity();
+		int newCapacity = Math.max(oldCapacity * 2, indexes.getEnd() + needed);
+		int oldHandle = indexBufferHandle;
+		bind();//the new element array buffer has to be bound to the arena's vertex array
+		indexBufferHandle = createBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, (long)newCapacity * 4);
+		copyBuffer(oldHandle, indexBufferHandle, (long)oldCapacity * 4);
+		GL15.glDeleteBuffers(oldHandle);
+		Renderer.getGLState().forgetBuffer(oldHandle);
+		indexes.grow(newCapacity);
+		growCount++;
+	}
+
+	/**Copies the start of one buffer into another on the GPU. The copy targets aren't tracked by the GL state cache, so using them doesn't disturb it.
+	 * @param source The handle ID of the buffer to copy from.
+	 * @param destination The handle ID of the buffer to copy to.
+	 * @param size The number of bytes to copy.*/
+	private static void copyBuffer(int source, int destination, long size)
+	{
+		GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, source);
+		GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, destination);
+		GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, size);
+		GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+		GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+	}
+
+	/**The ranges of an arena that a single model's geometry is stored in.*/
+	public static class Allocation
+	{
+		/**The index of the model's first vertex, which is added to each of its indexes when drawing.*/
+		public final int baseVertex;
+		/**The number of vertices the model has.*/
+		public final int vertexCount;
+		/**The index of the model's first index in the index buffer.*/
+		public final int firstIndex;
+		/**The number of indexes the model has.*/
+		public final int indexCount;
+
+		/**Creates a new allocation.
+		 * @param base The index of the first vertex.
+		 * @param vertexTotal The number of vertices.
+		 * @param first The index of the first index.
+		 * @param indexTotal The number of indexes.*/
+		private Allocation(int base, int vertexTotal, int first, int indexTotal)
+		{
+			baseVertex = base;
+			vertexCount = vertexTotal;
+			firstIndex = first;
+			indexCount = indexTotal;
+		}
+	}
+
+	/**Hands out ranges of a buffer, reusing freed ranges first-fit and otherwise allocating past the end of everything allocated so far.
+	 * Free ranges are kept sorted by start, and neighbouring free ranges are merged as they're freed.*/
+	private static class RangeAllocator
+	{
+		/**The number of elements the buffer can hold.*/
+		private int capacity;
+		/**The end of the highest allocated range. Everything past this is free but isn't in the free list.*/
+		private int end;
+		/**The number of elements currently allocated.*/
+		private int used;
+		/**The start of each free range below the end, in increasing order.*/
+		private int[] freeStarts = new int[16];
+		/**The length of each free range below the end.*/
+		private int[] freeLengths = new int[16];
+		/**The number of free ranges below the end.*/
+		private int freeCount;
+
+		/**Creates a new allocator where everything is free.
+		 * @param size The number of elements the buffer can hold.*/
+		private RangeAllocator(int size)
+		{
+			capacity = size;
+		}
+
+		/**Allocates a range.
+		 * @param length The number of elements to allocate.
+		 * @return The start of the allocated range, or -1 if there's no room for it.*/
+		private int allocate(int length)
+		{
+			for(int i = 0; i < freeCount; i++){//look for the first freed range that's big enough
+				if(freeLengths[i] >= length){
+					int start = freeStarts[i];
+					if(freeLengths[i] == length){//if the range is used up, remove it from the list
+						System.arraycopy(freeStarts, i + 1, freeStarts, i, freeCount - i - 1);
+						System.arraycopy(freeLengths, i + 1, freeLengths, i, freeCount - i - 1);
+						freeCount--;
+					} else{
+						freeStarts[i] += length;
+						freeLengths[i] -= length;
+					}
+					used += length;
+					return start;
+				}
+			}
+			if(end + length > capacity){//if there's no room past the end either
+				return -1;
+			}
+			int start = end;
+			end += length;
+			used += length;
+			return start;
+		}
+
+		/**Frees a range, merging it with any free ranges it touches.
+		 * @param start The start of the range.
+		 * @param length The number of elements in the range.*/
+		private void free(int start, int length)
+		{
+			used -= length;
+			int i = 0;
+			while((i < freeCount) && (freeStarts[i] < start)){//find where the range goes in the sorted list
+				i++;
+			}
+			boolean mergesBefore = (i > 0) && (freeStarts[i - 1] + freeLengths[i - 1] == start);
+			boolean mergesAfter = (i < freeCount) && (start + length == freeStarts[i]);
+			if(mergesBefore && mergesAfter){//if the range fills the gap between two free ranges
+				freeLengths[i - 1] += length + freeLengths[i];
+				System.arraycopy(freeStarts, i + 1, freeStarts, i, freeCount - i - 1);
+				System.arraycopy(freeLengths, i + 1, freeLengths, i, freeCount - i - 1);
+				freeCount--;
+				i--;
+			} else
+			if(mergesBefore){
+				freeLengths[i - 1] += length;
+				i--;
+			} else
+			if(mergesAfter){
+				freeStarts[i] = start;
+				freeLengths[i] += length;
+			} else{
+				if(freeCount == freeStarts.length){//if the free list is full
+					freeStarts = Arrays.copyOf(freeStarts, freeCount * 2);
+					freeLengths = Arrays.copyOf(freeLengths, freeCount * 2);
+				}
+				System.arraycopy(freeStarts, i, freeStarts, i + 1, freeCount - i);
+				System.arraycopy(freeLengths, i, freeLengths, i + 1, freeCount - i);
+				freeStarts[i] = start;
+				freeLengths[i] = length;
+				freeCount++;
+			}
+			if(freeStarts[i] + freeLengths[i] == end){//if the free range reaches the end, give it back to the space past the end
+				end = freeStarts[i];
+				freeCount--;
+			}
+		}
+
+		/**Makes room for more elements past the end.
+		 * @param size The new number of elements the buffer can hold.*/
+		private void grow(int size)
+		{
+			capacity = size;
+		}
+
+		/**Returns how fragmented the free space is.
+		 * @return 1 minus the fraction of the free space that's in the largest free range.*/
+		private float getFragmentation()
+		{
+			int free = capacity - used;
+			if(free == 0){
+				return 0;
+			}
+			int largest = capacity - end;
+			for(int i = 0; i < freeCount; i++){
+				largest = Math.max(largest, freeLengths[i]);
+			}
+			return 1 - ((float)largest / free);
+		}
+
+		/**Returns the number of elements the buffer can hold.
+		 * @return The buffer's capacity.*/
+		private int getCapacity()
+		{
+			return capacity;
+		}
+
+		/**Returns the end of the highest allocated range.
+		 * @return The number of elements below the free space at the end.*/
+		private int getEnd()
+		{
+			return end;
+		}
+
+		/**Returns the number of elements currently allocated.
+		 * @return The number of allocated elements.*/
+		private int getUsed()
+		{
+			return used;
+		}
+	}
+}
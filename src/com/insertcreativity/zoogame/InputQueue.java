@@ -0,0 +1,259 @@
+package com.insertcreativity.zoogame;
+
+/**Lock-free queue of timestamped input events, passed from the thread that polls GLFW to the thread that updates the game.
+ * Events are stored in a ring of preallocated primitive arrays, so neither pushing nor dispatching allocates anything.
+ * There must only ever be one thread pushing events and one thread dispatching them.
+ * <p>Cursor and scroll events can arrive hundreds of times a frame, so back to back events of either kind are merged into a single event
+ * before being published: cursor moves keep only the latest position, and scrolls add up. Merged events are published by {@link #commit()}
+ * or as soon as an event of a different kind arrives, so events are always dispatched in the order they happened.</p>*/
+public class InputQueue
+{
+	/**Event type for a key being pressed or released.*/
+	public static final int KEY = 0;
+	/**Event type for a mouse button being pressed or released.*/
+	public static final int BUTTON = 1;
+	/**Event type for the scroll wheel being scrolled.*/
+	public static final int SCROLL = 2;
+	/**Event type for the cursor being moved.*/
+	public static final int CURSOR = 3;
+	/**Marker for there being no merged event waiting to be published.*/
+	private static final int NONE = -1;
+
+	/**Mask for turning a sequence number into an index into the ring.*/
+	private final int mask;
+	/**The type of each event.*/
+	private final int[] types;
+	/**The GLFW key-code or button-code of each event.*/
+	private final int[] codes;
+	/**The system key-code of each event.*/
+	private final int[] scancodes;
+	/**The GLFW action of each event.*/
+	private final int[] actions;
+	/**The modifier key flags of each event.*/
+	private final int[] modifiers;
+	/**The x coordinate or scroll amount of each event.*/
+	private final double[] valuesX;
+	/**The y coordinate or scroll amount of each event.*/
+	private final double[] valuesY;
+	/**The time each event happened at. (in nanoseconds)*/
+	private final long[] times;
+
+	/**The sequence number of the next event to dispatch, which is only written by the dispatching thread.*/
+	private volatile long head;
+	/**The sequence number of the next event to push, which is only written by the pushing thread. Writing it publishes every event before it.*/
+	private volatile long tail;
+
+	/**The type of the merged event waiting to be published, or {@link #NONE}.*/
+	private int stagedType;
+	/**The x coordinate or total scroll amount of the merged event.*/
+	private double stagedX;
+	/**The y coordinate or total scroll amount of the merged event.*/
+	private double stagedY;
+	/**The time of the latest event merged into the merged event. (in nanoseconds)*/
+	private long stagedTime;
+	/**The number of events that were merged into earlier events.*/
+	private long mergedCount;
+	/**The number of events that were dropped because the queue was full.*/
+	private long droppedCount;
+
+	/**Creates a new, empty input queue.
+	 * @param capacity The most events the queue can hold, which is rounded up to a power of two.*/
+	public InputQueue(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;//round up to a power of two, so indexes can be masked instead of divided
+		mask = size - 1;
+		types = new int[size];
+		codes = new int[size];
+		scancodes = new int[size];
+		actions = new int[size];
+		modifiers = new int[size];
+		valuesX = new double[size];
+		valuesY = new double[size];
+		times = new long[size];
+		stagedType = NONE;
+	}
+
+	/**Pushes a key event onto the queue. This must only be called from the pushing thread.
+	 * @param key The GLFW key-code of the key.
+	 * @param scancode The system's key-code of the key.
+	 * @param action The GLFW action that was performed on the key.
+	 * @param mods Bit flags indicating which modifier keys were being pressed.
+	 * @param time The time the event happened at. (in nanoseconds)*/
+	public void pushKey(int key, int scancode, int action, int mods, long time)
+	{
+		commit();//publish any merged event first, so the events stay in order
+		publish(KEY, key, scancode, action, mods, 0, 0, time);
+	}
+
+	/**Pushes a mouse button event onto the queue. This must only be called from the pushing thread.
+	 * @param button The GLFW button-code of the button.
+	 * @param action The GLFW action that was performed on the button.
+	 * @param mods Bit flags indicating which modifier keys were being pressed.
+	 * @param time The time the event happened at. (in nanoseconds)*/
+	public void pushButton(int button, int action, int mods, long time)
+	{
+		commit();//publish any merged event first, so the events stay in order
+		publish(BUTTON, button, 0, action, mods, 0, 0, time);
+	}
+
+	/**Pushes a scroll event onto the queue, adding it to the previous event if that was a scroll too. This must only be called from the pushing thread.
+	 * @param x The amount the scroll wheel was moved in the x direction.
+	 * @param y The amount the scroll wheel was moved in the y direction.
+	 * @param time The time the event happened at. (in nanoseconds)*/
+	public void pushScroll(double x, double y, long time)
+	{
+		if(stagedType == SCROLL){//if the last event was a scroll too
+			stagedX += x;
+			stagedY += y;
+			mergedCount++;
+		} else{
+			commit();
+			stagedType = SCROLL;
+			stagedX = x;
+			stagedY = y;
+		}
+		stagedTime = time;
+	}
+
+	/**Pushes a cursor event onto the queue, replacing the previous event if that was a cursor move too. This must only be called from the pushing thread.
+	 * @param x The x coordinate of the cursor's new position.
+	 * @param y The y coordinate of the cursor's new position.
+	 * @param time The time the event happened at. (in nanoseconds)*/
+	public void pushCursor(double x, double y, long time)
+	{
+		if(stagedType == CURSOR){//if the last event was a cursor move too
+			mergedCount++;
+		} else{
+			commit();
+			stagedType = CURSOR;
+		}
+		stagedX = x;
+		stagedY = y;
+		stagedTime = time;
+	}
+
+	/**Publishes the merged cursor or scroll event, if there is one. This should be called from the pushing thread after every batch of events is pushed.*/
+	public void commit()
+	{
+		if(stagedType != NONE){//if there's a merged event waiting
+			publish(stagedType, 0, 0, 0, 0, stagedX, stagedY, stagedTime);
+			stagedType = NONE;
+		}
+	}
+
+	/**Stores an event in the ring and makes it visible to the dispatching thread.
+	 * @param type The type of the event.
+	 * @param code The key-code or button-code of the event.
+	 * @param scancode The system key-code of the event.
+	 * @param action The GLFW action of the event.
+	 * @param mods The modifier key flags of the event.
+	 * @param x The x coordinate or scroll amount of the event.
+	 * @param y The y coordinate or scroll amount of the event.
+	 * @param time The time the event happened at. (in nanoseconds)*/
+	private void publish(int type, int code, int scancode, int action, int mods, double x, double y, long time)
+	{
+		long sequence = tail;
+		if(sequence - head > mask){//if the ring is full
+			droppedCount++;
+			return;
+		}
+		int index = (int)sequence & mask;
+		types[index] = type;
+		codes[index] = code;
+		scancodes[index] = scancode;
+		actions[index] = action;
+		modifiers[index] = mods;
+		valuesX[index] = x;
+		valuesY[index] = y;
+		times[index] = time;
+		tail = sequence + 1;//publish the event, the volatile write makes the slot's contents visible before the new tail
+	}
+
+	/**Dispatches every published event that happened no later than the specified time, in the order they happened.
+	 * Later events are left on the queue for the next dispatch. This must only be called from the dispatching thread.
+	 * @param until The latest time to dispatch events from. (in nanoseconds)
+	 * @param listener The listener to dispatch the events to.
+	 * @return The number of events that were dispatched.*/
+	public int dispatch(long until, InputListener listener)
+	{
+		long sequence = head;
+		long end = tail;//only events published before this point are guaranteed to be fully written
+		int count = 0;
+		while(sequence < end){
+			int index = (int)sequence & mask;
+			if(times[index] - until > 0){//if the event happened after the cut off, leave it and everything after it
+				break;
+			}
+			switch(types[index]){
+				case KEY:
+					listener.onKey(codes[index], scancodes[index], actions[index], modifiers[index], times[index]);
+					break;
+				case BUTTON:
+					listener.onButton(codes[index], actions[index], modifiers[index], times[index]);
+					break;
+				case SCROLL:
+					listener.onScroll(valuesX[index], valuesY[index], times[index]);
+					break;
+				default:
+					listener.onCursor(valuesX[index], valuesY[index], times[index]);
+					break;
+			}
+			sequence++;
+			count++;
+		}
+		head = sequence;//free the dispatched slots for the pushing thread
+		return count;
+	}
+
+	/**Returns the number of published events that haven't been dispatched yet.
+	 * @return The number of waiting events.*/
+	public int size()
+	{
+		return (int)(tail - head);
+	}
+
+	/**Returns the number of events that were merged into an earlier cursor or scroll event instead of taking a slot of their own.
+	 * @return The number of merged events.*/
+	public long getMergedCount()
+	{
+		return mergedCount;
+	}
+
+	/**Returns the number of events that were dropped because the queue was full.
+	 * @return The number of dropped events.*/
+	public long getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+	/**Receives the events dispatched by {@link InputQueue#dispatch(long, InputListener)}.*/
+	public interface InputListener
+	{
+		/**Called for each key event.
+		 * @param key The GLFW key-code of the key.
+		 * @param scancode The system's key-code of the key.
+		 * @param action The GLFW action that was performed on the key.
+		 * @param modifiers Bit flags indicating which modifier keys were being pressed.
+		 * @param time The time the event happened at. (in nanoseconds)*/
+		public void onKey(int key, int scancode, int action, int modifiers, long time);
+
+		/**Called for each mouse button event.
+		 * @param button The GLFW button-code of the button.
+		 * @param action The GLFW action that was performed on the button.
+		 * @param modifiers Bit flags indicating which modifier keys were being pressed.
+		 * @param time The time the event happened at. (in nanoseconds)*/
+		public void onButton(int button, int action, int modifiers, long time);
+
+		/**Called for each scroll event.
+		 * @param x The amount the scroll wheel was moved in the x direction.
+		 * @param y The amount the scroll wheel was moved in the y direction.
+		 * @param time The time the event happened at. (in nanoseconds)*/
+		public void onScroll(double x, double y, long time);
+
+		/**Called for each cursor event.
+		 * @param x The x coordinate of the cursor's new position.
+		 * @param y The y coordinate of the cursor's new position.
+		 * @param time The time the event happened at. (in nanoseconds)*/
+		public void onCursor(double x, double y, long time);
+	}
+}
@@ -0,0 +1,310 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+
+/**Collects copies of models for an entire frame and renders every copy of the same model and texture with a single instanced draw call.
+ * Each instance only stores its position, scale and texture region, which are streamed into an instance buffer once per flush,
+ * so hundreds of identical props cost one projection upload and one draw call instead of one of each per prop.
+ * Instances can play an {@link AnimationClip} on their texture, which only adds the clip and its start time to the instance,
+ * since the shader picks the frame to show, so animated instances cost no more to draw than static ones.
+ * Instances outside the viewport are culled before they're stored. This needs OpenGL 3.3 and a shader with instanceOffset, instanceRegion,
+ * instanceAnimation and instanceSheet attributes, such as the one in instanced.glsl.*/
+public class InstanceBatch
+{
+	/**The number of floats stored for each instance: {x, y, scale, u, v, width, height, first frame, frame count, frame rate, start time, columns, rows}.*/
+	private static final int FLOATS_PER_INSTANCE = 13;
+	/**The number of bytes between the start of consecutive instances.*/
+	private static final int INSTANCE_STRIDE = FLOATS_PER_INSTANCE * 4;
+	/**The index of the vertex attribute holding each instance's position and scale.*/
+	private static final int OFFSET_ATTRIBUTE = 2;
+	/**The index of the vertex attribute holding each instance's texture region.*/
+	private static final int REGION_ATTRIBUTE = 3;
+	/**The index of the vertex attribute holding each instance's animation clip and start time.*/
+	private static final int ANIMATION_ATTRIBUTE = 4;
+	/**The index of the vertex attribute holding the sprite sheet grid of each instance's animation clip.*/
+	private static final int SHEET_ATTRIBUTE = 5;
+
+	/**The maximum number of instances that can be stored before the batch is forced to flush.*/
+	private final int maxInstances;
+	/**Client side buffer that instances are written into before being streamed to the GPU.*/
+	private final FloatBuffer instanceData;
+	/**Handle ID for the streaming instance buffer, or 0 if it hasn't been created yet.*/
+	private int instanceBufferHandle;
+	/**The renderer that this batch is currently rendering with, or null if the batch isn't drawing.*/
+	private Renderer renderer;
+	/**The name of the shader that instances are rendered with.*/
+	private String currentShader;
+	/**The model that pending instances are copies of.*/
+	private Model currentModel;
+	/**The name of the texture that pending instances should be rendered with.*/
+	private String currentTexture;
+	/**Flag for whether the instance attributes have been enabled since the batch was started.*/
+	private boolean attributesEnabled;
+	/**The number of instances waiting to be flushed.*/
+	private int pendingInstances;
+	/**The number of instances that have been submitted to this batch, including culled ones.*/
+	private int instancesSubmitted;
+	/**The number of instances that were culled for being outside the viewport.*/
+	private int instancesCulled;
+	/**The number of draw calls this batch has issued.*/
+	private int drawCalls;
+
+	/**Creates a new instance batch. Note that no GPU resources are allocated until the first non-empty flush.
+	 * @param capacity The maximum number of instances to buffer before flushing.
+	 * @throws IllegalArgumentException If the capacity isn't positive or is too large to index.*/
+	public InstanceBatch(int capacity) throws IllegalArgumentException
+	{
+		if((capacity <= 0) || (capacity > (Integer.MAX_VALUE / INSTANCE_STRIDE))){//if the capacity is out of range
+			throw new IllegalArgumentException("Invalid instance batch capacity: " + capacity);
+		}
+		maxInstances = capacity;//store the batch's capacity
+		instanceData = BufferUtils.createFloatBuffer(capacity * FLOATS_PER_INSTANCE);//allocate a client side buffer for the instances
+	}
+
+	/**Checks whether the current GL context can render instances. This requires a context to be current on the calling thread.
+	 * @return True if instanced rendering and instance divisors are available, false otherwise.*/
+	public static boolean isSupported()
+	{
+		return GL.getCapabilities().OpenGL33;
+	}
+
+	/**Starts a new batch. All instances submitted until {@link #end()} is called are rendered with the provided renderer.
+	 * @param renderer The renderer to render the batch with.
+	 * @param shaderName The name of the instancing shader to render with.
+	 * @throws IllegalStateException If the batch has already been started.*/
+	public void begin(Renderer renderer, String shaderName) throws IllegalStateException
+	{
+		if(this.renderer != null){//if the batch is already drawing
+			throw new IllegalStateException("Instance batch was already started");
+		}
+		this.renderer = renderer;//store the renderer to draw with
+		currentShader = shaderName;//store the shader to draw with
+		currentModel = null;
+		currentTexture = null;
+	}
+
+	/**Adds an unscaled instance of a model that displays an entire texture to the batch.
+	 * @param model The model to render an instance of.
+	 * @param textureName The name of the texture to render the instance with.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.*/
+	public void draw(Model model, String textureName, float x, float y)
+	{
+		draw(model, textureName, x, y, 1, 0, 0, 1, 1);
+	}
+
+	/**Adds an instance of a model that displays a sprite packed in a texture atlas to the batch.
+	 * The model's texture coordinates are mapped onto the sprite's part of the atlas page.
+	 * @param model The model to render an instance of.
+	 * @param region The atlas region of the sprite to render.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.
+	 * @param scale The factor to scale the model by.*/
+	public void draw(Model model, TextureAtlas.Region region, float x, float y, float scale)
+	{
+		draw(model, region.pageTexture, x, y, scale, region.u1, region.v2, region.u2 - region.u1, region.v1 - region.v2);//the region's top edge has the lower v
+	}
+
+	/**Adds an instance of a model that plays an animation clip on a sprite sheet to the batch.
+	 * @param model The model to render an instance of.
+	 * @param textureName The name of the sprite sheet texture to render the instance with.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.
+	 * @param scale The factor to scale the model by.
+	 * @param clip The clip to play on the instance.
+	 * @param startTime The animation clock's time when the clip started playing, from {@link Renderer#getAnimationClock()}.*/
+	public void draw(Model model, String textureName, float x, float y, float scale, AnimationClip clip, float startTime)
+	{
+		draw(model, textureName, x, y, scale, 0, 0, 1, 1, clip, startTime);
+	}
+
+	/**Adds an instance of a model that plays an animation clip on a sprite sheet packed in a texture atlas to the batch.
+	 * @param model The model to render an instance of.
+	 * @param region The atlas region of the sprite sheet.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.
+	 * @param scale The factor to scale the model by.
+	 * @param clip The clip to play on the instance.
+	 * @param startTime The animation clock's time when the clip started playing, from {@link Renderer#getAnimationClock()}.*/
+	public void draw(Model model, TextureAtlas.Region region, float x, float y, float scale, AnimationClip clip, float startTime)
+	{
+		draw(model, region.pageTexture, x, y, scale, region.u1, region.v2, region.u2 - region.u1, region.v1 - region.v2, clip, startTime);
+	}
+
+	/**Adds an instance of a model to the batch.
+	 * @param model The model to render an instance of.
+	 * @param textureName The name of the texture to render the instance with.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.
+	 * @param scale The factor to scale the model by.
+	 * @param u The x texture coordinate that the model's texture coordinates start from.
+	 * @param v The y texture coordinate that the model's texture coordinates start from.
+	 * @param width The amount the model's texture coordinates are scaled by in the x direction.
+	 * @param height The amount the model's texture coordinates are scaled by in the y direction.
+	 * @throws IllegalStateException If the batch hasn't been started.*/
+	public void draw(Model model, String textureName, float x, float y, float scale, float u, float v, float width, float height) throws IllegalStateException
+	{
+		draw(model, textureName, x, y, scale, u, v, width, height, null, 0);
+	}
+
+	/**Adds an instance of a model to the batch.
+	 * @param model The model to render an instance of.
+	 * @param textureName The name of the texture to render the instance with.
+	 * @param x The x position to render the instance at.
+	 * @param y The y position to render the instance at.
+	 * @param scale The factor to scale the model by.
+	 * @param u The x texture coordinate that the model's texture coordinates start from.
+	 * @param v The y texture coordinate that the model's texture coordinates start from.
+	 * @param width The amount the model's texture coordinates are scaled by in the x direction.
+	 * @param height The amount the model's texture coordinates are scaled by in the y direction.
+	 * @param clip The animation clip to play within the texture region, or null to show the whole region.
+	 * @param startTime The animation clock's time when the clip started playing.
+	 * @throws IllegalStateException If the batch hasn't been started.*/
+	public void draw(Model model, String textureName, float x, float y, float scale, float u, float v, float width, float height, AnimationClip clip, float startTime) throws IllegalStateException
+	{
+		if(renderer == null){//if the batch isn't drawing
+			throw new IllegalStateException("Instance batch must be started before drawing");
+		}
+		instancesSubmitted++;
+		if(!model.isWithinViewport(renderer, x, y, scale)){//if the instance wouldn't be seen
+			instancesCulled++;
+			return;
+		}
+		if(currentModel == null){//if this is the first instance since the batch was started or flushed
+			currentModel = model;
+			currentTexture = textureName;
+		} else
+		if((currentModel != model) || ((currentTexture != textureName) && !currentTexture.equals(textureName))){//if the model or texture is changing
+			flush();//render everything that used the previous model and texture
+			currentModel = model;
+			currentTexture = textureName;
+		}
+		if(pendingInstances == maxInstances){//if the batch is full
+			flush();//render the pending instances to make room
+			currentModel = model;//keep using the same model and texture after the flush
+			currentTexture = textureName;
+		}
+
+		instanceData.put(x + model.getOffsetX()).put(y + model.getOffsetY()).put(scale);//store the instance's position and scale
+		instanceData.put(u).put(v).put(width).put(height);//store the instance's texture region
+		if(clip != null){//store the instance's animation, which the shader plays without it ever being updated
+			instanceData.put(clip.firstFrame).put(clip.getEncodedFrameCount()).put(clip.framesPerSecond).put(startTime);
+			instanceData.put(clip.columns).put(clip.rows);
+		} else{
+			instanceData.put(0).put(1).put(0).put(0);//a single frame covering the whole region
+			instanceData.put(1).put(1);
+		}
+		pendingInstances++;
+	}
+
+	/**Renders all the pending instances in the batch with a single draw call.
+	 * @throws IllegalStateException If the instances' texture is a sprite packed in an atlas, since the instances' texture regions
+	 * were given relative to the sprite rather than its page.*/
+	public void flush() throws IllegalStateException
+	{
+		if(pendingInstances == 0){//if there's nothing to render
+			return;
+		}
+		if(instanceBufferHandle == 0){//if the instance buffer hasn't been created yet
+			instanceBufferHandle = GL15.glGenBuffers();
+		}
+
+		int shader = renderer.getShaderHandle(currentShader);//look the shader up once, so its uniforms are set by ID
+		renderer.bindShader(shader);//load the batch's shader
+		renderer.setUniform(shader, Renderer.PROJECTION_UNIFORM, renderer.getViewProjection());//instances are already in world coordinates
+		if(renderer.bindTexture(currentTexture, 0) != null){//bind the batch's texture
+			throw new IllegalStateException(currentTexture + " is packed in an atlas, draw it with its page and the region's texture coordinates instead");
+		}
+		renderer.setUniform(shader, Renderer.SAMPLER_UNIFORM, 0);//set the sample of the batch's texture
+		renderer.setUniform(shader, Renderer.TIME_UNIFORM, renderer.getFrameTime());//the only thing animations need each frame
+
+		GLState glState = Renderer.getGLState();//get the GL state cache that all binds must go through
+		Model.getArena().bind();//the instance attributes are set up in the vertex array the model is drawn with
+		instanceData.flip();//reset the buffer position for reading
+		glState.bindBuffer(GL15.GL_ARRAY_BUFFER, instanceBufferHandle);//bind the streaming instance buffer
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long)maxInstances * INSTANCE_STRIDE, GL15.GL_STREAM_DRAW);//orphan the buffer's previous contents so the driver doesn't stall
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, instanceData);//upload the instances
+		glState.enableVertexAttribArray(OFFSET_ATTRIBUTE);
+		glState.enableVertexAttribArray(REGION_ATTRIBUTE);
+		glState.enableVertexAttribArray(ANIMATION_ATTRIBUTE);
+		glState.enableVertexAttribArray(SHEET_ATTRIBUTE);
+		attributesEnabled = true;
+		glState.vertexAttribPointer(OFFSET_ATTRIBUTE, 3, INSTANCE_STRIDE, 0);//set the instance positions and scales
+		glState.vertexAttribPointer(REGION_ATTRIBUTE, 4, INSTANCE_STRIDE, 12);//set the instance texture regions
+		glState.vertexAttribPointer(ANIMATION_ATTRIBUTE, 4, INSTANCE_STRIDE, 28);//set the instance animation clips and start times
+		glState.vertexAttribPointer(SHEET_ATTRIBUTE, 2, INSTANCE_STRIDE, 44);//set the instance sprite sheet grids
+		glState.vertexAttribDivisor(OFFSET_ATTRIBUTE, 1);//advance the instance attributes once per instance rather than once per vertex
+		glState.vertexAttribDivisor(REGION_ATTRIBUTE, 1);
+		glState.vertexAttribDivisor(ANIMATION_ATTRIBUTE, 1);
+		glState.vertexAttribDivisor(SHEET_ATTRIBUTE, 1);
+		currentModel.renderInstances(pendingInstances);//render every pending instance
+		instanceData.clear();//reset the buffer for writing
+
+		pendingInstances = 0;
+		currentModel = null;
+		currentTexture = null;
+		drawCalls++;
+	}
+
+	/**Ends the batch, rendering any instances that are still pending.
+	 * @throws IllegalStateException If the batch hasn't been started.*/
+	public void end() throws IllegalStateException
+	{
+		if(renderer == null){//if the batch isn't drawing
+			throw new IllegalStateException("Instance batch must be started before it can be ended");
+		}
+		flush();//render anything left in the batch
+		if(attributesEnabled){//if any instances were rendered
+			GLState glState = Renderer.getGLState();
+			Model.getArena().bind();
+			glState.disableVertexAttribArray(OFFSET_ATTRIBUTE);//the other shaders don't read the instance attributes
+			glState.disableVertexAttribArray(REGION_ATTRIBUTE);
+			glState.disableVertexAttribArray(ANIMATION_ATTRIBUTE);
+			glState.disableVertexAttribArray(SHEET_ATTRIBUTE);
+			attributesEnabled = false;
+		}
+		renderer = null;//mark that the batch is no longer drawing
+	}
+
+	/**Deletes the GPU buffer used by this batch.*/
+	public void delete()
+	{
+		if(instanceBufferHandle != 0){//if the instance buffer was created
+			GL15.glDeleteBuffers(instanceBufferHandle);//delete the streaming instance buffer
+			Renderer.getGLState().forgetBuffer(instanceBufferHandle);
+			instanceBufferHandle = 0;
+		}
+	}
+
+	/**Returns the number of instances submitted since the statistics were last reset, including culled ones.
+	 * @return The number of instances submitted to this batch.*/
+	public int getInstancesSubmitted()
+	{
+		return instancesSubmitted;
+	}
+
+	/**Returns the number of instances culled for being outside the viewport since the statistics were last reset.
+	 * @return The number of instances that weren't rendered.*/
+	public int getInstancesCulled()
+	{
+		return instancesCulled;
+	}
+
+	/**Returns the number of draw calls issued since the statistics were last reset.
+	 * @return The number of draw calls this batch issued.*/
+	public int getDrawCalls()
+	{
+		return drawCalls;
+	}
+
+	/**Resets the instance and draw call counters, typically once per frame.*/
+	public void resetStatistics()
+	{
+		instancesSubmitted = 0;
+		instancesCulled = 0;
+		drawCalls = 0;
+	}
+}
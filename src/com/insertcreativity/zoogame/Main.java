@@ -2,21 +2,67 @@
 //add delete and clear methods for renderer/shader/model?
 package com.insertcreativity.zoogame;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.lwjgl.glfw.GLFW;
 import com.insertcreativity.zoogame.menu.MainMenu;
 
 public class Main implements Runnable
 {
-	/**The window that the game is running in.*/
+	/**The window that the game is running in, or null if the game is running offscreen.*/
 	private Window window;
+	/**The backend that provides the GL context the game renders into.*/
+	private final RenderBackend backend;
 	/**Object responsible for rendering the game.*/
 	private Renderer renderer;
-	/**The current screen that the game is on.*/
-	private Screen screen;
+	/**The stack of screens that the game is on.*/
+	private final ScreenManager screens;
+	/**The buffer that snapshots of the current screen are handed to the render thread through, when the game is run with {@link LoopMode#PIPELINED}.
+	 * It's replaced whenever the simulation thread switches screens, since each screen has its own kind of snapshot.*/
+	private volatile SnapshotBuffer<RenderSnapshot> pipelineSnapshots;
 	/**The preferred FPS to run the game at.*/
 	private int FPS;
+	/**The number of times the game is updated per second when using a fixed timestep.*/
+	private int tickRate;
+	/**The loop the game runs with.*/
+	private LoopMode loopMode;
+	/**The most updates that can be run back to back to catch up before the backlog is dropped.*/
+	private int maxCatchUpTicks;
+	/**The number of updates that have been dropped because the game fell too far behind.*/
+	private long droppedTicks;
+	/**Object used to wait precisely between frames.*/
+	private final FramePacer pacer;
+	/**Object that measures where each frame's time goes.*/
+	private final FrameProfiler profiler;
+	/**Object that loads the game's assets in the background.*/
+	private final AssetLoader assets;
+	/**Future for the default shader, or null once the shader has been bound.*/
+	private CompletableFuture<String> defaultShader;
+	/**Flag for whether the assets loaded at startup have all been uploaded, after which screens' preloads aren't reported.*/
+	private boolean startupLoaded;
+	/**The amount of time that can be spent uploading assets each frame. (in nanoseconds)*/
+	private static final long UPLOAD_BUDGET = 4000000;
+	/**The most memory that resident textures can take up before the least recently used ones are evicted. (in bytes)*/
+	private static final long TEXTURE_BUDGET = 256L * 1024 * 1024;
+	/**The number of frames to render before stopping, or 0 to run until the window is closed.*/
+	private long frameLimit;
+	/**The number of frames that have been rendered.*/
+	private long framesRendered;
+	/**The number of sprites that have been rendered.*/
+	private long spritesRendered;
+	/**The time the game spent running, or 0 if it hasn't finished running. (in nanoseconds)*/
+	private long runTime;
+	/**The number of updates that have been run.*/
+	private volatile long ticksRun;
+	/**Object that measures each update on the simulation thread, when the simulation runs on its own thread.*/
+	private final FrameProfiler simulationProfiler;
+	/**Flag for whether the simulation thread should keep running.*/
+	private volatile boolean simulationRunning;
+	/**The error that stopped the simulation thread, or null if it hasn't failed.*/
+	private volatile Throwable simulationError;
 	
 	/**Creates a new instance of the game.
 	 * @param windowWidth The initial width of the game window.
@@ -25,36 +71,262 @@ public class Main implements Runnable
 	 * @throws IllegalStateException If the game fails to initialize properly.*/
 	public Main(int windowWidth, int windowHeight, int preferredFPS) throws IllegalStateException
 	{
-		Window.initialize();//initialize the window system
-		window = new Window(this, windowWidth, windowHeight, "Zoo Game!", GLFW.glfwGetPrimaryMonitor(), false);//create the game's window
+		this(windowWidth, windowHeight, preferredFPS, false);
+	}
+	
+	/**Creates a new instance of the game, optionally rendering offscreen without any display.
+	 * @param windowWidth The initial width of the game window, or the width of the frames when rendering offscreen.
+	 * @param windowHeight The initial height of the game window, or the height of the frames when rendering offscreen.
+	 * @param preferredFPS The preferred FPS to run the game at, note that this is only a hint to the display which is free to ignore this.
+	 * @param offscreen Whether to render offscreen instead of in a window, which doesn't need a display.
+	 * @throws IllegalStateException If the game fails to initialize properly.*/
+	public Main(int windowWidth, int windowHeight, int preferredFPS, boolean offscreen) throws IllegalStateException
+	{
+		this(windowWidth, windowHeight, preferredFPS, offscreen, null);
+	}
+	
+	/**Creates a new instance of the game, optionally rendering offscreen without any display, starting on a specific screen.
+	 * @param windowWidth The initial width of the game window, or the width of the frames when rendering offscreen.
+	 * @param windowHeight The initial height of the game window, or the height of the frames when rendering offscreen.
+	 * @param preferredFPS The preferred FPS to run the game at, note that this is only a hint to the display which is free to ignore this.
+	 * @param offscreen Whether to render offscreen instead of in a window, which doesn't need a display.
+	 * @param firstScreen The screen to start on, which preloads everything it needs itself, or null to start on the main menu.
+	 * @throws IllegalStateException If the game fails to initialize properly.*/
+	public Main(int windowWidth, int windowHeight, int preferredFPS, boolean offscreen, Screen firstScreen) throws IllegalStateException
+	{
+		if(offscreen){//if the game is running without a display
+			backend = new OffscreenBackend(windowWidth, windowHeight);//create an offscreen context to render into
+		} else{
+			Window.initialize();//initialize the window system
+			window = new Window(this, windowWidth, windowHeight, "Zoo Game!", GLFW.glfwGetPrimaryMonitor(), false);//create the game's window
+			backend = window;
+		}
 		FPS = preferredFPS;//set the FPS that the game should run at
+		tickRate = preferredFPS;//update the game once per frame by default
+		loopMode = LoopMode.VARIABLE;//use the original loop by default
+		maxCatchUpTicks = 5;//allow up to 5 updates per frame when catching up
+		pacer = new FramePacer();//create a pacer for waiting between frames
+		profiler = new FrameProfiler(600);//keep the last 600 frames for percentiles
+		simulationProfiler = new FrameProfiler(600);//keep the last 600 updates for percentiles
 		
 		renderer = new Renderer(windowWidth, windowHeight, 0, 0, 0, 64f);//create a new renderer for the game
-		try{
-			renderer.createShader("default", "default.glsl");//create the default shader
-		} catch(IOException ioException){//if the shader source file couldn't be loaded
-			throw new IllegalStateException("GLSL shader file is missing or damaged");
+		Renderer.setTextureCache(new TextureCache(new File("cache", "textures")));//load textures from precooked copies where possible
+		Renderer.getTextureManager().setBudget(TEXTURE_BUDGET);//stream textures in and out rather than keeping everything resident
+		renderer.setShaderCache(new ShaderCache(new File("cache", "shaders")));//load shaders from previously linked programs where possible
+		assets = new AssetLoader(renderer);//create a loader for loading assets in the background
+		if(firstScreen == null){//if the game starts on the main menu, which draws with the default shader
+			defaultShader = assets.loadShader("default", "default.glsl");//start loading the default shader
+			firstScreen = new MainMenu();
 		}
-		renderer.bindShader("default");//load the default shader into the renderer
 		
-		screen = new MainMenu();//create the main menu and set it as the game's current screen
+		screens = new ScreenManager(assets, firstScreen);//set the first screen as the game's current screen
 		
 		System.gc();//run the garbage collector to cleanup leftover resources from initialization
 	}
 	
-	/**Runs the game's logic and main loop.*/
-	public void run()
+	/**Sets which loop the game runs with. This must be called before the game is run.
+	 * @param mode The loop for the game to run with.*/
+	public void setLoopMode(LoopMode mode)
+	{
+		loopMode = mode;
+	}
+	
+	/**Sets the number of times the game is updated per second when using a fixed timestep.
+	 * @param ticksPerSecond The number of updates to run per second.
+	 * @throws IllegalArgumentException If the tick rate isn't positive.*/
+	public void setTickRate(int ticksPerSecond) throws IllegalArgumentException
+	{
+		if(ticksPerSecond <= 0){
+			throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+		}
+		tickRate = ticksPerSecond;
+	}
+	
+	/**Sets the most updates that can be run in a single frame when the game falls behind. Any backlog past this is dropped,
+	 * so a single stall can't cause a spiral where every frame takes longer to catch up than the last.
+	 * @param maxTicks The most updates to run per frame.*/
+	public void setMaxCatchUpTicks(int maxTicks)
+	{
+		maxCatchUpTicks = Math.max(1, maxTicks);
+	}
+	
+	/**Sets the number of frames to render before the game stops by itself, which is mostly useful for offscreen test runs.
+	 * @param frames The number of frames to render, or 0 to run until the window is closed.*/
+	public void setFrameLimit(long frames)
+	{
+		frameLimit = Math.max(0, frames);
+	}
+	
+	/**Starts recompiling shaders whenever their source files change, which is meant for development.
+	 * @param directory The directory containing the shader source files.
+	 * @throws IOException If the directory couldn't be watched.*/
+	public void watchShaders(File directory) throws IOException
+	{
+		renderer.watchShaders(directory);
+	}
+	
+	/**Switches the game to a screen, replacing the current one once the new screen has finished preloading.
+	 * @param newScreen The screen to switch to.
+	 * @throws IllegalStateException If another screen transition is already pending.*/
+	public void setScreen(Screen newScreen) throws IllegalStateException
+	{
+		screens.replace(newScreen);
+	}
+	
+	/**Returns the stack of screens the game is on, which screens can be pushed onto and popped from.
+	 * @return The game's screen manager.*/
+	public ScreenManager getScreens()
+	{
+		return screens;
+	}
+	
+	/**Returns a summary of how many frames, sprites and updates the game ran per second during its last run.
+	 * @return The game's rendering throughput.*/
+	public String getThroughputReport()
+	{
+		double seconds = runTime / 1000000000.0;
+		return String.format("%d frames and %d sprites in %.2f s: %.1f frames/s, %.0f sprites/s, %.1f ticks/s%n", framesRendered, spritesRendered, seconds,
+		                     framesRendered / seconds, spritesRendered / seconds, ticksRun / seconds);
+	}
+	
+	/**Returns the number of updates that have been dropped because the game fell too far behind.
+	 * @return The number of dropped updates.*/
+	public long getDroppedTicks()
+	{
+		return droppedTicks;
+	}
+	
+	/**Returns the profiler that measures each frame of the game.
+	 * @return The game's frame profiler.*/
+	public FrameProfiler getProfiler()
+	{
+		return profiler;
+	}
+	
+	/**Returns the profiler that measures each update on the simulation thread, when the game is run with {@link LoopMode#PIPELINED}.
+	 * Only the update and sleep phases are measured.
+	 * @return The simulation thread's profiler.*/
+	public FrameProfiler getSimulationProfiler()
+	{
+		return simulationProfiler;
+	}
+	
+	/**Uploads every asset that's been requested so far, waiting for any that are still loading. This must be called on the thread with the GL context,
+	 * and is meant for headless runs that start on a screen with assets and shouldn't count loading them in their timings.
+	 * @throws IllegalStateException If the default shader couldn't be loaded.*/
+	public void finishLoading() throws IllegalStateException
+	{
+		processAssets();
+		while(!assets.isIdle()){//while assets are still being read on the worker threads
+			pacer.waitUntil(System.nanoTime() + 1000000);//check again in a millisecond
+			processAssets();
+		}
+	}
+	
+	/**Destroys the offscreen context the game rendered into, if it was running offscreen. A window destroys itself once it's closed.
+	 * The game can't be run again afterwards.*/
+	public void destroy()
+	{
+		if(backend instanceof OffscreenBackend){
+			((OffscreenBackend)backend).destroy();
+		}
+	}
+	
+	/**Runs the game's logic and main loop. The frame profiler's report is printed once the game closes if the zoogame.profile system property is true.
+	 * @throws IllegalStateException If the simulation thread failed while the game was running pipelined.*/
+	public void run() throws IllegalStateException
+	{
+		long startTime = System.nanoTime();
+		if(loopMode == LoopMode.FIXED_TIMESTEP){//if the game should run with a fixed timestep
+			runFixedTimestep();
+		} else
+		if(loopMode == LoopMode.PIPELINED){//if the game should update on its own thread
+			runPipelined();
+		} else
+		if(loopMode == LoopMode.UNCAPPED){//if the game should run as fast as it can
+			runUncapped();
+		} else{
+			runVariable();
+		}
+		runTime = System.nanoTime() - startTime;
+		if(Boolean.getBoolean("zoogame.profile")){//if the frame timings were asked for
+			System.out.print(profiler.getReport());
+			if(loopMode == LoopMode.PIPELINED){//if updates were profiled separately
+				System.out.print(simulationProfiler.getReport());
+			}
+			System.out.print(Model.getArena().getReport());//report how full and fragmented the models' geometry ended up
+		}
+	}
+	
+	/**Starts the next frame, unless the game should stop.
+	 * @return False if the window was closed or the frame limit was reached, true otherwise.*/
+	private boolean startFrame()
+	{
+		return ((frameLimit == 0) || (framesRendered < frameLimit)) && backend.update();
+	}
+	
+	/**Ends the current frame's rendering, storing its statistics.*/
+	private void endFrame()
+	{
+		renderer.endFrame();//store the frame's rendering statistics
+		framesRendered++;
+		spritesRendered += Renderer.getGLState().getDrawnIndexes() / 6;//every sprite is drawn as two triangles
+	}
+	
+	/**Runs the game with one update per frame and no waiting between frames, for measuring how fast the game can render.*/
+	private void runUncapped()
+	{
+		profiler.beginFrame();
+		while(startFrame()){//run the game loop so long as the game should keep going
+			profiler.mark(FrameProfiler.POLL);
+			processAssets();//upload any assets that finished loading
+			profiler.skip();
+			
+			if(window != null){
+				window.dispatchInput(System.nanoTime());//hand the input received since the last update to the screen
+			}
+			screens.applyTransition();//swap in the next screen if it's finished preloading
+			screens.getCurrent().update(window);//update the screen
+			ticksRun++;
+			profiler.mark(FrameProfiler.UPDATE);
+			renderer.clear();
+			screens.getCurrent().render(renderer, 1);//render the screen
+			endFrame();
+			profiler.mark(FrameProfiler.RENDER);
+			backend.render();//display the game's current screen
+			profiler.mark(FrameProfiler.SWAP);
+			profiler.endFrame(renderer);//store the frame's timings
+			profiler.beginFrame();
+		}
+	}
+	
+	/**Runs the game with one update per frame, sleeping away whatever's left of each frame.*/
+	private void runVariable()
 	{
 		long tickLength = 1000 / FPS;//set the proper length each tick should be
 		long startTime;//variable for storing the start time of each loop iteration
 		long sleepTime;//variable for storing how long each loop iteration should sleep for
 		
-		while(window.update()){//run the game loop so long as the window is open
+		profiler.beginFrame();
+		while(startFrame()){//run the game loop so long as the window is open
+			profiler.mark(FrameProfiler.POLL);
 			startTime = System.nanoTime();//store the time that the loop started at
+			processAssets();//upload any assets that finished loading
+			profiler.skip();
 			
-			screen.update(window);//update the screen
-			screen.render(renderer);//render the screen
-			window.render();//update the window to display the game's current screen
+			if(window != null){
+				window.dispatchInput(startTime);//hand the input received since the last update to the screen
+			}
+			screens.applyTransition();//swap in the next screen if it's finished preloading
+			screens.getCurrent().update(window);//update the screen
+			ticksRun++;
+			profiler.mark(FrameProfiler.UPDATE);
+			renderer.clear();
+			screens.getCurrent().render(renderer, 1);//render the screen
+			endFrame();
+			profiler.mark(FrameProfiler.RENDER);
+			backend.render();//update the window to display the game's current screen
+			profiler.mark(FrameProfiler.SWAP);
 			
 			sleepTime = tickLength - ((System.nanoTime() - startTime) / 1000000);//calculate the amount of time the game loop should sleep for
 			if(sleepTime > 0){//if the game loop should sleep this cycle
@@ -62,6 +334,208 @@ public class Main implements Runnable
 					Thread.sleep(sleepTime);//sleep for the calculated amount of time
 				} catch(InterruptedException interruptedException){}
 			}
+			profiler.mark(FrameProfiler.SLEEP);
+			profiler.endFrame(renderer);//store the frame's timings
+			profiler.beginFrame();
+		}
+	}
+	
+	/**Runs the game with updates at a fixed rate, independent of the frame rate. Time is accumulated in nanoseconds and
+	 * spent on as many updates as it covers, with frames rendered part way between updates using the leftover time.*/
+	private void runFixedTimestep()
+	{
+		long tickLength = 1000000000L / tickRate;//calculate the length of each update (in nanoseconds)
+		long frameLength = 1000000000L / FPS;//calculate the length of each frame (in nanoseconds)
+		long accumulator = 0;//the amount of time that hasn't been simulated yet
+		long previousTime = System.nanoTime();//the time the previous frame started at
+		long nextFrame = previousTime;//the time the next frame should start at
+		
+		profiler.beginFrame();
+		while(startFrame()){//run the game loop so long as the window is open
+			profiler.mark(FrameProfiler.POLL);
+			processAssets();//upload any assets that finished loading
+			profiler.skip();
+			long currentTime = System.nanoTime();
+			accumulator += currentTime - previousTime;//add the time since the last frame to the backlog
+			previousTime = currentTime;
+			
+			int ticks = 0;
+			while((accumulator >= tickLength) && (ticks < maxCatchUpTicks)){//run updates until the backlog is used up
+				accumulator -= tickLength;
+				if(window != null){
+					window.dispatchInput(currentTime - accumulator);//hand the screen the input that happened before this update's point in time
+				}
+				screens.applyTransition();//swap in the next screen if it's finished preloading
+				screens.getCurrent().update(window);//update the screen
+				ticksRun++;
+				ticks++;
+			}
+			if(accumulator >= tickLength){//if the game is too far behind to catch up
+				droppedTicks += accumulator / tickLength;
+				accumulator %= tickLength;//drop the backlog, keeping only the partial update
+			}
+			profiler.mark(FrameProfiler.UPDATE);
+			
+			renderer.clear();
+			screens.getCurrent().render(renderer, (float)accumulator / tickLength);//render the screen part way to the next update
+			endFrame();
+			profiler.mark(FrameProfiler.RENDER);
+			backend.render();//update the window to display the game's current screen
+			profiler.mark(FrameProfiler.SWAP);
+			
+			nextFrame += frameLength;//calculate when the next frame should start
+			long now = System.nanoTime();
+			if(now - nextFrame > frameLength){//if the game stalled for more than a frame
+				nextFrame = now;//start the next frame immediately instead of rushing to make up the lost frames
+			}
+			pacer.waitUntil(nextFrame);//wait until the next frame should start
+			profiler.mark(FrameProfiler.SLEEP);
+			profiler.endFrame(renderer);//store the frame's timings
+			profiler.beginFrame();
+		}
+	}
+	
+	/**Runs the game's updates on a simulation thread of their own at a fixed rate, while this thread only renders.
+	 * After each update the screen copies what it needs to render into a snapshot, which is handed over through a {@link SnapshotBuffer},
+	 * so this thread always renders the latest finished update without waiting for the next one, and the simulation never waits for rendering.
+	 * Frames are interpolated from the previous update towards the snapshot's update, by how long ago the snapshot was published.
+	 * @throws IllegalStateException If the simulation thread failed.*/
+	private void runPipelined() throws IllegalStateException
+	{
+		final long tickLength = 1000000000L / tickRate;//calculate the length of each update (in nanoseconds)
+		long frameLength = 1000000000L / FPS;//calculate the length of each frame (in nanoseconds)
+		pipelineSnapshots = createSnapshots(screens.getCurrent());
+		
+		simulationRunning = true;
+		simulationError = null;
+		Thread simulation = new Thread("Simulation Thread"){
+			public void run()
+			{
+				try{
+					simulate(tickLength);
+				} catch(Throwable throwable){//if the simulation failed, store the error for the render thread to report
+					simulationError = throwable;
+				}
+			}
+		};
+		simulation.setDaemon(true);//don't keep the process alive if the render thread dies
+		simulation.start();
+		
+		long nextFrame = System.nanoTime();//the time the next frame should start at
+		try{
+			profiler.beginFrame();
+			while((simulationError == null) && startFrame()){//run the game loop so long as the window is open and the simulation is running
+				profiler.mark(FrameProfiler.POLL);
+				processAssets();//upload any assets that finished loading
+				profiler.skip();
+				
+				SnapshotBuffer<RenderSnapshot> snapshots = pipelineSnapshots;//the simulation replaces the buffer when it switches screens
+				RenderSnapshot snapshot = snapshots.acquire();//take the latest finished update
+				long now = System.nanoTime();
+				long age = now - snapshots.getFrontTime();
+				profiler.set(FrameProfiler.SNAPSHOT_AGE, age);
+				renderer.clear();
+				snapshot.render(renderer, Math.min((float)age / tickLength, 1));//render the snapshot part way from the previous update
+				endFrame();
+				profiler.mark(FrameProfiler.RENDER);
+				backend.render();//update the window to display the game's current screen
+				profiler.mark(FrameProfiler.SWAP);
+				
+				nextFrame += frameLength;//calculate when the next frame should start
+				now = System.nanoTime();
+				if(now - nextFrame > frameLength){//if the game stalled for more than a frame
+					nextFrame = now;
+				}
+				pacer.waitUntil(nextFrame);//wait until the next frame should start
+				profiler.mark(FrameProfiler.SLEEP);
+				profiler.endFrame(renderer);//store the frame's timings
+				profiler.beginFrame();
+			}
+		} finally{
+			simulationRunning = false;//stop the simulation and wait for its last update to finish
+			try{
+				simulation.join();
+			} catch(InterruptedException interruptedException){
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(simulationError != null){//if the loop stopped because the simulation failed
+			throw new IllegalStateException("Simulation thread failed", simulationError);
+		}
+	}
+	
+	/**Creates the snapshot buffer for a screen, and publishes the screen's current state through it so there's something to render before its first update.
+	 * @param screen The screen to create the snapshots of.
+	 * @return The new snapshot buffer.*/
+	private static SnapshotBuffer<RenderSnapshot> createSnapshots(Screen screen)
+	{
+		SnapshotBuffer<RenderSnapshot> snapshots = new SnapshotBuffer<RenderSnapshot>(screen.createSnapshot(), screen.createSnapshot(), screen.createSnapshot());
+		screen.writeSnapshot(snapshots.getBack());
+		snapshots.publish(System.nanoTime());
+		return snapshots;
+	}
+	
+	/**Runs updates at a fixed rate until the game stops, publishing a snapshot after each one. This is run on the simulation thread,
+	 * which owns the screens and the input queue's dispatching side for as long as it's running.
+	 * @param tickLength The length of each update. (in nanoseconds)*/
+	private void simulate(long tickLength)
+	{
+		SnapshotBuffer<RenderSnapshot> snapshots = pipelineSnapshots;
+		FramePacer simulationPacer = new FramePacer();//the render thread's pacer isn't thread safe, so the simulation gets its own
+		long nextTick = System.nanoTime();//the time the next update should start at
+		simulationProfiler.beginFrame();
+		while(simulationRunning){
+			if(window != null){
+				window.dispatchInput(nextTick);//hand the screen the input that happened before this update's point in time
+			}
+			if(screens.applyTransition(true)){//if the next screen finished preloading and was swapped in
+				snapshots = createSnapshots(screens.getCurrent());
+				pipelineSnapshots = snapshots;//hand the render thread the new screen's snapshots
+				screens.releaseRemoved();//the render thread picks up the new snapshots before it next unloads, so the old screen can't be rendered after it's unloaded
+			}
+			Screen screen = screens.getCurrent();
+			screen.update(window);//update the screen
+			screen.writeSnapshot(snapshots.getBack());//copy out everything the render thread needs
+			snapshots.publish(System.nanoTime());
+			ticksRun++;
+			simulationProfiler.mark(FrameProfiler.UPDATE);
+			
+			nextTick += tickLength;//calculate when the next update should start
+			long now = System.nanoTime();
+			if(now - nextTick > maxCatchUpTicks * tickLength){//if the simulation is too far behind to catch up
+				droppedTicks += (now - nextTick) / tickLength;
+				nextTick = now;//drop the backlog
+			}
+			simulationPacer.waitUntil(nextTick);//wait until the next update should start
+			simulationProfiler.mark(FrameProfiler.SLEEP);
+			simulationProfiler.endFrame(null);//store the update's timings
+			simulationProfiler.beginFrame();
+		}
+	}
+	
+	/**Reloads any edited shaders, uploads a batch of assets that finished loading in the background, and binds the default shader once it's ready.
+	 * @throws IllegalStateException If the default shader couldn't be loaded.*/
+	private void processAssets() throws IllegalStateException
+	{
+		renderer.reloadChangedShaders();//recompile any shaders that were edited, if they're being watched
+		screens.processUnloads();//release the resources of any screens that were removed
+		if(assets.isIdle() && (defaultShader == null)){//if there's nothing to upload
+			return;
+		}
+		assets.processUploads(UPLOAD_BUDGET);//upload as many assets as fit in this frame
+		
+		if((defaultShader != null) && defaultShader.isDone()){//if the default shader just finished loading
+			try{
+				defaultShader.join();
+			} catch(CompletionException completionException){//if the shader source file couldn't be loaded
+				throw new IllegalStateException("GLSL shader file is missing or damaged", completionException.getCause());
+			}
+			renderer.bindShader("default");//load the default shader into the renderer
+			defaultShader = null;
+		}
+		if(!startupLoaded && assets.isIdle()){//if startup loading just finished
+			startupLoaded = true;
+			System.out.print(assets.getReport());//report how long each asset took
 		}
 	}
 	
@@ -79,7 +553,7 @@ public class Main implements Runnable
 	 * @param modifiers Bit flags indicating which modifier keys were also being pressed.*/
 	protected void onKeyPress(int key, int scancode, int modifiers)
 	{
-		screen.keyPresssed(key, scancode, modifiers);//notify the current screen that a key was pressed
+		screens.getCurrent().keyPresssed(key, scancode, modifiers);//notify the current screen that a key was pressed
 	}
 	
 	/**Called whenever a key is released inside the game's window.
@@ -88,7 +562,7 @@ public class Main implements Runnable
 	 * @param modifiers Bit flags indicating which modifier keys were also being pressed.*/
 	protected void onKeyRelease(int key, int scancode, int modifiers)
 	{
-		screen.keyReleased(key, scancode, modifiers);//notify the current screen that a key was released
+		screens.getCurrent().keyReleased(key, scancode, modifiers);//notify the current screen that a key was released
 	}
 	
 	/**Called whenever a button is pressed inside the game's window.
@@ -96,7 +570,7 @@ public class Main implements Runnable
 	 * @param modifiers Bit flags indicating which modifier keys were also being pressed.*/
 	protected void onButtonPress(int button, int modifiers)
 	{
-		screen.buttonPressed(button, modifiers);//notify the current screen that a button was pressed
+		screens.getCurrent().buttonPressed(button, modifiers);//notify the current screen that a button was pressed
 	}
 	
 	/**Called whenever a button is released inside the game's window.
@@ -104,7 +578,7 @@ public class Main implements Runnable
 	 * @param modifiers Bit flags indicating which modifier keys were also being pressed.*/
 	protected void onButtonRelease(int button, int modifiers)
 	{
-		screen.buttonReleased(button, modifiers);//notify the current screen that a button was released
+		screens.getCurrent().buttonReleased(button, modifiers);//notify the current screen that a button was released
 	}
 	
 	/**Called whenever the scroll wheel is scrolled inside the game's window.
@@ -112,7 +586,7 @@ public class Main implements Runnable
 	 * @param y The amount that the scroll wheel was moved in the y direction.*/
 	protected void onMouseScrolled(double x, double y)
 	{
-		screen.mouseScrolled(x, y);//notify the current screen that the scroll wheel was scrolled
+		screens.getCurrent().mouseScrolled(x, y);//notify the current screen that the scroll wheel was scrolled
 	}
 	
 	/**Called whenever the cursor is moved inside the game's window.
@@ -120,11 +594,33 @@ public class Main implements Runnable
 	 * @param y The new y coordinate of the cursor.*/
 	protected void onCursorMove(double x, double y)
 	{
-		screen.cursorMoved(x, y);//notify the current screen that the cursor was moved
+		screens.getCurrent().cursorMoved(x, y);//notify the current screen that the cursor was moved
 	}
 	
+	/**Runs the game. Passing "--offscreen [frames] [sprites] [instanced]" instead renders a sprite stress test as fast as possible without a display,
+	 * and prints how many frames and sprites were rendered per second. The sprites are drawn as instances if the last argument is "instanced".
+	 * @param args The command line arguments.*/
 	public static void main(String[] args)
 	{
+		if((args.length > 0) && args[0].equals("--offscreen")){//if the game should run a headless throughput test
+			SpriteStressScreen stress = new SpriteStressScreen((args.length > 2)? Integer.parseInt(args[2]) : 10000, (args.length > 3) && args[3].equals("instanced"));
+			Main game = new Main(800, 600, 60, true, stress);
+			try{
+				game.setLoopMode(LoopMode.UNCAPPED);//render as fast as possible
+				game.setFrameLimit((args.length > 1)? Long.parseLong(args[1]) : 1000);
+				game.finishLoading();//the stress screen is shown straight away, so its assets have to be ready before the first frame
+				game.run();
+				System.out.print(game.getThroughputReport());
+				System.out.print(Renderer.getTextureManager().getReport());
+				System.out.print(Model.getArena().getReport());
+				System.out.print(game.getScreens().getReport());
+				System.out.print(stress.getReport());
+			} finally{
+				game.destroy();//release the offscreen context and framebuffer
+			}
+			return;
+		}
+		
 		Runtime.getRuntime().addShutdownHook(new Thread("Game Shutdown Hook"){//add a shutdown hook to cleanup
 			public void run()//ensure the cleanup code is run on shutdown
 			{
@@ -132,6 +628,28 @@ public class Main implements Runnable
 			}
 		});
 		Thread.currentThread().setName("Main Game Thread");//set the name of the thread the game will run in
-		(new Main(800, 600, 60)).run();//create a new main game instance and run it
+		Main game = new Main(800, 600, 60);//create a new main game instance
+		if(Boolean.getBoolean("zoogame.shaderReload")){//if the game is being run for development, reload shaders when they're edited
+			try{
+				game.watchShaders(new File("src", "shaders"));
+			} catch(IOException ioException){
+				System.err.println("Unable to watch shaders: " + ioException.getMessage());
+			}
+		}
+		game.setLoopMode(LoopMode.FIXED_TIMESTEP);//update at a steady rate regardless of the frame rate
+		game.run();//run the game
+	}
+	
+	/**The loops that the game can be run with.*/
+	public enum LoopMode
+	{
+		/**Updates and renders once per frame, sleeping to the nearest millisecond between frames.*/
+		VARIABLE,
+		/**Updates at a fixed rate with interpolated rendering and precise frame pacing.*/
+		FIXED_TIMESTEP,
+		/**Updates and renders once per frame without waiting between frames, for measuring throughput.*/
+		UNCAPPED,
+		/**Updates at a fixed rate on a simulation thread of its own, while the main thread renders snapshots of the latest update.*/
+		PIPELINED
 	}
 }
@@ -4,75 +4,128 @@ package com.insertcreativity.zoogame;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.HashMap;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL15;
-import org.lwjgl.opengl.GL20;
 
 public class Model
 {
-	/**Handle ID for the vertex coordinates of this model.*/
-	private final int vertexArrayHandle;
-	/**Handle ID for the texture coordinates of this model.*/
-	private final int textureArrayHandle;
-	/**Handle ID for the indexes of this model.*/
-	private final int indexArrayHandle;
-	/**The number of indexes the model has on it.*/
-	private final int indexCount;
+	/**The ranges of the geometry arena that this model's vertices and indexes are stored in.*/
+	private final GeometryArena.Allocation geometry;
 	/**The offset in the x direction to render the model at.*/
 	private final float offsetX;
 	/**The offset in the y direction to render the model at.*/
 	private final float offsetY;
 	/**The offset in the z direction to render the model at.*/
 	private final float offsetZ;
+	/**The left edge of the model's vertices, relative to its offset.*/
+	private final float minX;
+	/**The bottom edge of the model's vertices, relative to its offset.*/
+	private final float minY;
+	/**The right edge of the model's vertices, relative to its offset.*/
+	private final float maxX;
+	/**The top edge of the model's vertices, relative to its offset.*/
+	private final float maxY;
+	/**The model's handle in the model registry.*/
+	private int handle;
 	/**Map containing the name and model object for every model currently in use by the renderer.*/
 	private static final HashMap<String, Model> models = new HashMap<String, Model>();
+	/**Registry of the handles given out for every model currently in use by the renderer.*/
+	private static final ResourceRegistry<Model> registry = new ResourceRegistry<Model>("model");
+	/**The arena that every model's geometry is stored in, or null until the first model is created.*/
+	private static GeometryArena arena;
 	
 	public static Model createModel(String name, float[] vertexArray, float[] textureArray, int[] indexArray, float xOff, float yOff, float zOff)
 	{
 		if(!models.containsKey(name)){//if this model doesn't already exist
-			Model model = new Model(name, vertexArray, textureArray, indexArray, xOff, yOff, zOff);//create a new model
-			models.put(name, model);//add the model to the model list
+			createModel(name, createVertexData(vertexArray, textureArray), createIndexBuffer(indexArray), xOff, yOff, zOff);//create the model from the buffers
 		}
 		
 		return getModel(name);//return the model with the specified name
 	}
 	
-	/**Creates a new model.
+	/**Creates a new model from already filled buffers, which must be done on the thread with the GL context.
 	 * @param name The name of this model.
+	 * @param vertexData Buffer containing the model's interleaved vertex and texture coordinates, as made by {@link #createVertexData(float[], float[])}, ready for reading.
+	 * @param indexBuffer Buffer containing the vertexes specifying the order in which to render them, ready for reading.
+	 * @param xOff The offset to render the model at in the x direction.
+	 * @param yOff The offset to render the model at in the y direction.
+	 * @param zOff The offset to render the model at in the z direction.
+	 * @return The model with the specified name.*/
+	public static Model createModel(String name, FloatBuffer vertexData, IntBuffer indexBuffer, float xOff, float yOff, float zOff)
+	{
+		if(!models.containsKey(name)){//if this model doesn't already exist
+			Model model = new Model(name, vertexData, indexBuffer, xOff, yOff, zOff);//create a new model
+			model.handle = registry.add(model);//give the model a handle for the render path
+			models.put(name, model);//add the model to the model list
+		}
+		
+		return getModel(name);//return the model with the specified name
+	}
+	
+	/**Interleaves a model's coordinates into a single buffer in the geometry arena's vertex layout. This doesn't need a GL context, so it can be done on any thread.
 	 * @param vertexArray Array of all the vertex coordinates for the model formatted as {x1, y1, x2, y2, ...}.
 	 * @param textureArray Array of all the texture coordinates for the model formatted as {x1, y1, x2, y2, ...}.
+	 * @return Buffer containing the interleaved coordinates, ready for reading.*/
+	public static FloatBuffer createVertexData(float[] vertexArray, float[] textureArray)
+	{
+		return GeometryArena.interleave(vertexArray, textureArray);
+	}
+	
+	/**Wraps a model's indexes in a buffer. This doesn't need a GL context, so it can be done on any thread.
 	 * @param indexArray Array of the vertexes specifying the order in which to render them.
+	 * @return Buffer containing the indexes, ready for reading.*/
+	public static IntBuffer createIndexBuffer(int[] indexArray)
+	{
+		return IntBuffer.wrap(indexArray);//the arena copies the indexes into its own direct buffer when uploading them
+	}
+	
+	/**Returns the arena that every model's geometry is stored in, creating it if there isn't one yet. This must be called on the thread with the GL context.
+	 * @return The models' geometry arena.*/
+	public static GeometryArena getArena()
+	{
+		if(arena == null){//if this is the first model
+			arena = new GeometryArena(16384, 49152);//start with room for a few thousand sprites, the arena grows if it needs more
+		}
+		return arena;
+	}
+	
+	/**Deletes a model, freeing its part of the geometry arena for other models. Any handles to the model become stale.
+	 * @param name The name of the model to delete.*/
+	public static void deleteModel(String name)
+	{
+		Model model = models.remove(name);
+		if(model != null){//if the model existed
+			registry.remove(model.handle);
+			getArena().free(model.geometry);
+		}
+	}
+	
+	/**Creates a new model.
+	 * @param name The name of this model.
+	 * @param vertexData Buffer containing the model's interleaved vertex and texture coordinates, ready for reading.
+	 * @param indexBuffer Buffer containing the vertexes specifying the order in which to render them, ready for reading.
 	 * @param xOff The offset to render the model at in the x direction.
 	 * @param yOff The offset to render the model at in the y direction.
 	 * @param zOff The offset to render the model at in the z direction.*/
-	private Model(String name, float[] vertexArray, float[] textureArray, int[] indexArray, float xOff, float yOff, float zOff)
-	{
-		FloatBuffer vertexBuffer = BufferUtils.createFloatBuffer(vertexArray.length);//allocate a buffer for the vertex array
-		vertexBuffer.put(vertexArray);//load the vertex array into the vertex coordinate buffer
-		vertexBuffer.flip();//reset the buffer position for reading
-		vertexArrayHandle = GL15.glGenBuffers();//generate a handle for the vertex coordinate buffer
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexArrayHandle);//bind the vertex coordinate buffer
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, vertexBuffer, GL15.GL_STATIC_DRAW);//set the vertex coordinate buffer
-		
-		FloatBuffer textureBuffer = BufferUtils.createFloatBuffer(textureArray.length);//allocate a buffer for the texture array
-		textureBuffer.put(textureArray);//load the texture into the texture coordinate buffer
-		textureBuffer.flip();//reset the buffer position for reading
-		textureArrayHandle = GL15.glGenBuffers();//generate a handle for the texture coordinate buffer
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, textureArrayHandle);//bind the texture coordinate buffer
-		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, textureBuffer, GL15.GL_STATIC_DRAW);//set the texture coordinate buffer
-		
-		IntBuffer indexBuffer = BufferUtils.createIntBuffer(indexArray.length);//allocate a buffer for the index array
-		indexBuffer.put(indexArray);//load the index array into the index buffer
-		indexBuffer.flip();//reset the buffer position for reading
-		indexArrayHandle = GL15.glGenBuffers();//generate a handle for the index buffer
-		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexArrayHandle);//bind the index buffer
-		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indexBuffer, GL15.GL_STATIC_DRAW);//set the index buffer
-		
-		indexCount = indexArray.length;//store the number of indexes the model has
+	private Model(String name, FloatBuffer vertexData, IntBuffer indexBuffer, float xOff, float yOff, float zOff)
+	{
+		geometry = getArena().allocate(vertexData, indexBuffer);//store the model's geometry in the shared arena
 		offsetX = xOff;//store the x offset of this model
 		offsetY = yOff;//store the y offset of this model
 		offsetZ = zOff;//store the z offset of this model
+		
+		float left = Float.POSITIVE_INFINITY;
+		float bottom = Float.POSITIVE_INFINITY;
+		float right = Float.NEGATIVE_INFINITY;
+		float top = Float.NEGATIVE_INFINITY;
+		for(int index = vertexData.position(); index + 1 < vertexData.limit(); index += GeometryArena.FLOATS_PER_VERTEX){//find the extent of the model's vertices
+			left = Math.min(left, vertexData.get(index));
+			right = Math.max(right, vertexData.get(index));
+			bottom = Math.min(bottom, vertexData.get(index + 1));
+			top = Math.max(top, vertexData.get(index + 1));
+		}
+		minX = left;
+		minY = bottom;
+		maxX = right;
+		maxY = top;
 	}
 	
 	/**Returns the model object corresponding to the provided name
@@ -83,33 +136,136 @@ public class Model
 		return models.get(name);
 	}
 	
-	/**Renders the model with the provided texture at the specified coordinates.
+	/**Returns the model object corresponding to the provided handle, without any string work or map lookups.
+	 * @param handle The handle of the model to get, from {@link #getHandle()}.
+	 * @return The model with the handle, or null if the model has been deleted.*/
+	public static Model getModel(int handle)
+	{
+		return registry.get(handle);
+	}
+	
+	/**Returns the model's handle, which stays valid until the model is deleted.
+	 * @return The model's handle.*/
+	public int getHandle()
+	{
+		return handle;
+	}
+	
+	/**Renders several instances of the model with a single draw call. The instance attributes must already be set up in the geometry arena's vertex array,
+	 * and the shader and texture must already be bound.
+	 * @param instanceCount The number of instances to render.*/
+	void renderInstances(int instanceCount)
+	{
+		getArena().drawInstanced(geometry, instanceCount);//render every instance
+	}
+	
+	/**Returns the ranges of the geometry arena that this model is stored in, for queueing with {@link GeometryArena#queueDraw(GeometryArena.Allocation)}.
+	 * @return The model's part of the geometry arena.*/
+	public GeometryArena.Allocation getGeometry()
+	{
+		return geometry;
+	}
+	
+	/**Checks whether an instance of the model would be seen.
+	 * @param renderer The renderer to check against.
+	 * @param x The x position of the instance.
+	 * @param y The y position of the instance.
+	 * @param scale The factor the instance is scaled by.
+	 * @return False if the instance is entirely outside the viewport, true otherwise.*/
+	boolean isWithinViewport(Renderer renderer, float x, float y, float scale)
+	{
+		float left = x + offsetX;
+		float bottom = y + offsetY;
+		return renderer.isWithinViewport(left + minX * scale, bottom + minY * scale, offsetZ, left + maxX * scale, bottom + maxY * scale, offsetZ);
+	}
+	
+	/**Returns the offset the model is rendered at in the x direction.
+	 * @return The model's x offset.*/
+	public float getOffsetX()
+	{
+		return offsetX;
+	}
+	
+	/**Returns the offset the model is rendered at in the y direction.
+	 * @return The model's y offset.*/
+	public float getOffsetY()
+	{
+		return offsetY;
+	}
+	
+	/**Renders the model with the provided texture at the specified coordinates. Nothing is rendered if the model is entirely outside the viewport.
+	 * Sprites packed in an atlas are rendered from their part of the atlas page.
 	 * @param renderer The Renderer to render the entity with.
 	 * @param currentShader The name of the shader currently in use.
-	 * @param texture The name of the texture to render this model with.
+	 * @param texture The name of the texture or atlas sprite to render this model with.
 	 * @param x The x position to render this model at.
 	 * @param y The y position to render this model at.*/
 	public void render(Renderer renderer, String currentShader, String texture, float x, float y)
 	{
-		FloatBuffer projection = renderer.getProjection(x + offsetX, y + offsetY, offsetZ);//create a projection for the model
-		renderer.setUniform(currentShader, "projection", projection);//set the projection matrix
+		if(!isWithinViewport(renderer, x, y, 1)){//if the model wouldn't be seen
+			return;//skip drawing it entirely
+		}
 		
 		//TODO more efficient handling of sample indexes
+		TextureAtlas.Region region = renderer.bindTexture(texture, 0);//bind this model's texture
+		draw(renderer, renderer.getShaderHandle(currentShader), x, y, region, null, 0);
+	}
+	
+	/**Renders the model with the provided texture at the specified coordinates, without any string work or map lookups.
+	 * Nothing is rendered if the model is entirely outside the viewport.
+	 * @param renderer The Renderer to render the entity with.
+	 * @param currentShader The handle of the shader currently in use, from {@link Renderer#getShaderHandle(String)}.
+	 * @param texture The handle of the texture to render this model with, from {@link Renderer#acquireTexture(String)}.
+	 * @param x The x position to render this model at.
+	 * @param y The y position to render this model at.
+	 * @throws IllegalStateException If either handle is stale.*/
+	public void render(Renderer renderer, int currentShader, int texture, float x, float y) throws IllegalStateException
+	{
+		if(!isWithinViewport(renderer, x, y, 1)){//if the model wouldn't be seen
+			return;//skip drawing it entirely
+		}
+		
 		renderer.bindTexture(texture, 0);//bind this model's texture
-		renderer.setUniform(currentShader, "sampler", 0);//set the sample of this model's texture
-
-		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);//enable vertex coordinate arrays
-		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);//enable texture coordinate arrays
+		draw(renderer, currentShader, x, y, null, null, 0);
+	}
+	
+	/**Renders the model showing the current frame of an animation clip on its texture. The shader picks the frame from the clip and its start time,
+	 * so the model's texture coordinates never have to be rewritten while the clip plays. Nothing is rendered if the model is entirely outside the viewport.
+	 * @param renderer The Renderer to render the entity with.
+	 * @param currentShader The handle of the shader currently in use, from {@link Renderer#getShaderHandle(String)}.
+	 * @param texture The handle of the sprite sheet texture to render this model with, from {@link Renderer#acquireTexture(String)}.
+	 * @param x The x position to render this model at.
+	 * @param y The y position to render this model at.
+	 * @param clip The clip to play on the model.
+	 * @param startTime The animation clock's time when the clip started playing, from {@link Renderer#getAnimationClock()}.
+	 * @throws IllegalStateException If either handle is stale.*/
+	public void render(Renderer renderer, int currentShader, int texture, float x, float y, AnimationClip clip, float startTime) throws IllegalStateException
+	{
+		if(!isWithinViewport(renderer, x, y, 1)){//if the model wouldn't be seen
+			return;//skip drawing it entirely
+		}
 		
-		//TODO learn how to glVertexAttribPointer better
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexArrayHandle);//bind the vertex coordinate array
-		GL20.glVertexAttribPointer(0, 2, GL11.GL_FLOAT, false, 0, 0);//set the vertex coordinates
-		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, textureArrayHandle);//bind the texture coordinate array
-		GL20.glVertexAttribPointer(1, 2, GL11.GL_FLOAT, false, 0, 0);//set the texture coordinate
-		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexArrayHandle);//bind the index array
-		GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, GL11.GL_UNSIGNED_INT, 0);//render the model
+		renderer.bindTexture(texture, 0);//bind this model's texture
+		draw(renderer, currentShader, x, y, null, clip, startTime);
+	}
+	
+	/**Sets the shader's uniforms for this model and draws it. The model's texture must already be bound to sample 0.
+	 * @param renderer The Renderer to render the entity with.
+	 * @param currentShader The handle of the shader currently in use.
+	 * @param x The x position to render this model at.
+	 * @param y The y position to render this model at.
+	 * @param region The atlas region of the sprite that's bound, or null if a whole texture is bound.
+	 * @param clip The animation clip to play on the model, or null to show its whole texture.
+	 * @param startTime The animation clock's time when the clip started playing.*/
+	private void draw(Renderer renderer, int currentShader, float x, float y, TextureAtlas.Region region, AnimationClip clip, float startTime)
+	{
+		renderer.setUniform(currentShader, Renderer.PROJECTION_UNIFORM, renderer.getViewProjection());//set the camera's projection, which is skipped if it's already set
+		renderer.setUniform(currentShader, Renderer.TRANSLATION_UNIFORM, x + offsetX, y + offsetY, offsetZ);//move the model to its position
+		renderer.setUniform(currentShader, Renderer.SAMPLER_UNIFORM, 0);//set the sample of this model's texture
+		renderer.setTextureRegion(currentShader, region);//map the model's texture coordinates into its sprite, which is skipped if it's unchanged
+		renderer.setAnimation(currentShader, clip, startTime);//set which frame of the texture to show, which is skipped for static models after the first
 		
-		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);//disable vertex coordinate arrays
-		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);//disable vertex coordinate arrays
+		//every model shares the arena's vertex array, so drawing one model after another never changes any buffer or attribute state
+		getArena().draw(geometry);//render the model
 	}
 }
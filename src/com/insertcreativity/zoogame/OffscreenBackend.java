@@ -0,0 +1,132 @@
+package com.insertcreativity.zoogame;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.egl.EGL;
+import org.lwjgl.egl.EGL10;
+import org.lwjgl.egl.EGL14;
+import org.lwjgl.egl.EGLCapabilities;
+import org.lwjgl.egl.EXTPlatformBase;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.Configuration;
+
+/**Renders into an offscreen framebuffer with no display at all, using Mesa's surfaceless EGL platform.
+ * Mesa falls back to its software rasterizer when there's no GPU, so this works on headless build machines for soak tests and frame time benchmarks.
+ * <p>The GL functions are loaded through EGL instead of the platform's usual GL library, which has to be decided before anything else touches GL,
+ * so this must be created before any windows, and can't be mixed with them.</p>*/
+public class OffscreenBackend implements RenderBackend
+{
+	/**The EGL platform for rendering without any surface, from EGL_MESA_platform_surfaceless.*/
+	private static final int EGL_PLATFORM_SURFACELESS_MESA = 0x31DD;
+
+	/**Handle for the EGL display.*/
+	private final long display;
+	/**Handle for the GL context.*/
+	private final long context;
+	/**Handle ID for the framebuffer that frames are rendered into.*/
+	private final int framebuffer;
+	/**Handle ID for the framebuffer's color buffer.*/
+	private final int colorBuffer;
+	/**The width of the framebuffer.*/
+	private final int width;
+	/**The height of the framebuffer.*/
+	private final int height;
+
+	/**Creates an offscreen GL context with a framebuffer to render into, and makes it current on the calling thread.
+	 * @param frameWidth The width of the frames to render. (in pixels)
+	 * @param frameHeight The height of the frames to render. (in pixels)
+	 * @throws IllegalStateException If surfaceless rendering isn't available.*/
+	public OffscreenBackend(int frameWidth, int frameHeight) throws IllegalStateException
+	{
+		Configuration.OPENGL_EXPLICIT_INIT.set(true);//stop GL from loading the platform's GL library, it's loaded through EGL instead
+		if(!EGL.getCapabilities().EGL_EXT_platform_base){//if EGL can't pick a platform
+			throw new IllegalStateException("EGL_EXT_platform_base is not supported");
+		}
+		display = EXTPlatformBase.eglGetPlatformDisplayEXT(EGL_PLATFORM_SURFACELESS_MESA, 0, (int[])null);//get a display that doesn't need a window system
+		if(display == EGL10.EGL_NO_DISPLAY){
+			throw new IllegalStateException("Surfaceless EGL display is not available");
+		}
+		int[] major = new int[1];
+		int[] minor = new int[1];
+		if(!EGL10.eglInitialize(display, major, minor)){
+			throw new IllegalStateException("Failed to initialize EGL: " + EGL10.eglGetError());
+		}
+		EGLCapabilities capabilities = EGL.createDisplayCapabilities(display, major[0], minor[0]);
+		if(!capabilities.EGL_KHR_surfaceless_context){//if contexts can't be made current without a surface
+			EGL10.eglTerminate(display);
+			throw new IllegalStateException("EGL_KHR_surfaceless_context is not supported");
+		}
+		
+		EGL14.eglBindAPI(EGL14.EGL_OPENGL_API);//use desktop GL rather than GLES
+		PointerBuffer configs = BufferUtils.createPointerBuffer(1);
+		int[] configCount = new int[1];
+		int[] attributes = {EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT, EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_BIT,
+		                    EGL10.EGL_RED_SIZE, 8, EGL10.EGL_GREEN_SIZE, 8, EGL10.EGL_BLUE_SIZE, 8, EGL10.EGL_ALPHA_SIZE, 8, EGL10.EGL_NONE};
+		if(!EGL10.eglChooseConfig(display, attributes, configs, configCount) || (configCount[0] == 0)){
+			EGL10.eglTerminate(display);
+			throw new IllegalStateException("No suitable EGL config: " + EGL10.eglGetError());
+		}
+		context = EGL10.eglCreateContext(display, configs.get(0), EGL10.EGL_NO_CONTEXT, (int[])null);//create a compatibility context, like GLFW does by default
+		if((context == EGL10.EGL_NO_CONTEXT) || !EGL10.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, context)){
+			EGL10.eglTerminate(display);
+			throw new IllegalStateException("Failed to create GL context: " + EGL10.eglGetError());
+		}
+		GL.create(EGL.getFunctionProvider());//load GL's functions through EGL
+		GL.createCapabilities();
+		
+		width = frameWidth;
+		height = frameHeight;
+		framebuffer = GL30.glGenFramebuffers();//create a framebuffer to stand in for the window
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		colorBuffer = GL30.glGenRenderbuffers();
+		GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, colorBuffer);
+		GL30.glRenderbufferStorage(GL30.GL_RENDERBUFFER, GL11.GL_RGBA8, width, height);
+		GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL30.GL_RENDERBUFFER, colorBuffer);
+		if(GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER) != GL30.GL_FRAMEBUFFER_COMPLETE){
+			destroy();
+			throw new IllegalStateException("Offscreen framebuffer is incomplete");
+		}
+		GL11.glViewport(0, 0, width, height);
+	}
+
+	/**There's nothing to poll offscreen, so the backend never closes by itself.
+	 * @return Always true.*/
+	public boolean update()
+	{
+		return true;
+	}
+
+	/**Waits for the frame to finish rendering, so frame times include the GPU's work just like a swap would.*/
+	public void render()
+	{
+		GL11.glFinish();
+	}
+
+	/**Returns the width of the frames being rendered.
+	 * @return The width of the framebuffer. (in pixels)*/
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**Returns the height of the frames being rendered.
+	 * @return The height of the framebuffer. (in pixels)*/
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**Deletes the framebuffer and destroys the GL context.*/
+	public void destroy()
+	{
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+		GL30.glDeleteRenderbuffers(colorBuffer);
+		GL30.glDeleteFramebuffers(framebuffer);
+		EGL10.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+		EGL10.eglDestroyContext(display, context);
+		EGL10.eglTerminate(display);
+		GL.setCapabilities(null);
+	}
+}
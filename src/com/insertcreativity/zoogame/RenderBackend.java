@@ -0,0 +1,13 @@
+package com.insertcreativity.zoogame;
+
+/**Provides the GL context that the game renders into, and presents each finished frame.
+ * The game's rendering code only ever talks to the current GL context, so it runs unchanged on any backend.*/
+public interface RenderBackend
+{
+	/**This method is called at the start of each frame to process anything the backend received since the last frame.
+	 * @return False if the backend was closed and the game should stop, true otherwise.*/
+	public boolean update();
+	
+	/**This method is called once a frame has been rendered, to present it.*/
+	public void render();
+}
@@ -0,0 +1,11 @@
+package com.insertcreativity.zoogame;
+
+/**A copy of everything a screen needs to render one update, made on the simulation thread and rendered on the GL thread.
+ * Snapshots are reused, so a screen fills in an existing snapshot each update instead of creating a new one.*/
+public interface RenderSnapshot
+{
+	/**This method is called on the GL thread to render the snapshot. It must only read the snapshot, never the screen's live state.
+	 * @param renderer Reference to the object this snapshot should render with.
+	 * @param interpolation How far between the snapshot's previous and current update the frame is, from 0 up to 1.*/
+	public void render(Renderer renderer, float interpolation);
+}
@@ -1,40 +1,93 @@
-//implement delete methods for textures and shaders
+//implement delete methods for shaders
 package com.insertcreativity.zoogame;
 
-import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import javax.imageio.ImageIO;
+import java.util.HashSet;
+import java.util.Map;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
 
 public class Renderer
 {
-	/**The x coordinate of the camera.*/
-	private float cameraX;
-	/**The y coordinate of the camera.*/
-	private float cameraY;
-	/**The z coordinate of the camera.*/
-	private float cameraZ;
-	/**The zoom factor of the camera.*/
-	private float cameraZoom;
-	/**The width of the viewport.*/
-	private int viewportWidth;
-	/**The height of the viewport.*/
-	private int viewportHeight;
-	/**A 4x4 matrix for the camera's viewport projection*/
-	private final FloatBuffer viewportProjection;
-	/**Map containing the names and handle IDs for all the shaders in use by this renderer.*/
-	private final HashMap<String, Integer> shaders;
-	/**Map containing the names and objects for all the textures loaded by this renderer.*/
-	private static final HashMap<String, Texture> textures = new HashMap<String, Texture>();
+	/**Map containing the names and IDs of every uniform variable name that's been given an ID.*/
+	private static final HashMap<String, Integer> uniformIds = new HashMap<String, Integer>();
+	/**The name of the uniform variable with each ID.*/
+	private static final ArrayList<String> uniformNames = new ArrayList<String>();
+	/**The ID of the projection uniform, which holds the camera's view-projection matrix.*/
+	public static final int PROJECTION_UNIFORM = getUniformId("projection");
+	/**The ID of the translation uniform, which moves a model to its position.*/
+	public static final int TRANSLATION_UNIFORM = getUniformId("translation");
+	/**The ID of the sampler uniform, which holds the sample of the texture being rendered with.*/
+	public static final int SAMPLER_UNIFORM = getUniformId("sampler");
+	/**The ID of the time uniform, which holds the animation clock's time at the start of the frame.*/
+	public static final int TIME_UNIFORM = getUniformId("time");
+	/**The ID of the animation uniform, which holds the first frame, frame count and frame rate of a model's animation clip.*/
+	public static final int ANIMATION_UNIFORM = getUniformId("animation");
+	/**The ID of the animation sheet uniform, which holds the columns and rows of a model's sprite sheet and the time its animation started.*/
+	public static final int ANIMATION_SHEET_UNIFORM = getUniformId("animationSheet");
+	/**Uniform ID of the part of the bound texture that texture coordinates are mapped into, for sprites packed in an atlas.*/
+	public static final int TEXTURE_REGION_UNIFORM = getUniformId("textureRegion");
+	/**The time the animation clock started at. (in nanoseconds)*/
+	private static final long ANIMATION_EPOCH = System.nanoTime();
+	
+	/**The game's main camera, which follows the viewport's size.*/
+	private final Camera mainCamera;
+	/**The animation clock's time at the start of the current frame, which every animation drawn in the frame is shown at. (in seconds)*/
+	private float frameTime;
+	/**The camera that's currently being rendered with, which is either the main camera or a parallax layer.*/
+	private Camera camera;
+	/**Buffer holding the active camera's view-projection matrix, ready for uploading.*/
+	private final FloatBuffer projectionBuffer;
+	/**The camera whose matrix is in the projection buffer, or null if the buffer hasn't been filled yet.*/
+	private Camera bufferedCamera;
+	/**The version of the camera's matrix that's in the projection buffer.*/
+	private int bufferedVersion;
+	/**Map containing the names and objects for all the shaders in use by this renderer.*/
+	private final HashMap<String, Shader> shaders;
+	/**Registry of the handles given out for the shaders in use by this renderer.*/
+	private final ResourceRegistry<Shader> shaderHandles;
+	/**Map containing the names of shaders and the GLSL files they were compiled from, for shaders that came from a file.*/
+	private final HashMap<String, String> shaderFiles;
+	/**Cache of linked shader programs that shaders are loaded through, or null if shaders are always compiled from source.*/
+	private ShaderCache shaderCache;
+	/**String identifying the GL driver that program binaries are only valid for, or null if it hasn't been queried yet.*/
+	private String driverIdentity;
+	/**Watcher for shader source files that changed during development, or null if shaders aren't reloaded.*/
+	private ShaderWatcher shaderWatcher;
+	/**Cache of precooked textures that textures are read through, or null if textures are always decoded from PNG.*/
+	private static volatile TextureCache textureCache;
+	/**Cache of the GL state, which every GL call made while rendering goes through.*/
+	private static final GLState glState = new GLState();
+	/**Manager for all the textures loaded by this renderer, which decides which textures are resident on the GPU.*/
+	private static final TextureManager textureManager = new TextureManager(glState);
+	/**Map containing the names and atlas regions for all the sprites packed into loaded atlases.*/
+	private static final HashMap<String, TextureAtlas.Region> atlasRegions = new HashMap<String, TextureAtlas.Region>();
+	/**Map containing the names of all the loaded atlases and the atlases themselves.*/
+	private static final HashMap<String, TextureAtlas> atlases = new HashMap<String, TextureAtlas>();
+	/**The number of objects found to be inside the viewport so far this frame.*/
+	private int visibleCount;
+	/**The number of objects found to be outside the viewport so far this frame.*/
+	private int culledCount;
+	/**The number of objects that were inside the viewport last frame.*/
+	private int lastVisibleCount;
+	/**The number of objects that were culled last frame.*/
+	private int lastCulledCount;
 	
 	/**Creates a new Renderer object used for rendering the game and it's content to the screen.
 	 * @param viewWidth The width of the viewport the game is being rendered in.
@@ -44,38 +97,61 @@ public class Renderer
 	 * @param posZ The initial z coordinate of the camera.
 	 * @param zoom The initial zoom level of the camera.*/
 	public Renderer(int viewWidth, int viewHeight, float posX, float posY, float posZ, float zoom) throws IllegalStateException
-	{		
-		cameraX = posX;//set the camera's initial x coordinate
-		cameraY = posY;//set the camera's initial y coordinate
-		cameraZ = posZ;//set the camera's initial z coordinate
-		cameraZoom = zoom;//set the camera's initial zoom
-		viewportWidth = viewWidth;//set the width of the viewport
-		viewportHeight = viewHeight;//set the height of the viewport
-		
-		viewportProjection = BufferUtils.createFloatBuffer(16);//create a new float buffer for the projection
-		viewportProjection.put(0, 2 * zoom / viewWidth);//set the x component of the projection
-		viewportProjection.put(1, 0);
-		viewportProjection.put(2, 0);
-		viewportProjection.put(3, 0);
-		viewportProjection.put(4, 0);
-		viewportProjection.put(5, 2 * zoom / viewHeight);//set the y component of the projection
-		viewportProjection.put(6, 0);
-		viewportProjection.put(7, 0);
-		viewportProjection.put(8, 0);
-		viewportProjection.put(9, 0);
-		viewportProjection.put(10, -zoom);//set the z component of the projection
-		viewportProjection.put(11, 0);
-		viewportProjection.put(15, 1);
+	{
+		this(viewWidth, viewHeight, posX, posY, posZ, zoom, true);
+	}
+	
+	/**Creates a new Renderer object, optionally without setting up the GL context. A renderer that doesn't set up the context can only be used for
+	 * camera, projection and culling maths, which lets that code run headless in benchmarks and tools.
+	 * @param viewWidth The width of the viewport the game is being rendered in.
+	 * @param viewHeight The height of the viewport the game is being rendered in.
+	 * @param posX The initial x coordinate of the camera.
+	 * @param posY The initial y coordinate of the camera.
+	 * @param posZ The initial z coordinate of the camera.
+	 * @param zoom The initial zoom level of the camera.
+	 * @param setupContext Whether to set up the current GL context for rendering, which requires a context to be current on the calling thread.*/
+	public Renderer(int viewWidth, int viewHeight, float posX, float posY, float posZ, float zoom, boolean setupContext) throws IllegalStateException
+	{
+		mainCamera = new Camera(viewWidth, viewHeight, posX, posY, posZ, zoom);//create the game's camera
+		camera = mainCamera;
+		projectionBuffer = BufferUtils.createFloatBuffer(16);//create a new float buffer for uploading the projection
 		
-		GL.createCapabilities();//create the context's capabilities
-		GL11.glClearColor(0f, 0f, 0f, 1f);//set the buffer clear color
-		GL11.glEnable(GL11.GL_TEXTURE_2D);//enable 2D texture rendering
-		GL11.glEnable(GL11.GL_BLEND);//enable texture transparency
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);//set the transparency blending function
-		GL20.glEnableVertexAttribArray(0);//enable a attribute array index for storing vertex coordinates
-		GL20.glEnableVertexAttribArray(1);//enable a attribute array index for storing texture coordinates
+		if(setupContext){//if the renderer is going to be rendering
+			GL.createCapabilities();//create the context's capabilities
+			GL11.glClearColor(0f, 0f, 0f, 1f);//set the buffer clear color
+			GL11.glEnable(GL11.GL_TEXTURE_2D);//enable 2D texture rendering
+			GL11.glEnable(GL11.GL_BLEND);//enable texture transparency
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);//set the transparency blending function
+			glState.invalidate();//the new context's state is unknown
+			glState.enableVertexAttribArray(0);//enable a attribute array index for storing vertex coordinates
+			glState.enableVertexAttribArray(1);//enable a attribute array index for storing texture coordinates
+		}
 		
-		shaders = new HashMap<String, Integer>();//create a new map for storing shaders in
+		shaders = new HashMap<String, Shader>();//create a new map for storing shaders in
+		shaderHandles = new ResourceRegistry<Shader>("shader");
+		shaderFiles = new HashMap<String, String>();
+	}
+	
+	/**Clears the current frame to the background color, this should be done at the start of each frame.*/
+	public void clear()
+	{
+		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);//clear the frame
+		frameTime = getAnimationClock();//show every animation in the frame at the same time
+	}
+	
+	/**Returns the time on the clock that animations are timed by, which can be read from any thread. Animations are started by recording this time,
+	 * and the shader works out which frame to show from it, so nothing about an animation has to be uploaded again while it plays.
+	 * @return The time since the clock started. (in seconds)*/
+	public static float getAnimationClock()
+	{
+		return (System.nanoTime() - ANIMATION_EPOCH) / 1e9f;
+	}
+	
+	/**Returns the animation clock's time at the start of the current frame.
+	 * @return The frame's animation time. (in seconds)*/
+	public float getFrameTime()
+	{
+		return frameTime;
 	}
 	
 	/**Sets the background color.
@@ -99,10 +175,42 @@ public class Renderer
 			return;//do nothing
 		}
 		
+		String[] sources = parseShaderSource(shaderSource);//load and split the shader's source code
+		createShader(shaderName, sources[0], sources[1]);//load and compile the shader from the loaded source
+		setShaderFile(shaderName, shaderSource);
+	}
+	
+	/**Records which GLSL file a shader was compiled from, so the shader is recompiled whenever that file changes while shaders are being watched.
+	 * @param shaderName The name of the shader.
+	 * @param shaderSource Name of the file containing the shader's GLSL source code.*/
+	public void setShaderFile(String shaderName, String shaderSource)
+	{
+		shaderFiles.put(shaderName, shaderSource);
+	}
+	
+	/**Loads a GLSL file and splits it into its vertex and fragment sections. This doesn't need a GL context, so it can be done on any thread.
+	 * @param shaderSource Name of the file containing the GLSL source code. Note the file is resolved from the classpath.
+	 * @return Array containing the vertex shader source code followed by the fragment shader source code.
+	 * @throws IOException If the shader source code couldn't be loaded successfully.*/
+	public static String[] parseShaderSource(String shaderSource) throws IOException
+	{
+		InputStream resource = Renderer.class.getResourceAsStream("/shaders/" + shaderSource);
+		if(resource == null){//if the GLSL source file doesn't exist
+			throw new IOException("Missing shader file: " + shaderSource);
+		}
+		return parseShaderSource(new BufferedReader(new InputStreamReader(resource, "UTF-8")));
+	}
+	
+	/**Splits GLSL source code into its vertex and fragment sections, which are marked by //<vertex> and //<fragment> tags.
+	 * @param sourceReader Reader containing the GLSL source code, which is closed once it's been read.
+	 * @return Array containing the vertex shader source code followed by the fragment shader source code.
+	 * @throws IOException If the shader source code couldn't be read or was malformed.*/
+	public static String[] parseShaderSource(BufferedReader sourceReader) throws IOException
+	{
 		StringBuilder vertexShaderSource = new StringBuilder();//create a string-builder for storing the vertex shader source code
 		StringBuilder fragmentShaderSource = new StringBuilder();//create a string-builder for storing the fragment shader source code
 
-		try(BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/shaders/" + shaderSource), "UTF-8"))){//open the GLSL source file
+		try(BufferedReader bufferedReader = sourceReader){//make sure the GLSL source is closed
 			String line = bufferedReader.readLine();//read the first line of the shader source code
 			while(line != null){//continues reading from the file until EOF is reached
 				if(line.equals("//<vertex>")){//if the following lines are vertex source code
@@ -135,10 +243,11 @@ public class Renderer
 			}
 		}
 		
-		createShader(shaderName, vertexShaderSource.toString(), fragmentShaderSource.toString());//load and compile the shader from the loaded source
+		return new String[]{vertexShaderSource.toString(), fragmentShaderSource.toString()};
 	}
 		
-	/**Creates a new shader by compiling the provided strings as GLSL source code
+	/**Creates a new shader by compiling the provided strings as GLSL source code, or by loading the linked program from the shader cache
+	 * if it was already compiled for the same source code by the same driver.
 	 * @param shaderName The name to store this shader under in the shader map.
 	 * @param vertexShaderSource String containing GLSL source code to compile into the vertex shader.
 	 * @param fragmentShaderSource String containing GLSL source code to compile into the fragment shader.
@@ -148,51 +257,245 @@ public class Renderer
 		if(shaders.containsKey(shaderName)){//if this shader has already been created
 			return;//do nothing
 		}
-		
-		int handle = GL20.glCreateProgram();//create a new shader program
-		
-		int vs = GL20.glCreateShader(GL20.GL_VERTEX_SHADER);//create a vertex shader
-		GL20.glShaderSource(vs, vertexShaderSource);//attach the GLSL vertex shader source code
-		GL20.glCompileShader(vs);//compile the vertex shader
-		if(GL20.glGetShaderi(vs, GL20.GL_COMPILE_STATUS) != 1){//if the vertex shader failed to compile
-			throw new IllegalStateException("Failed to compile shader\n" + GL20.glGetShaderInfoLog(vs));
+		Shader shader = new Shader(createProgram(shaderName, vertexShaderSource, fragmentShaderSource));
+		shader.handle = shaderHandles.add(shader);
+		shaders.put(shaderName, shader);//add the shader's name and object to the shader map
+	}
+	
+	/**Returns the handle of a shader, which binds the shader and sets its uniforms without any string work or map lookups.
+	 * @param shaderName The name of the shader.
+	 * @return The shader's handle, or {@link ResourceRegistry#NONE} if there's no shader with that name.*/
+	public int getShaderHandle(String shaderName)
+	{
+		Shader shader = shaders.get(shaderName);
+		return ((shader != null)? shader.handle : ResourceRegistry.NONE);
+	}
+	
+	/**Returns the ID for a uniform variable name, assigning a new ID if this is the first time the name's been seen.
+	 * Uniforms can be set by ID without any string work, which is meant for the render path.
+	 * @param uniform The name of the uniform variable.
+	 * @return The uniform's ID.*/
+	public static synchronized int getUniformId(String uniform)
+	{
+		Integer id = uniformIds.get(uniform);
+		if(id == null){//if the name hasn't been seen before
+			id = uniformNames.size();
+			uniformIds.put(uniform, id);
+			uniformNames.add(uniform);
+		}
+		return id;
+	}
+	
+	/**Returns the name of the uniform variable with an ID.
+	 * @param uniformId The ID of the uniform.
+	 * @return The uniform's name.*/
+	private static synchronized String getUniformName(int uniformId)
+	{
+		return uniformNames.get(uniformId);
+	}
+	
+	/**Creates a shader program, loading it from the shader cache if possible and compiling it from source otherwise.
+	 * Programs compiled from source are stored in the cache for next time.
+	 * @param shaderName The name of the shader, which the program is cached under.
+	 * @param vertexShaderSource String containing GLSL source code to compile into the vertex shader.
+	 * @param fragmentShaderSource String containing GLSL source code to compile into the fragment shader.
+	 * @return The handle ID of the new program.
+	 * @throws IllegalStateException If the program couldn't be compiled or loaded correctly.*/
+	private int createProgram(String shaderName, String vertexShaderSource, String fragmentShaderSource) throws IllegalStateException
+	{
+		ShaderCache cache = (isProgramBinarySupported()? shaderCache : null);//program binaries can't be used without driver support
+		byte[] key = null;
+		if(cache != null){//if programs are being cached
+			key = ShaderCache.createKey(getDriverIdentity(), vertexShaderSource, fragmentShaderSource);
+			ShaderCache.ProgramBinary stored = cache.load(shaderName, key);
+			if(stored != null){//if the program was already linked for this source and driver
+				int handle = GL20.glCreateProgram();
+				GL41.glProgramBinary(handle, stored.format, stored.binary);//the binary keeps the attribute locations it was linked with
+				if(GL20.glGetProgrami(handle, GL20.GL_LINK_STATUS) == 1){//if the driver accepted the binary
+					return handle;
+				}
+				GL20.glDeleteProgram(handle);//drivers can reject binaries for any reason, so fall back to compiling from source
+			}
 		}
 		
-		int fs = GL20.glCreateShader(GL20.GL_FRAGMENT_SHADER);//create a fragment shader
-		GL20.glShaderSource(fs, fragmentShaderSource);//attach the GLSL fragment shader source code
-		GL20.glCompileShader(fs);//compile the fragment shader
-		if(GL20.glGetShaderi(fs, GL20.GL_COMPILE_STATUS) != 1){//if the fragment shader failed to compile
-			throw new IllegalStateException("Failed to compile shader\n" + GL20.glGetShaderInfoLog(fs));
+		int handle = compileProgram(vertexShaderSource, fragmentShaderSource, cache != null);
+		if(cache != null){//if the program should be cached
+			IntBuffer length = BufferUtils.createIntBuffer(1);
+			IntBuffer format = BufferUtils.createIntBuffer(1);
+			ByteBuffer binary = BufferUtils.createByteBuffer(Math.max(1, GL20.glGetProgrami(handle, GL41.GL_PROGRAM_BINARY_LENGTH)));
+			GL41.glGetProgramBinary(handle, length, format, binary);//read back the linked program
+			if(length.get(0) > 0){//if the driver provided a binary
+				binary.limit(length.get(0));
+				cache.store(shaderName, key, format.get(0), binary);
+			}
+		}
+		return handle;
+	}
+	
+	/**Compiles and links a new shader program from GLSL source code.
+	 * @param vertexShaderSource String containing GLSL source code to compile into the vertex shader.
+	 * @param fragmentShaderSource String containing GLSL source code to compile into the fragment shader.
+	 * @param retrievable Whether the linked program's binary is going to be read back for the shader cache.
+	 * @return The handle ID of the new program.
+	 * @throws IllegalStateException If the program couldn't be compiled or linked, in which case nothing is left allocated.*/
+	private static int compileProgram(String vertexShaderSource, String fragmentShaderSource, boolean retrievable) throws IllegalStateException
+	{
+		int vs = compileShader(GL20.GL_VERTEX_SHADER, vertexShaderSource);//compile the vertex shader
+		int fs;
+		try{
+			fs = compileShader(GL20.GL_FRAGMENT_SHADER, fragmentShaderSource);//compile the fragment shader
+		} catch(IllegalStateException illegalStateException){
+			GL20.glDeleteShader(vs);
+			throw illegalStateException;
 		}
 		
+		int handle = GL20.glCreateProgram();//create a new shader program
 		GL20.glAttachShader(handle, vs);//attach the vertex shader to the shader program
 		GL20.glAttachShader(handle, fs);//attach the fragment shader to the shader program
 		
 		GL20.glBindAttribLocation(handle, 0, "vertices");//create an attribute for the vertices
 		GL20.glBindAttribLocation(handle, 1, "textureCoords");//create an attribute for the texture coordinates
+		GL20.glBindAttribLocation(handle, 2, "instanceOffset");//create an attribute for the position and scale of instances
+		GL20.glBindAttribLocation(handle, 3, "instanceRegion");//create an attribute for the texture region of instances
+		GL20.glBindAttribLocation(handle, 4, "instanceAnimation");//create an attribute for the animation clip and start time of instances
+		GL20.glBindAttribLocation(handle, 5, "instanceSheet");//create an attribute for the sprite sheet grid of instances
+		if(retrievable){//if the binary is going to be read back
+			GL41.glProgramParameteri(handle, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);//this must be set before linking
+		}
 		
 		GL20.glLinkProgram(handle);//link the shader program
+		GL20.glDetachShader(handle, vs);//detach the vertex shader from the program
+		GL20.glDetachShader(handle, fs);//detach the fragment shader from the program
+		GL20.glDeleteShader(vs);//delete the vertex shader
+		GL20.glDeleteShader(fs);//delete the fragment shader
+		
 		if(GL20.glGetProgrami(handle, GL20.GL_LINK_STATUS) != 1){//if the shader program couldn't be linked
-			throw new IllegalStateException("Failed to link shader\n" + GL20.glGetProgramInfoLog(handle));
+			String log = GL20.glGetProgramInfoLog(handle);
+			GL20.glDeleteProgram(handle);
+			throw new IllegalStateException("Failed to link shader\n" + log);
 		}
 		GL20.glValidateProgram(handle);//validate the shader program
 		if(GL20.glGetProgrami(handle, GL20.GL_VALIDATE_STATUS) != 1){//if the shader program was invalid
-			throw new IllegalStateException("Failed to validate shader\n" + GL20.glGetProgramInfoLog(handle));
+			String log = GL20.glGetProgramInfoLog(handle);
+			GL20.glDeleteProgram(handle);
+			throw new IllegalStateException("Failed to validate shader\n" + log);
+		}
+		return handle;
+	}
+	
+	/**Compiles a single shader stage.
+	 * @param type The type of shader to compile, such as GL_VERTEX_SHADER.
+	 * @param source String containing the GLSL source code to compile.
+	 * @return The handle ID of the compiled shader.
+	 * @throws IllegalStateException If the shader failed to compile, in which case it's deleted.*/
+	private static int compileShader(int type, String source) throws IllegalStateException
+	{
+		int shader = GL20.glCreateShader(type);//create the shader
+		GL20.glShaderSource(shader, source);//attach the GLSL source code
+		GL20.glCompileShader(shader);//compile the shader
+		if(GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) != 1){//if the shader failed to compile
+			String log = GL20.glGetShaderInfoLog(shader);
+			GL20.glDeleteShader(shader);
+			throw new IllegalStateException("Failed to compile shader\n" + log);
+		}
+		return shader;
+	}
+	
+	/**Checks whether linked programs can be saved and loaded as binaries, which needs OpenGL 4.1 or ARB_get_program_binary,
+	 * and a driver that supports at least one binary format.
+	 * @return True if program binaries can be used, false otherwise.*/
+	private static boolean isProgramBinarySupported()
+	{
+		GLCapabilities capabilities = GL.getCapabilities();
+		return (capabilities.OpenGL41 || capabilities.GL_ARB_get_program_binary) && (GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0);
+	}
+	
+	/**Returns a string identifying the current GL driver, since a program binary can only be loaded by the exact driver that created it.
+	 * @return The driver's vendor, renderer and version strings.*/
+	private String getDriverIdentity()
+	{
+		if(driverIdentity == null){//if the driver hasn't been queried yet
+			driverIdentity = GL11.glGetString(GL11.GL_VENDOR) + '\n' + GL11.glGetString(GL11.GL_RENDERER) + '\n' + GL11.glGetString(GL11.GL_VERSION);
+		}
+		return driverIdentity;
+	}
+	
+	/**Sets the cache that shader programs are loaded through. Shaders are compiled from source every time if no cache is set,
+	 * or if the driver can't save program binaries.
+	 * @param cache The shader cache to use, or null to stop using a cache.*/
+	public void setShaderCache(ShaderCache cache)
+	{
+		shaderCache = cache;
+	}
+	
+	/**Starts watching a directory of shader source files, for development. Whenever a file changes, every shader compiled from it
+	 * is recompiled by the next call to {@link #reloadChangedShaders()}.
+	 * @param directory The directory containing the shader source files, such as src/shaders.
+	 * @throws IOException If the directory couldn't be watched.*/
+	public void watchShaders(File directory) throws IOException
+	{
+		if(shaderWatcher != null){//if a directory is already being watched
+			shaderWatcher.close();
+		}
+		shaderWatcher = new ShaderWatcher(directory);
+	}
+	
+	/**Recompiles every shader whose source file changed since this was last called, swapping the new program in place of the old one.
+	 * If a shader fails to compile, the error is printed and the old program is kept, so a typo doesn't stop the game.
+	 * This does nothing unless shaders are being watched, and must be called on the thread the GL context is current on.
+	 * @return The number of shaders that were reloaded.*/
+	public int reloadChangedShaders()
+	{
+		if(shaderWatcher == null){//if shaders aren't being watched
+			return 0;
+		}
+		HashSet<String> changedFiles = new HashSet<String>();//collect the changed files, since each save can be reported more than once
+		for(String file = shaderWatcher.poll(); file != null; file = shaderWatcher.poll()){
+			changedFiles.add(file);
 		}
 		
-		GL20.glDetachShader(handle, vs);//detach the vertex shader from the program
-		GL20.glDetachShader(handle, fs);//detach the fragment shader from the program
-		GL20.glDeleteShader(vs);//delete the vertex shader
-		GL20.glDeleteShader(fs);//delete the fragment shader
-		
-		shaders.put(shaderName, handle);//add the shader's name and handle to the shader map
+		int reloaded = 0;
+		for(Map.Entry<String, String> entry : shaderFiles.entrySet()){
+			if(!changedFiles.contains(entry.getValue())){//if the shader's source didn't change
+				continue;
+			}
+			String shaderName = entry.getKey();
+			Shader shader = shaders.get(shaderName);
+			try(BufferedReader reader = Files.newBufferedReader(new File(shaderWatcher.getDirectory(), entry.getValue()).toPath(), StandardCharsets.UTF_8)){
+				String[] sources = parseShaderSource(reader);//read the source straight from the directory, the classpath copy is stale
+				int program = createProgram(shaderName, sources[0], sources[1]);
+				int oldProgram = shader.program;
+				shader.setProgram(program);//swap the new program in, the shader's handle stays the same
+				boolean bound = (glState.getProgram() == oldProgram);
+				GL20.glDeleteProgram(oldProgram);
+				glState.forgetProgram(oldProgram);
+				if(bound){//if the old program was in use, keep the shader in use
+					glState.useProgram(program);
+				}
+				reloaded++;
+				System.out.println("Reloaded shader: " + shaderName);
+			} catch(IOException ioException){
+				System.err.println("Failed to reload shader " + shaderName + ": " + ioException.getMessage());
+			} catch(IllegalStateException illegalStateException){
+				System.err.println("Failed to reload shader " + shaderName + ": " + illegalStateException.getMessage());
+			}
+		}
+		return reloaded;
 	}
 	
 	/**Binds the specified shader for use.
 	 * @param shaderName The name of the shader to bind.*/
 	public void bindShader(String shaderName)
 	{
-		GL20.glUseProgram(shaders.get(shaderName));//load the specified shader
+		glState.useProgram(shaders.get(shaderName).program);//load the specified shader
+	}
+	
+	/**Binds the specified shader for use.
+	 * @param shaderHandle The handle of the shader to bind, from {@link #getShaderHandle(String)}.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void bindShader(int shaderHandle) throws IllegalStateException
+	{
+		glState.useProgram(shaderHandles.resolve(shaderHandle).program);//load the specified shader
 	}
 	
 	/**Sets the value of a uniform variable for the specified shader.
@@ -201,10 +504,8 @@ public class Renderer
 	 * @param i The value to set the uniform to.*/
 	public void setUniform(String shaderName, String uniform, int i)
 	{
-		int location = GL20.glGetUniformLocation(shaders.get(shaderName), uniform);//get the location of the specified uniform
-		if(location != -1){//if the uniform exists
-			GL20.glUniform1i(location, i);//set the value of the uniform
-		}
+		int handle = shaders.get(shaderName).program;//get the handle of the specified shader
+		glState.setUniform(handle, glState.getUniformLocation(handle, uniform), i);//set the value of the uniform if it exists
 	}
 	
 	/**Sets the value of a uniform variable for the specified shader.
@@ -213,92 +514,339 @@ public class Renderer
 	 * @param fb The value to set the uniform to.*/
 	public void setUniform(String shaderName, String uniform, FloatBuffer fb)
 	{
-		int location = GL20.glGetUniformLocation(shaders.get(shaderName), uniform);//get the location of the specified uniform
-		if(location != -1){//if the uniform exists
-			GL20.glUniformMatrix4fv(location, false, fb);//set the value of the uniform
+		int handle = shaders.get(shaderName).program;//get the handle of the specified shader
+		glState.setUniformMatrix(handle, glState.getUniformLocation(handle, uniform), fb);//set the value of the uniform if it exists
+	}
+	
+	/**Sets the value of a vector uniform variable for the specified shader.
+	 * @param shaderName The name of the shader to set the variable for.
+	 * @param uniform The name of the uniform variable that is being set.
+	 * @param x The x component to set the uniform to.
+	 * @param y The y component to set the uniform to.
+	 * @param z The z component to set the uniform to.*/
+	public void setUniform(String shaderName, String uniform, float x, float y, float z)
+	{
+		int handle = shaders.get(shaderName).program;//get the handle of the specified shader
+		glState.setUniform(handle, glState.getUniformLocation(handle, uniform), x, y, z);//set the value of the uniform if it exists
+	}
+	
+	/**Sets the value of a uniform variable for the specified shader.
+	 * @param shaderHandle The handle of the shader to set the variable for, from {@link #getShaderHandle(String)}.
+	 * @param uniformId The ID of the uniform variable that is being set, from {@link #getUniformId(String)}.
+	 * @param i The value to set the uniform to.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setUniform(int shaderHandle, int uniformId, int i) throws IllegalStateException
+	{
+		Shader shader = shaderHandles.resolve(shaderHandle);//get the specified shader
+		glState.setUniform(shader.program, shader.getLocation(uniformId), i);//set the value of the uniform if it exists
+	}
+	
+	/**Sets the value of a uniform variable for the specified shader.
+	 * @param shaderHandle The handle of the shader to set the variable for, from {@link #getShaderHandle(String)}.
+	 * @param uniformId The ID of the uniform variable that is being set, from {@link #getUniformId(String)}.
+	 * @param fb The value to set the uniform to.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setUniform(int shaderHandle, int uniformId, FloatBuffer fb) throws IllegalStateException
+	{
+		Shader shader = shaderHandles.resolve(shaderHandle);//get the specified shader
+		glState.setUniformMatrix(shader.program, shader.getLocation(uniformId), fb);//set the value of the uniform if it exists
+	}
+	
+	/**Sets the value of a uniform variable for the specified shader.
+	 * @param shaderHandle The handle of the shader to set the variable for, from {@link #getShaderHandle(String)}.
+	 * @param uniformId The ID of the uniform variable that is being set, from {@link #getUniformId(String)}.
+	 * @param f The value to set the uniform to.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setUniform(int shaderHandle, int uniformId, float f) throws IllegalStateException
+	{
+		Shader shader = shaderHandles.resolve(shaderHandle);//get the specified shader
+		glState.setUniform(shader.program, shader.getLocation(uniformId), f);//set the value of the uniform if it exists
+	}
+	
+	/**Sets the texture region uniform for the specified shader, so the next draw maps its texture coordinates into a sprite's part of an atlas page.
+	 * Drawing a whole texture has to be set too, or the last region set on the shader would be shown.
+	 * @param shaderHandle The handle of the shader to set the region for, from {@link #getShaderHandle(String)}.
+	 * @param region The atlas region to show, or null to show the whole texture.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setTextureRegion(int shaderHandle, TextureAtlas.Region region) throws IllegalStateException
+	{
+		Shader shader = shaderHandles.resolve(shaderHandle);//get the specified shader
+		if(region != null){//the region's top edge has the lower v
+			glState.setUniform(shader.program, shader.getLocation(TEXTURE_REGION_UNIFORM), region.u1, region.v2, region.u2 - region.u1, region.v1 - region.v2);
+		} else{
+			glState.setUniform(shader.program, shader.getLocation(TEXTURE_REGION_UNIFORM), 0, 0, 1, 1);
 		}
 	}
 	
+	/**Sets the animation uniforms for the specified shader, so the next draw shows the current frame of a clip.
+	 * Drawing without a clip shows the whole texture, and has to be set too, or the last clip set on the shader would be shown.
+	 * @param shaderHandle The handle of the shader to set the animation for, from {@link #getShaderHandle(String)}.
+	 * @param clip The clip to show, or null to show the whole texture.
+	 * @param startTime The animation clock's time when the clip started playing, from {@link #getAnimationClock()}.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setAnimation(int shaderHandle, AnimationClip clip, float startTime) throws IllegalStateException
+	{
+		setUniform(shaderHandle, TIME_UNIFORM, frameTime);
+		if(clip != null){
+			setUniform(shaderHandle, ANIMATION_UNIFORM, clip.firstFrame, clip.getEncodedFrameCount(), clip.framesPerSecond);
+			setUniform(shaderHandle, ANIMATION_SHEET_UNIFORM, clip.columns, clip.rows, startTime);
+		} else{
+			setUniform(shaderHandle, ANIMATION_UNIFORM, 0, 1, 0);//a single frame covering the whole sheet
+			setUniform(shaderHandle, ANIMATION_SHEET_UNIFORM, 1, 1, 0);
+		}
+	}
+	
+	/**Sets the value of a vector uniform variable for the specified shader.
+	 * @param shaderHandle The handle of the shader to set the variable for, from {@link #getShaderHandle(String)}.
+	 * @param uniformId The ID of the uniform variable that is being set, from {@link #getUniformId(String)}.
+	 * @param x The x component to set the uniform to.
+	 * @param y The y component to set the uniform to.
+	 * @param z The z component to set the uniform to.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public void setUniform(int shaderHandle, int uniformId, float x, float y, float z) throws IllegalStateException
+	{
+		Shader shader = shaderHandles.resolve(shaderHandle);//get the specified shader
+		glState.setUniform(shader.program, shader.getLocation(uniformId), x, y, z);//set the value of the uniform if it exists
+	}
+	
 	/**Updates the size of the viewport the game is rendering in.
 	 * @param width The new width of the viewport.
 	 * @param height The new height of the viewport.*/
 	public void resizeViewport(int width, int height)
 	{
-		viewportWidth = width;
-		viewportHeight = height;
-		
-		viewportProjection.put(0, 2 * cameraZoom / viewportWidth);//update the x component of the projection
-		viewportProjection.put(5, 2 * cameraZoom / viewportHeight);//update the y component of the projection
+		mainCamera.resizeViewport(width, height);//parallax layers follow the main camera's viewport
 	}
 	
-	/**Translates the camera through the world by the specified amounts.
+	/**Translates the main camera through the world by the specified amounts.
 	 * @param deltaX The amount to move the camera in the x-direction.
 	 * @param deltaY The amount to move the camera in the y-direction.
 	 * @param deltaZ The amount to move the camera in the z-direction.*/
 	public void moveCamera(float deltaX, float deltaY, float deltaZ)
 	{
-		cameraX += deltaX;
-		cameraY += deltaY;
-		cameraZ += deltaZ;
+		mainCamera.move(deltaX, deltaY, deltaZ);
 	}
 	
-	/**Sets the position of the camera in the world.
+	/**Sets the position of the main camera in the world.
 	 * @param x The x coordinate to move the camera to.
 	 * @param y The y coordinate to move the camera to.
 	 * @param z The z coordinate to move the camera to.*/
 	public void setCameraPosition(float x, float y, float z)
 	{
-		cameraX = x;
-		cameraY = y;
-		cameraZ = z;
+		mainCamera.setPosition(x, y, z);
 	}
 	
-	/**Sets the zoom factor of the camera in the world.
+	/**Sets the zoom factor of the main camera in the world.
 	 * @param zoom The new zoom factor for the camera.*/
 	public void setCameraZoom(float zoom)
 	{
-		cameraZoom = zoom;
-		
-		viewportProjection.put(0, 2 * zoom / viewportWidth);//update the x component of the projection
-		viewportProjection.put(5, 2 * zoom / viewportHeight);//update the y component of the projection
-		viewportProjection.put(10, -zoom);//update the z component of the projection
+		mainCamera.setZoom(zoom);
 	}
 	
-	/**Creates and returns the projection matrix for an object as the specified position. Note that subsequent calls will change the viewport projection.
-	 * @param posX The x coordinate of the object.
-	 * @param posY The y coordinate of the object.
-	 * @return A projection matrix for the object.*/
-	public FloatBuffer getProjection(float posX, float posY, float posZ)
+	/**Returns the game's main camera, which parallax layer cameras can follow.
+	 * @return The main camera.*/
+	public Camera getCamera()
 	{
-		viewportProjection.put(11, 2 * ((cameraZoom * cameraX) + posZ) / viewportWidth);//update the x position of the object
-		viewportProjection.put(12, 2 * ((cameraZoom * cameraY) + posY) / viewportHeight);//update the y position of the object
-		viewportProjection.put(13, -((cameraZoom * cameraZ) + posZ));//update the z position of the object
-		
-		return viewportProjection;//return the viewport projection
+		return mainCamera;
+	}
+	
+	/**Sets the camera that everything is rendered and culled with from now on, such as a parallax layer's camera while drawing that layer.
+	 * @param activeCamera The camera to render with, or null to go back to the main camera.*/
+	public void setCamera(Camera activeCamera)
+	{
+		camera = ((activeCamera != null)? activeCamera : mainCamera);
+	}
+	
+	/**Returns the camera that's currently being rendered with.
+	 * @return The active camera.*/
+	public Camera getActiveCamera()
+	{
+		return camera;
+	}
+	
+	/**Returns the active camera's view-projection matrix, ready for uploading as a shader's projection uniform.
+	 * The matrix is only copied into the buffer when the camera has changed, and objects are positioned with a translation uniform instead of their own matrix.
+	 * @return Buffer containing the view-projection matrix, which must not be modified.*/
+	public FloatBuffer getViewProjection()
+	{
+		int version = camera.getVersion();
+		if((bufferedCamera != camera) || (bufferedVersion != version)){//if the buffer holds an out of date matrix
+			camera.getViewProjection().store(projectionBuffer);
+			bufferedCamera = camera;
+			bufferedVersion = version;
+		}
+		return projectionBuffer;
 	}
 	
-	/**Loads a texture into the game.
+	/**Loads a texture into the game, and holds a reference to it until {@link #releaseTexture(String)} is called.
 	 * @param textureName The name of the texture to load.
+	 * @return The texture's handle, which stays valid until the reference is released.
 	 * @throws IOException If the texture couldn't be successfully loaded*/
-	public static void loadTexture(String textureName) throws IOException
+	public static int loadTexture(String textureName) throws IOException
 	{
-		try{
-			textures.put(textureName, new Texture(textureName));//load and store the texture
-		} catch(IOException ioException){
-			throw new IOException("Failed to load texture: " + textureName, ioException);
+		textureManager.load(textureName);//load the texture now rather than on its first bind
+		return textureManager.acquire(textureName);
+	}
+	
+	/**Holds a reference to a texture without loading it, so it's loaded on its first bind. Sprites packed in an atlas aren't looked up here,
+	 * since a handle can't carry the sprite's texture coordinates, so the sprite's own file is loaded instead.
+	 * @param textureName The name of the texture.
+	 * @return The handle of the texture, which binds it without any string work or map lookups until the reference is released.*/
+	public static int acquireTexture(String textureName)
+	{
+		return textureManager.acquire(textureName);
+	}
+	
+	/**Releases a reference to a texture that was loaded into the game. The texture is deleted once every reference to it has been released.
+	 * @param textureName The name of the texture to release.
+	 * @throws IllegalStateException If the texture isn't loaded.*/
+	public static void releaseTexture(String textureName) throws IllegalStateException
+	{
+		textureManager.release(textureName);
+	}
+	
+	/**Releases a reference to a texture. The texture is deleted once every reference to it has been released, and the handle becomes stale.
+	 * @param textureHandle The handle of the texture to release.
+	 * @throws IllegalStateException If the handle is stale.*/
+	public static void releaseTexture(int textureHandle) throws IllegalStateException
+	{
+		textureManager.release(textureHandle);
+	}
+	
+	/**Returns the manager that decides which textures are resident on the GPU.
+	 * @return The renderer's texture manager.*/
+	public static TextureManager getTextureManager()
+	{
+		return textureManager;
+	}
+	
+	/**Sets the cache that textures loaded by name are read through. Textures are decoded from their PNG every time if no cache is set.
+	 * @param cache The texture cache to use, or null to stop using a cache.*/
+	public static void setTextureCache(TextureCache cache)
+	{
+		textureCache = cache;
+	}
+	
+	/**Reads the pixel data for a texture, through the texture cache if one is set. This doesn't need a GL context, so it can be done on any thread.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @return The texture's pixel data.
+	 * @throws IOException If the texture couldn't be loaded properly.*/
+	public static TextureData readTextureData(String textureName) throws IOException
+	{
+		TextureCache cache = textureCache;
+		return ((cache != null)? cache.load(textureName) : TextureData.decode(textureName));
+	}
+	
+	/**Loads a texture into the game from pixel data that was read with {@link #readTextureData(String)}, and holds a reference to it
+	 * until {@link #releaseTexture(String)} is called. The texture can be evicted and loaded again from its file.
+	 * @param textureName The name of the texture and the file it was read from.
+	 * @param textureData The texture's decoded pixel data.
+	 * @return The texture's handle, which stays valid until the reference is released.*/
+	public static int loadTexture(String textureName, TextureData textureData)
+	{
+		textureManager.upload(textureName, textureData, true);//upload and store the texture
+		return textureManager.acquire(textureName);
+	}
+	
+	/**Loads a texture into the game from pixel data that doesn't come from a file, and holds a reference to it until {@link #releaseTexture(String)}
+	 * is called. The texture is never evicted, since it couldn't be loaded again.
+	 * @param textureName The name to store the texture under.
+	 * @param pixelData Buffer containing the texture's RGBA pixel data, ready for reading.
+	 * @param width The width of the texture.
+	 * @param height The height of the texture.
+	 * @return The texture's handle, which stays valid until the reference is released.*/
+	public static int loadTexture(String textureName, ByteBuffer pixelData, int width, int height)
+	{
+		textureManager.upload(textureName, new TextureData(width, height, pixelData), false);//upload and store the texture
+		return textureManager.acquire(textureName);
+	}
+	
+	/**Loads all the pages of a texture atlas into the game, and makes its sprites available by name to {@link #bindTexture(String, int)}.
+	 * The atlas' client side pixel data is released once it's been uploaded.
+	 * @param atlas The atlas to load.*/
+	public static void loadAtlas(TextureAtlas atlas)
+	{
+		for(int page = 0; page < atlas.getPageCount(); page++){//iterate through all the atlas' pages
+			loadTexture(atlas.getPageName(page), atlas.getPagePixels(page), atlas.pageSize, atlas.pageSize);//upload the page as a texture
 		}
+		atlasRegions.putAll(atlas.getRegions());//register all the atlas' sprites
+		atlases.put(atlas.name, atlas);
+		atlas.releasePixels();//the pages are on the GPU now
+	}
+	
+	/**Releases the pages of a texture atlas loaded with {@link #loadAtlas(TextureAtlas)}, and stops its sprites from being found by name.
+	 * @param atlasName The name of the atlas to release.
+	 * @throws IllegalStateException If the atlas isn't loaded.*/
+	public static void releaseAtlas(String atlasName) throws IllegalStateException
+	{
+		TextureAtlas atlas = atlases.remove(atlasName);
+		if(atlas == null){
+			throw new IllegalStateException("Atlas " + atlasName + " isn't loaded");
+		}
+		for(String spriteName : atlas.getRegions().keySet()){//unregister the atlas' sprites, unless a later atlas replaced them
+			if(atlasRegions.get(spriteName) == atlas.getRegion(spriteName)){
+				atlasRegions.remove(spriteName);
+			}
+		}
+		for(int page = 0; page < atlas.getPageCount(); page++){//release the reference each page was loaded with
+			releaseTexture(atlas.getPageName(page));
+		}
+	}
+	
+	/**Returns the atlas region a sprite was packed into.
+	 * @param spriteName The name of the sprite.
+	 * @return The sprite's region, or null if the sprite isn't in any loaded atlas.*/
+	public static TextureAtlas.Region getAtlasRegion(String spriteName)
+	{
+		return atlasRegions.get(spriteName);
+	}
+	
+	/**Binds a texture to the specified sample for use. If the name refers to a sprite packed in an atlas, the atlas page containing it is bound instead,
+	 * and the sprite's region is returned so its texture coordinates can be mapped into the page, for example with {@link #setTextureRegion}.
+	 * Textures that aren't resident are loaded from their file first.
+	 * @param textureName The name of the texture or sprite to bind.
+	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).
+	 * @return The atlas region of the sprite that was bound, or null if a whole texture was bound.
+	 * @throws IllegalStateException If the texture wasn't resident and couldn't be loaded.*/
+	public TextureAtlas.Region bindTexture(String textureName, int sampleIndex) throws IllegalStateException
+	{
+		TextureAtlas.Region region = (textureManager.contains(textureName)? null : atlasRegions.get(textureName));
+		if(region != null){//if the name is an atlas sprite rather than a texture
+			textureName = region.pageTexture;//bind the atlas page the sprite is on
+		}
+		textureManager.bind(textureName, sampleIndex);//bind the texture to the sample, loading it if needed
+		return region;
+	}
+	
+	/**Binds a texture to the specified sample for use, loading it from its file first if it isn't resident.
+	 * @param textureHandle The handle of the texture to bind, from {@link #acquireTexture(String)} or {@link #loadTexture(String)}.
+	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).
+	 * @throws IllegalStateException If the handle is stale, or the texture wasn't resident and couldn't be loaded.*/
+	public void bindTexture(int textureHandle, int sampleIndex) throws IllegalStateException
+	{
+		textureManager.bind(textureHandle, sampleIndex);//bind the texture to the sample, loading it if needed
+	}
+	
+	/**Returns the cache that all GL state changes made while rendering must go through.
+	 * @return The renderer's GL state cache.*/
+	public static GLState getGLState()
+	{
+		return glState;
 	}
 	
-	/**Binds a texture to the specified sample for use.
-	 * @param textureName The name of the texture to bind.
-	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).*/
-	public void bindTexture(String textureName, int sampleIndex)
+	/**Ends the current frame, storing the frame's rendering statistics.*/
+	public void endFrame()
 	{
-		GL13.glActiveTexture(GL13.GL_TEXTURE0 + sampleIndex);//switch to the specified sample index
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, textures.get(textureName).handle);//bind the texture to the sample
+		glState.endFrame();//store the frame's GL call counts
+		textureManager.endFrame();//evict textures that went over the budget during the frame
+		lastVisibleCount = visibleCount;//store the frame's culling counts
+		lastCulledCount = culledCount;
+		visibleCount = 0;
+		culledCount = 0;
 	}
 	
-	/**Checks whether the specified rectangle overlaps with the viewport.
+	/**Checks whether the specified rectangle overlaps with the viewport. The viewport covers the area around the active camera's position
+	 * that fits on screen at the camera's zoom, and the projection is orthographic, so the z coordinates don't affect the result.
+	 * The corners can be given in either order.
 	 * @param x1 The x coordinate of the rectangle's upper left point.
 	 * @param y1 The y coordinate of the rectangle's upper left point.
 	 * @param z1 The z coordinate of the rectangle's upper left point.
@@ -308,42 +856,119 @@ public class Renderer
 	 * @return False if the rectangle is entirely outside the viewport, true otherwise.*/
 	public boolean isWithinViewport(float x1, float y1, float z1, float x2, float y2, float z2)
 	{
-		return true;//TODO make this actually check the thing
+		Camera view = camera;//the camera caches the edges of the view, so they're only calculated when it changes
+		boolean visible = (Math.max(x1, x2) >= view.getLeft()) && (Math.min(x1, x2) <= view.getRight()) &&
+		                  (Math.max(y1, y2) >= view.getBottom()) && (Math.min(y1, y2) <= view.getTop());
+		if(visible){
+			visibleCount++;
+		} else{
+			culledCount++;
+		}
+		return visible;
 	}
 	
-	private static class Texture
+	/**Checks a whole array of bounding boxes against the viewport at once, writing the results into a bitset.
+	 * Bit (i % 64) of visibility[i / 64] is set if the i'th box overlaps with the viewport and cleared otherwise.
+	 * Each box is given relative to a position, the same way entity bounding boxes are, with its left and bottom edges no greater than its right and top edges.
+	 * @param positionsX The x coordinate that each box is relative to.
+	 * @param positionsY The y coordinate that each box is relative to.
+	 * @param boundsX1 The left edge of each box.
+	 * @param boundsY1 The bottom edge of each box.
+	 * @param boundsX2 The right edge of each box.
+	 * @param boundsY2 The top edge of each box.
+	 * @param count The number of boxes to check, starting from index 0.
+	 * @param visibility Bitset to store the results in, which must have room for at least count bits.
+	 * @return The number of boxes that overlap with the viewport.
+	 * @throws IllegalArgumentException If the bitset is too small to hold the results.*/
+	public int cullBounds(float[] positionsX, float[] positionsY, float[] boundsX1, float[] boundsY1, float[] boundsX2, float[] boundsY2, int count, long[] visibility) throws IllegalArgumentException
 	{
-		/**The handle ID for this texture.*/
-		private final int handle;
-		/**The width of this texture.*/
-		private final int width;
-		/**The height of this texture.*/
-		private final int height;
+		if(visibility.length < ((count + 63) >>> 6)){
+			throw new IllegalArgumentException("Visibility bitset only has room for " + (visibility.length * 64) + " of " + count + " boxes");
+		}
+		float left = camera.getLeft();//get the viewport's edges once for the whole array
+		float right = camera.getRight();
+		float bottom = camera.getBottom();
+		float top = camera.getTop();
 		
-		/**Loads a texture from {textureName}.png into the game. Note the file is resolved from the classpath.
-		 * @param textureName The name of the texture and the file to load it from
-		 * @throws IOException If the texture couldn't be loaded properly.*/
-		private Texture(String textureName) throws IOException
+		int visible = 0;
+		for(int word = 0; (word << 6) < count; word++){//build the bitset 64 boxes at a time
+			int start = word << 6;
+			int end = Math.min(start + 64, count);
+			long bits = 0;
+			for(int index = start; index < end; index++){
+				float x = positionsX[index];
+				float y = positionsY[index];
+				if(((x + boundsX2[index]) >= left) && ((x + boundsX1[index]) <= right) && ((y + boundsY2[index]) >= bottom) && ((y + boundsY1[index]) <= top)){
+					bits |= 1L << (index - start);
+				}
+			}
+			visibility[word] = bits;
+			visible += Long.bitCount(bits);
+		}
+		visibleCount += visible;
+		culledCount += count - visible;
+		return visible;
+	}
+	
+	/**Returns the number of objects that were found to be inside the viewport during the last frame.
+	 * @return The number of objects that weren't culled last frame.*/
+	public int getVisibleCount()
+	{
+		return lastVisibleCount;
+	}
+	
+	/**Returns the number of objects that were culled for being outside the viewport during the last frame.
+	 * @return The number of objects culled last frame.*/
+	public int getCulledCount()
+	{
+		return lastCulledCount;
+	}
+	
+	/**A shader known to the renderer, which keeps its handle when its program is replaced by a reload.*/
+	private static class Shader
+	{
+		/**Location value for uniforms that haven't been queried yet.*/
+		private static final int UNKNOWN_LOCATION = -2;
+		
+		/**The shader's handle in the renderer's registry.*/
+		private int handle;
+		/**The handle ID of the shader's current program.*/
+		private int program;
+		/**The location of each uniform in the program, indexed by uniform ID.*/
+		private int[] locations;
+		
+		/**Creates a new shader.
+		 * @param shaderProgram The handle ID of the shader's program.*/
+		private Shader(int shaderProgram)
 		{
-			BufferedImage bufferedImage = ImageIO.read(getClass().getResourceAsStream("/res/" + textureName + ".png"));//read the texture's file into a buffered-image
-
-			width = bufferedImage.getWidth();//store the width of this texture
-			height = bufferedImage.getHeight();//store the height of this texture
-
-			ByteBuffer pixelData = BufferUtils.createByteBuffer(width * height * 4);//allocate a byte buffer for storing the pixel data
-			for(int pixel : bufferedImage.getRGB(0, 0, width, height, null, 0, height)){//iterate through all the pixels in the texture
-				pixelData.put((byte)((pixel >> 16) & 0xff));//store the pixel's R component
-				pixelData.put((byte)((pixel >> 8) & 0xff));//store the pixel's G component
-				pixelData.put((byte)(pixel & 0xff));//store the pixel's B component
-				pixelData.put((byte)((pixel >> 24) & 0xff));//store the pixel's A component
+			setProgram(shaderProgram);
+		}
+		
+		/**Replaces the shader's program, forgetting the uniform locations of the old one.
+		 * @param shaderProgram The handle ID of the new program.*/
+		private void setProgram(int shaderProgram)
+		{
+			program = shaderProgram;
+			locations = new int[8];
+			Arrays.fill(locations, UNKNOWN_LOCATION);
+		}
+		
+		/**Returns the location of a uniform in the shader's program. Each location is only looked up once per program.
+		 * @param uniformId The ID of the uniform.
+		 * @return The uniform's location, or -1 if the program has no such uniform.*/
+		private int getLocation(int uniformId)
+		{
+			if(uniformId >= locations.length){//if the ID is past the end of the array
+				int oldLength = locations.length;
+				locations = Arrays.copyOf(locations, Math.max(oldLength * 2, uniformId + 1));
+				Arrays.fill(locations, oldLength, locations.length, UNKNOWN_LOCATION);
+			}
+			int location = locations[uniformId];
+			if(location == UNKNOWN_LOCATION){//if the location hasn't been looked up yet
+				location = glState.getUniformLocation(program, getUniformName(uniformId));
+				locations[uniformId] = location;
 			}
-			pixelData.flip();//reset the buffer position for reading
-			
-			handle = GL11.glGenTextures();//generate a handle for this texture and store it
-			GL11.glBindTexture(GL11.GL_TEXTURE_2D, handle);//bind the texture
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);//set the texture to be scaled down using 'nearest-neighbor'
-			GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);//set the texture to be scaled up using 'nearest-neighbor'
-			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixelData);//create the texture
+			return location;
 		}
 	}
 }
@@ -0,0 +1,129 @@
+package com.insertcreativity.zoogame;
+
+import java.util.Arrays;
+
+/**Hands out compact integer handles for resources, so the render path can find a resource by indexing an array instead of hashing its name.
+ * Each handle packs the index of the resource's slot together with the slot's generation, which goes up whenever the slot's resource is removed.
+ * A handle kept after its resource was removed therefore never resolves to whatever resource reuses the slot, it's just detected as stale.
+ * Handles are never 0, so 0 can be used for "no resource".
+ * @param <T> The type of resource stored in the registry.*/
+public class ResourceRegistry<T>
+{
+	/**A handle that never refers to any resource.*/
+	public static final int NONE = 0;
+	/**The number of bits of each handle that hold the slot index.*/
+	private static final int INDEX_BITS = 20;
+	/**Mask for the slot index part of a handle.*/
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	/**Mask for the generation part of a handle once it's shifted down, which keeps handles positive.*/
+	private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+
+	/**The name of the type of resource, for error messages.*/
+	private final String type;
+	/**The resource in each slot, or null if the slot is free.*/
+	private Object[] resources;
+	/**The current generation of each slot, which is never 0.*/
+	private int[] generations;
+	/**Stack of the indexes of free slots.*/
+	private int[] freeSlots;
+	/**The number of indexes on the free slot stack.*/
+	private int freeCount;
+	/**The number of slots that have ever been used.*/
+	private int slotCount;
+	/**The number of resources in the registry.*/
+	private int size;
+
+	/**Creates a new, empty registry.
+	 * @param resourceType The name of the type of resource stored in the registry, for error messages.*/
+	public ResourceRegistry(String resourceType)
+	{
+		type = resourceType;
+		resources = new Object[16];
+		generations = new int[16];
+		freeSlots = new int[16];
+	}
+
+	/**Adds a resource to the registry.
+	 * @param resource The resource to add.
+	 * @return The new handle for the resource.
+	 * @throws IllegalStateException If the registry already holds as many resources as handles can index.*/
+	public int add(T resource) throws IllegalStateException
+	{
+		int index;
+		if(freeCount > 0){//if a slot can be reused
+			index = freeSlots[--freeCount];
+		} else{
+			if(slotCount > INDEX_MASK){//if there aren't any more indexes
+				throw new IllegalStateException("Too many " + type + " resources: " + slotCount);
+			}
+			if(slotCount == resources.length){//if there's no room for another slot
+				resources = Arrays.copyOf(resources, slotCount * 2);
+				generations = Arrays.copyOf(generations, slotCount * 2);
+				freeSlots = Arrays.copyOf(freeSlots, slotCount * 2);
+			}
+			index = slotCount++;
+			generations[index] = 1;//start at generation 1, so no handle is ever 0
+		}
+		resources[index] = resource;
+		size++;
+		return (generations[index] << INDEX_BITS) | index;
+	}
+
+	/**Returns the resource a handle refers to.
+	 * @param handle The handle of the resource.
+	 * @return The resource, or null if the handle is stale or was never valid.*/
+	@SuppressWarnings("unchecked")
+	public T get(int handle)
+	{
+		int index = handle & INDEX_MASK;
+		if((index >= slotCount) || (generations[index] != (handle >>> INDEX_BITS))){//if the handle is from a different generation of the slot
+			return null;
+		}
+		return (T)resources[index];//slots of the current generation always hold a resource
+	}
+
+	/**Returns the resource a handle refers to, failing if there isn't one.
+	 * @param handle The handle of the resource.
+	 * @return The resource.
+	 * @throws IllegalStateException If the handle is stale or was never valid.*/
+	public T resolve(int handle) throws IllegalStateException
+	{
+		T resource = get(handle);
+		if(resource == null){//if the resource was removed
+			throw new IllegalStateException("Stale " + type + " handle: " + handle);
+		}
+		return resource;
+	}
+
+	/**Checks whether a handle still refers to a resource.
+	 * @param handle The handle to check.
+	 * @return True if the handle's resource is still in the registry, false otherwise.*/
+	public boolean isValid(int handle)
+	{
+		return (get(handle) != null);
+	}
+
+	/**Removes a resource from the registry, which makes its handle and every copy of it stale.
+	 * @param handle The handle of the resource to remove.
+	 * @return The removed resource, or null if the handle was already stale.*/
+	public T remove(int handle)
+	{
+		T resource = get(handle);
+		if(resource != null){//if the handle is current
+			int index = handle & INDEX_MASK;
+			resources[index] = null;
+			int generation = (generations[index] + 1) & GENERATION_MASK;
+			generations[index] = ((generation == 0)? 1 : generation);//skip generation 0 when wrapping around
+			freeSlots[freeCount++] = index;
+			size--;
+		}
+		return resource;
+	}
+
+	/**Returns the number of resources in the registry.
+	 * @return The number of resources.*/
+	public int size()
+	{
+		return size;
+	}
+}
@@ -1,15 +1,41 @@
 
 package com.insertcreativity.zoogame;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Screen
 {
+	/**This method is called before the screen is shown, to start loading everything it needs in the background while the current screen keeps running.
+	 * Assets should be requested through the loader, so their files are read and decoded on worker threads and only uploaded on the GL thread
+	 * a little at a time. The screen isn't shown until the returned future completes.
+	 * @param assets The loader to request the screen's assets from.
+	 * @return Future that completes once everything the screen needs has been loaded.*/
+	public CompletableFuture<?> preload(AssetLoader assets);
+	
+	/**This method is called on the GL thread after the screen has been removed, to release the resources it loaded.*/
+	public void unload();
+	
 	/**This method is called to update the current state of the screen.
-	 * @param window Reference to the window that the screen is being displayed in*/
+	 * @param window Reference to the window that the screen is being displayed in, or null if the game is running offscreen without a window.*/
 	public void update(Window window);
 	
 	/**This method is called to render the screen to the window it's being displayed in.
-	 * @param renderer Reference to the object this screen should render with.*/
-	public void render(Renderer renderer);
+	 * @param renderer Reference to the object this screen should render with.
+	 * @param interpolation How far between the previous and the current update the frame is, from 0 up to 1. Screens should render their state
+	 * blended this far between the two updates, so motion stays smooth when the frame rate and update rate differ.*/
+	public void render(Renderer renderer, float interpolation);
+	
+	/**This method is called when the simulation runs on its own thread, to create the snapshots that updates are handed to the GL thread in.
+	 * It's called three times before the first update, and the snapshots are reused for the rest of the game.
+	 * @return A new, empty snapshot of this screen.*/
+	public RenderSnapshot createSnapshot();
+	
+	/**This method is called on the simulation thread after each update when the simulation runs on its own thread, to copy everything
+	 * the GL thread needs to render the update into a snapshot. The GL thread never touches the screen itself while the simulation is running,
+	 * it only renders the snapshots, so everything {@link RenderSnapshot#render(Renderer, float)} reads must be copied here.
+	 * The snapshot isn't being read while it's written, and once written it isn't touched again until this is called with it again.
+	 * @param snapshot One of the snapshots created by {@link #createSnapshot()}, to overwrite with the screen's current state.*/
+	public void writeSnapshot(RenderSnapshot snapshot);
 	
 	/**This method is called whenever a key is pressed while this screen has focus.
 	 * @param key The GLFW key-code for the key that was pressed.
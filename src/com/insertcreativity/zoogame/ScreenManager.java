@@ -0,0 +1,248 @@
+package com.insertcreativity.zoogame;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**Keeps the game's stack of screens, where only the screen on top is updated, rendered and given input.
+ * Pushing or replacing a screen doesn't show it straight away: the screen is asked to {@link Screen#preload(AssetLoader) preload} everything it needs
+ * in the background while the current screen keeps running, and the swap happens on the first update after the preload finishes,
+ * so a transition never stalls a frame. Only one transition can be pending at a time.
+ * <p>Transitions are requested from any thread, and applied by {@link #applyTransition()} on the thread that updates the screens.
+ * Screens that are removed are unloaded on the GL thread by {@link #processUnloads()}, once nothing can render them any more.
+ * The time each transition took is recorded for reporting.</p>*/
+public class ScreenManager
+{
+	/**The loader that screens preload their assets through.*/
+	private final AssetLoader assets;
+	/**The stack of screens, with the current screen at the end. Only touched by the thread that applies transitions.*/
+	private final ArrayList<Screen> stack;
+	/**The number of screens the stack will hold once the pending transition is applied, which requests are checked against.*/
+	private int depth;
+	/**The screen on top of the stack.*/
+	private volatile Screen current;
+	/**The transition waiting for its screen to finish preloading, or null if there isn't one.*/
+	private Transition pending;
+	/**Queue of screens that were removed from the stack and need to be unloaded on the GL thread.*/
+	private final ConcurrentLinkedQueue<Screen> unloads;
+	/**List of screens that were removed from the stack but might still be rendered, which are held back from unloading until they're released.
+	 * Only touched by the thread that applies transitions.*/
+	private final ArrayList<Screen> removed;
+	/**List of every transition that's been applied, in order.*/
+	private final ArrayList<Transition> history;
+
+	/**Creates a new screen manager. The first screen is shown straight away, since there's nothing to show while it loads.
+	 * It's still asked to preload, so it can load its assets the same way every other screen does.
+	 * @param loader The loader that screens preload their assets through.
+	 * @param firstScreen The screen to start on.*/
+	public ScreenManager(AssetLoader loader, Screen firstScreen)
+	{
+		assets = loader;
+		stack = new ArrayList<Screen>();
+		unloads = new ConcurrentLinkedQueue<Screen>();
+		removed = new ArrayList<Screen>();
+		history = new ArrayList<Transition>();
+		firstScreen.preload(assets);
+		stack.add(firstScreen);
+		depth = 1;
+		current = firstScreen;
+	}
+
+	/**Starts preloading a screen, and pushes it on top of the current screen once it's ready. The current screen stays loaded underneath it.
+	 * @param screen The screen to push.
+	 * @throws IllegalStateException If another transition is already pending.*/
+	public void push(Screen screen) throws IllegalStateException
+	{
+		request(Transition.PUSH, screen);
+	}
+
+	/**Starts preloading a screen, and replaces the current screen with it once it's ready. The current screen is unloaded after the swap.
+	 * @param screen The screen to replace the current screen with.
+	 * @throws IllegalStateException If another transition is already pending.*/
+	public void replace(Screen screen) throws IllegalStateException
+	{
+		request(Transition.REPLACE, screen);
+	}
+
+	/**Removes the current screen, returning to the screen underneath it on the next update. The removed screen is unloaded after the swap.
+	 * @throws IllegalStateException If another transition is already pending, or the current screen is the last one on the stack.*/
+	public void pop() throws IllegalStateException
+	{
+		request(Transition.POP, null);
+	}
+
+	/**Records a transition, and starts preloading its screen.
+	 * @param type The type of transition.
+	 * @param screen The screen to show, or null if the transition is a pop.
+	 * @throws IllegalStateException If another transition is already pending, or a pop would remove the last screen.*/
+	private synchronized void request(int type, Screen screen) throws IllegalStateException
+	{
+		if(pending != null){//if the last transition hasn't happened yet
+			throw new IllegalStateException("A screen transition is already pending");
+		}
+		if((type == Transition.POP) && (depth == 1)){//if there'd be nothing left to show
+			throw new IllegalStateException("Can't pop the last screen");
+		}
+		CompletableFuture<?> preload = ((screen != null)? screen.preload(assets) : CompletableFuture.completedFuture(null));//the screen underneath a pop is already loaded
+		pending = new Transition(type, screen, preload);
+	}
+
+	/**Swaps the screens if there's a pending transition whose screen has finished preloading, and queues any screen that was removed to be unloaded.
+	 * This must be called before each update, on the thread that updates the screens, and is for when that's also the thread that renders them.
+	 * If a screen fails to preload, the error is printed and the current screen is kept.
+	 * @return True if the current screen changed, false otherwise.*/
+	public boolean applyTransition()
+	{
+		return applyTransition(false);
+	}
+
+	/**Swaps the screens if there's a pending transition whose screen has finished preloading. This must be called before each update,
+	 * on the thread that updates the screens. If a screen fails to preload, the error is printed and the current screen is kept.
+	 * @param holdRemoved Whether a screen that's removed is held back from unloading until {@link #releaseRemoved()} is called,
+	 *                    for when another thread could still be rendering it.
+	 * @return True if the current screen changed, false otherwise.*/
+	public boolean applyTransition(boolean holdRemoved)
+	{
+		Transition transition;
+		synchronized(this){
+			transition = pending;
+			if(transition == null){//if there's nothing to do
+				return false;
+			}
+			if(!transition.preload.isDone()){//if the next screen isn't ready yet, keep running the current one
+				transition.updatesWaited++;
+				return false;
+			}
+			pending = null;
+			if(!transition.preload.isCompletedExceptionally()){//if the transition is going ahead, requests from now on see the new stack
+				depth += ((transition.type == Transition.PUSH)? 1 : ((transition.type == Transition.POP)? -1 : 0));
+			}
+		}
+		transition.ready = System.nanoTime();
+
+		try{
+			transition.preload.join();
+		} catch(CompletionException completionException){//if the screen couldn't be loaded
+			System.err.println("Failed to preload screen " + transition.getScreenName() + ": " + completionException.getCause());
+			unloads.add(transition.screen);//unload whatever the screen did manage to load
+			return false;
+		}
+		if(transition.type != Transition.PUSH){//if the current screen is going away
+			removed.add(stack.remove(stack.size() - 1));
+		}
+		if(transition.screen != null){//if there's a new screen to show
+			stack.add(transition.screen);
+		}
+		current = stack.get(stack.size() - 1);
+		transition.swapped = System.nanoTime();
+		synchronized(history){
+			history.add(transition);
+		}
+		if(!holdRemoved){
+			releaseRemoved();
+		}
+		return true;
+	}
+
+	/**Queues the screens that were held back by {@link #applyTransition(boolean)} to be unloaded. This must be called on the thread that updates the screens,
+	 * once nothing will render the removed screens again, such as after the render thread has been handed the new screen.*/
+	public void releaseRemoved()
+	{
+		for(int i = 0; i < removed.size(); i++){
+			unloads.add(removed.get(i));
+		}
+		removed.clear();
+	}
+
+	/**Unloads the screens that have been removed from the stack. This must be called on the thread with the GL context, usually once per frame.*/
+	public void processUnloads()
+	{
+		Screen screen;
+		while((screen = unloads.poll()) != null){
+			screen.unload();
+		}
+	}
+
+	/**Returns the screen on top of the stack, which is the one being updated, rendered and given input.
+	 * @return The current screen.*/
+	public Screen getCurrent()
+	{
+		return current;
+	}
+
+	/**Returns whether a transition is waiting for its screen to finish preloading.
+	 * @return True if a transition is pending, false otherwise.*/
+	public synchronized boolean isTransitioning()
+	{
+		return (pending != null);
+	}
+
+	/**Returns the number of screens on the stack.
+	 * @return The depth of the screen stack.*/
+	public int getDepth()
+	{
+		return stack.size();
+	}
+
+	/**Creates a report of how long each transition took.
+	 * @return The report, with one line per transition.*/
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		synchronized(history){
+			for(Transition transition : history){
+				report.append(String.format("%-7s %-20s preload %8.2f ms (%d updates), swap %6.3f ms%n", Transition.NAMES[transition.type], transition.getScreenName(),
+				                            (transition.ready - transition.requested) / 1000000.0, transition.updatesWaited, (transition.swapped - transition.ready) / 1000000.0));
+			}
+		}
+		return report.toString();
+	}
+
+	/**A requested change to the screen stack, along with its timings.*/
+	private static class Transition
+	{
+		/**Transition type that puts a new screen on top of the current one.*/
+		private static final int PUSH = 0;
+		/**Transition type that removes the current screen and puts a new one in its place.*/
+		private static final int REPLACE = 1;
+		/**Transition type that removes the current screen.*/
+		private static final int POP = 2;
+		/**The names of the transition types, for reporting.*/
+		private static final String[] NAMES = {"push", "replace", "pop"};
+
+		/**The type of transition.*/
+		private final int type;
+		/**The screen to show, or null if the transition is a pop.*/
+		private final Screen screen;
+		/**Future that completes once the screen has finished preloading.*/
+		private final CompletableFuture<?> preload;
+		/**The time the transition was requested at. (in nanoseconds)*/
+		private final long requested;
+		/**The number of updates the current screen ran for while the next screen preloaded.*/
+		private int updatesWaited;
+		/**The time the screen was found to be ready at. (in nanoseconds)*/
+		private long ready;
+		/**The time the screens were swapped at. (in nanoseconds)*/
+		private long swapped;
+
+		/**Creates a new transition.
+		 * @param transitionType The type of transition.
+		 * @param nextScreen The screen to show, or null if the transition is a pop.
+		 * @param preloadFuture Future that completes once the screen has finished preloading.*/
+		private Transition(int transitionType, Screen nextScreen, CompletableFuture<?> preloadFuture)
+		{
+			type = transitionType;
+			screen = nextScreen;
+			preload = preloadFuture;
+			requested = System.nanoTime();
+		}
+
+		/**Returns the name of the screen being shown, for reporting.
+		 * @return The simple class name of the screen, or "-" if the transition is a pop.*/
+		private String getScreenName()
+		{
+			return ((screen != null)? screen.getClass().getSimpleName() : "-");
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.insertcreativity.zoogame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**Stores linked shader programs on disk in the driver's own binary format, so they don't have to be compiled and linked from source on every startup.
+ * Each stored program is keyed by a hash of its source code and the identity of the driver that built it, since program binaries
+ * are only valid for the exact driver that produced them. Anything that doesn't match is simply compiled from source again.
+ * This class only handles the files, the GL side is done by the {@link Renderer}.
+ * <p>Stored program layout (big endian): int magic, int version, int binary format, int binary length, 20 byte SHA-1 key,
+ * padding up to {@link #HEADER_SIZE} bytes, then the program binary.</p>*/
+public class ShaderCache
+{
+	/**Magic number identifying stored program files.*/
+	private static final int MAGIC = 0x5A505247;//'ZPRG'
+	/**The version of the stored program format.*/
+	private static final int VERSION = 1;
+	/**The size of the header. (in bytes)*/
+	private static final int HEADER_SIZE = 64;
+	/**The length of the key. (in bytes)*/
+	private static final int KEY_LENGTH = 20;
+
+	/**The directory that program binaries are stored in.*/
+	private final File directory;
+	/**The number of programs loaded from the cache.*/
+	private int hits;
+	/**The number of programs that had to be compiled from source.*/
+	private int misses;
+
+	/**Creates a new shader cache.
+	 * @param cacheDirectory The directory to store program binaries in, which is created if it doesn't exist.*/
+	public ShaderCache(File cacheDirectory)
+	{
+		directory = cacheDirectory;
+	}
+
+	/**Creates the key that a program is stored under.
+	 * @param driver String identifying the driver, such as its vendor, renderer and version strings joined together.
+	 * @param vertexShaderSource The program's vertex shader source code.
+	 * @param fragmentShaderSource The program's fragment shader source code.
+	 * @return The SHA-1 digest of the driver identity and both sources.*/
+	public static byte[] createKey(String driver, String vertexShaderSource, String fragmentShaderSource)
+	{
+		try{
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(driver.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);//separate the parts, so moving text from one to another changes the key
+			digest.update(vertexShaderSource.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+			digest.update(fragmentShaderSource.getBytes(StandardCharsets.UTF_8));
+			return digest.digest();
+		} catch(NoSuchAlgorithmException noSuchAlgorithmException){//every Java platform is required to support SHA-1
+			throw new IllegalStateException("SHA-1 is unavailable", noSuchAlgorithmException);
+		}
+	}
+
+	/**Loads a stored program binary, if there's one with a matching key. Loading a program that's stale isn't an error, it's just a miss.
+	 * @param shaderName The name of the shader.
+	 * @param key The key the program must have been stored under, from {@link #createKey(String, String, String)}.
+	 * @return The memory-mapped program binary, or null if there's no up to date binary stored.*/
+	public ProgramBinary load(String shaderName, byte[] key)
+	{
+		File binaryFile = new File(directory, shaderName + ".zprog");
+		if(binaryFile.isFile()){//if the shader has been stored before
+			try(FileChannel channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ)){//the mapping stays valid after the channel is closed
+				long size = channel.size();
+				if(size >= HEADER_SIZE){//if the file is long enough to hold a header
+					MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+					byte[] storedKey = new byte[KEY_LENGTH];
+					mapped.position(16);
+					mapped.get(storedKey);
+					int length = mapped.getInt(12);
+					if((mapped.getInt(0) == MAGIC) && (mapped.getInt(4) == VERSION) && Arrays.equals(key, storedKey) && (size == HEADER_SIZE + (long)length)){//if the binary is for this source and driver
+						mapped.position(HEADER_SIZE);
+						synchronized(this){
+							hits++;
+						}
+						return new ProgramBinary(mapped.getInt(8), mapped.slice());
+					}
+				}
+			} catch(IOException ioException){}//fall back to compiling from source
+		}
+		synchronized(this){
+			misses++;
+		}
+		return null;
+	}
+
+	/**Stores a program binary. The file is written under a temporary name and moved into place, so a crash never leaves a damaged file behind.
+	 * Failing to store isn't fatal, the program is just compiled from source again next time.
+	 * @param shaderName The name of the shader.
+	 * @param key The key to store the program under, from {@link #createKey(String, String, String)}.
+	 * @param format The driver's format of the binary.
+	 * @param binary Buffer containing the program binary, ready for reading.*/
+	public void store(String shaderName, byte[] key, int format, ByteBuffer binary)
+	{
+		File binaryFile = new File(directory, shaderName + ".zprog");
+		File temporary = new File(directory, binaryFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try{
+			Files.createDirectories(directory.toPath());//make sure the cache directory exists
+			try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);//the unused end of the header is left zeroed
+				header.putInt(MAGIC).putInt(VERSION).putInt(format).putInt(binary.remaining()).put(key);
+				header.clear();
+				ByteBuffer body = binary.duplicate();//write from a duplicate so the caller's buffer is left ready for reading
+				while(header.hasRemaining()){
+					channel.write(header);
+				}
+				while(body.hasRemaining()){
+					channel.write(body);
+				}
+			}
+			Files.move(temporary.toPath(), binaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);//replace the old binary in one step
+		} catch(IOException ioException){//if the binary couldn't be stored
+			temporary.delete();
+		}
+	}
+
+	/**Returns the number of programs that were loaded from the cache.
+	 * @return The number of cache hits.*/
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**Returns the number of programs that weren't in the cache or were out of date.
+	 * @return The number of cache misses.*/
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**A linked program in the driver's binary format.*/
+	public static class ProgramBinary
+	{
+		/**The driver's format of the binary.*/
+		public final int format;
+		/**Buffer containing the program binary, ready for reading.*/
+		public final ByteBuffer binary;
+
+		/**Creates a new program binary.
+		 * @param binaryFormat The driver's format of the binary.
+		 * @param binaryData Buffer containing the program binary, ready for reading.*/
+		public ProgramBinary(int binaryFormat, ByteBuffer binaryData)
+		{
+			format = binaryFormat;
+			binary = binaryData;
+		}
+	}
+}
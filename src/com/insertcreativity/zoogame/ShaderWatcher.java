@@ -0,0 +1,87 @@
+package com.insertcreativity.zoogame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**Watches a directory of shader source files during development and remembers which files changed, so the renderer can recompile them
+ * the next time it's on the GL thread. The directory is watched by a daemon thread, which does nothing but wait for the file system.*/
+public class ShaderWatcher
+{
+	/**The directory being watched.*/
+	private final File directory;
+	/**The service that reports changes to the directory.*/
+	private final WatchService watchService;
+	/**Queue of the names of files that changed and haven't been polled yet.*/
+	private final ConcurrentLinkedQueue<String> changedFiles;
+	/**The thread waiting for changes.*/
+	private final Thread watchThread;
+
+	/**Creates a new shader watcher and starts watching the directory.
+	 * @param shaderDirectory The directory containing the shader source files.
+	 * @throws IOException If the directory couldn't be watched.*/
+	public ShaderWatcher(File shaderDirectory) throws IOException
+	{
+		directory = shaderDirectory;
+		changedFiles = new ConcurrentLinkedQueue<String>();
+		watchService = FileSystems.getDefault().newWatchService();
+		try{
+			//editors often save by writing a new file and renaming it over the old one, so creations count as changes too
+			directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch(IOException ioException){
+			watchService.close();
+			throw ioException;
+		}
+
+		watchThread = new Thread("Shader Watcher"){
+			public void run()
+			{
+				try{
+					while(true){
+						WatchKey key = watchService.take();//wait for something in the directory to change
+						for(WatchEvent<?> event : key.pollEvents()){
+							if(event.kind() != StandardWatchEventKinds.OVERFLOW){//if the event is for a specific file
+								changedFiles.add(((Path)event.context()).getFileName().toString());
+							}
+						}
+						if(!key.reset()){//if the directory can't be watched anymore
+							return;
+						}
+					}
+				} catch(InterruptedException interruptedException){//if the watcher was closed
+				} catch(ClosedWatchServiceException closedWatchServiceException){}
+			}
+		};
+		watchThread.setDaemon(true);//don't keep the game running just to watch files
+		watchThread.start();
+	}
+
+	/**Returns the directory being watched.
+	 * @return The shader source directory.*/
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**Returns the name of the next file that changed. A file that's saved several times may be returned more than once.
+	 * @return The name of the changed file, relative to the watched directory, or null if nothing else has changed.*/
+	public String poll()
+	{
+		return changedFiles.poll();
+	}
+
+	/**Stops watching the directory.*/
+	public void close()
+	{
+		try{
+			watchService.close();//this wakes the watch thread up so it can finish
+		} catch(IOException ioException){}
+	}
+}
@@ -0,0 +1,74 @@
+package com.insertcreativity.zoogame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**Passes render snapshots from the simulation thread to the GL thread without either thread ever waiting on the other.
+ * There are three snapshots: one being written by the simulation, one being rendered, and the latest published one in between.
+ * Publishing swaps the written snapshot with the one in between, and rendering takes the one in between if it's newer than what it already has.
+ * Swapping the indexes atomically also makes everything written into a snapshot visible to the thread that takes it.
+ * @param <T> The type of snapshot being passed.*/
+public class SnapshotBuffer<T>
+{
+	/**Flag set alongside the index of the snapshot in between when it hasn't been taken yet.*/
+	private static final int FRESH = 4;
+	/**Mask for getting the index out of the value in between.*/
+	private static final int INDEX_MASK = 3;
+
+	/**The three snapshots.*/
+	private final Object[] snapshots;
+	/**The time each snapshot was published at. (in nanoseconds)*/
+	private final long[] publishTimes;
+	/**The index of the published snapshot in between the two threads, with the {@link #FRESH} flag if it hasn't been taken yet.*/
+	private final AtomicInteger ready;
+	/**The index of the snapshot being written by the simulation thread.*/
+	private int back;
+	/**The index of the snapshot being rendered by the GL thread.*/
+	private int front;
+
+	/**Creates a new snapshot buffer, with the first snapshot initially being rendered.
+	 * @param first The first snapshot, which is rendered until another is published.
+	 * @param second The second snapshot.
+	 * @param third The third snapshot.*/
+	public SnapshotBuffer(T first, T second, T third)
+	{
+		snapshots = new Object[]{first, second, third};
+		publishTimes = new long[3];
+		front = 0;
+		ready = new AtomicInteger(1);
+		back = 2;
+	}
+
+	/**Returns the snapshot the simulation thread should write into next. This must only be called from the simulation thread.
+	 * @return The snapshot to write into.*/
+	@SuppressWarnings("unchecked")
+	public T getBack()
+	{
+		return (T)snapshots[back];
+	}
+
+	/**Publishes the snapshot that was just written, making it the latest one for the GL thread. This must only be called from the simulation thread.
+	 * @param time The time the snapshot was published at. (in nanoseconds)*/
+	public void publish(long time)
+	{
+		publishTimes[back] = time;
+		back = ready.getAndSet(back | FRESH) & INDEX_MASK;//swap the written snapshot in, taking back whichever one was waiting
+	}
+
+	/**Takes the latest published snapshot, if there's one newer than the snapshot already being rendered. This must only be called from the GL thread.
+	 * @return The latest snapshot.*/
+	@SuppressWarnings("unchecked")
+	public T acquire()
+	{
+		if((ready.get() & FRESH) != 0){//if a new snapshot was published since the last one was taken
+			front = ready.getAndSet(front) & INDEX_MASK;//swap the snapshot being rendered out for the new one
+		}
+		return (T)snapshots[front];
+	}
+
+	/**Returns the time the snapshot being rendered was published at. This must only be called from the GL thread.
+	 * @return The publish time of the latest acquired snapshot. (in nanoseconds)*/
+	public long getFrontTime()
+	{
+		return publishTimes[front];
+	}
+}
@@ -0,0 +1,260 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL15;
+
+/**Collects textured quads for an entire frame and renders them with as few draw calls as possible.
+ * Quads are written into a streaming vertex buffer and are only flushed to the GPU when the texture or shader changes,
+ * when the buffer fills up, or when the batch is ended.*/
+public class SpriteBatch
+{
+	/**The number of floats stored for each vertex: {x, y, u, v}.*/
+	private static final int FLOATS_PER_VERTEX = 4;
+	/**The number of bytes between the start of consecutive vertices.*/
+	private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;
+	/**The number of floats stored for each quad.*/
+	private static final int FLOATS_PER_QUAD = FLOATS_PER_VERTEX * 4;
+	/**The number of indexes used to render each quad.*/
+	private static final int INDEXES_PER_QUAD = 6;
+
+	/**The maximum number of quads that can be stored before the batch is forced to flush.*/
+	private final int maxQuads;
+	/**Client side buffer that quads are written into before being streamed to the GPU.*/
+	private final FloatBuffer vertexData;
+	/**Handle ID for the streaming vertex buffer, or 0 if the GPU buffers haven't been created yet.*/
+	private int vertexBufferHandle;
+	/**Handle ID for the static index buffer shared by every quad.*/
+	private int indexBufferHandle;
+	/**The renderer that this batch is currently rendering with, or null if the batch isn't drawing.*/
+	private Renderer renderer;
+	/**The name of the shader that pending quads should be rendered with.*/
+	private String currentShader;
+	/**The name of the texture that pending quads should be rendered with.*/
+	private String currentTexture;
+	/**The number of quads waiting to be flushed.*/
+	private int pendingQuads;
+	/**The number of quads that have been submitted to this batch.*/
+	private int quadsSubmitted;
+	/**The number of times this batch has been flushed.*/
+	private int flushCount;
+	/**The number of draw calls this batch has issued.*/
+	private int drawCalls;
+
+	/**Creates a new sprite batch. Note that no GPU resources are allocated until the first non-empty flush.
+	 * @param capacity The maximum number of quads to buffer before flushing.
+	 * @throws IllegalArgumentException If the capacity isn't positive or is too large to index.*/
+	public SpriteBatch(int capacity) throws IllegalArgumentException
+	{
+		if((capacity <= 0) || (capacity > (Integer.MAX_VALUE / (FLOATS_PER_QUAD * 4)))){//if the capacity is out of range
+			throw new IllegalArgumentException("Invalid sprite batch capacity: " + capacity);
+		}
+		maxQuads = capacity;//store the batch's capacity
+		vertexData = BufferUtils.createFloatBuffer(capacity * FLOATS_PER_QUAD);//allocate a client side buffer for the quads
+	}
+
+	/**Starts a new batch. All quads submitted until {@link #end()} is called are rendered with the provided renderer.
+	 * @param renderer The renderer to render the batch with.
+	 * @param shaderName The name of the shader to start rendering with.
+	 * @throws IllegalStateException If the batch has already been started.*/
+	public void begin(Renderer renderer, String shaderName) throws IllegalStateException
+	{
+		if(this.renderer != null){//if the batch is already drawing
+			throw new IllegalStateException("Sprite batch was already started");
+		}
+		this.renderer = renderer;//store the renderer to draw with
+		currentShader = shaderName;//store the shader to draw with
+		currentTexture = null;//clear the current texture
+	}
+
+	/**Changes the shader that subsequent quads are rendered with, flushing any pending quads if the shader differs.
+	 * @param shaderName The name of the shader to render with.*/
+	public void setShader(String shaderName)
+	{
+		if(!shaderName.equals(currentShader)){//if the shader is actually changing
+			flush();//render everything that used the previous shader
+			currentShader = shaderName;//store the new shader
+		}
+	}
+
+	/**Adds a quad that displays an entire texture to the batch.
+	 * @param textureName The name of the texture to render the quad with.
+	 * @param x The x coordinate of the quad's lower left corner.
+	 * @param y The y coordinate of the quad's lower left corner.
+	 * @param width The width of the quad.
+	 * @param height The height of the quad.*/
+	public void draw(String textureName, float x, float y, float width, float height)
+	{
+		draw(textureName, x, y, width, height, 0, 1, 1, 0);//draw the quad with the texture's full coordinate range
+	}
+
+	/**Adds a quad that displays a sprite packed in a texture atlas to the batch.
+	 * Sprites on the same atlas page share a texture, so they're rendered in the same draw call.
+	 * @param region The atlas region of the sprite to render.
+	 * @param x The x coordinate of the quad's lower left corner.
+	 * @param y The y coordinate of the quad's lower left corner.
+	 * @param width The width of the quad.
+	 * @param height The height of the quad.*/
+	public void draw(TextureAtlas.Region region, float x, float y, float width, float height)
+	{
+		draw(region.pageTexture, x, y, width, height, region.u1, region.v1, region.u2, region.v2);//draw the quad with the sprite's part of the page
+	}
+
+	/**Adds a quad that displays part of a texture to the batch.
+	 * @param textureName The name of the texture to render the quad with.
+	 * @param x The x coordinate of the quad's lower left corner.
+	 * @param y The y coordinate of the quad's lower left corner.
+	 * @param width The width of the quad.
+	 * @param height The height of the quad.
+	 * @param u1 The x texture coordinate for the quad's left edge.
+	 * @param v1 The y texture coordinate for the quad's bottom edge.
+	 * @param u2 The x texture coordinate for the quad's right edge.
+	 * @param v2 The y texture coordinate for the quad's top edge.
+	 * @throws IllegalStateException If the batch hasn't been started.*/
+	public void draw(String textureName, float x, float y, float width, float height, float u1, float v1, float u2, float v2) throws IllegalStateException
+	{
+		if(renderer == null){//if the batch isn't drawing
+			throw new IllegalStateException("Sprite batch must be started before drawing");
+		}
+		if(currentTexture == null){//if this is the first quad since the batch was started or flushed
+			currentTexture = textureName;
+		} else
+		if((currentTexture != textureName) && !currentTexture.equals(textureName)){//if the texture is changing
+			flush();//render everything that used the previous texture
+			currentTexture = textureName;//store the new texture
+		}
+		if(pendingQuads == maxQuads){//if the batch is full
+			flush();//render the pending quads to make room
+			currentTexture = textureName;//keep using the same texture after the flush
+		}
+
+		float x2 = x + width;//calculate the x coordinate of the quad's right edge
+		float y2 = y + height;//calculate the y coordinate of the quad's top edge
+		vertexData.put(x).put(y).put(u1).put(v1);//store the lower left vertex
+		vertexData.put(x2).put(y).put(u2).put(v1);//store the lower right vertex
+		vertexData.put(x2).put(y2).put(u2).put(v2);//store the upper right vertex
+		vertexData.put(x).put(y2).put(u1).put(v2);//store the upper left vertex
+
+		pendingQuads++;
+		quadsSubmitted++;
+	}
+
+	/**Renders all the pending quads in the batch with a single draw call.*/
+	public void flush()
+	{
+		flushCount++;
+		if(pendingQuads == 0){//if there's nothing to render
+			return;
+		}
+
+		vertexData.flip();//reset the buffer position for reading
+		submit(currentShader, currentTexture, vertexData, pendingQuads);//render the pending quads
+		vertexData.clear();//reset the buffer for writing
+		pendingQuads = 0;
+		currentTexture = null;
+		drawCalls++;
+	}
+
+	/**Ends the batch, rendering any quads that are still pending.
+	 * @throws IllegalStateException If the batch hasn't been started.*/
+	public void end() throws IllegalStateException
+	{
+		if(renderer == null){//if the batch isn't drawing
+			throw new IllegalStateException("Sprite batch must be started before it can be ended");
+		}
+		flush();//render anything left in the batch
+		renderer = null;//mark that the batch is no longer drawing
+	}
+
+	/**Uploads a set of quads to the GPU and renders them.
+	 * @param shaderName The name of the shader to render the quads with.
+	 * @param textureName The name of the texture to render the quads with.
+	 * @param vertices Buffer containing the interleaved vertex data for the quads, ready for reading.
+	 * @param quadCount The number of quads stored in the buffer.*/
+	protected void submit(String shaderName, String textureName, FloatBuffer vertices, int quadCount)
+	{
+		if(vertexBufferHandle == 0){//if the GPU buffers haven't been created yet
+			createBuffers();
+		}
+
+		int shader = renderer.getShaderHandle(shaderName);//look the shader up once, so its uniforms are set by ID
+		renderer.bindShader(shader);//load the batch's shader
+		renderer.setUniform(shader, Renderer.PROJECTION_UNIFORM, renderer.getViewProjection());//quads are already in world coordinates
+		renderer.setUniform(shader, Renderer.TRANSLATION_UNIFORM, 0, 0, 0);//clear any translation left by a model drawn with the same shader
+		TextureAtlas.Region region = renderer.bindTexture(textureName, 0);//bind the batch's texture
+		renderer.setUniform(shader, Renderer.SAMPLER_UNIFORM, 0);//set the sample of the batch's texture
+		renderer.setTextureRegion(shader, region);//map the quads' texture coordinates into the sprite if the texture was an atlas sprite
+		renderer.setAnimation(shader, null, 0);//quads carry their own texture coordinates, so clear any animation left by a model
+
+		GLState glState = Renderer.getGLState();//get the GL state cache that all binds must go through
+		glState.bindVertexArray(0);//the batch's attribute state lives in the default vertex array
+		glState.bindBuffer(GL15.GL_ARRAY_BUFFER, vertexBufferHandle);//bind the streaming vertex buffer
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long)maxQuads * FLOATS_PER_QUAD * 4, GL15.GL_STREAM_DRAW);//orphan the buffer's previous contents so the driver doesn't stall
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, vertices);//upload the quads
+		glState.vertexAttribPointer(0, 2, VERTEX_STRIDE, 0);//set the vertex coordinates
+		glState.vertexAttribPointer(1, 2, VERTEX_STRIDE, 8);//set the texture coordinates
+		glState.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);//bind the index buffer
+		glState.drawElements(quadCount * INDEXES_PER_QUAD, 0);//render the quads
+	}
+
+	/**Creates the streaming vertex buffer and fills the static index buffer.*/
+	private void createBuffers()
+	{
+		vertexBufferHandle = GL15.glGenBuffers();//generate a handle for the streaming vertex buffer
+
+		IntBuffer indexBuffer = BufferUtils.createIntBuffer(maxQuads * INDEXES_PER_QUAD);//allocate a buffer for the index array
+		for(int quad = 0; quad < maxQuads; quad++){//iterate through every quad the batch can hold
+			int vertex = quad * 4;//calculate the first vertex of the quad
+			indexBuffer.put(vertex).put(vertex + 1).put(vertex + 2);//store the lower right triangle
+			indexBuffer.put(vertex + 2).put(vertex + 3).put(vertex);//store the upper left triangle
+		}
+		indexBuffer.flip();//reset the buffer position for reading
+		indexBufferHandle = GL15.glGenBuffers();//generate a handle for the index buffer
+		Renderer.getGLState().bindVertexArray(0);//the element array buffer binding belongs to the bound vertex array
+		Renderer.getGLState().bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);//bind the index buffer
+		GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indexBuffer, GL15.GL_STATIC_DRAW);//set the index buffer
+	}
+
+	/**Deletes the GPU buffers used by this batch.*/
+	public void delete()
+	{
+		if(vertexBufferHandle != 0){//if the GPU buffers were created
+			GL15.glDeleteBuffers(vertexBufferHandle);//delete the streaming vertex buffer
+			GL15.glDeleteBuffers(indexBufferHandle);//delete the index buffer
+			Renderer.getGLState().forgetBuffer(vertexBufferHandle);
+			Renderer.getGLState().forgetBuffer(indexBufferHandle);
+			vertexBufferHandle = 0;
+			indexBufferHandle = 0;
+		}
+	}
+
+	/**Returns the number of quads submitted since the statistics were last reset.
+	 * @return The number of quads submitted to this batch.*/
+	public int getQuadsSubmitted()
+	{
+		return quadsSubmitted;
+	}
+
+	/**Returns the number of flushes since the statistics were last reset, including ones that had nothing to render.
+	 * @return The number of times this batch was flushed.*/
+	public int getFlushCount()
+	{
+		return flushCount;
+	}
+
+	/**Returns the number of draw calls issued since the statistics were last reset.
+	 * @return The number of draw calls this batch issued.*/
+	public int getDrawCalls()
+	{
+		return drawCalls;
+	}
+
+	/**Resets the quad, flush and draw call counters, typically once per frame.*/
+	public void resetStatistics()
+	{
+		quadsSubmitted = 0;
+		flushCount = 0;
+		drawCalls = 0;
+	}
+}
@@ -0,0 +1,293 @@
+package com.insertcreativity.zoogame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**Screen that bounces a large number of sprites around the viewport, for soak tests and measuring rendering throughput.
+ * Sprites are drawn grouped by texture through a {@link SpriteBatch}, the same way a busy game screen would draw them,
+ * or as instances of a single quad model through an {@link InstanceBatch}, the way crowds of identical props are drawn.
+ * Every sprite is packed into one texture atlas at startup, so a frame of mixed sprites only binds a single page.
+ * The sprites bounce over a {@link TileMap} of rocks, which has one tile repainted every frame so a chunk is rebuilt each frame too.*/
+public class SpriteStressScreen implements Screen
+{
+	/**The names of the textures the sprites are drawn with.*/
+	private static final String[] TEXTURES = {"rat", "coin", "ghost", "dragon", "skelly", "rocks", "chest1", "red bird",
+	                                          "SMALL cat", "old merchant", "f character", "m character", "bf character", "bm character"};
+	/**The name of the atlas the sprites are packed into.*/
+	private static final String ATLAS = "stress";
+	/**The width and height of each sprite.*/
+	private static final float SPRITE_SIZE = 0.5f;
+	/**The number of tiles across and up the ground.*/
+	private static final int GROUND_TILES = 96;
+	/**The width and height of each ground tile.*/
+	private static final float GROUND_TILE_SIZE = 0.25f;
+	/**The coordinate of the centre of the ground along both axes, which the camera and sprites are centred on.*/
+	private static final float GROUND_CENTRE = GROUND_TILES * GROUND_TILE_SIZE / 2;
+	/**How far from the camera sprites can move in the x direction.*/
+	private static final float BOUND_X = 6;
+	/**How far from the camera sprites can move in the y direction.*/
+	private static final float BOUND_Y = 4.5f;
+
+	/**The number of sprites on the screen.*/
+	private final int spriteCount;
+	/**The x coordinate of each sprite.*/
+	private final float[] positionsX;
+	/**The y coordinate of each sprite.*/
+	private final float[] positionsY;
+	/**The x coordinate of each sprite before the last update.*/
+	private final float[] previousX;
+	/**The y coordinate of each sprite before the last update.*/
+	private final float[] previousY;
+	/**The distance each sprite moves in the x direction per update.*/
+	private final float[] velocitiesX;
+	/**The distance each sprite moves in the y direction per update.*/
+	private final float[] velocitiesY;
+	/**Flag for whether the sprites are drawn as instances of a quad model instead of through a sprite batch.*/
+	private final boolean instanced;
+	/**The batch the sprites are drawn with, or null until the first frame is rendered or if the sprites are drawn as instances.*/
+	private SpriteBatch batch;
+	/**The batch the sprites are drawn with as instances, or null until the first frame is rendered or if they're drawn through a sprite batch.*/
+	private InstanceBatch instanceBatch;
+	/**The quad model the sprites are drawn as instances of, or null until the first frame is rendered.*/
+	private Model quad;
+	/**The atlas region of each texture, by index into {@link #TEXTURES}, or null until the first frame is rendered.*/
+	private TextureAtlas.Region[] regions;
+	/**Future that completes once the atlas has been loaded by {@link #preload(AssetLoader)}, or null if it hasn't been requested.*/
+	private CompletableFuture<String> atlasLoad;
+	/**The ground the sprites bounce over.*/
+	private final TileMap ground;
+	/**The random number generator that picks which ground tile to repaint each frame.*/
+	private final Random groundRandom;
+	/**The camera that was moved over the ground, or null until the first frame is rendered.*/
+	private Camera camera;
+	/**The x coordinate of the camera before it was moved over the ground.*/
+	private float cameraX;
+	/**The y coordinate of the camera before it was moved over the ground.*/
+	private float cameraY;
+	/**The number of frames the ground has been rendered in.*/
+	private long groundFrames;
+	/**The number of ground chunks rebuilt in total.*/
+	private long groundRebuilds;
+	/**The number of ground chunks drawn in total.*/
+	private long groundChunksDrawn;
+	/**The number of draw calls the ground issued in total.*/
+	private long groundDrawCalls;
+
+	/**Creates a new stress screen that draws its sprites through a sprite batch.
+	 * @param sprites The number of sprites to draw.*/
+	public SpriteStressScreen(int sprites)
+	{
+		this(sprites, false);
+	}
+
+	/**Creates a new stress screen.
+	 * @param sprites The number of sprites to draw.
+	 * @param drawInstanced Whether to draw the sprites as instances of a quad model, which needs OpenGL 3.3.*/
+	public SpriteStressScreen(int sprites, boolean drawInstanced)
+	{
+		spriteCount = sprites;
+		instanced = drawInstanced;
+		positionsX = new float[sprites];
+		positionsY = new float[sprites];
+		previousX = new float[sprites];
+		previousY = new float[sprites];
+		velocitiesX = new float[sprites];
+		velocitiesY = new float[sprites];
+		Random random = new Random(sprites);//use the same layout on every run, so runs can be compared
+		for(int i = 0; i < sprites; i++){
+			positionsX[i] = (random.nextFloat() * 2 - 1) * BOUND_X;
+			positionsY[i] = (random.nextFloat() * 2 - 1) * BOUND_Y;
+			velocitiesX[i] = (random.nextFloat() - 0.5f) * 0.1f;
+			velocitiesY[i] = (random.nextFloat() - 0.5f) * 0.1f;
+		}
+		System.arraycopy(positionsX, 0, previousX, 0, sprites);
+		System.arraycopy(positionsY, 0, previousY, 0, sprites);
+		ground = new TileMap(GROUND_TILES, GROUND_TILES, GROUND_TILE_SIZE, "rocks", 1, 1);//the rocks sprite is a tileset with a single cell
+		ground.fill(0, 0, GROUND_TILES, GROUND_TILES, 1);
+		groundRandom = new Random(sprites);
+	}
+
+	public CompletableFuture<?> preload(AssetLoader assets)
+	{
+		ArrayList<CompletableFuture<String>> loads = new ArrayList<CompletableFuture<String>>();
+		atlasLoad = assets.loadAtlas(ATLAS, TEXTURES, 1024, 1, new File("cache", "stress.atlas"));
+		loads.add(atlasLoad);
+		loads.add(assets.loadShader("default", "default.glsl"));
+		if(instanced){
+			loads.add(assets.loadShader("instanced", "instanced.glsl"));
+			loads.add(assets.loadModel("stress quad", new float[]{0, 0, 1, 0, 1, 1, 0, 1}, new float[]{0, 1, 1, 1, 1, 0, 0, 0}, new int[]{0, 1, 2, 2, 3, 0}, 0, 0, 0));
+		}
+		return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[loads.size()]));
+	}
+
+	public void unload()
+	{
+		if(atlasLoad != null){
+			if(atlasLoad.isDone() && !atlasLoad.isCompletedExceptionally()){//an atlas that failed to load was never registered
+				Renderer.releaseAtlas(ATLAS);
+			}
+			atlasLoad = null;
+		}
+		regions = null;
+		ground.delete();
+		if(camera != null){//put the camera back where it was before it was moved over the ground
+			camera.setPosition(cameraX, cameraY, camera.getZ());
+			camera = null;
+		}
+		if(batch != null){
+			batch.delete();
+			batch = null;
+		}
+		if(instanceBatch != null){
+			instanceBatch.delete();
+			instanceBatch = null;
+		}
+		Model.deleteModel("stress quad");
+		quad = null;
+	}
+
+	public void update(Window window)
+	{
+		System.arraycopy(positionsX, 0, previousX, 0, spriteCount);
+		System.arraycopy(positionsY, 0, previousY, 0, spriteCount);
+		for(int i = 0; i < spriteCount; i++){//move every sprite, bouncing off the edges of the screen
+			positionsX[i] += velocitiesX[i];
+			positionsY[i] += velocitiesY[i];
+			if(Math.abs(positionsX[i]) > BOUND_X){
+				velocitiesX[i] = -velocitiesX[i];
+			}
+			if(Math.abs(positionsY[i]) > BOUND_Y){
+				velocitiesY[i] = -velocitiesY[i];
+			}
+		}
+	}
+
+	public void render(Renderer renderer, float interpolation)
+	{
+		draw(renderer, previousX, previousY, positionsX, positionsY, interpolation);
+	}
+
+	public RenderSnapshot createSnapshot()
+	{
+		return new Snapshot();
+	}
+
+	public void writeSnapshot(RenderSnapshot snapshot)
+	{
+		Snapshot copy = (Snapshot)snapshot;
+		System.arraycopy(previousX, 0, copy.previousX, 0, spriteCount);
+		System.arraycopy(previousY, 0, copy.previousY, 0, spriteCount);
+		System.arraycopy(positionsX, 0, copy.positionsX, 0, spriteCount);
+		System.arraycopy(positionsY, 0, copy.positionsY, 0, spriteCount);
+	}
+
+	/**Draws every sprite, part way between two updates.
+	 * @param renderer The renderer to draw with.
+	 * @param fromX The x coordinate of each sprite at the previous update.
+	 * @param fromY The y coordinate of each sprite at the previous update.
+	 * @param toX The x coordinate of each sprite at the current update.
+	 * @param toY The y coordinate of each sprite at the current update.
+	 * @param interpolation How far between the two updates to draw the sprites, from 0 up to 1.*/
+	private void draw(Renderer renderer, float[] fromX, float[] fromY, float[] toX, float[] toY, float interpolation)
+	{
+		if((batch == null) && (instanceBatch == null)){//if this is the first frame, the assets were all loaded by preload
+			if(instanced){
+				quad = Model.getModel("stress quad");
+				instanceBatch = new InstanceBatch(4096);
+			} else{
+				batch = new SpriteBatch(4096);
+			}
+			regions = new TextureAtlas.Region[TEXTURES.length];
+			for(int texture = 0; texture < TEXTURES.length; texture++){
+				regions[texture] = Renderer.getAtlasRegion(TEXTURES[texture]);
+			}
+			camera = renderer.getActiveCamera();//centre the view on the ground, since tile maps start at the origin
+			cameraX = camera.getX();
+			cameraY = camera.getY();
+			camera.setPosition(GROUND_CENTRE, GROUND_CENTRE, camera.getZ());
+		}
+
+		int tileX = groundRandom.nextInt(GROUND_TILES);//repaint one tile, so a chunk is rebuilt every frame like a player's edits would cause
+		int tileY = groundRandom.nextInt(GROUND_TILES);
+		ground.setTile(tileX, tileY, 1 - ground.getTile(tileX, tileY));
+		ground.render(renderer, "default");
+		groundFrames++;
+		groundRebuilds += ground.getRebuildCount();
+		groundChunksDrawn += ground.getDrawnChunks();
+		groundDrawCalls += ground.getDrawCalls();
+		ground.resetStatistics();
+
+		if(instanced){
+			instanceBatch.begin(renderer, "instanced");
+			for(int texture = 0; texture < TEXTURES.length; texture++){//draw the sprites grouped by texture, so each atlas page is one draw call
+				for(int i = texture; i < spriteCount; i += TEXTURES.length){
+					float x = GROUND_CENTRE + fromX[i] + (toX[i] - fromX[i]) * interpolation;
+					float y = GROUND_CENTRE + fromY[i] + (toY[i] - fromY[i]) * interpolation;
+					instanceBatch.draw(quad, regions[texture], x, y, SPRITE_SIZE);
+				}
+			}
+			instanceBatch.end();
+			return;
+		}
+
+		batch.begin(renderer, "default");
+		for(int texture = 0; texture < TEXTURES.length; texture++){//draw the sprites grouped by texture, so each atlas page is only bound once
+			for(int i = texture; i < spriteCount; i += TEXTURES.length){
+				float x = GROUND_CENTRE + fromX[i] + (toX[i] - fromX[i]) * interpolation;
+				float y = GROUND_CENTRE + fromY[i] + (toY[i] - fromY[i]) * interpolation;
+				batch.draw(regions[texture], x, y, SPRITE_SIZE, SPRITE_SIZE);
+			}
+		}
+		batch.end();
+	}
+
+	/**Creates a report of how much work the ground took to render.
+	 * @return The report, on a single line.*/
+	public String getReport()
+	{
+		long frames = Math.max(groundFrames, 1);
+		return String.format("ground: %d frames, %.2f chunks rebuilt, %.2f chunks drawn and %.2f draw calls per frame%n", groundFrames,
+		                     groundRebuilds / (double)frames, groundChunksDrawn / (double)frames, groundDrawCalls / (double)frames);
+	}
+
+	public void keyPresssed(int key, int scancode, int modifiers){}
+
+	public void keyReleased(int key, int scancode, int modifiers){}
+
+	public void buttonPressed(int button, int modifiers){}
+
+	public void buttonReleased(int button, int modifiers){}
+
+	public void mouseScrolled(double x, double y){}
+
+	public void cursorMoved(double x, double y){}
+
+	/**Copy of the sprites' positions for the GL thread to render. The batch is still shared, but only the GL thread ever touches it.*/
+	private class Snapshot implements RenderSnapshot
+	{
+		/**The x coordinate of each sprite at the previous update.*/
+		private final float[] previousX;
+		/**The y coordinate of each sprite at the previous update.*/
+		private final float[] previousY;
+		/**The x coordinate of each sprite at the snapshot's update.*/
+		private final float[] positionsX;
+		/**The y coordinate of each sprite at the snapshot's update.*/
+		private final float[] positionsY;
+
+		/**Creates a new, empty snapshot.*/
+		private Snapshot()
+		{
+			previousX = new float[spriteCount];
+			previousY = new float[spriteCount];
+			positionsX = new float[spriteCount];
+			positionsY = new float[spriteCount];
+		}
+
+		public void render(Renderer renderer, float interpolation)
+		{
+			draw(renderer, previousX, previousY, positionsX, positionsY, interpolation);
+		}
+	}
+}
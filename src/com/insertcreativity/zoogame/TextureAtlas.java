@@ -0,0 +1,486 @@
+package com.insertcreativity.zoogame;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import org.lwjgl.BufferUtils;
+
+/**Packs many small sprites into a few large texture pages so that scenes made of different sprites can be rendered without rebinding textures.
+ * Sprites are placed with a skyline bin-packer and surrounded by a gutter of duplicated edge pixels, so nearest filtering never samples a neighboring sprite.
+ * The packed layout can be cached on disk, letting later startups skip the packing step entirely.*/
+public class TextureAtlas
+{
+	/**Magic number identifying atlas layout cache files.*/
+	private static final int CACHE_MAGIC = 0x5A41544C;//'ZATL'
+	/**The version of the atlas layout cache format.*/
+	private static final int CACHE_VERSION = 1;
+
+	/**The name of this atlas, which its page textures are named after.*/
+	public final String name;
+	/**The width and height of each page in this atlas. (in pixels)*/
+	public final int pageSize;
+	/**The number of gutter pixels surrounding each sprite.*/
+	public final int padding;
+	/**Map containing the names and regions of every sprite in this atlas.*/
+	private final HashMap<String, Region> regions;
+	/**The texture names of each page in this atlas.*/
+	private final String[] pageNames;
+	/**The RGBA pixel data for each page, or null once the pages have been released.*/
+	private ByteBuffer[] pagePixels;
+	/**Flag for whether the layout was loaded from the cache instead of being packed.*/
+	private final boolean loadedFromCache;
+
+	/**Creates a new atlas from an already computed layout.
+	 * @param atlasName The name of the atlas.
+	 * @param size The width and height of each page.
+	 * @param pad The number of gutter pixels surrounding each sprite.
+	 * @param pageCount The number of pages in the atlas.
+	 * @param regionMap Map containing every sprite's region in the atlas.
+	 * @param cached Whether the layout was loaded from the cache.*/
+	private TextureAtlas(String atlasName, int size, int pad, int pageCount, HashMap<String, Region> regionMap, boolean cached)
+	{
+		name = atlasName;
+		pageSize = size;
+		padding = pad;
+		regions = regionMap;
+		loadedFromCache = cached;
+
+		pageNames = new String[pageCount];//create an array for storing the page texture names
+		pagePixels = new ByteBuffer[pageCount];//create an array for storing the page pixel data
+		for(int page = 0; page < pageCount; page++){//iterate through all the pages
+			pageNames[page] = atlasName + "#" + page;//name each page after the atlas
+		}
+	}
+
+	/**Packs the specified sprites into a new atlas, reusing the cached layout if it's still valid.
+	 * @param atlasName The name of the atlas, which its page textures are named after.
+	 * @param spriteNames The names of the sprites to pack. Each sprite is loaded from {spriteName}.png on the classpath.
+	 * @param pageSize The width and height of each page. (in pixels)
+	 * @param padding The number of gutter pixels to surround each sprite with, 1 is enough for nearest filtering.
+	 * @param cacheFile The file to load and store the packed layout in, or null to always pack.
+	 * @return The newly created atlas.
+	 * @throws IOException If any of the sprites couldn't be loaded.
+	 * @throws IllegalArgumentException If a sprite is too large to fit on a single page.*/
+	public static TextureAtlas build(String atlasName, String[] spriteNames, int pageSize, int padding, File cacheFile) throws IOException, IllegalArgumentException
+	{
+		BufferedImage[] images = new BufferedImage[spriteNames.length];//create an array for storing the decoded sprites
+		CRC32 signature = new CRC32();//create a checksum for validating the cached layout
+		signature.update(ByteBuffer.allocate(8).putInt(pageSize).putInt(padding).array());//include the packing parameters in the checksum
+
+		for(int i = 0; i < spriteNames.length; i++){//iterate through all the sprites
+			byte[] fileData = readResource("/res/" + spriteNames[i] + ".png");//read the sprite's file
+			signature.update(spriteNames[i].getBytes("UTF-8"));//include the sprite's name in the checksum
+			signature.update(fileData);//include the sprite's contents in the checksum
+			images[i] = ImageIO.read(new ByteArrayInputStream(fileData));//decode the sprite
+			if(images[i] == null){//if the file wasn't a readable image
+				throw new IOException("Failed to decode sprite: " + spriteNames[i]);
+			}
+		}
+
+		TextureAtlas atlas = null;
+		if((cacheFile != null) && cacheFile.isFile()){//if there's a cached layout
+			atlas = readLayout(cacheFile, atlasName, signature.getValue());//try to load the layout from the cache
+		}
+		if(atlas == null){//if the layout has to be packed
+			atlas = pack(atlasName, spriteNames, images, pageSize, padding);
+			if(cacheFile != null){//if the layout should be cached
+				writeLayout(cacheFile, atlas, signature.getValue());
+			}
+		}
+
+		atlas.composePages(spriteNames, images);//draw all the sprites into the atlas pages
+		return atlas;
+	}
+
+	/**Packs sprites onto as few pages as possible with a skyline bottom-left packer.
+	 * @param atlasName The name of the atlas.
+	 * @param spriteNames The names of the sprites to pack.
+	 * @param images The decoded sprite images.
+	 * @param pageSize The width and height of each page.
+	 * @param padding The number of gutter pixels surrounding each sprite.
+	 * @return A new atlas containing the packed layout.
+	 * @throws IllegalArgumentException If a sprite is too large to fit on a single page.*/
+	private static TextureAtlas pack(String atlasName, String[] spriteNames, final BufferedImage[] images, int pageSize, int padding) throws IllegalArgumentException
+	{
+		Integer[] order = new Integer[images.length];//create an array for the order sprites are packed in
+		for(int i = 0; i < order.length; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>(){//pack taller sprites first, which keeps the skyline flat
+			public int compare(Integer a, Integer b)
+			{
+				int difference = images[b].getHeight() - images[a].getHeight();
+				return ((difference != 0)? difference : (images[b].getWidth() - images[a].getWidth()));
+			}
+		});
+
+		ArrayList<Skyline> pages = new ArrayList<Skyline>();//create a list for storing each page's skyline
+		HashMap<String, Region> regionMap = new HashMap<String, Region>();//create a map for storing the packed regions
+		int[] position = new int[2];
+
+		for(int i : order){//iterate through the sprites in packing order
+			int width = images[i].getWidth();
+			int height = images[i].getHeight();
+			int paddedWidth = width + (2 * padding);//calculate the width the sprite occupies including its gutter
+			int paddedHeight = height + (2 * padding);//calculate the height the sprite occupies including its gutter
+			if((paddedWidth > pageSize) || (paddedHeight > pageSize)){//if the sprite can never fit on a page
+				throw new IllegalArgumentException("Sprite " + spriteNames[i] + " (" + width + "x" + height + ") doesn't fit on a " + pageSize + " atlas page");
+			}
+
+			int page = 0;
+			while((page < pages.size()) && !pages.get(page).insert(paddedWidth, paddedHeight, position)){//find the first page with room for the sprite
+				page++;
+			}
+			if(page == pages.size()){//if none of the existing pages had room
+				Skyline skyline = new Skyline(pageSize);//start a new page
+				skyline.insert(paddedWidth, paddedHeight, position);
+				pages.add(skyline);
+			}
+
+			regionMap.put(spriteNames[i], new Region(atlasName + "#" + page, page, position[0] + padding, position[1] + padding, width, height, pageSize));
+		}
+
+		return new TextureAtlas(atlasName, pageSize, padding, pages.size(), regionMap, false);
+	}
+
+	/**Draws every sprite into its region of the atlas pages and extrudes its edges into the surrounding gutter.
+	 * @param spriteNames The names of the sprites in the atlas.
+	 * @param images The decoded sprite images.*/
+	private void composePages(String[] spriteNames, BufferedImage[] images)
+	{
+		int[][] pages = new int[pageNames.length][pageSize * pageSize];//create an ARGB array for each page
+		for(int i = 0; i < spriteNames.length; i++){//iterate through all the sprites
+			Region region = regions.get(spriteNames[i]);
+			int[] page = pages[region.page];
+			images[i].getRGB(0, 0, region.width, region.height, page, (region.y * pageSize) + region.x, pageSize);//copy the sprite into its region
+
+			for(int row = region.y; row < (region.y + region.height); row++){//extrude the left and right edges into the gutter
+				int rowStart = row * pageSize;
+				Arrays.fill(page, rowStart + region.x - padding, rowStart + region.x, page[rowStart + region.x]);
+				Arrays.fill(page, rowStart + region.x + region.width, rowStart + region.x + region.width + padding, page[rowStart + region.x + region.width - 1]);
+			}
+			int rowLength = region.width + (2 * padding);//the gutter rows include the extruded corners
+			int rowOffset = region.x - padding;
+			for(int pad = 1; pad <= padding; pad++){//extrude the top and bottom edges into the gutter
+				System.arraycopy(page, (region.y * pageSize) + rowOffset, page, ((region.y - pad) * pageSize) + rowOffset, rowLength);
+				System.arraycopy(page, ((region.y + region.height - 1) * pageSize) + rowOffset, page, ((region.y + region.height - 1 + pad) * pageSize) + rowOffset, rowLength);
+			}
+		}
+
+		for(int page = 0; page < pages.length; page++){//convert each page into RGBA data for uploading
+			ByteBuffer pixelData = BufferUtils.createByteBuffer(pageSize * pageSize * 4);//allocate a byte buffer for storing the pixel data
+			for(int pixel : pages[page]){//iterate through all the pixels in the page
+				pixelData.put((byte)((pixel >> 16) & 0xff));//store the pixel's R component
+				pixelData.put((byte)((pixel >> 8) & 0xff));//store the pixel's G component
+				pixelData.put((byte)(pixel & 0xff));//store the pixel's B component
+				pixelData.put((byte)((pixel >> 24) & 0xff));//store the pixel's A component
+			}
+			pixelData.flip();//reset the buffer position for reading
+			pagePixels[page] = pixelData;
+		}
+	}
+
+	/**Loads a packed layout from the cache.
+	 * @param cacheFile The file the layout is cached in.
+	 * @param atlasName The name of the atlas being built.
+	 * @param signature Checksum of the sprites and packing parameters the layout must match.
+	 * @return The cached atlas layout, or null if the cache is missing, damaged or out of date.*/
+	private static TextureAtlas readLayout(File cacheFile, String atlasName, long signature)
+	{
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))){//open the cache file
+			if((input.readInt() != CACHE_MAGIC) || (input.readInt() != CACHE_VERSION) || (input.readLong() != signature)){//if the cache doesn't match the sprites
+				return null;
+			}
+			int pageSize = input.readInt();
+			int padding = input.readInt();
+			int pageCount = input.readInt();
+			int regionCount = input.readInt();
+
+			HashMap<String, Region> regionMap = new HashMap<String, Region>();
+			for(int i = 0; i < regionCount; i++){//read every region in the layout
+				String spriteName = input.readUTF();
+				int page = input.readInt();
+				regionMap.put(spriteName, new Region(atlasName + "#" + page, page, input.readInt(), input.readInt(), input.readInt(), input.readInt(), pageSize));
+			}
+			return new TextureAtlas(atlasName, pageSize, padding, pageCount, regionMap, true);
+		} catch(IOException ioException){//if the cache couldn't be read
+			return null;//fall back to packing
+		}
+	}
+
+	/**Stores a packed layout in the cache. Failing to write the cache isn't fatal, the layout is just packed again next time.
+	 * @param cacheFile The file to store the layout in.
+	 * @param atlas The atlas whose layout should be stored.
+	 * @param signature Checksum of the sprites and packing parameters used to create the layout.*/
+	private static void writeLayout(File cacheFile, TextureAtlas atlas, long signature)
+	{
+		File parent = cacheFile.getAbsoluteFile().getParentFile();
+		if(parent != null){//make sure the cache directory exists
+			parent.mkdirs();
+		}
+
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))){//open the cache file
+			output.writeInt(CACHE_MAGIC);
+			output.writeInt(CACHE_VERSION);
+			output.writeLong(signature);
+			output.writeInt(atlas.pageSize);
+			output.writeInt(atlas.padding);
+			output.writeInt(atlas.pageNames.length);
+			output.writeInt(atlas.regions.size());
+			for(Map.Entry<String, Region> entry : atlas.regions.entrySet()){//write every region in the layout
+				Region region = entry.getValue();
+				output.writeUTF(entry.getKey());
+				output.writeInt(region.page);
+				output.writeInt(region.x);
+				output.writeInt(region.y);
+				output.writeInt(region.width);
+				output.writeInt(region.height);
+			}
+		} catch(IOException ioException){
+			cacheFile.delete();//don't leave a partially written cache behind
+		}
+	}
+
+	/**Reads the entire contents of a classpath resource.
+	 * @param path The path of the resource to read.
+	 * @return Array containing the resource's contents.
+	 * @throws IOException If the resource is missing or couldn't be read.*/
+	private static byte[] readResource(String path) throws IOException
+	{
+		InputStream resource = TextureAtlas.class.getResourceAsStream(path);
+		if(resource == null){//if the resource doesn't exist
+			throw new IOException("Missing resource: " + path);
+		}
+		try(InputStream input = resource){
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while((count = input.read(buffer)) != -1){//copy the resource until EOF is reached
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		}
+	}
+
+	/**Returns the region of the specified sprite.
+	 * @param spriteName The name of the sprite.
+	 * @return The sprite's region in the atlas, or null if the sprite isn't in this atlas.*/
+	public Region getRegion(String spriteName)
+	{
+		return regions.get(spriteName);
+	}
+
+	/**Returns the names and regions of every sprite in this atlas.
+	 * @return Map of sprite names to their regions. This map shouldn't be modified.*/
+	public HashMap<String, Region> getRegions()
+	{
+		return regions;
+	}
+
+	/**Returns the number of pages in this atlas.
+	 * @return The number of pages.*/
+	public int getPageCount()
+	{
+		return pageNames.length;
+	}
+
+	/**Returns the texture name of the specified page.
+	 * @param page The index of the page.
+	 * @return The name the page's texture is stored under.*/
+	public String getPageName(int page)
+	{
+		return pageNames[page];
+	}
+
+	/**Returns the RGBA pixel data of the specified page.
+	 * @param page The index of the page.
+	 * @return Buffer containing the page's pixel data, ready for reading.
+	 * @throws IllegalStateException If the pixel data has already been released.*/
+	public ByteBuffer getPagePixels(int page) throws IllegalStateException
+	{
+		if(pagePixels == null){
+			throw new IllegalStateException("Atlas pages have already been released");
+		}
+		return pagePixels[page];
+	}
+
+	/**Releases the client side copy of the pages, which is no longer needed once they've been uploaded.*/
+	public void releasePixels()
+	{
+		pagePixels = null;
+	}
+
+	/**Returns whether this atlas' layout was loaded from the cache instead of being packed.
+	 * @return True if packing was skipped, false otherwise.*/
+	public boolean isLoadedFromCache()
+	{
+		return loadedFromCache;
+	}
+
+	/**A rectangle of an atlas page containing a single sprite.*/
+	public static class Region
+	{
+		/**The name of the texture for the page this region is on.*/
+		public final String pageTexture;
+		/**The index of the page this region is on.*/
+		public final int page;
+		/**The x coordinate of the region's left edge on the page. (in pixels)*/
+		public final int x;
+		/**The y coordinate of the region's top edge on the page. (in pixels)*/
+		public final int y;
+		/**The width of the region. (in pixels)*/
+		public final int width;
+		/**The height of the region. (in pixels)*/
+		public final int height;
+		/**The x texture coordinate of the region's left edge.*/
+		public final float u1;
+		/**The y texture coordinate of the region's bottom edge.*/
+		public final float v1;
+		/**The x texture coordinate of the region's right edge.*/
+		public final float u2;
+		/**The y texture coordinate of the region's top edge.*/
+		public final float v2;
+
+		/**Creates a new atlas region.
+		 * @param texture The name of the page's texture.
+		 * @param pageIndex The index of the page the region is on.
+		 * @param posX The x coordinate of the region's left edge.
+		 * @param posY The y coordinate of the region's top edge.
+		 * @param regionWidth The width of the region.
+		 * @param regionHeight The height of the region.
+		 * @param pageSize The width and height of the page.*/
+		private Region(String texture, int pageIndex, int posX, int posY, int regionWidth, int regionHeight, int pageSize)
+		{
+			pageTexture = texture;
+			page = pageIndex;
+			x = posX;
+			y = posY;
+			width = regionWidth;
+			height = regionHeight;
+			u1 = (float)posX / pageSize;
+			v1 = (float)(posY + regionHeight) / pageSize;//pages are uploaded top row first, so the bottom edge has the larger coordinate
+			u2 = (float)(posX + regionWidth) / pageSize;
+			v2 = (float)posY / pageSize;
+		}
+	}
+
+	/**Tracks the top edge of the packed sprites on a single page, as a list of horizontal segments.*/
+	private static class Skyline
+	{
+		/**The width and height of the page.*/
+		private final int size;
+		/**The segments making up the skyline, each stored as {x, y, width}.*/
+		private final ArrayList<int[]> segments;
+
+		/**Creates a skyline for an empty page.
+		 * @param pageSize The width and height of the page.*/
+		private Skyline(int pageSize)
+		{
+			size = pageSize;
+			segments = new ArrayList<int[]>();
+			segments.add(new int[]{0, 0, pageSize});//an empty page is a single segment along the top
+		}
+
+		/**Finds the lowest position a rectangle can be placed at and reserves it.
+		 * @param width The width of the rectangle.
+		 * @param height The height of the rectangle.
+		 * @param position Array to store the {x, y} coordinates of the rectangle's position in.
+		 * @return True if the rectangle was placed, false if the page doesn't have room for it.*/
+		private boolean insert(int width, int height, int[] position)
+		{
+			int bestIndex = -1;
+			int bestY = Integer.MAX_VALUE;
+			int bestWidth = Integer.MAX_VALUE;
+			for(int i = 0; i < segments.size(); i++){//try placing the rectangle at the start of every segment
+				int y = fit(i, width, height);
+				if((y != -1) && ((y + height < bestY) || ((y + height == bestY) && (segments.get(i)[2] < bestWidth)))){//prefer the lowest top edge, then the snuggest segment
+					bestIndex = i;
+					bestY = y + height;
+					bestWidth = segments.get(i)[2];
+					position[1] = y;
+				}
+			}
+			if(bestIndex == -1){//if the rectangle doesn't fit anywhere
+				return false;
+			}
+			position[0] = segments.get(bestIndex)[0];
+			addSegment(bestIndex, position[0], position[1] + height, width);
+			return true;
+		}
+
+		/**Checks whether a rectangle fits when placed at the start of the specified segment.
+		 * @param index The index of the segment to place the rectangle on.
+		 * @param width The width of the rectangle.
+		 * @param height The height of the rectangle.
+		 * @return The y coordinate the rectangle would be placed at, or -1 if it doesn't fit.*/
+		private int fit(int index, int width, int height)
+		{
+			int x = segments.get(index)[0];
+			if(x + width > size){//if the rectangle would hang off the right edge of the page
+				return -1;
+			}
+			int y = 0;
+			int remaining = width;
+			while(remaining > 0){//rest the rectangle on the highest segment underneath it
+				int[] segment = segments.get(index++);
+				y = Math.max(y, segment[1]);
+				if(y + height > size){//if the rectangle would hang off the bottom of the page
+					return -1;
+				}
+				remaining -= segment[2];
+			}
+			return y;
+		}
+
+		/**Adds a new segment for the top of a placed rectangle, trimming or removing the segments it covers.
+		 * @param index The index to insert the segment at.
+		 * @param x The x coordinate of the segment.
+		 * @param y The y coordinate of the segment.
+		 * @param width The width of the segment.*/
+		private void addSegment(int index, int x, int y, int width)
+		{
+			segments.add(index, new int[]{x, y, width});
+			for(int i = index + 1; i < segments.size();){//trim the segments now underneath the new one
+				int[] previous = segments.get(i - 1);
+				int[] segment = segments.get(i);
+				int overlap = (previous[0] + previous[2]) - segment[0];
+				if(overlap <= 0){//if the rest of the skyline is uncovered
+					break;
+				}
+				segment[0] += overlap;
+				segment[2] -= overlap;
+				if(segment[2] > 0){//if part of the segment is still exposed
+					break;
+				}
+				segments.remove(i);
+			}
+			for(int i = 0; i < segments.size() - 1;){//merge neighboring segments at the same height
+				int[] segment = segments.get(i);
+				int[] next = segments.get(i + 1);
+				if(segment[1] == next[1]){
+					segment[2] += next[2];
+					segments.remove(i + 1);
+				} else{
+					i++;
+				}
+			}
+		}
+	}
+}
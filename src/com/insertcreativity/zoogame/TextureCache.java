@@ -0,0 +1,189 @@
+package com.insertcreativity.zoogame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**Stores textures in a precooked format so they don't have to be decoded from PNG on every startup.
+ * A cooked texture is a small header followed by the raw RGBA pixels, which is memory-mapped and handed straight to GL without touching the pixels in Java.
+ * Each cooked texture records a hash of the PNG it was made from, and is cooked again whenever the PNG changes.
+ * <p>Cooked file layout (big endian): int magic, int version, int width, int height, 20 byte SHA-1 of the source PNG, padding up to {@link #HEADER_SIZE} bytes, then the RGBA pixels.</p>*/
+public class TextureCache
+{
+	/**Magic number identifying cooked texture files.*/
+	private static final int MAGIC = 0x5A544558;//'ZTEX'
+	/**The version of the cooked texture format.*/
+	private static final int VERSION = 1;
+	/**The size of the header, which is padded so the pixels start on an aligned boundary. (in bytes)*/
+	private static final int HEADER_SIZE = 64;
+	/**The length of the source hash. (in bytes)*/
+	private static final int HASH_LENGTH = 20;
+
+	/**The directory that cooked textures are stored in.*/
+	private final File directory;
+	/**The number of textures loaded from the cache.*/
+	private int hits;
+	/**The number of textures that had to be decoded and cooked.*/
+	private int misses;
+
+	/**Creates a new texture cache.
+	 * @param cacheDirectory The directory to store cooked textures in, which is created if it doesn't exist.*/
+	public TextureCache(File cacheDirectory)
+	{
+		directory = cacheDirectory;
+	}
+
+	/**Loads a texture from {textureName}.png, using the cooked copy if it's still up to date, or decoding and cooking the PNG otherwise.
+	 * Note the PNG is resolved from the classpath. This doesn't need a GL context, so it can be done on any thread.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @return The texture's pixel data, which is memory-mapped if the texture was already cooked.
+	 * @throws IOException If the texture couldn't be loaded properly.*/
+	public TextureData load(String textureName) throws IOException
+	{
+		byte[] source = readSource(textureName);//read the texture's PNG file
+		byte[] hash = hash(source);//hash the PNG to check the cooked copy against
+		File cookedFile = new File(directory, textureName + ".ztex");
+
+		if(cookedFile.isFile()){//if the texture has been cooked before
+			TextureData cooked = map(cookedFile, hash);
+			if(cooked != null){//if the cooked copy is still up to date
+				synchronized(this){
+					hits++;
+				}
+				return cooked;
+			}
+		}
+
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));//decode the PNG
+		if(image == null){//if the file wasn't a readable image
+			throw new IOException("Failed to decode texture file: " + textureName + ".png");
+		}
+		TextureData texture = TextureData.fromImage(image);
+		cook(cookedFile, texture, hash);//store the decoded pixels for next time
+		synchronized(this){
+			misses++;
+		}
+		return texture;
+	}
+
+	/**Memory-maps a cooked texture, checking that it was made from the current PNG.
+	 * @param cookedFile The cooked texture file.
+	 * @param hash The hash of the current PNG.
+	 * @return The mapped texture data, or null if the cooked file is out of date or damaged.*/
+	private static TextureData map(File cookedFile, byte[] hash)
+	{
+		try(FileChannel channel = FileChannel.open(cookedFile.toPath(), StandardOpenOption.READ)){//the mapping stays valid after the channel is closed
+			long size = channel.size();
+			if(size < HEADER_SIZE){//if the file is too short to even hold a header
+				return null;
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);//map the whole file
+			byte[] cookedHash = new byte[HASH_LENGTH];
+			if((mapped.getInt(0) != MAGIC) || (mapped.getInt(4) != VERSION)){//if the file isn't a cooked texture this version can read
+				return null;
+			}
+			int width = mapped.getInt(8);
+			int height = mapped.getInt(12);
+			mapped.position(16);
+			mapped.get(cookedHash);
+			if(!Arrays.equals(hash, cookedHash) || (size != HEADER_SIZE + ((long)width * height * 4))){//if the PNG changed or the file is truncated
+				return null;
+			}
+
+			mapped.position(HEADER_SIZE);//skip past the header
+			ByteBuffer pixels = mapped.slice().order(ByteOrder.nativeOrder());//get a view of just the pixels, ready for reading
+			return new TextureData(width, height, pixels);
+		} catch(IOException ioException){//if the cooked file couldn't be read
+			return null;//fall back to decoding the PNG
+		}
+	}
+
+	/**Writes a cooked texture. The file is written under a temporary name and moved into place, so a crash never leaves a damaged cooked file behind.
+	 * Failing to cook isn't fatal, the PNG is just decoded again next time.
+	 * @param cookedFile The file to store the cooked texture in.
+	 * @param texture The decoded texture.
+	 * @param hash The hash of the PNG the texture was decoded from.*/
+	private void cook(File cookedFile, TextureData texture, byte[] hash)
+	{
+		File temporary = new File(directory, cookedFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try{
+			Files.createDirectories(directory.toPath());//make sure the cache directory exists
+			try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);//the unused end of the header is left zeroed
+				header.putInt(MAGIC).putInt(VERSION).putInt(texture.width).putInt(texture.height).put(hash);
+				header.clear();
+				ByteBuffer pixels = texture.pixels.duplicate();//write from a duplicate so the texture's buffer is left ready for reading
+				while(header.hasRemaining()){
+					channel.write(header);
+				}
+				while(pixels.hasRemaining()){
+					channel.write(pixels);
+				}
+			}
+			Files.move(temporary.toPath(), cookedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);//replace the old cooked file in one step
+		} catch(IOException ioException){//if the texture couldn't be cooked
+			temporary.delete();
+		}
+	}
+
+	/**Reads the entire PNG file of a texture.
+	 * @param textureName The name of the texture.
+	 * @return Array containing the PNG file's contents.
+	 * @throws IOException If the PNG file is missing or couldn't be read.*/
+	private static byte[] readSource(String textureName) throws IOException
+	{
+		InputStream resource = TextureCache.class.getResourceAsStream("/res/" + textureName + ".png");
+		if(resource == null){//if the texture's file doesn't exist
+			throw new IOException("Missing texture file: " + textureName + ".png");
+		}
+		try(InputStream input = resource){
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while((count = input.read(buffer)) != -1){//copy the file until EOF is reached
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		}
+	}
+
+	/**Hashes the contents of a PNG file.
+	 * @param source The PNG file's contents.
+	 * @return The SHA-1 digest of the contents.*/
+	private static byte[] hash(byte[] source)
+	{
+		try{
+			return MessageDigest.getInstance("SHA-1").digest(source);
+		} catch(NoSuchAlgorithmException noSuchAlgorithmException){//every Java platform is required to support SHA-1
+			throw new IllegalStateException("SHA-1 is unavailable", noSuchAlgorithmException);
+		}
+	}
+
+	/**Returns the number of textures that were loaded from their cooked copy.
+	 * @return The number of cache hits.*/
+	public synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**Returns the number of textures that had to be decoded and cooked.
+	 * @return The number of cache misses.*/
+	public synchronized int getMisses()
+	{
+		return misses;
+	}
+}
@@ -0,0 +1,74 @@
+package com.insertcreativity.zoogame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import javax.imageio.ImageIO;
+import org.lwjgl.BufferUtils;
+
+/**Decoded RGBA pixel data for a texture that's ready to be uploaded. Creating texture data doesn't need a GL context, so it can be done on any thread.*/
+public class TextureData
+{
+	/**The width of the texture.*/
+	public final int width;
+	/**The height of the texture.*/
+	public final int height;
+	/**Buffer containing the texture's RGBA pixel data, ready for reading.*/
+	public final ByteBuffer pixels;
+
+	/**Creates new texture data.
+	 * @param textureWidth The width of the texture.
+	 * @param textureHeight The height of the texture.
+	 * @param pixelData Buffer containing the texture's RGBA pixel data, ready for reading.*/
+	public TextureData(int textureWidth, int textureHeight, ByteBuffer pixelData)
+	{
+		width = textureWidth;
+		height = textureHeight;
+		pixels = pixelData;
+	}
+
+	/**Decodes a texture from {textureName}.png. Note the file is resolved from the classpath.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @return The texture's decoded pixel data.
+	 * @throws IOException If the texture couldn't be loaded properly.*/
+	public static TextureData decode(String textureName) throws IOException
+	{
+		InputStream resource = TextureData.class.getResourceAsStream("/res/" + textureName + ".png");
+		if(resource == null){//if the texture's file doesn't exist
+			throw new IOException("Missing texture file: " + textureName + ".png");
+		}
+		BufferedImage bufferedImage;
+		try(InputStream input = resource){
+			bufferedImage = ImageIO.read(input);//read the texture's file into a buffered-image
+		}
+		if(bufferedImage == null){//if the file wasn't a readable image
+			throw new IOException("Failed to decode texture file: " + textureName + ".png");
+		}
+		return fromImage(bufferedImage);
+	}
+
+	/**Converts an image into RGBA pixel data.
+	 * @param image The image to convert.
+	 * @return The image's pixel data.*/
+	public static TextureData fromImage(BufferedImage image)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] argb = image.getRGB(0, 0, width, height, null, 0, width);//get the image's pixels, one row of the image per scanline
+
+		byte[] rgba = new byte[argb.length * 4];//convert into a heap array first, which is much faster than putting bytes into a direct buffer one at a time
+		int index = 0;
+		for(int pixel : argb){//iterate through all the pixels in the image
+			rgba[index++] = (byte)(pixel >> 16);//store the pixel's R component
+			rgba[index++] = (byte)(pixel >> 8);//store the pixel's G component
+			rgba[index++] = (byte)pixel;//store the pixel's B component
+			rgba[index++] = (byte)(pixel >> 24);//store the pixel's A component
+		}
+
+		ByteBuffer pixelData = BufferUtils.createByteBuffer(rgba.length);//allocate a byte buffer for storing the pixel data
+		pixelData.put(rgba);//copy all the pixels in one go
+		pixelData.flip();//reset the buffer position for reading
+		return new TextureData(width, height, pixelData);
+	}
+}
@@ -0,0 +1,418 @@
+package com.insertcreativity.zoogame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import org.lwjgl.opengl.GL11;
+
+/**Keeps track of which textures are resident on the GPU, and evicts the least recently used ones whenever the textures take up more memory
+ * than the budget allows. Textures that were loaded by name are evicted by deleting them, and are loaded again the next time they're bound,
+ * so large worlds can stream their art in and out. Textures uploaded from pixel data that can't be loaded again, such as atlas pages, are never evicted.
+ * <p>Users of a texture hold a reference to it with {@link #acquire(String)}, and the texture is deleted once every reference is released.
+ * Acquiring a texture gives out a handle, which binds the texture without any string work or map lookups while the reference is held.
+ * Textures that are bound by name without ever being acquired stay resident until they're evicted.</p>
+ * All methods must be called on the thread the GL context is current on.*/
+public class TextureManager
+{
+	/**The number of bytes each texel takes up on the GPU, since textures are stored as RGBA.*/
+	private static final int BYTES_PER_TEXEL = 4;
+
+	/**The GL state cache that textures are bound through.*/
+	private final GLState glState;
+	/**Map containing the names and entries for every texture that's acquired or resident.*/
+	private final HashMap<String, Entry> entries;
+	/**Registry of the handles given out for every texture that's acquired or resident.*/
+	private final ResourceRegistry<Entry> handles;
+	/**The least recently bound resident texture, which is the first to be evicted, or null if no textures are resident.*/
+	private Entry leastRecent;
+	/**The most recently bound resident texture, or null if no textures are resident.*/
+	private Entry mostRecent;
+	/**The number of resident textures.*/
+	private int residentCount;
+	/**The most memory resident textures can take up before textures are evicted. (in bytes)*/
+	private long budget;
+	/**The memory taken up by the resident textures. (in bytes)*/
+	private long residentBytes;
+	/**The number of the current frame, which textures bound this frame are never evicted during.*/
+	private long frame;
+	/**The number of binds of textures that were already resident.*/
+	private int hits;
+	/**The number of binds that had to load their texture first.*/
+	private int misses;
+	/**The number of textures that have been evicted to stay within the budget.*/
+	private int evictions;
+
+	/**Creates a new texture manager with no budget, so nothing is evicted until a budget is set.
+	 * @param state The GL state cache to bind textures through.*/
+	public TextureManager(GLState state)
+	{
+		glState = state;
+		entries = new HashMap<String, Entry>();
+		handles = new ResourceRegistry<Entry>("texture");
+		budget = Long.MAX_VALUE;
+	}
+
+	/**Sets the most memory that resident textures can take up, evicting textures straight away if they take up more.
+	 * The budget can still be exceeded by textures that can't be evicted, or that have been bound during the current frame.
+	 * @param bytes The texture memory budget. (in bytes)
+	 * @throws IllegalArgumentException If the budget is negative.*/
+	public void setBudget(long bytes) throws IllegalArgumentException
+	{
+		if(bytes < 0){
+			throw new IllegalArgumentException("Texture budget can't be negative: " + bytes);
+		}
+		budget = bytes;
+		evict();
+	}
+
+	/**Adds a reference to a texture, so it isn't deleted until the reference is released. The texture isn't loaded until it's first bound.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @return The texture's handle, which stays valid until the reference is released.*/
+	public int acquire(String textureName)
+	{
+		Entry entry = getEntry(textureName, true);
+		entry.references++;
+		return entry.handle;
+	}
+
+	/**Releases a reference to a texture, deleting the texture once there are no references left.
+	 * @param textureName The name of the texture.
+	 * @throws IllegalStateException If the texture isn't referenced.*/
+	public void release(String textureName) throws IllegalStateException
+	{
+		Entry entry = entries.get(textureName);
+		if(entry == null){//if the texture isn't known at all
+			throw new IllegalStateException("Texture isn't acquired: " + textureName);
+		}
+		release(entry);
+	}
+
+	/**Releases a reference to a texture, deleting the texture once there are no references left.
+	 * @param handle The handle of the texture, from {@link #acquire(String)}.
+	 * @throws IllegalStateException If the handle is stale or the texture isn't referenced.*/
+	public void release(int handle) throws IllegalStateException
+	{
+		release(handles.resolve(handle));
+	}
+
+	/**Loads a texture from its file right away, instead of waiting until it's first bound.
+	 * @param textureName The name of the texture and the file to load it from.
+	 * @throws IOException If the texture couldn't be loaded properly.*/
+	public void load(String textureName) throws IOException
+	{
+		Entry entry = getEntry(textureName, true);
+		if(entry.texture == 0){//if the texture isn't resident
+			try{
+				load(entry);
+			} catch(IOException ioException){
+				if(entry.references == 0){//don't keep entries for textures that don't exist
+					forget(entry);
+				}
+				throw ioException;
+			}
+		}
+	}
+
+	/**Uploads a texture from already decoded pixel data, replacing the texture if it's already resident.
+	 * @param textureName The name to store the texture under.
+	 * @param textureData The texture's decoded pixel data.
+	 * @param reloadable Whether the texture can be loaded again from a file with the same name, which is what allows it to be evicted.*/
+	public void upload(String textureName, TextureData textureData, boolean reloadable)
+	{
+		Entry entry = getEntry(textureName, reloadable);
+		unload(entry);//replace the old texture if there is one
+		entry.reloadable = reloadable;
+		upload(entry, textureData);
+		evict();
+	}
+
+	/**Checks whether a texture is known to the manager, either because it's acquired or because it's resident.
+	 * @param textureName The name of the texture.
+	 * @return True if the texture is known, false otherwise.*/
+	public boolean contains(String textureName)
+	{
+		return entries.containsKey(textureName);
+	}
+
+	/**Binds a texture to the specified sample, loading it from its file first if it isn't resident.
+	 * @param textureName The name of the texture to bind.
+	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).
+	 * @throws IllegalStateException If the texture wasn't resident and couldn't be loaded.*/
+	public void bind(String textureName, int sampleIndex) throws IllegalStateException
+	{
+		bind(getEntry(textureName, true), sampleIndex);//textures that aren't known yet are loaded from their file
+	}
+
+	/**Binds a texture to the specified sample, loading it from its file first if it was evicted.
+	 * @param handle The handle of the texture, from {@link #acquire(String)}.
+	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).
+	 * @throws IllegalStateException If the handle is stale, or the texture wasn't resident and couldn't be loaded.*/
+	public void bind(int handle, int sampleIndex) throws IllegalStateException
+	{
+		bind(handles.resolve(handle), sampleIndex);
+	}
+
+	/**Ends the current frame. Textures bound during a frame are kept resident until the frame ends, even if that exceeds the budget.*/
+	public void endFrame()
+	{
+		frame++;
+		evict();
+	}
+
+	/**Returns the most memory that resident textures can take up before textures are evicted.
+	 * @return The texture memory budget. (in bytes)*/
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	/**Returns the memory taken up by the resident textures.
+	 * @return The resident texture memory. (in bytes)*/
+	public long getResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	/**Returns the number of textures that are resident on the GPU.
+	 * @return The number of resident textures.*/
+	public int getResidentCount()
+	{
+		return residentCount;
+	}
+
+	/**Returns the number of binds where the texture was already resident.
+	 * @return The number of hits.*/
+	public int getHits()
+	{
+		return hits;
+	}
+
+	/**Returns the number of binds where the texture had to be loaded first.
+	 * @return The number of misses.*/
+	public int getMisses()
+	{
+		return misses;
+	}
+
+	/**Returns the number of textures that have been evicted to stay within the budget.
+	 * @return The number of evictions.*/
+	public int getEvictions()
+	{
+		return evictions;
+	}
+
+	/**Returns a one line summary of the resident textures and the manager's statistics.
+	 * @return The texture residency report.*/
+	public String getReport()
+	{
+		return String.format("textures: %d resident (%.1f MiB of %s), %d hits, %d misses, %d evictions%n", residentCount, residentBytes / 1048576.0,
+		                     ((budget == Long.MAX_VALUE)? "unlimited" : String.format("%.1f MiB", budget / 1048576.0)), hits, misses, evictions);
+	}
+
+	/**Returns the entry for a texture, creating it if the texture isn't known yet.
+	 * @param textureName The name of the texture.
+	 * @param reloadable Whether a new entry's texture can be loaded again from a file with the same name.
+	 * @return The texture's entry.*/
+	private Entry getEntry(String textureName, boolean reloadable)
+	{
+		Entry entry = entries.get(textureName);
+		if(entry == null){//if the texture isn't known yet
+			entry = new Entry(textureName, reloadable);
+			entry.handle = handles.add(entry);
+			entries.put(textureName, entry);
+		}
+		return entry;
+	}
+
+	/**Binds an entry's texture to the specified sample, loading it from its file first if it isn't resident.
+	 * @param entry The entry of the texture to bind.
+	 * @param sampleIndex The index of the sample to bind the texture to (must be between 0 and 31).
+	 * @throws IllegalStateException If the texture wasn't resident and couldn't be loaded.*/
+	private void bind(Entry entry, int sampleIndex) throws IllegalStateException
+	{
+		if(entry.texture != 0){//if the texture is already on the GPU
+			hits++;
+			if(entry != mostRecent){//mark the texture as the most recently used
+				unlink(entry);
+				append(entry);
+			}
+		} else{
+			misses++;
+			try{
+				load(entry);
+			} catch(IOException ioException){
+				if(entry.references == 0){//don't keep entries for textures that don't exist
+					forget(entry);
+				}
+				throw new IllegalStateException(ioException.getMessage(), ioException);
+			}
+		}
+		entry.lastFrame = frame;
+		glState.bindTexture(sampleIndex, entry.texture);//bind the texture to the sample if it isn't already
+	}
+
+	/**Loads an entry's texture from its file, and evicts other textures if that goes over the budget.
+	 * @param entry The entry of the texture to load, which mustn't be resident.
+	 * @throws IOException If the texture couldn't be loaded properly.*/
+	private void load(Entry entry) throws IOException
+	{
+		try{
+			upload(entry, Renderer.readTextureData(entry.name));//load the texture's pixels, from the texture cache if there is one
+		} catch(IOException ioException){
+			throw new IOException("Failed to load texture: " + entry.name, ioException);
+		}
+		evict();
+	}
+
+	/**Uploads pixel data into a new GL texture for an entry.
+	 * @param entry The entry of the texture, which mustn't be resident.
+	 * @param textureData The texture's decoded pixel data.*/
+	private void upload(Entry entry, TextureData textureData)
+	{
+		ByteBuffer pixelData = textureData.pixels;
+		int texture = GL11.glGenTextures();//generate a handle for this texture and store it
+		glState.bindTexture(0, texture);//bind the texture
+		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);//set the texture to be scaled down using 'nearest-neighbor'
+		GL11.glTexParameterf(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);//set the texture to be scaled up using 'nearest-neighbor'
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, textureData.width, textureData.height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixelData);//create the texture
+
+		entry.texture = texture;
+		entry.width = textureData.width;
+		entry.height = textureData.height;
+		entry.lastFrame = frame;//a texture that was just loaded is about to be used, so don't evict it straight away
+		append(entry);
+		residentCount++;
+		residentBytes += entry.getSize();
+	}
+
+	/**Releases a reference to an entry's texture, deleting the texture once there are no references left.
+	 * @param entry The entry of the texture.
+	 * @throws IllegalStateException If the texture isn't referenced.*/
+	private void release(Entry entry) throws IllegalStateException
+	{
+		if(entry.references == 0){//if there's no reference to release
+			throw new IllegalStateException("Texture isn't acquired: " + entry.name);
+		}
+		entry.references--;
+		if(entry.references == 0){//if nothing uses the texture anymore
+			unload(entry);
+			forget(entry);
+		}
+	}
+
+	/**Deletes an entry's GL texture, if it's resident.
+	 * @param entry The entry of the texture to delete.*/
+	private void unload(Entry entry)
+	{
+		if(entry.texture != 0){//if the texture is on the GPU
+			GL11.glDeleteTextures(entry.texture);
+			glState.forgetTexture(entry.texture);
+			unlink(entry);
+			residentCount--;
+			residentBytes -= entry.getSize();
+			entry.texture = 0;
+		}
+	}
+
+	/**Forgets an entry completely, which makes its handle stale.
+	 * @param entry The entry to forget, which mustn't be resident.*/
+	private void forget(Entry entry)
+	{
+		entries.remove(entry.name);
+		handles.remove(entry.handle);
+	}
+
+	/**Evicts the least recently used textures until the resident textures fit in the budget,
+	 * skipping textures that can't be loaded again or that have been bound during the current frame.*/
+	private void evict()
+	{
+		Entry entry = leastRecent;
+		while((residentBytes > budget) && (entry != null)){
+			if(entry.lastFrame == frame){//if every remaining texture has been used this frame
+				return;
+			}
+			Entry next = entry.next;
+			if(entry.reloadable){//if the texture can be loaded again when it's needed
+				unload(entry);
+				evictions++;
+				if(entry.references == 0){//nothing is holding on to the texture, so forget it completely
+					forget(entry);
+				}
+			}
+			entry = next;
+		}
+	}
+
+	/**Adds a resident texture to the most recently bound end of the list.
+	 * @param entry The entry of the texture, which mustn't already be in the list.*/
+	private void append(Entry entry)
+	{
+		entry.previous = mostRecent;
+		entry.next = null;
+		if(mostRecent != null){
+			mostRecent.next = entry;
+		} else{
+			leastRecent = entry;
+		}
+		mostRecent = entry;
+	}
+
+	/**Removes a resident texture from the list.
+	 * @param entry The entry of the texture, which must be in the list.*/
+	private void unlink(Entry entry)
+	{
+		if(entry.previous != null){
+			entry.previous.next = entry.next;
+		} else{
+			leastRecent = entry.next;
+		}
+		if(entry.next != null){
+			entry.next.previous = entry.previous;
+		} else{
+			mostRecent = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	/**A texture known to the manager, which may or may not be resident.*/
+	private static class Entry
+	{
+		/**The name of the texture.*/
+		private final String name;
+		/**The texture's handle in the manager's registry.*/
+		private int handle;
+		/**Flag for whether the texture can be loaded again from its file after it's evicted.*/
+		private boolean reloadable;
+		/**The GL handle ID for the texture, or 0 if the texture isn't resident.*/
+		private int texture;
+		/**The width of the texture.*/
+		private int width;
+		/**The height of the texture.*/
+		private int height;
+		/**The number of references held to the texture.*/
+		private int references;
+		/**The frame the texture was last bound or loaded during.*/
+		private long lastFrame;
+		/**The resident texture that was bound before this one, or null if this is the least recently bound.*/
+		private Entry previous;
+		/**The resident texture that was bound after this one, or null if this is the most recently bound.*/
+		private Entry next;
+
+		/**Creates a new entry for a texture that isn't resident yet.
+		 * @param textureName The name of the texture.
+		 * @param canReload Whether the texture can be loaded again from its file after it's evicted.*/
+		private Entry(String textureName, boolean canReload)
+		{
+			name = textureName;
+			reloadable = canReload;
+		}
+
+		/**Returns the memory the texture takes up on the GPU, from its size.
+		 * @return The size of the texture. (in bytes)*/
+		private long getSize()
+		{
+			return (long)width * height * BYTES_PER_TEXEL;
+		}
+	}
+}
@@ -0,0 +1,426 @@
+package com.insertcreativity.zoogame;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import org.lwjgl.BufferUtils;
+
+/**Grid of tiles covering the ground of the world, such as grass, paths and rocks. Tiles are drawn from a tileset texture
+ * that's divided into equally sized cells, where tile type t uses the t'th cell counting from 1, left to right and top to bottom, and type 0 is left empty.
+ * <p>The map is split into square chunks, and each chunk's tiles are baked into one static range of the map's geometry arena.
+ * Editing a tile only marks its chunk dirty, and dirty chunks are rebuilt the next time they're visible, so a chunk is rebuilt at most once per frame
+ * however many of its tiles changed. Only the chunks overlapping the active camera's view are drawn, all with a single multi-draw call.</p>*/
+public class TileMap
+{
+	/**The number of tiles along each side of a chunk.*/
+	public static final int CHUNK_SIZE = 32;
+	/**The number of vertices stored for each tile.*/
+	private static final int VERTICES_PER_TILE = 4;
+	/**The number of indexes used to render each tile.*/
+	private static final int INDEXES_PER_TILE = 6;
+
+	/**The number of tiles across the map.*/
+	private final int width;
+	/**The number of tiles up the map.*/
+	private final int height;
+	/**The width and height of each tile in world units.*/
+	private final float tileSize;
+	/**The name of the tileset texture.*/
+	private final String texture;
+	/**The number of cells across the tileset.*/
+	private final int tilesetColumns;
+	/**The number of cells down the tileset.*/
+	private final int tilesetRows;
+	/**The type of each tile, stored row by row starting from the bottom left.*/
+	private final short[] tiles;
+	/**The number of chunks across the map.*/
+	private final int chunksWide;
+	/**The number of chunks up the map.*/
+	private final int chunksHigh;
+	/**The chunks of the map, stored row by row starting from the bottom left.*/
+	private final Chunk[] chunks;
+	/**The arena that the chunks' geometry is stored in, or null until the first chunk is built.*/
+	private GeometryArena arena;
+	/**Reusable client side buffer that a chunk's vertices are written into before being uploaded.*/
+	private FloatBuffer vertexData;
+	/**Client side buffer holding the indexes for a full chunk, which are the same for every chunk.*/
+	private IntBuffer indexData;
+	/**The number of chunks rebuilt so far this frame.*/
+	private int rebuildCount;
+	/**The number of chunks drawn so far this frame.*/
+	private int drawnChunks;
+	/**The number of draw calls issued so far this frame.*/
+	private int drawCalls;
+
+	/**Creates a new tile map where every tile is empty. Note that no GPU resources are allocated until the map is first rendered.
+	 * @param tilesWide The number of tiles across the map.
+	 * @param tilesHigh The number of tiles up the map.
+	 * @param size The width and height of each tile in world units.
+	 * @param textureName The name of the tileset texture.
+	 * @param columns The number of cells across the tileset.
+	 * @param rows The number of cells down the tileset.
+	 * @throws IllegalArgumentException If any of the dimensions aren't positive, or the tileset has more cells than tile types can refer to.*/
+	public TileMap(int tilesWide, int tilesHigh, float size, String textureName, int columns, int rows) throws IllegalArgumentException
+	{
+		if((tilesWide <= 0) || (tilesHigh <= 0) || ((long)tilesWide * tilesHigh > Integer.MAX_VALUE) || !(size > 0)){//if the map's dimensions are out of range
+			throw new IllegalArgumentException("Invalid tile map dimensions: " + tilesWide + "x" + tilesHigh + " tiles of size " + size);
+		}
+		if((columns <= 0) || (rows <= 0) || ((long)columns * rows > Short.MAX_VALUE)){//if the tileset's dimensions are out of range
+			throw new IllegalArgumentException("Invalid tileset dimensions: " + columns + "x" + rows);
+		}
+		width = tilesWide;
+		height = tilesHigh;
+		tileSize = size;
+		texture = textureName;
+		tilesetColumns = columns;
+		tilesetRows = rows;
+		tiles = new short[tilesWide * tilesHigh];
+		chunksWide = (tilesWide + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunksHigh = (tilesHigh + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunks = new Chunk[chunksWide * chunksHigh];
+		for(int i = 0; i < chunks.length; i++){
+			chunks[i] = new Chunk();
+		}
+	}
+
+	/**Returns the type of a tile.
+	 * @param x The column of the tile, counting from the left.
+	 * @param y The row of the tile, counting from the bottom.
+	 * @return The tile's type, or 0 if it's empty.
+	 * @throws IllegalArgumentException If the tile is outside the map.*/
+	public int getTile(int x, int y) throws IllegalArgumentException
+	{
+		checkBounds(x, y);
+		return tiles[y * width + x];
+	}
+
+	/**Sets the type of a tile, marking its chunk to be rebuilt if the tile changed.
+	 * @param x The column of the tile, counting from the left.
+	 * @param y The row of the tile, counting from the bottom.
+	 * @param type The tile's new type, or 0 to empty it.
+	 * @throws IllegalArgumentException If the tile is outside the map, or the type isn't in the tileset.*/
+	public void setTile(int x, int y, int type) throws IllegalArgumentException
+	{
+		checkBounds(x, y);
+		if((type < 0) || (type > tilesetColumns * tilesetRows)){//if there's no cell for the type
+			throw new IllegalArgumentException("Invalid tile type: " + type);
+		}
+		int index = y * width + x;
+		if(tiles[index] != type){//if the tile is actually changing
+			tiles[index] = (short)type;
+			Chunk chunk = chunks[(y / CHUNK_SIZE) * chunksWide + (x / CHUNK_SIZE)];
+			chunk.dirty = true;
+			chunk.modified = true;
+		}
+	}
+
+	/**Sets every tile in a rectangle to the same type.
+	 * @param x The column of the rectangle's left edge.
+	 * @param y The row of the rectangle's bottom edge.
+	 * @param columns The number of tiles across the rectangle.
+	 * @param rows The number of tiles up the rectangle.
+	 * @param type The tiles' new type, or 0 to empty them.
+	 * @throws IllegalArgumentException If any of the rectangle is outside the map, or the type isn't in the tileset.*/
+	public void fill(int x, int y, int columns, int rows, int type) throws IllegalArgumentException
+	{
+		if((columns < 0) || (rows < 0)){
+			throw new IllegalArgumentException("Invalid fill size: " + columns + "x" + rows);
+		}
+		for(int row = y; row < y + rows; row++){
+			for(int column = x; column < x + columns; column++){
+				setTile(column, row, type);
+			}
+		}
+	}
+
+	/**Copies the types of a chunk's tiles into an array. Parts of the chunk that hang off the edge of the map are copied as empty tiles.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.
+	 * @param destination Array to copy the tiles into, row by row starting from the bottom left, with room for CHUNK_SIZE * CHUNK_SIZE tiles.*/
+	public void copyChunk(int chunkX, int chunkY, short[] destination)
+	{
+		int startX = chunkX * CHUNK_SIZE;
+		int startY = chunkY * CHUNK_SIZE;
+		int columns = Math.min(CHUNK_SIZE, width - startX);
+		int rows = Math.min(CHUNK_SIZE, height - startY);
+		Arrays.fill(destination, 0, CHUNK_SIZE * CHUNK_SIZE, (short)0);
+		for(int row = 0; row < rows; row++){
+			System.arraycopy(tiles, (startY + row) * width + startX, destination, row * CHUNK_SIZE, columns);
+		}
+	}
+
+	/**Replaces the types of all of a chunk's tiles at once, such as when loading it. The chunk is rebuilt, but isn't counted as modified.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.
+	 * @param source Array of the tiles' types in the same layout as {@link #copyChunk(int, int, short[])}, which must all be in the tileset.
+	 * @throws IllegalArgumentException If any of the types aren't in the tileset.*/
+	public void setChunk(int chunkX, int chunkY, short[] source) throws IllegalArgumentException
+	{
+		int startX = chunkX * CHUNK_SIZE;
+		int startY = chunkY * CHUNK_SIZE;
+		int columns = Math.min(CHUNK_SIZE, width - startX);
+		int rows = Math.min(CHUNK_SIZE, height - startY);
+		int types = tilesetColumns * tilesetRows;
+		for(int row = 0; row < rows; row++){
+			for(int column = 0; column < columns; column++){
+				int type = source[row * CHUNK_SIZE + column];
+				if((type < 0) || (type > types)){
+					throw new IllegalArgumentException("Invalid tile type: " + type);
+				}
+			}
+			System.arraycopy(source, row * CHUNK_SIZE, tiles, (startY + row) * width + startX, columns);
+		}
+		chunks[chunkY * chunksWide + chunkX].dirty = true;
+	}
+
+	/**Returns whether any of a chunk's tiles were edited since the last time this was called for the chunk, and clears the chunk's flag.
+	 * This is separate from the chunk needing to be rebuilt, so saving the map doesn't depend on what's been rendered.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.
+	 * @return True if {@link #setTile(int, int, int)} changed any of the chunk's tiles, false otherwise.*/
+	public boolean takeModified(int chunkX, int chunkY)
+	{
+		Chunk chunk = chunks[chunkY * chunksWide + chunkX];
+		boolean modified = chunk.modified;
+		chunk.modified = false;
+		return modified;
+	}
+
+	/**Renders every chunk overlapping the active camera's view, rebuilding any of them that are dirty first.
+	 * @param renderer The renderer to render the map with.
+	 * @param shaderName The name of the shader to render the map with.*/
+	public void render(Renderer renderer, String shaderName)
+	{
+		if(arena == null){//if this is the first time the map has been rendered
+			int tilesPerChunk = CHUNK_SIZE * CHUNK_SIZE;
+			arena = new GeometryArena(tilesPerChunk * VERTICES_PER_TILE * 4, tilesPerChunk * INDEXES_PER_TILE * 4);//start with room for a few full chunks
+			vertexData = BufferUtils.createFloatBuffer(tilesPerChunk * VERTICES_PER_TILE * GeometryArena.FLOATS_PER_VERTEX);
+			indexData = BufferUtils.createIntBuffer(tilesPerChunk * INDEXES_PER_TILE);
+			for(int tile = 0; tile < tilesPerChunk; tile++){
+				int vertex = tile * VERTICES_PER_TILE;//calculate the first vertex of the tile
+				indexData.put(vertex).put(vertex + 1).put(vertex + 2);//store the lower right triangle
+				indexData.put(vertex + 2).put(vertex + 3).put(vertex);//store the upper left triangle
+			}
+			indexData.flip();
+		}
+
+		Camera view = renderer.getActiveCamera();//work out which chunks the view covers straight from its edges, instead of testing every chunk
+		float chunkLength = CHUNK_SIZE * tileSize;
+		int left = Math.max((int)Math.floor(view.getLeft() / chunkLength), 0);
+		int right = Math.min((int)Math.floor(view.getRight() / chunkLength), chunksWide - 1);
+		int bottom = Math.max((int)Math.floor(view.getBottom() / chunkLength), 0);
+		int top = Math.min((int)Math.floor(view.getTop() / chunkLength), chunksHigh - 1);
+
+		int queued = 0;
+		for(int chunkY = bottom; chunkY <= top; chunkY++){
+			for(int chunkX = left; chunkX <= right; chunkX++){
+				Chunk chunk = chunks[chunkY * chunksWide + chunkX];
+				if(chunk.dirty){//if the chunk's tiles changed since it was last built
+					rebuild(chunk, chunkX, chunkY);
+				}
+				if(chunk.geometry != null){//if the chunk has any tiles to draw
+					arena.queueDraw(chunk.geometry);
+					queued++;
+				}
+			}
+		}
+		if(queued == 0){//if there's nothing in view
+			return;
+		}
+
+		int shader = renderer.getShaderHandle(shaderName);
+		renderer.bindShader(shader);
+		renderer.setUniform(shader, Renderer.PROJECTION_UNIFORM, renderer.getViewProjection());//tiles are already in world coordinates
+		renderer.setUniform(shader, Renderer.TRANSLATION_UNIFORM, 0, 0, 0);//clear any translation left by a model drawn with the same shader
+		renderer.setAnimation(shader, null, 0);//tiles carry their own texture coordinates, so clear any animation left by a model
+		renderer.setTextureRegion(shader, renderer.bindTexture(texture, 0));//map the tiles into the tileset's part of the page if it's packed in an atlas
+		renderer.setUniform(shader, Renderer.SAMPLER_UNIFORM, 0);
+		arena.flushDraws();//draw every visible chunk at once
+		drawnChunks += queued;
+		drawCalls++;
+	}
+
+	/**Bakes a chunk's non-empty tiles into a new range of the arena, replacing its old one.
+	 * @param chunk The chunk to rebuild.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.*/
+	private void rebuild(Chunk chunk, int chunkX, int chunkY)
+	{
+		if(chunk.geometry != null){//if the chunk was built before
+			arena.free(chunk.geometry);
+			chunk.geometry = null;
+		}
+		chunk.dirty = false;
+		rebuildCount++;
+
+		float cellWidth = 1.0f / tilesetColumns;
+		float cellHeight = 1.0f / tilesetRows;
+		int startX = chunkX * CHUNK_SIZE;
+		int startY = chunkY * CHUNK_SIZE;
+		int endX = Math.min(startX + CHUNK_SIZE, width);
+		int endY = Math.min(startY + CHUNK_SIZE, height);
+		int tileCount = 0;
+		vertexData.clear();
+		for(int y = startY; y < endY; y++){
+			for(int x = startX; x < endX; x++){
+				int type = tiles[y * width + x];
+				if(type == 0){//if the tile is empty
+					continue;
+				}
+				float u1 = ((type - 1) % tilesetColumns) * cellWidth;//find the tile's cell in the tileset, which is stored top row first
+				float v2 = ((type - 1) / tilesetColumns) * cellHeight;
+				float u2 = u1 + cellWidth;
+				float v1 = v2 + cellHeight;
+				float x1 = x * tileSize;
+				float y1 = y * tileSize;
+				float x2 = x1 + tileSize;
+				float y2 = y1 + tileSize;
+				vertexData.put(x1).put(y1).put(u1).put(v1);//store the lower left vertex
+				vertexData.put(x2).put(y1).put(u2).put(v1);//store the lower right vertex
+				vertexData.put(x2).put(y2).put(u2).put(v2);//store the upper right vertex
+				vertexData.put(x1).put(y2).put(u1).put(v2);//store the upper left vertex
+				tileCount++;
+			}
+		}
+		if(tileCount == 0){//if the whole chunk is empty, there's nothing to store
+			return;
+		}
+		vertexData.flip();
+		IntBuffer indexes = indexData.duplicate();
+		indexes.limit(tileCount * INDEXES_PER_TILE);//the indexes for the first n tiles of a full chunk are the indexes for n tiles
+		chunk.geometry = arena.allocate(vertexData, indexes);
+	}
+
+	/**Checks that a tile is inside the map.
+	 * @param x The column of the tile.
+	 * @param y The row of the tile.
+	 * @throws IllegalArgumentException If the tile is outside the map.*/
+	private void checkBounds(int x, int y) throws IllegalArgumentException
+	{
+		if((x < 0) || (x >= width) || (y < 0) || (y >= height)){
+			throw new IllegalArgumentException("Tile (" + x + ", " + y + ") is outside the " + width + "x" + height + " map");
+		}
+	}
+
+	/**Returns the number of tiles across the map.
+	 * @return The map's width in tiles.*/
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**Returns the number of tiles up the map.
+	 * @return The map's height in tiles.*/
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**Returns the width and height of each tile.
+	 * @return The size of a tile in world units.*/
+	public float getTileSize()
+	{
+		return tileSize;
+	}
+
+	/**Returns the name of the tileset texture.
+	 * @return The tileset's texture name.*/
+	public String getTexture()
+	{
+		return texture;
+	}
+
+	/**Returns the number of cells across the tileset.
+	 * @return The tileset's column count.*/
+	public int getTilesetColumns()
+	{
+		return tilesetColumns;
+	}
+
+	/**Returns the number of cells down the tileset.
+	 * @return The tileset's row count.*/
+	public int getTilesetRows()
+	{
+		return tilesetRows;
+	}
+
+	/**Returns the number of chunks across the map.
+	 * @return The map's width in chunks.*/
+	public int getChunksWide()
+	{
+		return chunksWide;
+	}
+
+	/**Returns the number of chunks up the map.
+	 * @return The map's height in chunks.*/
+	public int getChunksHigh()
+	{
+		return chunksHigh;
+	}
+
+	/**Returns the number of chunks that are waiting to be rebuilt.
+	 * @return The number of dirty chunks.*/
+	public int getDirtyCount()
+	{
+		int dirty = 0;
+		for(Chunk chunk : chunks){
+			if(chunk.dirty){
+				dirty++;
+			}
+		}
+		return dirty;
+	}
+
+	/**Returns the number of chunks rebuilt since the statistics were last reset.
+	 * @return The number of chunk rebuilds.*/
+	public int getRebuildCount()
+	{
+		return rebuildCount;
+	}
+
+	/**Returns the number of chunks drawn since the statistics were last reset.
+	 * @return The number of chunks drawn.*/
+	public int getDrawnChunks()
+	{
+		return drawnChunks;
+	}
+
+	/**Returns the number of draw calls issued since the statistics were last reset.
+	 * @return The number of draw calls the map issued.*/
+	public int getDrawCalls()
+	{
+		return drawCalls;
+	}
+
+	/**Resets the rebuild, chunk and draw call counters, typically once per frame.*/
+	public void resetStatistics()
+	{
+		rebuildCount = 0;
+		drawnChunks = 0;
+		drawCalls = 0;
+	}
+
+	/**Deletes the map's GPU buffers. The map can still be rendered afterwards, which rebuilds every chunk.*/
+	public void delete()
+	{
+		if(arena != null){//if the GPU buffers were created
+			arena.delete();
+			arena = null;
+			for(Chunk chunk : chunks){
+				chunk.geometry = null;
+				chunk.dirty = true;
+			}
+		}
+	}
+
+	/**A square section of the map whose tiles are drawn together.*/
+	private static class Chunk
+	{
+		/**The range of the arena the chunk's tiles are stored in, or null if the chunk has no tiles or hasn't been built.*/
+		private GeometryArena.Allocation geometry;
+		/**Flag for whether the chunk's tiles have changed since it was last built.*/
+		private boolean dirty = true;
+		/**Flag for whether the chunk's tiles have been edited since {@link TileMap#takeModified(int, int)} was last called for it.*/
+		private boolean modified;
+	}
+}
@@ -10,7 +10,7 @@ import org.lwjgl.glfw.GLFWScrollCallbackI;
 import org.lwjgl.glfw.GLFWWindowSizeCallbackI;
 import org.lwjgl.glfw.GLFWVidMode;
 
-public class Window implements GLFWWindowSizeCallbackI
+public class Window implements GLFWWindowSizeCallbackI, RenderBackend
 {
 	/**The handle ID for the window.*/
 	public final long handle;
@@ -30,6 +30,12 @@ public class Window implements GLFWWindowSizeCallbackI
 	private final ScrollManager scrollManager;
 	/**Object that tracks the mouse cursor for the window.*/
 	private final CursorManager cursorManager;
+	/**Queue that input events are passed through from GLFW's callbacks to the game.*/
+	private final InputQueue inputQueue;
+	/**Object that hands the queued input events to the game.*/
+	private final InputDispatcher inputDispatcher;
+	/**The time that input was last dispatched up to. (in nanoseconds)*/
+	private long inputTime;
 	/**Reference to the instance of the game.*/
 	protected final Main game;
 	
@@ -62,6 +68,9 @@ public class Window implements GLFWWindowSizeCallbackI
 		GLFW.glfwSwapInterval(1);//enable Vsync
 		isVsyncEnabled = true;//set that Vsync is enabled by default
 		
+		inputQueue = new InputQueue(1024);//create a queue for passing input events to the game
+		inputDispatcher = new InputDispatcher();
+		inputTime = System.nanoTime();
 		keyManager = new KeyManager();//create a key manager for the window
 		GLFW.glfwSetKeyCallback(handle, keyManager);//set the key event callback
 		mouseManager = new MouseManager();//create a mouse manager for the window
@@ -130,24 +139,41 @@ public class Window implements GLFWWindowSizeCallbackI
 		return isVsyncEnabled;
 	}
 	
-	/**Updates the window.
+	/**Updates the window, polling GLFW for any new events.
 	 * @return False if the window was closed, true otherwise.*/
-	protected boolean update()
+	public boolean update()
 	{
 		if(GLFW.glfwWindowShouldClose(handle)){//if the window should be closed
 			GLFW.glfwDestroyWindow(handle);//destroy the window
 			return false;//return that the window was closed
 		}
 		
-		keyManager.update();//update the key manager
-		mouseManager.update();//update the mouse manager
 		GLFW.glfwPollEvents();//process any received events
+		inputQueue.commit();//publish any merged cursor or scroll events
 		
 		return true;//return that execution should continue normally
 	}
 	
+	/**Hands every input event that happened no later than the specified time to the game, and advances how long each key and button has been held for.
+	 * This should be called once per update, before the game is updated.
+	 * @param until The time of the update, events after this are left for the next update. (in nanoseconds)*/
+	protected void dispatchInput(long until)
+	{
+		keyManager.update();//update the key manager
+		mouseManager.update();//update the mouse manager
+		inputQueue.dispatch(until, inputDispatcher);//hand the events over to the game
+		inputTime = until;
+	}
+	
+	/**Returns the queue that input events are passed to the game through.
+	 * @return The window's input queue.*/
+	public InputQueue getInputQueue()
+	{
+		return inputQueue;
+	}
+	
 	/**Renders the contents of this window.*/
-	protected void render()
+	public void render()
 	{
 		GLFW.glfwSwapBuffers(handle);//swap the window's back buffer with the front
 	}
@@ -180,6 +206,14 @@ public class Window implements GLFWWindowSizeCallbackI
 		return keyManager.keyPressTimes[key];
 	}
 	
+	/**Returns how long the specified key has been held down for, up to the latest update.
+	 * @param key The GLFW key-code of the key to check.
+	 * @return The time the specified key has been held for, or 0 if it isn't being held. (in nanoseconds)*/
+	public long getKeyHoldTime(int key)
+	{
+		return ((keyManager.keyPressTimes[key] != 0)? inputTime - keyManager.keyDownTimes[key] : 0);
+	}
+	
 	/**Returns whether the specified button is currently held down.
 	 * @param button The GLFW button-code of the button to check.
 	 * @return True if the button is currently being pressed, false otherwise.*/
@@ -196,6 +230,14 @@ public class Window implements GLFWWindowSizeCallbackI
 		return mouseManager.mousePressTimes[button];
 	}
 	
+	/**Returns how long the specified button has been held down for, up to the latest update.
+	 * @param button The GLFW button-code of the button to check.
+	 * @return The time the specified button has been held for, or 0 if it isn't being held. (in nanoseconds)*/
+	public long getButtonHoldTime(int button)
+	{
+		return ((mouseManager.mousePressTimes[button] != 0)? inputTime - mouseManager.mouseDownTimes[button] : 0);
+	}
+	
 	/**Returns the cursor's current x position in the window.
 	 * @return The x coordinate of the cursor.*/
 	public double getMouseX()
@@ -215,11 +257,14 @@ public class Window implements GLFWWindowSizeCallbackI
 	{
 		/**Stores the number of ticks that each key has been held for, or 0 for keys not currently being held.*/
 		private final int[] keyPressTimes;
+		/**Stores the time that each key was pressed at. (in nanoseconds)*/
+		private final long[] keyDownTimes;
 		
 		/**Creates a new manager for monitoring key strokes in the window.*/
 		private KeyManager()
 		{
-			keyPressTimes = new int[GLFW.GLFW_KEY_LAST];//create an array for storing the number of ticks each key has been held for
+			keyPressTimes = new int[GLFW.GLFW_KEY_LAST + 1];//create an array for storing the number of ticks each key has been held for
+			keyDownTimes = new long[GLFW.GLFW_KEY_LAST + 1];//create an array for storing when each key was pressed
 		}
 		
 		/**Called whenever GLFW detects that an action has occurred on a key.
@@ -233,22 +278,17 @@ public class Window implements GLFWWindowSizeCallbackI
 			if(key == GLFW.GLFW_KEY_UNKNOWN){//if an unknown key was pressed
 				return;//ignore it
 			}
-			if(action == GLFW.GLFW_PRESS){//if the key was pressed
-				keyPressTimes[key] = 1;//set that the key has been held for 1 tick
-				Window.this.game.onKeyPress(key, scancode, modifiers);//inform the game that the key was pressed
-			} else
-			if(action == GLFW.GLFW_RELEASE){//if the key was released
-				keyPressTimes[key] = 0;//set that the key is no longer being held
-				Window.this.game.onKeyRelease(key, scancode, modifiers);//inform the game that the key was released
+			if((action == GLFW.GLFW_PRESS) || (action == GLFW.GLFW_RELEASE)){//if the key was pressed or released
+				inputQueue.pushKey(key, scancode, action, modifiers, System.nanoTime());//queue the event for the next update
 			}
 		}
 		
 		/**Updates the number of ticks each key has been held for.*/
 		protected void update()
 		{
-			for(int keyPressTime : keyPressTimes){//iterate through all the keys
-				if(keyPressTime != 0){//if the key is being pressed
-					keyPressTime++;//increment how many ticks the key has been held for
+			for(int index = 0; index < keyPressTimes.length; index++){//iterate through all the keys
+				if(keyPressTimes[index] != 0){//if the key is being pressed
+					keyPressTimes[index]++;//increment how many ticks the key has been held for
 				}
 			}
 		}
@@ -259,11 +299,14 @@ public class Window implements GLFWWindowSizeCallbackI
 	{
 		/**Stores the number of ticks that each mouse button has been held for, or 0 for buttons not currently being held.*/
 		private final int[] mousePressTimes;
+		/**Stores the time that each mouse button was pressed at. (in nanoseconds)*/
+		private final long[] mouseDownTimes;
 		
 		/**Creates a new manager for monitoring mouse button presses in the window.*/
 		private MouseManager()
 		{
-			mousePressTimes = new int[GLFW.GLFW_MOUSE_BUTTON_LAST];//create an array for storing the number of ticks each button has been held for
+			mousePressTimes = new int[GLFW.GLFW_MOUSE_BUTTON_LAST + 1];//create an array for storing the number of ticks each button has been held for
+			mouseDownTimes = new long[GLFW.GLFW_MOUSE_BUTTON_LAST + 1];//create an array for storing when each button was pressed
 		}
 		
 		/**Called whenever GLFW detects that an action has occurred on a mouse button.
@@ -274,22 +317,15 @@ public class Window implements GLFWWindowSizeCallbackI
 		 * @param modifiers Bit flags indicating which modifier keys were being pressed during the action.*/
 		public void invoke(long window, int button, int action, int mods)
 		{
-			if(action == GLFW.GLFW_PRESS){//if the button was pressed
-				mousePressTimes[button] = 1;//set that the button has been held for 1 tick
-				Window.this.game.onButtonPress(button, mods);//inform the game that the button was pressed
-			} else
-			if(action == GLFW.GLFW_RELEASE){//if the button was released
-				mousePressTimes[button] = 0;//set that the button is no longer being held
-				Window.this.game.onButtonRelease(button, mods);//inform the game that the button was released
-			}
+			inputQueue.pushButton(button, action, mods, System.nanoTime());//queue the event for the next update
 		}
 		
 		/**Updates the number of ticks each button has been held for*/
 		protected void update()
 		{
-			for(int mousePressTime : mousePressTimes){//iterate through all the buttons
-				if(mousePressTime != 0){//if the button is being pressed
-					mousePressTime++;//increment how many ticks the button has been held for
+			for(int index = 0; index < mousePressTimes.length; index++){//iterate through all the buttons
+				if(mousePressTimes[index] != 0){//if the button is being pressed
+					mousePressTimes[index]++;//increment how many ticks the button has been held for
 				}
 			}
 		}
@@ -307,7 +343,7 @@ public class Window implements GLFWWindowSizeCallbackI
 		 * @param yoffset The amount that the wheel was scrolled in the y direction.*/
 		public void invoke(long window, double xoffset, double yoffset)
 		{
-			Window.this.game.onMouseScrolled(xoffset, yoffset);//inform the game that the scroll wheel was scrolled
+			inputQueue.pushScroll(xoffset, yoffset, System.nanoTime());//queue the event, adding it to any scrolling already queued
 		}
 	}
 	
@@ -328,9 +364,70 @@ public class Window implements GLFWWindowSizeCallbackI
 		 * @param ypos The y coordinate of the cursor's new position.*/
 		public void invoke(long window, double xpos, double ypos)
 		{
-			posX = xpos;//update the x position
-			posY = ypos;//update the y position
-			Window.this.game.onCursorMove(posX, posY);//inform the game that the cursor was moved
+			inputQueue.pushCursor(xpos, ypos, System.nanoTime());//queue the event, replacing any cursor move already queued
+		}
+	}
+	
+	/**Hands queued input events to the game, keeping track of which keys and buttons are held along the way.*/
+	private class InputDispatcher implements InputQueue.InputListener
+	{
+		/**Creates a new dispatcher for the window's input events.*/
+		private InputDispatcher(){}
+		
+		/**Called for each key event taken off the queue.
+		 * @param key The GLFW key-code for the key.
+		 * @param scancode The system's key-code for the key.
+		 * @param action The action that was performed on the key.
+		 * @param modifiers Bit flags indicating which modifier keys were being pressed during the action.
+		 * @param time The time the key event happened at. (in nanoseconds)*/
+		public void onKey(int key, int scancode, int action, int modifiers, long time)
+		{
+			if(action == GLFW.GLFW_PRESS){//if the key was pressed
+				keyManager.keyPressTimes[key] = 1;//set that the key has been held for 1 tick
+				keyManager.keyDownTimes[key] = time;//store when the key was pressed
+				game.onKeyPress(key, scancode, modifiers);//inform the game that the key was pressed
+			} else{
+				keyManager.keyPressTimes[key] = 0;//set that the key is no longer being held
+				game.onKeyRelease(key, scancode, modifiers);//inform the game that the key was released
+			}
+		}
+		
+		/**Called for each button event taken off the queue.
+		 * @param button The GLFW button-code for the button.
+		 * @param action The action that was performed on the button.
+		 * @param modifiers Bit flags indicating which modifier keys were being pressed during the action.
+		 * @param time The time the button event happened at. (in nanoseconds)*/
+		public void onButton(int button, int action, int modifiers, long time)
+		{
+			if(action == GLFW.GLFW_PRESS){//if the button was pressed
+				mouseManager.mousePressTimes[button] = 1;//set that the button has been held for 1 tick
+				mouseManager.mouseDownTimes[button] = time;//store when the button was pressed
+				game.onButtonPress(button, modifiers);//inform the game that the button was pressed
+			} else
+			if(action == GLFW.GLFW_RELEASE){//if the button was released
+				mouseManager.mousePressTimes[button] = 0;//set that the button is no longer being held
+				game.onButtonRelease(button, modifiers);//inform the game that the button was released
+			}
+		}
+		
+		/**Called for each scroll event taken off the queue.
+		 * @param x The total amount that the wheel was scrolled in the x direction.
+		 * @param y The total amount that the wheel was scrolled in the y direction.
+		 * @param time The time of the latest scroll merged into the event. (in nanoseconds)*/
+		public void onScroll(double x, double y, long time)
+		{
+			game.onMouseScrolled(x, y);//inform the game that the scroll wheel was scrolled
+		}
+		
+		/**Called for each cursor event taken off the queue.
+		 * @param x The x coordinate of the cursor's new position.
+		 * @param y The y coordinate of the cursor's new position.
+		 * @param time The time the cursor reached the new position. (in nanoseconds)*/
+		public void onCursor(double x, double y, long time)
+		{
+			cursorManager.posX = x;//update the x position
+			cursorManager.posY = y;//update the y position
+			game.onCursorMove(x, y);//inform the game that the cursor was moved
 		}
 	}
 	
@@ -0,0 +1,892 @@
+package com.insertcreativity.zoogame;
+
+import com.insertcreativity.zoogame.entity.EntityWorld;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**Saves a tile map and the entities on it into a versioned binary file, split into the same chunks as the map.
+ * An existing save is memory-mapped when it's opened, and chunks are only decoded when they're asked for, so opening even a huge zoo is nearly instant.
+ * <p>Autosaving is incremental: on the game thread, only the chunks whose tiles were edited or whose entities changed are copied out,
+ * and those copies are written on a background thread with NIO while the game keeps running. Changed chunks are appended to the file and the chunk table
+ * is then pointed at them, so a crash part way through a write leaves the previous save intact. The file is rewritten from scratch
+ * once more than half of it is out of date records.</p>
+ * <p>Which entities changed is followed through {@link EntityWorld#getChangedIds()}, so the cost of an autosave depends on how much changed
+ * rather than on how big the zoo is, and the save has to be the only thing that clears the world's changes.</p>
+ * <p>Entities are saved as their raw data, so entities added from {@link com.insertcreativity.zoogame.entity.Entity Entity} objects are loaded back without their objects.
+ * Each entity is saved in the chunk its position is in, with entities beyond the edge of the map going in the nearest chunk.</p>
+ * <p>File layout (big endian): a header of {@link #HEADER_SIZE} bytes holding int magic, int version, int width, int height, float tile size,
+ * int chunk size, int chunks wide, int chunks high, long names offset and int names length; then a table with a long offset, int length and int CRC-32
+ * for each chunk's record, where a length of 0 means the chunk is empty; then the records. The names record holds the tileset's UTF name, columns and rows,
+ * then the count and UTF names of the models, then the same for the textures. A chunk record holds CHUNK_SIZE * CHUNK_SIZE short tile types,
+ * an int entity count, then each entity's position, bounding box, collidable flag, model ID and texture ID.</p>*/
+public class WorldSave
+{
+	/**Magic number identifying world save files.*/
+	private static final int MAGIC = 0x5A534156;//'ZSAV'
+	/**The version of the world save format.*/
+	private static final int VERSION = 1;
+	/**The size of the header. (in bytes)*/
+	private static final int HEADER_SIZE = 64;
+	/**The size of each entry in the chunk table. (in bytes)*/
+	private static final int TABLE_ENTRY_SIZE = 16;
+	/**The position of the names offset within the header. (in bytes)*/
+	private static final int NAMES_POSITION = 32;
+	/**The number of tiles stored in each chunk record.*/
+	private static final int TILES_PER_CHUNK = TileMap.CHUNK_SIZE * TileMap.CHUNK_SIZE;
+	/**The size of each entity in a chunk record: six floats, a flag and two IDs. (in bytes)*/
+	private static final int ENTITY_SIZE = 6 * 4 + 1 + 4 + 4;
+	/**The amount of out of date records a file can hold before it's rewritten, however small it is. (in bytes)*/
+	private static final long MIN_GARBAGE = 1024 * 1024;
+
+	/**The file the world is saved in.*/
+	private final File file;
+	/**The tile map being saved.*/
+	private final TileMap map;
+	/**The entities being saved.*/
+	private final EntityWorld world;
+	/**The number of chunks in the map.*/
+	private final int chunkCount;
+	/**The length of each side of a chunk in world units.*/
+	private final float chunkLength;
+	/**The save file as it was when it was opened, or null if this is a new save. Unloaded chunks are decoded straight from it.*/
+	private MappedByteBuffer mapped;
+	/**The offset of each chunk's record in the mapped file.*/
+	private final long[] mappedOffsets;
+	/**The length of each chunk's record in the mapped file.*/
+	private final int[] mappedLengths;
+	/**The CRC-32 of each chunk's record in the mapped file.*/
+	private final int[] mappedChecksums;
+	/**Flags for whether each chunk has been decoded into the map and world. Chunks that haven't been are never saved, so their records are kept.*/
+	private final boolean[] loaded;
+	/**The number of chunks that have been decoded.*/
+	private int loadedCount;
+	/**The number of model names in the last names record that was saved.*/
+	private int savedModelCount;
+	/**The number of texture names in the last names record that was saved.*/
+	private int savedTextureCount;
+	/**Flag for whether the next save has to include every loaded chunk, because nothing's been saved yet or the last write failed.*/
+	private boolean saveEverything;
+	/**The chunk each entity was in when its changes were last followed, by stable ID, or -1 for IDs without an entity.*/
+	private int[] entityChunks;
+	/**The position of each entity in its chunk's list of entities, by stable ID.*/
+	private int[] entitySlots;
+	/**The stable IDs of the entities in each chunk, or null for chunks that have never had any.*/
+	private final int[][] chunkEntities;
+	/**The number of entities in each chunk.*/
+	private final int[] chunkEntityCounts;
+	/**Flags for whether each chunk's entities changed since it was last saved or loaded.*/
+	private final boolean[] entitiesChanged;
+	/**The thread that writes saves in the background.*/
+	private final ExecutorService writer;
+	/**The write that's in progress, or null if nothing's been written yet.*/
+	private CompletableFuture<Void> pending;
+	/**The time the game thread spent on the last snapshot. (in nanoseconds)*/
+	private long lastSnapshotTime;
+	/**The number of chunks copied out by the last snapshot.*/
+	private int lastSnapshotChunks;
+
+	/**The channel the writer writes the file through, or null if it hasn't been opened yet. Only used by the writer thread.*/
+	private FileChannel channel;
+	/**The offset of each chunk's current record in the file. Only used by the writer thread.*/
+	private final long[] recordOffsets;
+	/**The length of each chunk's current record in the file. Only used by the writer thread.*/
+	private final int[] recordLengths;
+	/**The CRC-32 of each chunk's current record in the file. Only used by the writer thread.*/
+	private final int[] recordChecksums;
+	/**The offset of the current names record in the file. Only used by the writer thread.*/
+	private long namesOffset;
+	/**The length of the current names record in the file, or 0 if the file hasn't been written yet. Only used by the writer thread.*/
+	private int namesLength;
+	/**The length of the file. Only used by the writer thread.*/
+	private long fileEnd;
+	/**The total length of the records the table points at. Only used by the writer thread.*/
+	private long liveBytes;
+
+	/**The number of saves that have been written.*/
+	private int savesWritten;
+	/**The number of chunk records that have been written.*/
+	private long chunksWritten;
+	/**The number of bytes that have been written.*/
+	private long bytesWritten;
+	/**The number of times the file has been rewritten from scratch.*/
+	private int rewrites;
+	/**The time the writer spent on the last save. (in nanoseconds)*/
+	private long lastWriteTime;
+
+	/**Creates a new world save.
+	 * @param saveFile The file the world is saved in.
+	 * @param tileMap The tile map being saved.
+	 * @param entityWorld The entities being saved.
+	 * @param mappedFile The save file as it was when it was opened, or null if this is a new save.*/
+	private WorldSave(File saveFile, TileMap tileMap, EntityWorld entityWorld, MappedByteBuffer mappedFile)
+	{
+		file = saveFile;
+		map = tileMap;
+		world = entityWorld;
+		chunkCount = tileMap.getChunksWide() * tileMap.getChunksHigh();
+		chunkLength = TileMap.CHUNK_SIZE * tileMap.getTileSize();
+		mapped = mappedFile;
+		mappedOffsets = new long[chunkCount];
+		mappedLengths = new int[chunkCount];
+		mappedChecksums = new int[chunkCount];
+		loaded = new boolean[chunkCount];
+		entityChunks = new int[64];
+		Arrays.fill(entityChunks, -1);
+		entitySlots = new int[64];
+		chunkEntities = new int[chunkCount][];
+		chunkEntityCounts = new int[chunkCount];
+		entitiesChanged = new boolean[chunkCount];
+		recordOffsets = new long[chunkCount];
+		recordLengths = new int[chunkCount];
+		recordChecksums = new int[chunkCount];
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "World Save Writer");
+				thread.setDaemon(true);//flush() is what waits for the last save, not the JVM
+				return thread;
+			}
+		});
+
+		for(int index = 0; index < world.size(); index++){//the world's changes only cover what happened recently, so start from every entity
+			int chunk = chunkOf(world.getX(index), world.getY(index));
+			moveEntity(world.idAt(index), chunk);
+			entitiesChanged[chunk] = true;
+		}
+		world.clearChanged();
+	}
+
+	/**Creates a save for a world that hasn't been saved before. Nothing is written until the first save, which writes the whole world.
+	 * @param saveFile The file to save the world in, which is replaced if it already exists.
+	 * @param tileMap The tile map to save.
+	 * @param entityWorld The entities to save.
+	 * @return The new save.*/
+	public static WorldSave create(File saveFile, TileMap tileMap, EntityWorld entityWorld)
+	{
+		WorldSave save = new WorldSave(saveFile, tileMap, entityWorld, null);
+		Arrays.fill(save.loaded, true);//every chunk of the world is already in memory
+		save.loadedCount = save.chunkCount;
+		save.saveEverything = true;
+		return save;
+	}
+
+	/**Opens an existing save by memory-mapping it. Only the header, chunk table and names are read, chunks are decoded by {@link #loadChunk(int, int)}.
+	 * The save's model and texture names are given their IDs in the entity world straight away, so they have to get the same IDs they had when they were saved.
+	 * @param saveFile The file the world is saved in.
+	 * @param entityWorld The world to load the entities into, which should be new.
+	 * @return The opened save, whose empty tile map is returned by {@link #getTileMap()}.
+	 * @throws IOException If the file couldn't be read, isn't a world save, or is damaged.
+	 * @throws IllegalArgumentException If the entity world already gave any of the save's names different IDs.*/
+	public static WorldSave open(File saveFile, EntityWorld entityWorld) throws IOException, IllegalArgumentException
+	{
+		MappedByteBuffer mappedFile;
+		long size;
+		try(FileChannel channel = FileChannel.open(saveFile.toPath(), StandardOpenOption.READ)){//the mapping stays valid after the channel is closed
+			size = channel.size();
+			if((size < HEADER_SIZE) || (size > Integer.MAX_VALUE)){//if the file is too short to hold a header, or too long to map
+				throw new IOException("Invalid world save size: " + size + " bytes");
+			}
+			mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		if(mappedFile.getInt(0) != MAGIC){
+			throw new IOException("Not a world save: " + saveFile);
+		}
+		if(mappedFile.getInt(4) != VERSION){//if the file was written by a different version of the format
+			throw new IOException("Unsupported world save version: " + mappedFile.getInt(4));
+		}
+		int width = mappedFile.getInt(8);
+		int height = mappedFile.getInt(12);
+		float tileSize = mappedFile.getFloat(16);
+		int chunksWide = mappedFile.getInt(24);
+		int chunksHigh = mappedFile.getInt(28);
+		long names = mappedFile.getLong(NAMES_POSITION);
+		int namesSize = mappedFile.getInt(NAMES_POSITION + 8);
+		if(mappedFile.getInt(20) != TileMap.CHUNK_SIZE){//if the chunks don't line up with the map's
+			throw new IOException("Unsupported world save chunk size: " + mappedFile.getInt(20));
+		}
+		if((names < 0) || (namesSize <= 0) || (names + namesSize > size)){
+			throw new IOException("Damaged world save names record");
+		}
+
+		byte[] namesData = new byte[namesSize];
+		mappedFile.position((int)names);
+		mappedFile.get(namesData);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(namesData));
+		String tileset = input.readUTF();
+		int columns = input.readInt();
+		int rows = input.readInt();
+		TileMap tileMap;
+		try{
+			tileMap = new TileMap(width, height, tileSize, tileset, columns, rows);
+		} catch(IllegalArgumentException illegalArgumentException){//if the header is nonsense
+			throw new IOException("Damaged world save header", illegalArgumentException);
+		}
+		if((tileMap.getChunksWide() != chunksWide) || (tileMap.getChunksHigh() != chunksHigh) ||
+		   (HEADER_SIZE + (long)chunksWide * chunksHigh * TABLE_ENTRY_SIZE > size)){
+			throw new IOException("Damaged world save chunk table");
+		}
+		for(int modelCount = input.readInt(), i = 0; i < modelCount; i++){
+			if(entityWorld.getModelId(input.readUTF()) != i){//if the model already had a different ID, the saved IDs would point at the wrong models
+				throw new IllegalArgumentException("Entity world's model IDs don't match the save's, so it has to be loaded into a new world");
+			}
+		}
+		int textureCount = input.readInt();
+		for(int i = 0; i < textureCount; i++){
+			if(entityWorld.getTextureId(input.readUTF()) != i){
+				throw new IllegalArgumentException("Entity world's texture IDs don't match the save's, so it has to be loaded into a new world");
+			}
+		}
+
+		WorldSave save = new WorldSave(saveFile, tileMap, entityWorld, mappedFile);
+		for(int chunk = 0; chunk < save.chunkCount; chunk++){//read the chunk table into both the loader's copy and the writer's copy
+			int entry = HEADER_SIZE + chunk * TABLE_ENTRY_SIZE;
+			long offset = mappedFile.getLong(entry);
+			int length = mappedFile.getInt(entry + 8);
+			if((length < 0) || ((length > 0) && ((offset < HEADER_SIZE) || (offset + length > size)))){
+				throw new IOException("Damaged world save chunk table entry " + chunk);
+			}
+			save.mappedOffsets[chunk] = save.recordOffsets[chunk] = offset;
+			save.mappedLengths[chunk] = save.recordLengths[chunk] = length;
+			save.mappedChecksums[chunk] = save.recordChecksums[chunk] = mappedFile.getInt(entry + 12);
+			save.liveBytes += length;
+		}
+		save.namesOffset = names;
+		save.namesLength = namesSize;
+		save.liveBytes += namesSize;
+		save.fileEnd = size;
+		save.savedModelCount = entityWorld.getModelCount();
+		save.savedTextureCount = textureCount;
+		return save;
+	}
+
+	/**Decodes a chunk into the tile map and entity world, if it hasn't been already. This must be called on the game thread.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.
+	 * @return True if the chunk was decoded, false if it was already loaded.
+	 * @throws IOException If the chunk's record is damaged.*/
+	public boolean loadChunk(int chunkX, int chunkY) throws IOException
+	{
+		int chunk = chunkY * map.getChunksWide() + chunkX;
+		if(loaded[chunk]){
+			return false;
+		}
+		int length = mappedLengths[chunk];
+		if(length > 0){//if the chunk isn't empty
+			ByteBuffer record = mapped.duplicate();
+			record.limit((int)mappedOffsets[chunk] + length).position((int)mappedOffsets[chunk]);
+			CRC32 checksum = new CRC32();
+			checksum.update(record.duplicate());
+			if((int)checksum.getValue() != mappedChecksums[chunk]){//if the record was damaged after it was written
+				throw new IOException("Damaged world save chunk (" + chunkX + ", " + chunkY + ")");
+			}
+			followChanges(false);//put anything that changed before the load in its chunk, so the load's own changes are all that's left
+			try{
+				decode(record, chunk, chunkX, chunkY);
+				followChanges(true);//the chunk's entities are exactly what's saved, so they don't make it dirty
+			} catch(RuntimeException runtimeException){//if the record was written wrong, it can run off its end or hold invalid tiles
+				throw new IOException("Damaged world save chunk (" + chunkX + ", " + chunkY + ")", runtimeException);
+			}
+		}
+		loaded[chunk] = true;
+		loadedCount++;
+		return true;
+	}
+
+	/**Decodes every chunk that overlaps a rectangle of the world, such as the area around the camera. This must be called on the game thread.
+	 * @param x1 The left edge of the rectangle.
+	 * @param y1 The bottom edge of the rectangle.
+	 * @param x2 The right edge of the rectangle.
+	 * @param y2 The top edge of the rectangle.
+	 * @return The number of chunks that were decoded.
+	 * @throws IOException If any of the chunks' records are damaged.*/
+	public int loadRegion(float x1, float y1, float x2, float y2) throws IOException
+	{
+		int left = Math.max((int)Math.floor(x1 / chunkLength), 0);
+		int right = Math.min((int)Math.floor(x2 / chunkLength), map.getChunksWide() - 1);
+		int bottom = Math.max((int)Math.floor(y1 / chunkLength), 0);
+		int top = Math.min((int)Math.floor(y2 / chunkLength), map.getChunksHigh() - 1);
+		int decoded = 0;
+		for(int chunkY = bottom; chunkY <= top; chunkY++){
+			for(int chunkX = left; chunkX <= right; chunkX++){
+				if(loadChunk(chunkX, chunkY)){
+					decoded++;
+				}
+			}
+		}
+		return decoded;
+	}
+
+	/**Decodes every chunk that hasn't been loaded yet. This must be called on the game thread.
+	 * @return The number of chunks that were decoded.
+	 * @throws IOException If any of the chunks' records are damaged.*/
+	public int loadAll() throws IOException
+	{
+		return loadRegion(0, 0, map.getChunksWide() * chunkLength, map.getChunksHigh() * chunkLength);
+	}
+
+	/**Decodes a chunk record into the tile map and entity world.
+	 * @param record Buffer holding just the chunk's record, ready for reading.
+	 * @param chunk The index of the chunk.
+	 * @param chunkX The column of the chunk.
+	 * @param chunkY The row of the chunk.*/
+	private void decode(ByteBuffer record, int chunk, int chunkX, int chunkY)
+	{
+		short[] tiles = new short[TILES_PER_CHUNK];
+		record.asShortBuffer().get(tiles);
+		record.position(record.position() + TILES_PER_CHUNK * 2);
+		map.setChunk(chunkX, chunkY, tiles);
+
+		int count = record.getInt();
+		for(int i = 0; i < count; i++){
+			float x = record.getFloat();
+			float y = record.getFloat();
+			float x1 = record.getFloat();
+			float y1 = record.getFloat();
+			float x2 = record.getFloat();
+			float y2 = record.getFloat();
+			boolean collidable = (record.get() != 0);
+			int modelId = record.getInt();
+			int textureId = record.getInt();
+			if((modelId < 0) || (modelId >= savedModelCount) || (textureId < -1) || (textureId >= savedTextureCount)){
+				throw new IllegalArgumentException("Invalid entity IDs: model " + modelId + ", texture " + textureId);
+			}
+			world.create(x, y, x1, y1, x2, y2, collidable, modelId, textureId);
+		}
+	}
+
+	/**Starts saving every chunk that changed since the last save, unless the last save is still being written.
+	 * The changed chunks are found and copied out on the calling thread, which must be the game thread, and are written in the background.
+	 * Chunks that haven't been loaded are left as they are in the file, unless entities have moved into them, in which case they're loaded first.
+	 * @return True if a save was started, false if the last save is still being written or nothing changed.
+	 * @throws IOException If a chunk that entities moved into couldn't be loaded.*/
+	public boolean autosave() throws IOException
+	{
+		if(pending != null){
+			if(!pending.isDone()){//if the writer's still busy, try again later rather than queueing up saves
+				return false;
+			}
+			if(pending.isCompletedExceptionally()){//if the last write failed, the chunks it held still aren't saved
+				saveEverything = true;
+			}
+		}
+		long start = System.nanoTime();
+		followChanges(false);
+		int chunksWide = map.getChunksWide();
+		for(int chunk = 0; chunk < chunkCount; chunk++){
+			if(entitiesChanged[chunk] && !loaded[chunk]){//if entities wandered into a chunk that's never been loaded, load it so its saved entities aren't lost
+				loadChunk(chunk % chunksWide, chunk / chunksWide);
+			}
+		}
+
+		ArrayList<ChunkRecord> records = new ArrayList<ChunkRecord>();
+		short[] tiles = new short[TILES_PER_CHUNK];
+		for(int chunk = 0; chunk < chunkCount; chunk++){
+			if(!loaded[chunk]){
+				continue;
+			}
+			int chunkX = chunk % chunksWide;
+			int chunkY = chunk / chunksWide;
+			boolean tilesChanged = map.takeModified(chunkX, chunkY);
+			if(!saveEverything && !tilesChanged && !entitiesChanged[chunk]){//if nothing in the chunk changed
+				continue;
+			}
+			map.copyChunk(chunkX, chunkY, tiles);
+			records.add(new ChunkRecord(chunk, encode(tiles, chunkEntities[chunk], chunkEntityCounts[chunk])));
+			entitiesChanged[chunk] = false;
+		}
+
+		ByteBuffer names = null;
+		if(saveEverything || (world.getModelCount() != savedModelCount) || (world.getTextureCount() != savedTextureCount)){//if the names changed
+			names = encodeNames();
+			savedModelCount = world.getModelCount();
+			savedTextureCount = world.getTextureCount();
+		}
+		lastSnapshotTime = System.nanoTime() - start;
+		lastSnapshotChunks = records.size();
+		if(records.isEmpty() && (names == null)){//if there's nothing to write
+			return false;
+		}
+		saveEverything = false;
+
+		final ArrayList<ChunkRecord> snapshot = records;
+		final ByteBuffer namesRecord = names;
+		pending = CompletableFuture.runAsync(new Runnable(){
+			public void run()
+			{
+				try{
+					write(snapshot, namesRecord);
+				} catch(IOException ioException){
+					throw new UncheckedIOException(ioException);
+				}
+			}
+		}, writer);
+		return true;
+	}
+
+	/**Saves every chunk that changed, and waits for it to be written. This must be called on the game thread.
+	 * @throws IOException If the world couldn't be written, or a chunk that entities moved into couldn't be loaded.*/
+	public void save() throws IOException
+	{
+		flush();//wait for any autosave that's still being written, so this save isn't skipped
+		autosave();
+		flush();
+	}
+
+	/**Waits for the save that's being written in the background to finish.
+	 * @throws IOException If the save couldn't be written.*/
+	public void flush() throws IOException
+	{
+		if(pending == null){
+			return;
+		}
+		try{
+			pending.join();
+		} catch(CompletionException completionException){//if the write failed
+			Throwable cause = completionException.getCause();
+			throw new IOException("Failed to write world save: " + file, (cause instanceof UncheckedIOException)? cause.getCause() : cause);
+		}
+	}
+
+	/**Waits for the last save to be written, then stops the writer thread and closes the file. The save can't be used afterwards.
+	 * @throws IOException If the last save couldn't be written.*/
+	public void close() throws IOException
+	{
+		try{
+			flush();
+		} finally{
+			writer.shutdown();
+			try{
+				if(channel != null){//the writer thread has stopped, so its channel can be closed here
+					writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+					channel.close();
+					channel = null;
+				}
+			} catch(InterruptedException interruptedException){
+				Thread.currentThread().interrupt();
+			}
+			mapped = null;
+		}
+	}
+
+	/**Moves every entity that was created, destroyed or changed since the changes were last followed into the chunk it's in now, then clears the changes.
+	 * @param saved Whether the changes are already saved, as they are for entities that were just loaded, in which case their chunks aren't made dirty.*/
+	private void followChanges(boolean saved)
+	{
+		int[] changed = world.getChangedIds();
+		for(int i = 0; i < world.getChangedCount(); i++){
+			int id = changed[i];
+			int index = world.indexOf(id);
+			int chunk = ((index == -1)? -1 : chunkOf(world.getX(index), world.getY(index)));
+			int oldChunk = ((id < entityChunks.length)? entityChunks[id] : -1);
+			if(!saved){//the chunk the entity left and the chunk it's in both need saving, even if they're the same chunk
+				if(oldChunk != -1){
+					entitiesChanged[oldChunk] = true;
+				}
+				if(chunk != -1){
+					entitiesChanged[chunk] = true;
+				}
+			}
+			moveEntity(id, chunk);
+		}
+		world.clearChanged();
+	}
+
+	/**Moves an entity from the chunk it was last in to another chunk.
+	 * @param id The stable ID of the entity.
+	 * @param chunk The index of the chunk the entity is in now, or -1 if it's been destroyed.*/
+	private void moveEntity(int id, int chunk)
+	{
+		if(id >= entityChunks.length){
+			int length = entityChunks.length;
+			entityChunks = Arrays.copyOf(entityChunks, Math.max(id + 1, length * 2));
+			Arrays.fill(entityChunks, length, entityChunks.length, -1);
+			entitySlots = Arrays.copyOf(entitySlots, entityChunks.length);
+		}
+		int oldChunk = entityChunks[id];
+		if(oldChunk == chunk){
+			return;
+		}
+		if(oldChunk != -1){//take the entity out of its old chunk, moving the chunk's last entity into its place
+			int[] entities = chunkEntities[oldChunk];
+			int last = entities[--chunkEntityCounts[oldChunk]];
+			entities[entitySlots[id]] = last;
+			entitySlots[last] = entitySlots[id];
+		}
+		if(chunk != -1){
+			int[] entities = chunkEntities[chunk];
+			if(entities == null){
+				chunkEntities[chunk] = entities = new int[8];
+			} else
+			if(chunkEntityCounts[chunk] == entities.length){
+				chunkEntities[chunk] = entities = Arrays.copyOf(entities, entities.length * 2);
+			}
+			entitySlots[id] = chunkEntityCounts[chunk];
+			entities[chunkEntityCounts[chunk]++] = id;
+		}
+		entityChunks[id] = chunk;
+	}
+
+	/**Finds the chunk a position is saved in, where positions beyond the edge of the map go in the nearest chunk.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @return The index of the chunk.*/
+	private int chunkOf(float x, float y)
+	{
+		int chunkX = Math.min(Math.max((int)Math.floor(x / chunkLength), 0), map.getChunksWide() - 1);
+		int chunkY = Math.min(Math.max((int)Math.floor(y / chunkLength), 0), map.getChunksHigh() - 1);
+		return chunkY * map.getChunksWide() + chunkX;
+	}
+
+	/**Copies a chunk's tiles and entities into a new record.
+	 * @param tiles The chunk's tiles.
+	 * @param entities The stable IDs of the chunk's entities, or null if it's never had any.
+	 * @param count The number of entities in the chunk.
+	 * @return Buffer containing the record, ready for reading, which is empty if the chunk has no tiles or entities.*/
+	private ByteBuffer encode(short[] tiles, int[] entities, int count)
+	{
+		if(count == 0){//if the chunk has no entities, check whether it's completely empty
+			boolean empty = true;
+			for(int i = 0; empty && (i < TILES_PER_CHUNK); i++){
+				empty = (tiles[i] == 0);
+			}
+			if(empty){//empty chunks are stored without a record
+				return ByteBuffer.allocate(0);
+			}
+		}
+		ByteBuffer record = ByteBuffer.allocate(TILES_PER_CHUNK * 2 + 4 + count * ENTITY_SIZE);
+		record.asShortBuffer().put(tiles);
+		record.position(TILES_PER_CHUNK * 2);
+		record.putInt(count);
+		float[] positionsX = world.getPositionsX();
+		float[] positionsY = world.getPositionsY();
+		float[] boundsX1 = world.getBoundsX1();
+		float[] boundsY1 = world.getBoundsY1();
+		float[] boundsX2 = world.getBoundsX2();
+		float[] boundsY2 = world.getBoundsY2();
+		int[] modelIds = world.getModelIds();
+		for(int i = 0; i < count; i++){
+			int index = world.indexOf(entities[i]);
+			record.putFloat(positionsX[index]).putFloat(positionsY[index]);
+			record.putFloat(boundsX1[index]).putFloat(boundsY1[index]).putFloat(boundsX2[index]).putFloat(boundsY2[index]);
+			record.put((byte)(world.isCollidable(index)? 1 : 0));
+			record.putInt(modelIds[index]).putInt(world.getTextureId(index));
+		}
+		record.flip();
+		return record;
+	}
+
+	/**Copies the tileset and the entity world's model and texture names into a new names record.
+	 * @return Buffer containing the record, ready for reading.*/
+	private ByteBuffer encodeNames()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream output = new DataOutputStream(bytes)){
+			output.writeUTF(map.getTexture());
+			output.writeInt(map.getTilesetColumns());
+			output.writeInt(map.getTilesetRows());
+			output.writeInt(world.getModelCount());
+			for(int i = 0; i < world.getModelCount(); i++){
+				output.writeUTF(world.getModelName(i));
+			}
+			output.writeInt(world.getTextureCount());
+			for(int i = 0; i < world.getTextureCount(); i++){
+				output.writeUTF(world.getTextureName(i));
+			}
+		} catch(IOException ioException){//a byte array never fails to be written to
+			throw new UncheckedIOException(ioException);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	/**Writes a save's records into the file. This is only run on the writer thread.
+	 * @param records The records of the chunks that changed.
+	 * @param names The new names record, or null if the names didn't change.
+	 * @throws IOException If the file couldn't be written.*/
+	private void write(ArrayList<ChunkRecord> records, ByteBuffer names) throws IOException
+	{
+		long start = System.nanoTime();
+		CRC32 checksum = new CRC32();
+		for(ChunkRecord record : records){//checksum the records here, rather than on the game thread
+			checksum.reset();
+			checksum.update(record.data.duplicate());
+			record.checksum = (int)checksum.getValue();
+		}
+
+		long written;
+		long replaced = 0;
+		long added = 0;
+		for(ChunkRecord record : records){
+			replaced += recordLengths[record.chunk];
+			added += record.data.remaining();
+		}
+		if(names != null){
+			replaced += namesLength;
+			added += names.remaining();
+		}
+		long garbage = (fileEnd - HEADER_SIZE - (long)chunkCount * TABLE_ENTRY_SIZE) - liveBytes + replaced;//the records that will be out of date after appending
+		if((namesLength == 0) || (garbage > Math.max(liveBytes - replaced + added, MIN_GARBAGE))){//if there's no file yet, or it's mostly out of date
+			written = rewrite(records, names);
+		} else{
+			written = append(records, names);
+		}
+		liveBytes += added - replaced;
+
+		synchronized(this){
+			savesWritten++;
+			chunksWritten += records.size();
+			bytesWritten += written;
+			lastWriteTime = System.nanoTime() - start;
+		}
+	}
+
+	/**Appends a save's records to the end of the file, then points the table at them. Until the table is written,
+	 * the file still holds the previous save, so stopping part way through loses only the new save.
+	 * @param records The records of the chunks that changed, with their checksums.
+	 * @param names The new names record, or null if the names didn't change.
+	 * @return The number of bytes written.
+	 * @throws IOException If the file couldn't be written.*/
+	private long append(ArrayList<ChunkRecord> records, ByteBuffer names) throws IOException
+	{
+		if(channel == null){//if this is the first write to an opened save
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		long position = fileEnd;
+		if(names != null){
+			namesOffset = position;
+			namesLength = names.remaining();
+			position += writeFully(channel, names.duplicate(), position);
+		}
+		for(ChunkRecord record : records){
+			recordOffsets[record.chunk] = position;
+			recordLengths[record.chunk] = record.data.remaining();
+			recordChecksums[record.chunk] = record.checksum;
+			position += writeFully(channel, record.data.duplicate(), position);
+		}
+		channel.force(false);//make sure the records are on disk before the table points at them
+
+		ByteBuffer entry = ByteBuffer.allocate(TABLE_ENTRY_SIZE);
+		if(names != null){//point at the new names first, since names are only ever added, so they cover the old records as well as the new ones
+			entry.putLong(namesOffset).putInt(namesLength).flip();
+			writeFully(channel, entry, NAMES_POSITION);
+			channel.force(false);
+		}
+		for(ChunkRecord record : records){
+			entry.clear();
+			entry.putLong(recordOffsets[record.chunk]).putInt(recordLengths[record.chunk]).putInt(recordChecksums[record.chunk]).flip();
+			writeFully(channel, entry, HEADER_SIZE + (long)record.chunk * TABLE_ENTRY_SIZE);
+		}
+		channel.force(false);
+		long written = position - fileEnd + (long)records.size() * TABLE_ENTRY_SIZE;
+		fileEnd = position;
+		return written;
+	}
+
+	/**Writes the whole save into a new file, copying the records of chunks that didn't change from the old file, and moves it into place.
+	 * @param records The records of the chunks that changed, with their checksums.
+	 * @param names The new names record, or null if the names didn't change.
+	 * @return The number of bytes written.
+	 * @throws IOException If the file couldn't be written.*/
+	private long rewrite(ArrayList<ChunkRecord> records, ByteBuffer names) throws IOException
+	{
+		ChunkRecord[] replacements = new ChunkRecord[chunkCount];
+		for(ChunkRecord record : records){
+			replacements[record.chunk] = record;
+		}
+		long[] offsets = new long[chunkCount];
+		int[] lengths = new int[chunkCount];
+		int[] checksums = new int[chunkCount];
+		long newNamesOffset;
+		int newNamesLength;
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null){
+			Files.createDirectories(parent.toPath());
+		}
+		File temporary = new File(file.getPath() + ".tmp");
+		long position = HEADER_SIZE + (long)chunkCount * TABLE_ENTRY_SIZE;
+		try(FileChannel output = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+			newNamesOffset = position;
+			if(names != null){
+				newNamesLength = names.remaining();
+				position += writeFully(output, names.duplicate(), position);
+			} else{
+				newNamesLength = namesLength;
+				position += copy(namesOffset, namesLength, output, position);
+			}
+			for(int chunk = 0; chunk < chunkCount; chunk++){
+				ChunkRecord record = replacements[chunk];
+				offsets[chunk] = position;
+				if(record != null){//if the chunk changed
+					lengths[chunk] = record.data.remaining();
+					checksums[chunk] = record.checksum;
+					position += writeFully(output, record.data.duplicate(), position);
+				} else
+				if(recordLengths[chunk] > 0){//if the chunk's old record can be copied across
+					lengths[chunk] = recordLengths[chunk];
+					checksums[chunk] = recordChecksums[chunk];
+					position += copy(recordOffsets[chunk], recordLengths[chunk], output, position);
+				}
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + chunkCount * TABLE_ENTRY_SIZE);//the unused end of the header is left zeroed
+			header.putInt(MAGIC).putInt(VERSION).putInt(map.getWidth()).putInt(map.getHeight()).putFloat(map.getTileSize());
+			header.putInt(TileMap.CHUNK_SIZE).putInt(map.getChunksWide()).putInt(map.getChunksHigh());
+			header.putLong(newNamesOffset).putInt(newNamesLength);
+			header.position(HEADER_SIZE);
+			for(int chunk = 0; chunk < chunkCount; chunk++){
+				header.putLong(offsets[chunk]).putInt(lengths[chunk]).putInt(checksums[chunk]);
+			}
+			header.flip();
+			writeFully(output, header, 0);
+			output.force(true);
+		} catch(IOException ioException){
+			temporary.delete();
+			throw ioException;
+		}
+		if(channel != null){
+			channel.close();
+			channel = null;
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);//replace the old save in one step
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		System.arraycopy(offsets, 0, recordOffsets, 0, chunkCount);
+		System.arraycopy(lengths, 0, recordLengths, 0, chunkCount);
+		System.arraycopy(checksums, 0, recordChecksums, 0, chunkCount);
+		namesOffset = newNamesOffset;
+		namesLength = newNamesLength;
+		fileEnd = position;
+		synchronized(this){
+			rewrites++;
+		}
+		return position;
+	}
+
+	/**Copies a record from the current file into another one.
+	 * @param offset The offset of the record in the current file.
+	 * @param length The length of the record.
+	 * @param output The channel to copy the record into.
+	 * @param position The position to copy the record to.
+	 * @return The number of bytes copied.
+	 * @throws IOException If the record couldn't be copied.*/
+	private long copy(long offset, int length, FileChannel output, long position) throws IOException
+	{
+		if(channel == null){
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, offset + buffer.position()) < 0){//if the old file ends early
+				throw new IOException("World save ended in the middle of a record: " + file);
+			}
+		}
+		buffer.flip();
+		return writeFully(output, buffer, position);
+	}
+
+	/**Writes an entire buffer into a channel.
+	 * @param output The channel to write to.
+	 * @param buffer The buffer to write, ready for reading.
+	 * @param position The position in the channel to write the buffer at.
+	 * @return The number of bytes written.
+	 * @throws IOException If the buffer couldn't be written.*/
+	private static long writeFully(FileChannel output, ByteBuffer buffer, long position) throws IOException
+	{
+		long written = 0;
+		while(buffer.hasRemaining()){
+			written += output.write(buffer, position + written);
+		}
+		return written;
+	}
+
+	/**Returns the tile map being saved, which for an opened save is created empty and filled in as chunks are loaded.
+	 * @return The save's tile map.*/
+	public TileMap getTileMap()
+	{
+		return map;
+	}
+
+	/**Returns the number of chunks that have been loaded, which for a new save is every chunk.
+	 * @return The number of loaded chunks.*/
+	public int getLoadedCount()
+	{
+		return loadedCount;
+	}
+
+	/**Returns whether a save is being written in the background.
+	 * @return True if a save is being written, false otherwise.*/
+	public boolean isSaving()
+	{
+		return (pending != null) && !pending.isDone();
+	}
+
+	/**Returns the time the game thread spent finding and copying out the changed chunks during the last autosave.
+	 * @return The length of the last snapshot. (in nanoseconds)*/
+	public long getLastSnapshotTime()
+	{
+		return lastSnapshotTime;
+	}
+
+	/**Returns the time the writer thread spent on the last save it finished.
+	 * @return The length of the last write. (in nanoseconds)*/
+	public synchronized long getLastWriteTime()
+	{
+		return lastWriteTime;
+	}
+
+	/**Returns the number of bytes written since the save was created or opened.
+	 * @return The number of bytes written.*/
+	public synchronized long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**Creates a report of how much has been loaded and saved.
+	 * @return Description of the save's activity.*/
+	public synchronized String getReport()
+	{
+		return String.format("world save: %d/%d chunks loaded, %d saves (%d rewrites), %d chunks / %.1f KB written, last snapshot %d chunks in %.3f ms, last write %.2f ms%n",
+		                     loadedCount, chunkCount, savesWritten, rewrites, chunksWritten, bytesWritten / 1024.0, lastSnapshotChunks,
+		                     lastSnapshotTime / 1000000.0, lastWriteTime / 1000000.0);
+	}
+
+	/**A chunk's record, copied out on the game thread to be written in the background.*/
+	private static class ChunkRecord
+	{
+		/**The index of the chunk.*/
+		private final int chunk;
+		/**The record, ready for reading.*/
+		private final ByteBuffer data;
+		/**The CRC-32 of the record, which is calculated by the writer.*/
+		private int checksum;
+
+		/**Creates a new chunk record.
+		 * @param chunkIndex The index of the chunk.
+		 * @param recordData The record, ready for reading.*/
+		private ChunkRecord(int chunkIndex, ByteBuffer recordData)
+		{
+			chunk = chunkIndex;
+			data = recordData;
+		}
+	}
+}
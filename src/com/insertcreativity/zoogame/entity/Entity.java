@@ -11,6 +11,10 @@ public abstract class Entity
 	public final float BBy2;
 	public final String model;
 	private boolean isCollidable;
+	SpatialHashGrid broadphase;
+	int proxy;
+	EntityWorld world;
+	int worldId;
 	
 	public Entity(float x, float y, float topBB, float rightBB, float bottomBB, float leftBB, String modelName)
 	{
@@ -22,39 +26,70 @@ public abstract class Entity
 		BBx1 = leftBB;
 		model = modelName;
 		isCollidable = true;
+		proxy = -1;
+		worldId = -1;
 	}
 	
 	public void setPosition(float x, float y)
 	{
-		posX = x;
-		posY = y;
+		if(world != null){
+			world.setPosition(world.indexOf(worldId), x, y);
+		} else{
+			posX = x;
+			posY = y;
+		}
+		if(broadphase != null){
+			broadphase.update(this);
+		}
 	}
 	
 	public float getX()
 	{
-		return posX;
+		return ((world == null)? posX : world.getX(world.indexOf(worldId)));
 	}
 	
 	public float getY()
 	{
-		return posY;
+		return ((world == null)? posY : world.getY(world.indexOf(worldId)));
 	}
 	
 	protected void setCollidable(boolean collidable)
 	{
-		isCollidable = collidable;
+		if(world != null){
+			world.setCollidable(world.indexOf(worldId), collidable);
+		} else{
+			isCollidable = collidable;
+		}
+	}
+	
+	public boolean isCollidable()
+	{
+		return ((world == null)? isCollidable : world.isCollidable(world.indexOf(worldId)));
 	}
 	
 	public boolean checkCollision(Entity entity)
 	{
-		if(entity.isCollidable && isCollidable){
-			return checkCollision(entity.BBx1 + entity.posX, entity.BBy1 + posY, entity.BBx2 + posX, entity.BBy2 + posY);
+		if(entity.isCollidable() && isCollidable()){
+			float x = entity.getX();
+			float y = entity.getY();
+			return checkCollision(entity.BBx1 + x, entity.BBy1 + y, entity.BBx2 + x, entity.BBy2 + y);
 		}
 		return false;
 	}
 	
 	public boolean checkCollision(float x1, float y1, float x2, float y2)
 	{
-		return !(((BBx2 + posX) < x1) || ((BBx1 + posX) > x2) || ((BBy2 + posY) < y1) || ((BBy1 + posY) > y2));
+		float x = getX();
+		float y = getY();
+		return !(((BBx2 + x) < x1) || ((BBx1 + x) > x2) || ((BBy2 + y) < y1) || ((BBy1 + y) > y2));
+	}
+	
+	void detach(float x, float y, boolean collidable)
+	{
+		posX = x;
+		posY = y;
+		isCollidable = collidable;
+		world = null;
+		worldId = -1;
 	}
 }
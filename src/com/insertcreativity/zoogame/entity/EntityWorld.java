@@ -0,0 +1,504 @@
+package com.insertcreativity.zoogame.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import com.insertcreativity.zoogame.Renderer;
+
+/**Stores entities as parallel primitive arrays instead of as separate objects, so walking every entity each tick reads memory sequentially.
+ * Entities are densely packed at indexes 0 to {@link #size()} - 1, and removing one moves the last entity into its place, so an entity's index can change.
+ * Each entity also has a stable ID that stays the same for as long as the entity exists.
+ * <p>{@link Entity} objects can be added too, in which case the object becomes a view of its slot in the world and keeps working as before.</p>
+ * <p>The IDs of entities that are created, destroyed or changed through the setters are recorded until {@link #clearChanged()} is called,
+ * so something like a save can find what changed without checking every entity. The arrays handed out for systems to walk are only for reading.</p>*/
+public class EntityWorld
+{
+	/**The x coordinate of each entity.*/
+	private float[] positionsX;
+	/**The y coordinate of each entity.*/
+	private float[] positionsY;
+	/**The left edge of each entity's bounding box, relative to its position.*/
+	private float[] boundsX1;
+	/**The bottom edge of each entity's bounding box, relative to its position.*/
+	private float[] boundsY1;
+	/**The right edge of each entity's bounding box, relative to its position.*/
+	private float[] boundsX2;
+	/**The top edge of each entity's bounding box, relative to its position.*/
+	private float[] boundsY2;
+	/**Flags for whether each entity is collidable.*/
+	private boolean[] collidable;
+	/**The model ID of each entity.*/
+	private int[] modelIds;
+	/**The texture ID of each entity, or -1 if it doesn't have one.*/
+	private int[] textureIds;
+	/**The view of each entity, or null for entities that were created without one.*/
+	private Entity[] views;
+	/**The stable ID of the entity at each index.*/
+	private int[] indexIds;
+	/**The index of the entity with each stable ID, or -1 for unused IDs.*/
+	private int[] idIndexes;
+	/**Stack of unused stable IDs.*/
+	private int[] freeIds;
+	/**The number of unused stable IDs on the stack.*/
+	private int freeIdCount;
+	/**The number of stable IDs that have ever been handed out.*/
+	private int idCount;
+	/**The number of entities in the world.*/
+	private int size;
+	/**Flags for whether each stable ID has changed since the changes were last cleared.*/
+	private boolean[] changedFlags;
+	/**List of the stable IDs that have changed since the changes were last cleared.*/
+	private int[] changedIds;
+	/**The number of stable IDs in the changed list.*/
+	private int changedCount;
+
+	/**Map containing the names and IDs of every model used by the world.*/
+	private final HashMap<String, Integer> modelNames;
+	/**The name of the model with each ID.*/
+	private final ArrayList<String> models;
+	/**Map containing the names and IDs of every texture used by the world.*/
+	private final HashMap<String, Integer> textureNames;
+	/**The name of the texture with each ID.*/
+	private final ArrayList<String> textures;
+
+	/**Creates a new, empty entity world.
+	 * @param capacity The number of entities to allocate room for up front.*/
+	public EntityWorld(int capacity)
+	{
+		capacity = Math.max(capacity, 16);
+		positionsX = new float[capacity];
+		positionsY = new float[capacity];
+		boundsX1 = new float[capacity];
+		boundsY1 = new float[capacity];
+		boundsX2 = new float[capacity];
+		boundsY2 = new float[capacity];
+		collidable = new boolean[capacity];
+		modelIds = new int[capacity];
+		textureIds = new int[capacity];
+		views = new Entity[capacity];
+		indexIds = new int[capacity];
+		idIndexes = new int[capacity];
+		freeIds = new int[capacity];
+		changedFlags = new boolean[capacity];
+		changedIds = new int[capacity];
+
+		modelNames = new HashMap<String, Integer>();
+		models = new ArrayList<String>();
+		textureNames = new HashMap<String, Integer>();
+		textures = new ArrayList<String>();
+	}
+
+	/**Creates a new entity without a view.
+	 * @param x The x coordinate of the entity.
+	 * @param y The y coordinate of the entity.
+	 * @param x1 The left edge of the entity's bounding box, relative to its position.
+	 * @param y1 The bottom edge of the entity's bounding box, relative to its position.
+	 * @param x2 The right edge of the entity's bounding box, relative to its position.
+	 * @param y2 The top edge of the entity's bounding box, relative to its position.
+	 * @param isCollidable Whether the entity is collidable.
+	 * @param modelId The ID of the entity's model, from {@link #getModelId(String)}.
+	 * @param textureId The ID of the entity's texture, from {@link #getTextureId(String)}, or -1 for none.
+	 * @return The stable ID of the new entity.*/
+	public int create(float x, float y, float x1, float y1, float x2, float y2, boolean isCollidable, int modelId, int textureId)
+	{
+		if(size == positionsX.length){//if the arrays are full
+			grow();
+		}
+		int id = ((freeIdCount > 0)? freeIds[--freeIdCount] : idCount++);//reuse an ID if there's one free
+
+		int index = size++;
+		positionsX[index] = x;
+		positionsY[index] = y;
+		boundsX1[index] = x1;
+		boundsY1[index] = y1;
+		boundsX2[index] = x2;
+		boundsY2[index] = y2;
+		collidable[index] = isCollidable;
+		modelIds[index] = modelId;
+		textureIds[index] = textureId;
+		views[index] = null;
+		indexIds[index] = id;
+		idIndexes[id] = index;
+		markChanged(id);
+		return id;
+	}
+
+	/**Adds an entity to the world, making it a view of its new slot. The entity's current state is copied into the world.
+	 * @param entity The entity to add.
+	 * @return The stable ID of the entity.
+	 * @throws IllegalStateException If the entity is already in a world.*/
+	public int add(Entity entity) throws IllegalStateException
+	{
+		if(entity.world != null){
+			throw new IllegalStateException("Entity is already in a world");
+		}
+		int id = create(entity.getX(), entity.getY(), entity.BBx1, entity.BBy1, entity.BBx2, entity.BBy2, entity.isCollidable(), getModelId(entity.model), -1);
+		views[idIndexes[id]] = entity;
+		entity.world = this;
+		entity.worldId = id;
+		return id;
+	}
+
+	/**Removes an entity from the world. The last entity in the world is moved into its place.
+	 * @param id The stable ID of the entity to remove.
+	 * @throws IllegalArgumentException If there's no entity with the ID.*/
+	public void destroy(int id) throws IllegalArgumentException
+	{
+		int index = indexOf(id);
+		if(index == -1){
+			throw new IllegalArgumentException("No entity with ID " + id);
+		}
+
+		Entity view = views[index];
+		if(view != null){//give the view its state back so it keeps working on its own
+			view.detach(positionsX[index], positionsY[index], collidable[index]);
+		}
+
+		int last = --size;
+		if(index != last){//move the last entity into the hole
+			positionsX[index] = positionsX[last];
+			positionsY[index] = positionsY[last];
+			boundsX1[index] = boundsX1[last];
+			boundsY1[index] = boundsY1[last];
+			boundsX2[index] = boundsX2[last];
+			boundsY2[index] = boundsY2[last];
+			collidable[index] = collidable[last];
+			modelIds[index] = modelIds[last];
+			textureIds[index] = textureIds[last];
+			views[index] = views[last];
+			indexIds[index] = indexIds[last];
+			idIndexes[indexIds[index]] = index;
+		}
+		views[last] = null;//don't hold on to removed views
+		idIndexes[id] = -1;
+		freeIds[freeIdCount++] = id;
+		markChanged(id);
+	}
+
+	/**Removes an entity view from the world. The entity keeps its current state and works on its own again.
+	 * @param entity The entity to remove.
+	 * @throws IllegalArgumentException If the entity isn't in this world.*/
+	public void remove(Entity entity) throws IllegalArgumentException
+	{
+		if(entity.world != this){
+			throw new IllegalArgumentException("Entity isn't in this world");
+		}
+		destroy(entity.worldId);
+	}
+
+	/**Runs a system on every entity in the world, in index order. Nothing is allocated while iterating.
+	 * Systems can change entities but mustn't create or destroy them while iterating.
+	 * @param system The system to run.*/
+	public void forEach(EntitySystem system)
+	{
+		for(int index = 0; index < size; index++){
+			system.process(this, index);
+		}
+	}
+
+	/**Returns the number of entities in the world.
+	 * @return The number of entities.*/
+	public int size()
+	{
+		return size;
+	}
+
+	/**Returns the current index of an entity.
+	 * @param id The stable ID of the entity.
+	 * @return The entity's index, or -1 if there's no entity with the ID.*/
+	public int indexOf(int id)
+	{
+		return (((id >= 0) && (id < idCount))? idIndexes[id] : -1);
+	}
+
+	/**Returns the stable ID of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's stable ID.*/
+	public int idAt(int index)
+	{
+		return indexIds[index];
+	}
+
+	/**Returns the view of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's view, or null if it was created without one.*/
+	public Entity viewAt(int index)
+	{
+		return views[index];
+	}
+
+	/**Returns the x coordinate of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's x coordinate.*/
+	public float getX(int index)
+	{
+		return positionsX[index];
+	}
+
+	/**Returns the y coordinate of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's y coordinate.*/
+	public float getY(int index)
+	{
+		return positionsY[index];
+	}
+
+	/**Moves the entity at an index. Entity views should be moved with {@link Entity#setPosition(float, float)} instead, so their broadphase is updated too.
+	 * @param index The index of the entity.
+	 * @param x The new x coordinate of the entity.
+	 * @param y The new y coordinate of the entity.*/
+	public void setPosition(int index, float x, float y)
+	{
+		positionsX[index] = x;
+		positionsY[index] = y;
+		markChanged(indexIds[index]);
+	}
+
+	/**Returns whether the entity at an index is collidable.
+	 * @param index The index of the entity.
+	 * @return True if the entity is collidable, false otherwise.*/
+	public boolean isCollidable(int index)
+	{
+		return collidable[index];
+	}
+
+	/**Sets whether the entity at an index is collidable.
+	 * @param index The index of the entity.
+	 * @param isCollidable Whether the entity should be collidable.*/
+	public void setCollidable(int index, boolean isCollidable)
+	{
+		collidable[index] = isCollidable;
+		markChanged(indexIds[index]);
+	}
+
+	/**Returns the model ID of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's model ID.*/
+	public int getModelId(int index)
+	{
+		return modelIds[index];
+	}
+
+	/**Returns the texture ID of the entity at an index.
+	 * @param index The index of the entity.
+	 * @return The entity's texture ID, or -1 if it doesn't have one.*/
+	public int getTextureId(int index)
+	{
+		return textureIds[index];
+	}
+
+	/**Sets the texture ID of the entity at an index.
+	 * @param index The index of the entity.
+	 * @param textureId The entity's new texture ID, from {@link #getTextureId(String)}, or -1 for none.*/
+	public void setTextureId(int index, int textureId)
+	{
+		textureIds[index] = textureId;
+		markChanged(indexIds[index]);
+	}
+
+	/**Checks whether the bounding boxes of two entities overlap, if both are collidable.
+	 * @param a The index of the first entity.
+	 * @param b The index of the second entity.
+	 * @return True if the entities collide, false otherwise.*/
+	public boolean checkCollision(int a, int b)
+	{
+		if(!collidable[a] || !collidable[b]){
+			return false;
+		}
+		return !(((boundsX2[a] + positionsX[a]) < (boundsX1[b] + positionsX[b])) || ((boundsX1[a] + positionsX[a]) > (boundsX2[b] + positionsX[b])) ||
+		         ((boundsY2[a] + positionsY[a]) < (boundsY1[b] + positionsY[b])) || ((boundsY1[a] + positionsY[a]) > (boundsY2[b] + positionsY[b])));
+	}
+
+	/**Checks every entity's bounding box against the renderer's viewport, so only visible entities need to be rendered.
+	 * Bit (i % 64) of visibility[i / 64] is set if the entity at index i is visible.
+	 * @param renderer The renderer whose viewport to check against.
+	 * @param visibility Bitset to store the results in, which must have room for at least {@link #size()} bits.
+	 * @return The number of visible entities.
+	 * @throws IllegalArgumentException If the bitset is too small to hold the results.*/
+	public int cull(Renderer renderer, long[] visibility) throws IllegalArgumentException
+	{
+		return renderer.cullBounds(positionsX, positionsY, boundsX1, boundsY1, boundsX2, boundsY2, size, visibility);
+	}
+
+	/**Returns the array of x coordinates, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The x coordinate of each entity, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getPositionsX()
+	{
+		return positionsX;
+	}
+
+	/**Returns the array of y coordinates, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The y coordinate of each entity, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getPositionsY()
+	{
+		return positionsY;
+	}
+
+	/**Returns the array of bounding box left edges, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The left edge of each entity's bounding box relative to its position, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getBoundsX1()
+	{
+		return boundsX1;
+	}
+
+	/**Returns the array of bounding box bottom edges, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The bottom edge of each entity's bounding box relative to its position, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getBoundsY1()
+	{
+		return boundsY1;
+	}
+
+	/**Returns the array of bounding box right edges, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The right edge of each entity's bounding box relative to its position, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getBoundsX2()
+	{
+		return boundsX2;
+	}
+
+	/**Returns the array of bounding box top edges, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The top edge of each entity's bounding box relative to its position, valid from index 0 to {@link #size()} - 1.*/
+	public float[] getBoundsY2()
+	{
+		return boundsY2;
+	}
+
+	/**Returns the array of model IDs, for systems that walk the arrays directly.
+	 * The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The model ID of each entity, valid from index 0 to {@link #size()} - 1.*/
+	public int[] getModelIds()
+	{
+		return modelIds;
+	}
+
+	/**Returns the ID for a model name, assigning a new ID if this is the first time the name's been seen.
+	 * @param modelName The name of the model.
+	 * @return The model's ID.*/
+	public int getModelId(String modelName)
+	{
+		return intern(modelName, modelNames, models);
+	}
+
+	/**Returns the name of the model with an ID.
+	 * @param modelId The ID of the model.
+	 * @return The model's name.*/
+	public String getModelName(int modelId)
+	{
+		return models.get(modelId);
+	}
+
+	/**Returns the number of model names the world has assigned IDs to. IDs run from 0 to one less than this.
+	 * @return The number of model IDs.*/
+	public int getModelCount()
+	{
+		return models.size();
+	}
+
+	/**Returns the ID for a texture name, assigning a new ID if this is the first time the name's been seen.
+	 * @param textureName The name of the texture.
+	 * @return The texture's ID.*/
+	public int getTextureId(String textureName)
+	{
+		return intern(textureName, textureNames, textures);
+	}
+
+	/**Returns the name of the texture with an ID.
+	 * @param textureId The ID of the texture.
+	 * @return The texture's name.*/
+	public String getTextureName(int textureId)
+	{
+		return textures.get(textureId);
+	}
+
+	/**Returns the number of texture names the world has assigned IDs to. IDs run from 0 to one less than this.
+	 * @return The number of texture IDs.*/
+	public int getTextureCount()
+	{
+		return textures.size();
+	}
+
+	/**Returns the number of stable IDs that have been created, destroyed or changed since the changes were last cleared.
+	 * @return The number of changed IDs.*/
+	public int getChangedCount()
+	{
+		return changedCount;
+	}
+
+	/**Returns the list of stable IDs that have been created, destroyed or changed since the changes were last cleared. Each ID is listed once,
+	 * and an ID that's been destroyed has no index. The array is replaced whenever the world grows, so it shouldn't be held on to across calls to {@link #create}.
+	 * @return The changed IDs, valid from index 0 to {@link #getChangedCount()} - 1.*/
+	public int[] getChangedIds()
+	{
+		return changedIds;
+	}
+
+	/**Forgets every change that's been recorded. Only one thing can follow the changes, since it clears them for everything else.*/
+	public void clearChanged()
+	{
+		for(int i = 0; i < changedCount; i++){
+			changedFlags[changedIds[i]] = false;
+		}
+		changedCount = 0;
+	}
+
+	/**Records that an entity was created, destroyed or changed, unless it's already been recorded.
+	 * @param id The stable ID of the entity.*/
+	private void markChanged(int id)
+	{
+		if(!changedFlags[id]){
+			changedFlags[id] = true;
+			changedIds[changedCount++] = id;
+		}
+	}
+
+	/**Returns the ID for a name, assigning the next ID if the name is new.
+	 * @param name The name to look up.
+	 * @param ids Map containing the names and IDs assigned so far.
+	 * @param names List of the names assigned so far, in ID order.
+	 * @return The name's ID.*/
+	private static int intern(String name, HashMap<String, Integer> ids, ArrayList<String> names)
+	{
+		Integer id = ids.get(name);
+		if(id == null){//if the name hasn't been seen before
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	/**Doubles the capacity of every array.*/
+	private void grow()
+	{
+		int capacity = positionsX.length * 2;
+		positionsX = Arrays.copyOf(positionsX, capacity);
+		positionsY = Arrays.copyOf(positionsY, capacity);
+		boundsX1 = Arrays.copyOf(boundsX1, capacity);
+		boundsY1 = Arrays.copyOf(boundsY1, capacity);
+		boundsX2 = Arrays.copyOf(boundsX2, capacity);
+		boundsY2 = Arrays.copyOf(boundsY2, capacity);
+		collidable = Arrays.copyOf(collidable, capacity);
+		modelIds = Arrays.copyOf(modelIds, capacity);
+		textureIds = Arrays.copyOf(textureIds, capacity);
+		views = Arrays.copyOf(views, capacity);
+		indexIds = Arrays.copyOf(indexIds, capacity);
+		idIndexes = Arrays.copyOf(idIndexes, capacity);
+		freeIds = Arrays.copyOf(freeIds, capacity);
+		changedFlags = Arrays.copyOf(changedFlags, capacity);
+		changedIds = Arrays.copyOf(changedIds, capacity);
+	}
+
+	/**Processes entities in an {@link EntityWorld} one index at a time.*/
+	public interface EntitySystem
+	{
+		/**Called for each entity in the world.
+		 * @param world The world being iterated.
+		 * @param index The index of the entity to process.*/
+		public void process(EntityWorld world, int index);
+	}
+}
@@ -0,0 +1,420 @@
+package com.insertcreativity.zoogame.entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**Broadphase collision structure that buckets entities into the cells of a uniform grid, so only entities sharing a cell are ever tested against each other.
+ * Cells are stored sparsely in a hash table, so the world can be any size. Entities in the grid keep it updated whenever {@link Entity#setPosition(float, float)} moves them,
+ * and only touch the table when they cross into a different set of cells.*/
+public class SpatialHashGrid
+{
+	/**Marker for an empty slot in the cell table.*/
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	/**The width and height of each cell.*/
+	private final float cellSize;
+	/**The reciprocal of the cell size, used to avoid dividing.*/
+	private final float inverseCellSize;
+
+	/**The entity stored in each proxy slot, or null for free slots.*/
+	private Entity[] entities;
+	/**The bounding box of each proxy, stored as {x1, y1, x2, y2}.*/
+	private float[] bounds;
+	/**The range of cells each proxy covers, stored as {x1, y1, x2, y2}.*/
+	private int[] cellRanges;
+	/**The query each proxy was last reported by, used to avoid reporting entities twice.*/
+	private int[] queryStamps;
+	/**Stack of free proxy slots.*/
+	private int[] freeProxies;
+	/**The number of free proxy slots on the stack.*/
+	private int freeCount;
+	/**The number of proxy slots that have ever been used.*/
+	private int proxyCount;
+	/**The stamp of the most recent query.*/
+	private int currentQuery;
+
+	/**The packed coordinates of the cell in each table slot, or {@link #EMPTY}.*/
+	private long[] cellKeys;
+	/**The proxies in the cell in each table slot.*/
+	private int[][] cellContents;
+	/**The number of proxies in the cell in each table slot.*/
+	private int[] cellSizes;
+	/**The number of occupied table slots.*/
+	private int cellCount;
+
+	/**Creates a new, empty spatial hash grid.
+	 * @param size The width and height of each cell. This works best when slightly larger than a typical entity.
+	 * @throws IllegalArgumentException If the cell size isn't positive.*/
+	public SpatialHashGrid(float size) throws IllegalArgumentException
+	{
+		if(!(size > 0)){
+			throw new IllegalArgumentException("Cell size must be positive: " + size);
+		}
+		cellSize = size;
+		inverseCellSize = 1 / size;
+
+		entities = new Entity[64];
+		bounds = new float[64 * 4];
+		cellRanges = new int[64 * 4];
+		queryStamps = new int[64];
+		freeProxies = new int[64];
+
+		cellKeys = new long[256];
+		Arrays.fill(cellKeys, EMPTY);
+		cellContents = new int[256][];
+		cellSizes = new int[256];
+	}
+
+	/**Adds an entity to the grid. The grid is kept up to date as the entity moves until it's removed.
+	 * @param entity The entity to add.
+	 * @throws IllegalStateException If the entity is already in a grid.*/
+	public void add(Entity entity) throws IllegalStateException
+	{
+		if(entity.broadphase != null){
+			throw new IllegalStateException("Entity is already in a broadphase");
+		}
+
+		int proxy;
+		if(freeCount > 0){//reuse a free slot if there is one
+			proxy = freeProxies[--freeCount];
+		} else{
+			if(proxyCount == entities.length){//if the proxy arrays are full
+				int length = entities.length * 2;
+				entities = Arrays.copyOf(entities, length);
+				bounds = Arrays.copyOf(bounds, length * 4);
+				cellRanges = Arrays.copyOf(cellRanges, length * 4);
+				queryStamps = Arrays.copyOf(queryStamps, length);
+				freeProxies = Arrays.copyOf(freeProxies, length);
+			}
+			proxy = proxyCount++;
+		}
+
+		entities[proxy] = entity;
+		entity.broadphase = this;
+		entity.proxy = proxy;
+		storeBounds(proxy, entity);
+		int range = proxy * 4;
+		cellRanges[range] = cellCoordinate(bounds[range]);
+		cellRanges[range + 1] = cellCoordinate(bounds[range + 1]);
+		cellRanges[range + 2] = cellCoordinate(bounds[range + 2]);
+		cellRanges[range + 3] = cellCoordinate(bounds[range + 3]);
+		insertIntoCells(proxy);
+	}
+
+	/**Removes an entity from the grid.
+	 * @param entity The entity to remove.
+	 * @throws IllegalArgumentException If the entity isn't in this grid.*/
+	public void remove(Entity entity) throws IllegalArgumentException
+	{
+		if(entity.broadphase != this){
+			throw new IllegalArgumentException("Entity isn't in this broadphase");
+		}
+		int proxy = entity.proxy;
+		removeFromCells(proxy);
+		entities[proxy] = null;
+		freeProxies[freeCount++] = proxy;
+		entity.broadphase = null;
+		entity.proxy = -1;
+	}
+
+	/**Updates the grid after an entity has moved. This is called automatically by {@link Entity#setPosition(float, float)}.
+	 * @param entity The entity that moved.*/
+	void update(Entity entity)
+	{
+		int proxy = entity.proxy;
+		storeBounds(proxy, entity);
+		int range = proxy * 4;
+		int x1 = cellCoordinate(bounds[range]);
+		int y1 = cellCoordinate(bounds[range + 1]);
+		int x2 = cellCoordinate(bounds[range + 2]);
+		int y2 = cellCoordinate(bounds[range + 3]);
+		if((x1 == cellRanges[range]) && (y1 == cellRanges[range + 1]) && (x2 == cellRanges[range + 2]) && (y2 == cellRanges[range + 3])){//if the entity is still in the same cells
+			return;
+		}
+		removeFromCells(proxy);
+		cellRanges[range] = x1;
+		cellRanges[range + 1] = y1;
+		cellRanges[range + 2] = x2;
+		cellRanges[range + 3] = y2;
+		insertIntoCells(proxy);
+	}
+
+	/**Finds every pair of collidable entities whose bounding boxes overlap. Each pair is reported exactly once.
+	 * @param callback The callback to report each overlapping pair to.
+	 * @return The number of overlapping pairs.*/
+	public int findOverlappingPairs(PairCallback callback)
+	{
+		int pairs = 0;
+		for(int slot = 0; slot < cellKeys.length; slot++){//iterate through every occupied cell
+			if(cellKeys[slot] == EMPTY){
+				continue;
+			}
+			int cellX = (int)(cellKeys[slot] >> 32);
+			int cellY = (int)cellKeys[slot];
+			int[] contents = cellContents[slot];
+			int size = cellSizes[slot];
+			for(int i = 0; i < size; i++){//test every pair of entities in the cell
+				int a = contents[i] * 4;
+				Entity entityA = entities[contents[i]];
+				for(int j = i + 1; j < size; j++){
+					int b = contents[j] * 4;
+					if((bounds[a + 2] < bounds[b]) || (bounds[a] > bounds[b + 2]) || (bounds[a + 3] < bounds[b + 1]) || (bounds[a + 1] > bounds[b + 3])){//if the boxes don't overlap
+						continue;
+					}
+					//pairs sharing several cells are only reported by the cell containing the lower corner of their overlap
+					if((cellCoordinate(Math.max(bounds[a], bounds[b])) != cellX) || (cellCoordinate(Math.max(bounds[a + 1], bounds[b + 1])) != cellY)){
+						continue;
+					}
+					Entity entityB = entities[contents[j]];
+					if(entityA.isCollidable() && entityB.isCollidable()){
+						callback.onOverlap(entityA, entityB);
+						pairs++;
+					}
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**Finds every entity whose bounding box overlaps a rectangle, regardless of whether it's collidable.
+	 * @param x1 The x coordinate of the rectangle's left edge.
+	 * @param y1 The y coordinate of the rectangle's bottom edge.
+	 * @param x2 The x coordinate of the rectangle's right edge.
+	 * @param y2 The y coordinate of the rectangle's top edge.
+	 * @param results List to add the entities to. Reusing the same list avoids allocating.
+	 * @return The number of entities that were found.*/
+	public int queryRegion(float x1, float y1, float x2, float y2, List<Entity> results)
+	{
+		int stamp = nextQuery();
+		int found = 0;
+		int cellX2 = cellCoordinate(x2);
+		int cellY2 = cellCoordinate(y2);
+		for(int cellX = cellCoordinate(x1); cellX <= cellX2; cellX++){//iterate through every cell the rectangle covers
+			for(int cellY = cellCoordinate(y1); cellY <= cellY2; cellY++){
+				int slot = findCell(cellX, cellY);
+				if(cellKeys[slot] == EMPTY){//if nothing is in the cell
+					continue;
+				}
+				int[] contents = cellContents[slot];
+				for(int i = 0; i < cellSizes[slot]; i++){
+					int proxy = contents[i];
+					int b = proxy * 4;
+					if((queryStamps[proxy] == stamp) || (bounds[b + 2] < x1) || (bounds[b] > x2) || (bounds[b + 3] < y1) || (bounds[b + 1] > y2)){//if the entity was already found or doesn't overlap
+						continue;
+					}
+					queryStamps[proxy] = stamp;
+					results.add(entities[proxy]);
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**Finds every entity whose bounding box contains a point, regardless of whether it's collidable.
+	 * @param x The x coordinate of the point.
+	 * @param y The y coordinate of the point.
+	 * @param results List to add the entities to. Reusing the same list avoids allocating.
+	 * @return The number of entities that were found.*/
+	public int queryPoint(float x, float y, List<Entity> results)
+	{
+		int slot = findCell(cellCoordinate(x), cellCoordinate(y));
+		if(cellKeys[slot] == EMPTY){//if nothing is in the point's cell
+			return 0;
+		}
+		int found = 0;
+		int[] contents = cellContents[slot];
+		for(int i = 0; i < cellSizes[slot]; i++){
+			int b = contents[i] * 4;
+			if((x >= bounds[b]) && (x <= bounds[b + 2]) && (y >= bounds[b + 1]) && (y <= bounds[b + 3])){//if the point is inside the entity's box
+				results.add(entities[contents[i]]);
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**Returns the number of entities in the grid.
+	 * @return The number of entities.*/
+	public int size()
+	{
+		return proxyCount - freeCount;
+	}
+
+	/**Returns the number of cells that contain at least one entity.
+	 * @return The number of occupied cells.*/
+	public int getCellCount()
+	{
+		return cellCount;
+	}
+
+	/**Stores the world space bounding box of an entity in its proxy.
+	 * @param proxy The entity's proxy.
+	 * @param entity The entity.*/
+	private void storeBounds(int proxy, Entity entity)
+	{
+		int b = proxy * 4;
+		bounds[b] = entity.BBx1 + entity.getX();
+		bounds[b + 1] = entity.BBy1 + entity.getY();
+		bounds[b + 2] = entity.BBx2 + entity.getX();
+		bounds[b + 3] = entity.BBy2 + entity.getY();
+	}
+
+	/**Converts a world coordinate into a cell coordinate.
+	 * @param coordinate The world coordinate.
+	 * @return The coordinate of the cell containing it.*/
+	private int cellCoordinate(float coordinate)
+	{
+		return (int)Math.floor(coordinate * inverseCellSize);
+	}
+
+	/**Starts a new query, returning the stamp entities found by it should be marked with.
+	 * @return The new query's stamp.*/
+	private int nextQuery()
+	{
+		if(++currentQuery == 0){//if the stamps wrapped around, clear them so old marks can't match
+			Arrays.fill(queryStamps, 0);
+			currentQuery = 1;
+		}
+		return currentQuery;
+	}
+
+	/**Adds a proxy to every cell in its cell range.
+	 * @param proxy The proxy to add.*/
+	private void insertIntoCells(int proxy)
+	{
+		int range = proxy * 4;
+		for(int cellX = cellRanges[range]; cellX <= cellRanges[range + 2]; cellX++){
+			for(int cellY = cellRanges[range + 1]; cellY <= cellRanges[range + 3]; cellY++){
+				int slot = findCell(cellX, cellY);
+				if(cellKeys[slot] == EMPTY){//if this is a new cell
+					if((cellCount + 1) * 4 > cellKeys.length * 3){//keep the table at most three quarters full
+						growTable();
+						slot = findCell(cellX, cellY);
+					}
+					cellKeys[slot] = packCell(cellX, cellY);
+					if(cellContents[slot] == null){
+						cellContents[slot] = new int[4];
+					}
+					cellCount++;
+				}
+				if(cellSizes[slot] == cellContents[slot].length){//if the cell is full
+					cellContents[slot] = Arrays.copyOf(cellContents[slot], cellSizes[slot] * 2);
+				}
+				cellContents[slot][cellSizes[slot]++] = proxy;
+			}
+		}
+	}
+
+	/**Removes a proxy from every cell in its cell range, freeing cells that become empty.
+	 * @param proxy The proxy to remove.*/
+	private void removeFromCells(int proxy)
+	{
+		int range = proxy * 4;
+		for(int cellX = cellRanges[range]; cellX <= cellRanges[range + 2]; cellX++){
+			for(int cellY = cellRanges[range + 1]; cellY <= cellRanges[range + 3]; cellY++){
+				int slot = findCell(cellX, cellY);
+				int[] contents = cellContents[slot];
+				int size = cellSizes[slot];
+				for(int i = 0; i < size; i++){
+					if(contents[i] == proxy){//swap the last proxy into the removed one's place
+						contents[i] = contents[--size];
+						break;
+					}
+				}
+				cellSizes[slot] = size;
+				if(size == 0){//if the cell is now empty
+					deleteCell(slot);
+				}
+			}
+		}
+	}
+
+	/**Finds the table slot holding a cell, or the empty slot it would be inserted into.
+	 * @param cellX The x coordinate of the cell.
+	 * @param cellY The y coordinate of the cell.
+	 * @return The cell's table slot.*/
+	private int findCell(int cellX, int cellY)
+	{
+		long key = packCell(cellX, cellY);
+		int mask = cellKeys.length - 1;
+		int slot = hash(key) & mask;
+		while((cellKeys[slot] != EMPTY) && (cellKeys[slot] != key)){//linear probe until the cell or an empty slot is found
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**Removes an empty cell from the table, shifting back any cells that probed past it.
+	 * @param slot The table slot of the cell to remove.*/
+	private void deleteCell(int slot)
+	{
+		int mask = cellKeys.length - 1;
+		int[] emptied = cellContents[slot];
+		cellKeys[slot] = EMPTY;
+		cellCount--;
+		int next = (slot + 1) & mask;
+		while(cellKeys[next] != EMPTY){//re-seat every cell in the rest of the probe run
+			int home = hash(cellKeys[next]) & mask;
+			if(((next - home) & mask) >= ((next - slot) & mask)){//if the cell can move back into the hole
+				cellKeys[slot] = cellKeys[next];
+				cellContents[slot] = cellContents[next];
+				cellSizes[slot] = cellSizes[next];
+				cellKeys[next] = EMPTY;
+				cellContents[next] = emptied;//keep the emptied array around for reuse
+				cellSizes[next] = 0;
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		cellContents[slot] = emptied;
+		cellSizes[slot] = 0;
+	}
+
+	/**Doubles the size of the cell table.*/
+	private void growTable()
+	{
+		long[] oldKeys = cellKeys;
+		int[][] oldContents = cellContents;
+		int[] oldSizes = cellSizes;
+		cellKeys = new long[oldKeys.length * 2];
+		Arrays.fill(cellKeys, EMPTY);
+		cellContents = new int[oldKeys.length * 2][];
+		cellSizes = new int[oldKeys.length * 2];
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != EMPTY){
+				int slot = findCell((int)(oldKeys[i] >> 32), (int)oldKeys[i]);
+				cellKeys[slot] = oldKeys[i];
+				cellContents[slot] = oldContents[i];
+				cellSizes[slot] = oldSizes[i];
+			}
+		}
+	}
+
+	/**Packs cell coordinates into a single key.
+	 * @param cellX The x coordinate of the cell.
+	 * @param cellY The y coordinate of the cell.
+	 * @return The cell's key.*/
+	private static long packCell(int cellX, int cellY)
+	{
+		return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+
+	/**Scrambles a cell key so that neighboring cells land in different table slots.
+	 * @param key The cell's key.
+	 * @return The key's hash.*/
+	private static int hash(long key)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key ^ (key >>> 32));
+	}
+
+	/**Receives the overlapping pairs found by {@link SpatialHashGrid#findOverlappingPairs(PairCallback)}.*/
+	public interface PairCallback
+	{
+		/**Called for each pair of collidable entities whose bounding boxes overlap.
+		 * @param a The first entity of the pair.
+		 * @param b The second entity of the pair.*/
+		public void onOverlap(Entity a, Entity b);
+	}
+}
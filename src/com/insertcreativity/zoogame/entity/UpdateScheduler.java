@@ -0,0 +1,311 @@
+package com.insertcreativity.zoogame.entity;
+
+import com.insertcreativity.zoogame.Camera;
+import java.util.Arrays;
+
+/**Decides which entities in an {@link EntityWorld} get updated each tick, based on how far they are from the camera.
+ * Entities are sorted into tiers by distance, and each tier is updated every so many ticks, so a dragon next to the player is updated every tick
+ * while a rat three screens away might only be updated every 16. Entities in the same tier are spread evenly across the tier's ticks by their IDs,
+ * so the far tiers cost the same small amount every tick instead of all updating at once.
+ * <p>Each tick also has a time budget. The nearest tier is always updated in full, then the other tiers take turns updating a few entities each,
+ * nearest first, until the budget runs out, so a tight budget slows every tier down rather than starving the furthest.
+ * Entities that miss out stay due, and each tier picks up where it left off on the next tick, so every entity is updated eventually.
+ * The system is told how many ticks have passed since each entity's last update, so it can scale what it does to make up for the wait.</p>*/
+public class UpdateScheduler
+{
+	/**The distances the default tiers reach out to.*/
+	private static final float[] DEFAULT_DISTANCES = {12, 36};
+	/**The number of ticks between updates in each of the default tiers.*/
+	private static final int[] DEFAULT_PERIODS = {1, 4, 16};
+	/**The number of entities updated from each tier before moving on to the next and checking the budget, since reading the clock costs about as much as a small update.*/
+	private static final int BUDGET_CHECK_INTERVAL = 8;
+	/**Marks an entity ID that the scheduler hasn't seen yet.*/
+	private static final int UNSEEN = Integer.MIN_VALUE;
+
+	/**The world whose entities are scheduled.*/
+	private final EntityWorld world;
+	/**The square of the distance each tier reaches out to, except the last tier, which has no limit.*/
+	private final float[] distancesSquared;
+	/**The number of ticks between updates in each tier.*/
+	private final int[] periods;
+	/**The time each tick may spend updating entities beyond the nearest tier, or 0 for no limit. (in nanoseconds)*/
+	private long budget;
+	/**The tick each entity was last updated on, by stable ID, or UNSEEN.*/
+	private int[] lastUpdates;
+	/**The indexes of the entities that are due in each tier but the nearest, reused between ticks.*/
+	private final int[][] dueIndexes;
+	/**The number of entities that are due in each tier this tick.*/
+	private final int[] dueCounts;
+	/**The position in each tier's due list that this tick's updates start from.*/
+	private final int[] dueStarts;
+	/**The index of the first entity in each tier that missed out when the budget last ran out, which is where the tier's next updates start.*/
+	private final int[] cursors;
+	/**The number of ticks that have been scheduled.*/
+	private int tick;
+
+	/**The number of entities in each tier during the last tick.*/
+	private final int[] tierSizes;
+	/**The number of entities updated in each tier during the last tick.*/
+	private final int[] lastUpdated;
+	/**The number of entities that were due in each tier but were left for a later tick during the last tick.*/
+	private final int[] lastDeferred;
+	/**The number of entities updated in each tier since the statistics were last reset.*/
+	private final long[] totalUpdated;
+	/**The number of times entities were left for a later tick in each tier since the statistics were last reset.*/
+	private final long[] totalDeferred;
+	/**The number of ticks scheduled since the statistics were last reset.*/
+	private int ticksScheduled;
+	/**The number of ticks that ran out of budget since the statistics were last reset.*/
+	private int ticksOverBudget;
+	/**The time the last tick took, including the nearest tier. (in nanoseconds)*/
+	private long lastTickTime;
+
+	/**Creates a new scheduler with three tiers: entities within 12 units of the camera are updated every tick,
+	 * entities within 36 units every 4 ticks, and everything further away every 16 ticks.
+	 * @param entityWorld The world whose entities are scheduled.
+	 * @param tickBudget The time each tick may spend updating entities beyond the nearest tier, or 0 for no limit. (in nanoseconds)*/
+	public UpdateScheduler(EntityWorld entityWorld, long tickBudget)
+	{
+		this(entityWorld, DEFAULT_DISTANCES, DEFAULT_PERIODS, tickBudget);
+	}
+
+	/**Creates a new scheduler.
+	 * @param entityWorld The world whose entities are scheduled.
+	 * @param distances The distance from the camera each tier reaches out to, in increasing order. There's one less than there are tiers,
+	 *                  since the last tier covers everything further away.
+	 * @param tickPeriods The number of ticks between updates in each tier, nearest first.
+	 * @param tickBudget The time each tick may spend updating entities beyond the nearest tier, or 0 for no limit. (in nanoseconds)
+	 * @throws IllegalArgumentException If the distances don't line up with the periods, aren't increasing, or any period isn't positive.*/
+	public UpdateScheduler(EntityWorld entityWorld, float[] distances, int[] tickPeriods, long tickBudget) throws IllegalArgumentException
+	{
+		if((tickPeriods.length == 0) || (distances.length != tickPeriods.length - 1)){
+			throw new IllegalArgumentException(distances.length + " tier distances don't match " + tickPeriods.length + " tier periods");
+		}
+		for(int tier = 0; tier < tickPeriods.length; tier++){
+			if(tickPeriods[tier] <= 0){
+				throw new IllegalArgumentException("Invalid update period for tier " + tier + ": " + tickPeriods[tier]);
+			}
+			if((tier < distances.length) && (!(distances[tier] > 0) || ((tier > 0) && (distances[tier] <= distances[tier - 1])))){//if the tiers overlap
+				throw new IllegalArgumentException("Tier distances must be positive and increasing: " + Arrays.toString(distances));
+			}
+		}
+		world = entityWorld;
+		distancesSquared = new float[distances.length];
+		for(int tier = 0; tier < distances.length; tier++){
+			distancesSquared[tier] = distances[tier] * distances[tier];
+		}
+		periods = tickPeriods.clone();
+		budget = Math.max(tickBudget, 0);
+		lastUpdates = new int[64];
+		Arrays.fill(lastUpdates, UNSEEN);
+		dueIndexes = new int[periods.length][16];
+		dueCounts = new int[periods.length];
+		dueStarts = new int[periods.length];
+		cursors = new int[periods.length];
+		tierSizes = new int[periods.length];
+		lastUpdated = new int[periods.length];
+		lastDeferred = new int[periods.length];
+		totalUpdated = new long[periods.length];
+		totalDeferred = new long[periods.length];
+	}
+
+	/**Runs a system on the entities that are due this tick, measuring distances from the centre of a camera's view.
+	 * Like {@link EntityWorld#forEach(EntityWorld.EntitySystem)}, the system can change entities but mustn't create or destroy them.
+	 * @param camera The camera to measure distances from, which must belong to the calling thread.
+	 * @param system The system to run.*/
+	public void update(Camera camera, ScheduledSystem system)
+	{
+		update(camera.getX(), camera.getY(), system);
+	}
+
+	/**Runs a system on the entities that are due this tick. Like {@link EntityWorld#forEach(EntityWorld.EntitySystem)},
+	 * the system can change entities but mustn't create or destroy them.
+	 * @param focusX The x coordinate to measure distances from, usually the camera's.
+	 * @param focusY The y coordinate to measure distances from, usually the camera's.
+	 * @param system The system to run.*/
+	public void update(float focusX, float focusY, ScheduledSystem system)
+	{
+		long start = System.nanoTime();
+		int now = ++tick;
+		int size = world.size();
+		float[] positionsX = world.getPositionsX();
+		float[] positionsY = world.getPositionsY();
+		int tiers = periods.length;
+		Arrays.fill(tierSizes, 0);
+		Arrays.fill(lastUpdated, 0);
+		Arrays.fill(lastDeferred, 0);
+		Arrays.fill(dueCounts, 0);
+
+		for(int index = 0; index < size; index++){//sort the entities into tiers, updating the nearest tier straight away
+			float dx = positionsX[index] - focusX;
+			float dy = positionsY[index] - focusY;
+			float distanceSquared = dx * dx + dy * dy;
+			int tier = 0;
+			while((tier < distancesSquared.length) && (distanceSquared > distancesSquared[tier])){
+				tier++;
+			}
+			tierSizes[tier]++;
+
+			int id = world.idAt(index);
+			if(id >= lastUpdates.length){
+				int length = lastUpdates.length;
+				lastUpdates = Arrays.copyOf(lastUpdates, Math.max(id + 1, length * 2));
+				Arrays.fill(lastUpdates, length, lastUpdates.length, UNSEEN);
+			}
+			if(lastUpdates[id] == UNSEEN){//if the entity is new, give it a phase within its tier's period so new entities don't all come due together
+				lastUpdates[id] = now - 1 - (id % periods[tier]);
+			}
+			if(now - lastUpdates[id] < periods[tier]){//if the entity isn't due yet
+				continue;
+			}
+			if(tier == 0){//the nearest tier is always updated in full
+				system.update(world, index, now - lastUpdates[id]);
+				lastUpdates[id] = now;
+				lastUpdated[0]++;
+			} else{
+				int[] due = dueIndexes[tier];
+				if(dueCounts[tier] == due.length){
+					dueIndexes[tier] = due = Arrays.copyOf(due, due.length * 2);
+				}
+				due[dueCounts[tier]++] = index;
+			}
+		}
+
+		for(int tier = 1; tier < tiers; tier++){//start each tier where it left off, so the same entities don't miss out every tick
+			int position = Arrays.binarySearch(dueIndexes[tier], 0, dueCounts[tier], cursors[tier]);
+			dueStarts[tier] = ((position >= 0)? position : ((-position - 1 < dueCounts[tier])? -position - 1 : 0));
+		}
+
+		long deadline = System.nanoTime() + budget;
+		boolean overBudget = false;
+		boolean remaining = true;
+		while(remaining && !overBudget){//take turns updating a batch from each further tier, nearest first, until they're done or the budget runs out
+			remaining = false;
+			for(int tier = 1; (tier < tiers) && !overBudget; tier++){
+				int[] due = dueIndexes[tier];
+				int end = Math.min(lastUpdated[tier] + BUDGET_CHECK_INTERVAL, dueCounts[tier]);
+				for(int position = lastUpdated[tier]; position < end; position++){
+					int index = due[(dueStarts[tier] + position) % dueCounts[tier]];
+					int id = world.idAt(index);
+					system.update(world, index, now - lastUpdates[id]);
+					lastUpdates[id] = now;
+				}
+				lastUpdated[tier] = end;
+				remaining |= (end < dueCounts[tier]);
+				overBudget = (budget > 0) && (System.nanoTime() - deadline >= 0);
+			}
+		}
+		int deferred = 0;
+		for(int tier = 1; tier < tiers; tier++){
+			lastDeferred[tier] = dueCounts[tier] - lastUpdated[tier];
+			if(lastDeferred[tier] > 0){//entities that missed out are still due, so the tier's next updates start with them
+				cursors[tier] = dueIndexes[tier][(dueStarts[tier] + lastUpdated[tier]) % dueCounts[tier]];
+			}
+			deferred += lastDeferred[tier];
+		}
+
+		for(int tier = 0; tier < tiers; tier++){
+			totalUpdated[tier] += lastUpdated[tier];
+			totalDeferred[tier] += lastDeferred[tier];
+		}
+		ticksScheduled++;
+		if(deferred > 0){
+			ticksOverBudget++;
+		}
+		lastTickTime = System.nanoTime() - start;
+	}
+
+	/**Changes the time each tick may spend updating entities beyond the nearest tier.
+	 * @param tickBudget The new budget, or 0 for no limit. (in nanoseconds)*/
+	public void setBudget(long tickBudget)
+	{
+		budget = Math.max(tickBudget, 0);
+	}
+
+	/**Returns the time each tick may spend updating entities beyond the nearest tier.
+	 * @return The budget, or 0 for no limit. (in nanoseconds)*/
+	public long getBudget()
+	{
+		return budget;
+	}
+
+	/**Returns the number of distance tiers.
+	 * @return The number of tiers.*/
+	public int getTierCount()
+	{
+		return periods.length;
+	}
+
+	/**Returns the number of ticks between updates in a tier.
+	 * @param tier The tier, counting from 0 for the nearest.
+	 * @return The tier's update period. (in ticks)*/
+	public int getPeriod(int tier)
+	{
+		return periods[tier];
+	}
+
+	/**Returns the number of entities that were in a tier during the last tick.
+	 * @param tier The tier, counting from 0 for the nearest.
+	 * @return The number of entities in the tier.*/
+	public int getTierSize(int tier)
+	{
+		return tierSizes[tier];
+	}
+
+	/**Returns the number of entities that were updated in a tier during the last tick.
+	 * @param tier The tier, counting from 0 for the nearest.
+	 * @return The number of updates.*/
+	public int getUpdatedCount(int tier)
+	{
+		return lastUpdated[tier];
+	}
+
+	/**Returns the number of entities in a tier that were due during the last tick, but were left for a later tick because the budget ran out.
+	 * @param tier The tier, counting from 0 for the nearest.
+	 * @return The number of deferred updates.*/
+	public int getDeferredCount(int tier)
+	{
+		return lastDeferred[tier];
+	}
+
+	/**Returns the time the last tick took, including sorting the entities into tiers.
+	 * @return The length of the last tick. (in nanoseconds)*/
+	public long getLastTickTime()
+	{
+		return lastTickTime;
+	}
+
+	/**Creates a report of how many entities were updated at each rate since the statistics were last reset.
+	 * @return The report, with one line per tier.*/
+	public String getReport()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("update scheduler: %d ticks, %d over a budget of %.3f ms, last tick %.3f ms%n", ticksScheduled, ticksOverBudget,
+		                            budget / 1000000.0, lastTickTime / 1000000.0));
+		for(int tier = 0; tier < periods.length; tier++){
+			String reach = ((tier < distancesSquared.length)? String.format("within %.1f", Math.sqrt(distancesSquared[tier])) : "beyond");
+			report.append(String.format("  tier %d (%-12s every %2d ticks): %7d entities, %9.1f updates/tick, %9.1f deferred/tick%n", tier, reach + ",", periods[tier],
+			                            tierSizes[tier], (double)totalUpdated[tier] / Math.max(ticksScheduled, 1), (double)totalDeferred[tier] / Math.max(ticksScheduled, 1)));
+		}
+		return report.toString();
+	}
+
+	/**Resets the update counters.*/
+	public void resetStatistics()
+	{
+		Arrays.fill(totalUpdated, 0);
+		Arrays.fill(totalDeferred, 0);
+		ticksScheduled = 0;
+		ticksOverBudget = 0;
+	}
+
+	/**Updates entities that the scheduler has decided are due.*/
+	public interface ScheduledSystem
+	{
+		/**Called for each entity that's due to be updated.
+		 * @param world The world being updated.
+		 * @param index The index of the entity to update.
+		 * @param elapsedTicks The number of ticks since the entity was last updated, which is at least its tier's period.*/
+		public void update(EntityWorld world, int index, int elapsedTicks);
+	}
+}
@@ -0,0 +1,157 @@
+package com.insertcreativity.zoogame.math;
+
+import java.nio.FloatBuffer;
+
+/**Mutable 4x4 matrix of floats, stored in column major order the same way GL expects it.
+ * Matrices are meant to be created once and reused, so none of the methods allocate.*/
+public class Mat4
+{
+	/**The matrix's 16 values in column major order, so the value at row r and column c is at index (c * 4 + r).*/
+	private final float[] values;
+	/**Scratch space that products are calculated in, so a matrix can be multiplied into itself.*/
+	private final float[] scratch;
+
+	/**Creates a new identity matrix.*/
+	public Mat4()
+	{
+		values = new float[16];
+		scratch = new float[16];
+		setIdentity();
+	}
+
+	/**Returns one of the matrix's values.
+	 * @param index The index of the value in column major order, from 0 to 15.
+	 * @return The value at the index.*/
+	public float get(int index)
+	{
+		return values[index];
+	}
+
+	/**Returns one of the matrix's values.
+	 * @param row The row of the value, from 0 to 3.
+	 * @param column The column of the value, from 0 to 3.
+	 * @return The value at the row and column.*/
+	public float get(int row, int column)
+	{
+		return values[column * 4 + row];
+	}
+
+	/**Copies another matrix into this one.
+	 * @param other The matrix to copy.
+	 * @return This matrix.*/
+	public Mat4 set(Mat4 other)
+	{
+		System.arraycopy(other.values, 0, values, 0, 16);
+		return this;
+	}
+
+	/**Resets the matrix to the identity matrix.
+	 * @return This matrix.*/
+	public Mat4 setIdentity()
+	{
+		for(int i = 0; i < 16; i++){
+			values[i] = (((i % 5) == 0)? 1 : 0);//the diagonal is every fifth value
+		}
+		return this;
+	}
+
+	/**Sets the matrix to an orthographic projection, the same as glOrtho would create.
+	 * @param left The x coordinate that maps to the left edge of the viewport.
+	 * @param right The x coordinate that maps to the right edge of the viewport.
+	 * @param bottom The y coordinate that maps to the bottom edge of the viewport.
+	 * @param top The y coordinate that maps to the top edge of the viewport.
+	 * @param near The distance to the near clipping plane, which is negative if the plane is behind the viewer.
+	 * @param far The distance to the far clipping plane, which is negative if the plane is behind the viewer.
+	 * @return This matrix.*/
+	public Mat4 setOrthographic(float left, float right, float bottom, float top, float near, float far)
+	{
+		setIdentity();
+		values[0] = 2 / (right - left);
+		values[5] = 2 / (top - bottom);
+		values[10] = -2 / (far - near);
+		values[12] = -(right + left) / (right - left);
+		values[13] = -(top + bottom) / (top - bottom);
+		values[14] = -(far + near) / (far - near);
+		return this;
+	}
+
+	/**Sets the matrix to a translation.
+	 * @param x The distance to translate by in the x direction.
+	 * @param y The distance to translate by in the y direction.
+	 * @param z The distance to translate by in the z direction.
+	 * @return This matrix.*/
+	public Mat4 setTranslation(float x, float y, float z)
+	{
+		setIdentity();
+		values[12] = x;
+		values[13] = y;
+		values[14] = z;
+		return this;
+	}
+
+	/**Multiplies this matrix by a translation, so the translation is applied before this matrix's transform.
+	 * @param x The distance to translate by in the x direction.
+	 * @param y The distance to translate by in the y direction.
+	 * @param z The distance to translate by in the z direction.
+	 * @return This matrix.*/
+	public Mat4 translate(float x, float y, float z)
+	{
+		for(int row = 0; row < 4; row++){//only the last column changes
+			values[12 + row] += (values[row] * x) + (values[4 + row] * y) + (values[8 + row] * z);
+		}
+		return this;
+	}
+
+	/**Sets this matrix to the product of two matrices, which applies the right matrix's transform and then the left's.
+	 * Either matrix can be this matrix.
+	 * @param left The matrix on the left of the product.
+	 * @param right The matrix on the right of the product.
+	 * @return This matrix.*/
+	public Mat4 multiply(Mat4 left, Mat4 right)
+	{
+		float[] a = left.values;
+		float[] b = right.values;
+		for(int column = 0; column < 4; column++){
+			for(int row = 0; row < 4; row++){
+				scratch[column * 4 + row] = (a[row] * b[column * 4]) + (a[4 + row] * b[column * 4 + 1]) + (a[8 + row] * b[column * 4 + 2]) + (a[12 + row] * b[column * 4 + 3]);
+			}
+		}
+		System.arraycopy(scratch, 0, values, 0, 16);
+		return this;
+	}
+
+	/**Transforms a point by this matrix, ignoring any perspective division.
+	 * @param point The point to transform.
+	 * @param result The vector to store the transformed point in, which can be the same vector as the point.
+	 * @return The result vector.*/
+	public Vec3 transform(Vec3 point, Vec3 result)
+	{
+		float x = point.x;
+		float y = point.y;
+		float z = point.z;
+		return result.set((values[0] * x) + (values[4] * y) + (values[8] * z) + values[12],
+		                  (values[1] * x) + (values[5] * y) + (values[9] * z) + values[13],
+		                  (values[2] * x) + (values[6] * y) + (values[10] * z) + values[14]);
+	}
+
+	/**Writes the matrix into a buffer in column major order, starting at the buffer's position. The buffer's position isn't changed.
+	 * @param buffer The buffer to write the matrix into, which must have at least 16 values remaining.
+	 * @return The buffer.*/
+	public FloatBuffer store(FloatBuffer buffer)
+	{
+		int start = buffer.position();
+		for(int i = 0; i < 16; i++){
+			buffer.put(start + i, values[i]);
+		}
+		return buffer;
+	}
+
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		for(int row = 0; row < 4; row++){
+			builder.append('[').append(get(row, 0)).append(", ").append(get(row, 1)).append(", ").append(get(row, 2)).append(", ").append(get(row, 3)).append("]\n");
+		}
+		return builder.toString();
+	}
+}
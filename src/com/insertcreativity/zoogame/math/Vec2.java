@@ -0,0 +1,68 @@
+package com.insertcreativity.zoogame.math;
+
+/**Mutable two component vector. Vectors are meant to be created once and reused, so none of the methods allocate.*/
+public class Vec2
+{
+	/**The x component of the vector.*/
+	public float x;
+	/**The y component of the vector.*/
+	public float y;
+
+	/**Creates a new zero vector.*/
+	public Vec2()
+	{
+	}
+
+	/**Creates a new vector.
+	 * @param x The x component of the vector.
+	 * @param y The y component of the vector.*/
+	public Vec2(float x, float y)
+	{
+		this.x = x;
+		this.y = y;
+	}
+
+	/**Sets the vector's components.
+	 * @param x The new x component.
+	 * @param y The new y component.
+	 * @return This vector.*/
+	public Vec2 set(float x, float y)
+	{
+		this.x = x;
+		this.y = y;
+		return this;
+	}
+
+	/**Adds to the vector's components.
+	 * @param deltaX The amount to add to the x component.
+	 * @param deltaY The amount to add to the y component.
+	 * @return This vector.*/
+	public Vec2 add(float deltaX, float deltaY)
+	{
+		x += deltaX;
+		y += deltaY;
+		return this;
+	}
+
+	/**Multiplies the vector's components by a factor.
+	 * @param factor The factor to scale the vector by.
+	 * @return This vector.*/
+	public Vec2 scale(float factor)
+	{
+		x *= factor;
+		y *= factor;
+		return this;
+	}
+
+	/**Returns the length of the vector.
+	 * @return The vector's length.*/
+	public float length()
+	{
+		return (float)Math.sqrt((x * x) + (y * y));
+	}
+
+	public String toString()
+	{
+		return "(" + x + ", " + y + ")";
+	}
+}
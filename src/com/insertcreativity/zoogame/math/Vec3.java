@@ -0,0 +1,78 @@
+package com.insertcreativity.zoogame.math;
+
+/**Mutable three component vector. Vectors are meant to be created once and reused, so none of the methods allocate.*/
+public class Vec3
+{
+	/**The x component of the vector.*/
+	public float x;
+	/**The y component of the vector.*/
+	public float y;
+	/**The z component of the vector.*/
+	public float z;
+
+	/**Creates a new zero vector.*/
+	public Vec3()
+	{
+	}
+
+	/**Creates a new vector.
+	 * @param x The x component of the vector.
+	 * @param y The y component of the vector.
+	 * @param z The z component of the vector.*/
+	public Vec3(float x, float y, float z)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**Sets the vector's components.
+	 * @param x The new x component.
+	 * @param y The new y component.
+	 * @param z The new z component.
+	 * @return This vector.*/
+	public Vec3 set(float x, float y, float z)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+
+	/**Copies another vector's components into this one.
+	 * @param other The vector to copy.
+	 * @return This vector.*/
+	public Vec3 set(Vec3 other)
+	{
+		return set(other.x, other.y, other.z);
+	}
+
+	/**Adds to the vector's components.
+	 * @param deltaX The amount to add to the x component.
+	 * @param deltaY The amount to add to the y component.
+	 * @param deltaZ The amount to add to the z component.
+	 * @return This vector.*/
+	public Vec3 add(float deltaX, float deltaY, float deltaZ)
+	{
+		x += deltaX;
+		y += deltaY;
+		z += deltaZ;
+		return this;
+	}
+
+	/**Multiplies the vector's components by a factor.
+	 * @param factor The factor to scale the vector by.
+	 * @return This vector.*/
+	public Vec3 scale(float factor)
+	{
+		x *= factor;
+		y *= factor;
+		z *= factor;
+		return this;
+	}
+
+	public String toString()
+	{
+		return "(" + x + ", " + y + ", " + z + ")";
+	}
+}
@@ -1,17 +1,42 @@
 
 package com.insertcreativity.zoogame.menu;
 
+import java.util.concurrent.CompletableFuture;
+import com.insertcreativity.zoogame.AssetLoader;
+import com.insertcreativity.zoogame.RenderSnapshot;
 import com.insertcreativity.zoogame.Renderer;
 import com.insertcreativity.zoogame.Screen;
 import com.insertcreativity.zoogame.Window;
 
 public class MainMenu implements Screen
 {
+	public CompletableFuture<?> preload(AssetLoader assets)
+	{
+		return CompletableFuture.completedFuture(null);
+	}
+
+	public void unload()
+	{
+	}
+
 	public void update(Window window)
 	{
 	}
 
-	public void render(Renderer renderer)
+	public void render(Renderer renderer, float interpolation)
+	{
+	}
+
+	public RenderSnapshot createSnapshot()
+	{
+		return new RenderSnapshot(){
+			public void render(Renderer renderer, float interpolation)
+			{
+			}
+		};
+	}
+
+	public void writeSnapshot(RenderSnapshot snapshot)
 	{
 	}
 
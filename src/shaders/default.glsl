@@ -5,11 +5,23 @@ attribute vec3 vertices;
 attribute vec2 textureCoords;
 varying vec2 VtextureCoords;
 uniform mat4 projection;
+uniform vec3 translation;
+uniform float time;
+uniform vec3 animation;//first frame, frame count (negative if the clip stops on its last frame), frames per second
+uniform vec3 animationSheet;//columns, rows, start time
+uniform vec4 textureRegion;//left, top, width and height of the sprite's part of an atlas page
 
 void main()
 {
-    VtextureCoords = textureCoords;
-    gl_Position = projection * vec4(vertices, 1);
+    vec2 grid = max(animationSheet.xy, vec2(1.0));//shaders that never had an animation set show the whole texture
+    float count = max(abs(animation.y), 1.0);
+    float advanced = floor(max(time - animationSheet.z, 0.0) * animation.z);
+    float frame = animation.x + ((animation.y < 0.0)? min(advanced, count - 1.0) : floor(mod(advanced + 0.5, count)));
+    float row = floor((frame + 0.5) / grid.x);//the frame is a whole number, so nudge it to keep rounding from landing on the previous row
+    vec2 cell = vec2(frame - (row * grid.x), row);
+    vec2 regionSize = (textureRegion.z > 0.0)? textureRegion.zw : vec2(1.0);//shaders that never had a region set show the whole texture
+    VtextureCoords = textureRegion.xy + regionSize * ((cell + textureCoords) / grid);
+    gl_Position = projection * vec4(vertices + translation, 1);
 }
 
 //</vertex>
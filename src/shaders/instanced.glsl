@@ -0,0 +1,37 @@
+//<vertex>
+#version 120
+
+attribute vec3 vertices;
+attribute vec2 textureCoords;
+attribute vec3 instanceOffset;
+attribute vec4 instanceRegion;
+attribute vec4 instanceAnimation;//first frame, frame count (negative if the clip stops on its last frame), frames per second, start time
+attribute vec2 instanceSheet;//columns, rows
+varying vec2 VtextureCoords;
+uniform mat4 projection;
+uniform float time;
+
+void main()
+{
+    vec2 grid = max(instanceSheet, vec2(1.0));
+    float count = max(abs(instanceAnimation.y), 1.0);
+    float advanced = floor(max(time - instanceAnimation.w, 0.0) * instanceAnimation.z);
+    float frame = instanceAnimation.x + ((instanceAnimation.y < 0.0)? min(advanced, count - 1.0) : floor(mod(advanced + 0.5, count)));
+    float row = floor((frame + 0.5) / grid.x);//the frame is a whole number, so nudge it to keep rounding from landing on the previous row
+    vec2 cell = vec2(frame - (row * grid.x), row);
+    VtextureCoords = instanceRegion.xy + (((cell + textureCoords) / grid) * instanceRegion.zw);
+    gl_Position = projection * vec4((vertices.xy * instanceOffset.z) + instanceOffset.xy, vertices.z, 1);
+}
+
+//</vertex>
+//<fragment>
+#version 120
+
+uniform sampler2D sampler;
+varying vec2 VtextureCoords;
+
+void main()
+{
+    gl_FragColor = texture2D(sampler, VtextureCoords);
+}
+//</fragment>
\ No newline at end of file